@@ -0,0 +1,67 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.openjpa.azure.benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs benchmarks with the GC profiler, writing results as JSON (default: <code>jmh-result.json</code>) so that runs
+ * of different versions can be compared.
+ *
+ * Any JMH command line option is accepted, i.e. <code>java -jar target/benchmarks.jar TargetSlice -p members=256</code>.
+ */
+public final class Benchmarks {
+
+    private Benchmarks() {
+    }
+
+    public static void main(final String[] args)
+            throws RunnerException, CommandLineOptionException {
+
+        final CommandLineOptions cmd = new CommandLineOptions(args);
+
+        final OptionsBuilder builder = new OptionsBuilder();
+        builder.parent(cmd).addProfiler(GCProfiler.class);
+        if (!cmd.getResultFormat().hasValue()) {
+            builder.resultFormat(ResultFormatType.JSON);
+        }
+        if (!cmd.getResult().hasValue()) {
+            builder.result("jmh-result.json");
+        }
+        if (!cmd.getForkCount().hasValue()) {
+            builder.forks(1);
+        }
+        if (!cmd.getWarmupIterations().hasValue()) {
+            builder.warmupIterations(5);
+        }
+        if (!cmd.getMeasurementIterations().hasValue()) {
+            builder.measurementIterations(5);
+        }
+
+        final Options options = builder.build();
+        new Runner(options).run();
+    }
+}
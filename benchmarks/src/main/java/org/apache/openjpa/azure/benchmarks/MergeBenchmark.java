@@ -0,0 +1,217 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.openjpa.azure.benchmarks;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.apache.openjpa.azure.jdbc.AzureUniqueResultObjectProvider;
+import org.apache.openjpa.azure.jdbc.conf.AzureConfiguration.RangeType;
+import org.apache.openjpa.azure.util.HexEncoderDecoder;
+import org.apache.openjpa.kernel.OrderingMergedResultObjectProvider;
+import org.apache.openjpa.kernel.StoreContext;
+import org.apache.openjpa.kernel.StoreQuery;
+import org.apache.openjpa.kernel.exps.QueryExpressions;
+import org.apache.openjpa.kernel.exps.Val;
+import org.apache.openjpa.kernel.exps.Value;
+import org.apache.openjpa.lib.rop.ListResultObjectProvider;
+import org.apache.openjpa.lib.rop.ResultObjectProvider;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Merge of per-member results: aggregates through {@link AzureUniqueResultObjectProvider}, ordered rows through
+ * {@link OrderingMergedResultObjectProvider}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class MergeBenchmark {
+
+    @Param({ "2", "16", "64", "256" })
+    public int members;
+
+    @Param({ "BIGINT", "INT", "UNIQUEIDENTIFIER", "VARBINARY" })
+    public RangeType type;
+
+    @Param({ "100" })
+    public int rowsPerMember;
+
+    private List<Object[]>[] sorted;
+
+    private List<Object[]>[] aggregates;
+
+    private QueryExpressions[] exps;
+
+    private StoreQuery.Executor[] executors;
+
+    @Setup
+    @SuppressWarnings("unchecked")
+    public void setup() {
+        final SyntheticFederation federation = new SyntheticFederation(members, type);
+
+        sorted = new List[members];
+        aggregates = new List[members];
+        for (int i = 0; i < members; i++) {
+            final Object[] keys = federation.newKeys(rowsPerMember, i);
+
+            final List<Object[]> rows = new ArrayList<Object[]>(rowsPerMember);
+            for (Object key : keys) {
+                rows.add(new Object[]{ key instanceof byte[] ? new String(HexEncoderDecoder.encode((byte[]) key)) : key });
+            }
+            Collections.sort(rows, new Comparator<Object[]>() {
+
+                @Override
+                @SuppressWarnings("rawtypes")
+                public int compare(final Object[] o1, final Object[] o2) {
+                    return ((Comparable) o1[0]).compareTo(o2[0]);
+                }
+            });
+            sorted[i] = rows;
+
+            aggregates[i] = Collections.singletonList(new Object[]{ (long) rowsPerMember, (double) i, (double) i });
+        }
+
+        final QueryExpressions aggregate = new QueryExpressions();
+        aggregate.projections = new Value[]{ new Count(), new Max(), new Sum() };
+        exps = new QueryExpressions[]{ aggregate };
+
+        final StoreQuery.Executor executor = (StoreQuery.Executor) Proxy.newProxyInstance(
+                getClass().getClassLoader(), new Class<?>[]{ StoreQuery.Executor.class }, new InvocationHandler() {
+
+                    @Override
+                    public Object invoke(final Object proxy, final Method method, final Object[] args) {
+                        // getOrderingValue(StoreQuery, Object[], Object, int)
+                        return "getOrderingValue".equals(method.getName()) ? ((Object[]) args[2])[0] : null;
+                    }
+                });
+        executors = new StoreQuery.Executor[members];
+        Arrays.fill(executors, executor);
+    }
+
+    private ResultObjectProvider[] newRops(final List<Object[]>[] results) {
+        final ResultObjectProvider[] rops = new ResultObjectProvider[members];
+        for (int i = 0; i < members; i++) {
+            rops[i] = new ListResultObjectProvider(results[i]);
+        }
+        return rops;
+    }
+
+    @Benchmark
+    public Object aggregate()
+            throws Exception {
+
+        final ResultObjectProvider rop = new AzureUniqueResultObjectProvider(newRops(aggregates), null, exps);
+        try {
+            rop.next();
+            return rop.getResultObject();
+        } finally {
+            rop.close();
+        }
+    }
+
+    @Benchmark
+    public void orderingMerge(final Blackhole blackhole)
+            throws Exception {
+
+        final ResultObjectProvider rop = new OrderingMergedResultObjectProvider(
+                newRops(sorted), new boolean[]{ true }, executors, null, null);
+        try {
+            rop.open();
+            while (rop.next()) {
+                blackhole.consume(rop.getResultObject());
+            }
+        } finally {
+            rop.close();
+        }
+    }
+
+    /**
+     * Stand-ins for aggregate projections: {@link AzureUniqueResultObjectProvider} dispatches on the simple class
+     * name.
+     */
+    private abstract static class Aggregate extends Val {
+
+        private static final long serialVersionUID = 4217648342521958512L;
+
+        @Override
+        public boolean isAggregate() {
+            return true;
+        }
+
+        @Override
+        @SuppressWarnings("rawtypes")
+        public void setImplicitType(final Class type) {
+            // nothing to do
+        }
+
+        @Override
+        protected Object eval(final Object candidate, final Object orig, final StoreContext ctx,
+                final Object[] params) {
+
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    private static class Count extends Aggregate {
+
+        private static final long serialVersionUID = -2418547418436185741L;
+
+        @Override
+        @SuppressWarnings("rawtypes")
+        public Class getType() {
+            return Long.class;
+        }
+    }
+
+    private static class Max extends Aggregate {
+
+        private static final long serialVersionUID = 5218975460224613040L;
+
+        @Override
+        @SuppressWarnings("rawtypes")
+        public Class getType() {
+            return Double.class;
+        }
+    }
+
+    private static class Sum extends Aggregate {
+
+        private static final long serialVersionUID = -6591239513637264431L;
+
+        @Override
+        @SuppressWarnings("rawtypes")
+        public Class getType() {
+            return Double.class;
+        }
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.openjpa.azure.benchmarks;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.apache.openjpa.azure.util.NativeQueryInfo;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Parsing of native SQL statements, needed to find out target tables (hence federations) of native queries.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class NativeQueryBenchmark {
+
+    /**
+     * Realistic statements, keyed by short names: long parameter values would break JMH JSON results.
+     */
+    private static final Map<String, String> STATEMENTS = new HashMap<String, String>();
+
+    static {
+        STATEMENTS.put("select", "SELECT t0.id, t0.name, t0.version FROM Person t0 WHERE t0.id = ?");
+        STATEMENTS.put("join", "SELECT COUNT(t0.id), MAX(t0.amount) FROM Orders t0 "
+                + "INNER JOIN Customer t1 ON t0.customer_id = t1.id WHERE t1.country = ? GROUP BY t1.country");
+        STATEMENTS.put("insert", "INSERT INTO Person (id, name, version) VALUES (?, ?, ?)");
+        STATEMENTS.put("update", "UPDATE Person SET name = ?, version = ? WHERE id = ? AND version = ?");
+        STATEMENTS.put("delete", "DELETE FROM Person WHERE id = ?");
+        STATEMENTS.put("createIndex", "CREATE INDEX I_PRSN_NAME ON Person (name ASC) INCLUDE (version)");
+    }
+
+    @Param({ "select", "join", "insert", "update", "delete", "createIndex" })
+    public String statement;
+
+    private String sql;
+
+    @Setup
+    public void setup() {
+        sql = STATEMENTS.get(statement);
+    }
+
+    @Benchmark
+    public NativeQueryInfo parse() {
+        return new NativeQueryInfo(sql);
+    }
+}
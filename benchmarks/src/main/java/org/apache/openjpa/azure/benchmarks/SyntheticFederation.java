@@ -0,0 +1,138 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.openjpa.azure.benchmarks;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+import org.apache.openjpa.azure.Federation;
+import org.apache.openjpa.azure.jdbc.conf.AzureConfiguration.RangeType;
+import org.apache.openjpa.azure.routing.RoutingTable;
+
+/**
+ * Federation whose members evenly split the key space of the given range type, with member lower bounds in the same
+ * form as read from <code>sys.federation_member_distributions</code>.
+ */
+public class SyntheticFederation {
+
+    public static final String NAME = "FED_1";
+
+    /**
+     * Width of numeric member ranges.
+     */
+    private static final long STEP = 1000;
+
+    private final Federation federation;
+
+    private final int members;
+
+    private final List<String> sliceNames;
+
+    private final RoutingTable routingTable;
+
+    public SyntheticFederation(final int members, final RangeType type) {
+        this.members = members;
+
+        federation = new Federation();
+        federation.setName(NAME);
+        federation.setDistributionName("range_id");
+        federation.setRangeMappingType(type);
+
+        final List<Object> bounds = new ArrayList<Object>(members);
+        final List<String> names = new ArrayList<String>(members);
+        final Map<String, Federation> federations = new LinkedHashMap<String, Federation>();
+
+        for (int i = 0; i < members; i++) {
+            bounds.add(getLowerBound(type, i));
+
+            final String sliceName = NAME + "." + i;
+            names.add(sliceName);
+            federations.put(sliceName, federation);
+        }
+        sliceNames = Collections.unmodifiableList(names);
+
+        routingTable = RoutingTable.newInstance(
+                Collections.<Federation, List<Object>>singletonMap(federation, bounds), federations);
+    }
+
+    private Object getLowerBound(final RangeType type, final int index) {
+        switch (type) {
+            case BIGINT:
+                return index == 0 ? Long.MIN_VALUE : index * STEP;
+            case INT:
+                return index == 0 ? Integer.MIN_VALUE : (int) (index * STEP);
+            case UNIQUEIDENTIFIER:
+                return String.format("%08x-0000-0000-0000-000000000000", (0x100000000L / members) * index);
+            default:
+                return new byte[]{(byte) (256 / members * index)};
+        }
+    }
+
+    public Federation getFederation() {
+        return federation;
+    }
+
+    public int getMembers() {
+        return members;
+    }
+
+    public List<String> getSliceNames() {
+        return sliceNames;
+    }
+
+    public RoutingTable getRoutingTable() {
+        return routingTable;
+    }
+
+    /**
+     * Random federation keys spread over all members.
+     *
+     * @param count number of keys.
+     * @param seed random seed, for reproducible runs.
+     * @return federation keys.
+     */
+    public Object[] newKeys(final int count, final long seed) {
+        final Random random = new Random(seed);
+        final Object[] keys = new Object[count];
+
+        for (int i = 0; i < count; i++) {
+            switch (federation.getRangeMappingType()) {
+                case BIGINT:
+                    keys[i] = (long) random.nextInt((int) (members * STEP));
+                    break;
+                case INT:
+                    keys[i] = random.nextInt((int) (members * STEP));
+                    break;
+                case UNIQUEIDENTIFIER:
+                    keys[i] = new UUID(random.nextLong(), random.nextLong()).toString();
+                    break;
+                default:
+                    final byte[] key = new byte[8];
+                    random.nextBytes(key);
+                    keys[i] = key;
+            }
+        }
+
+        return keys;
+    }
+}
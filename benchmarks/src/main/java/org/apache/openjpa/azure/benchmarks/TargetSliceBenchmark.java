@@ -0,0 +1,74 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.openjpa.azure.benchmarks;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.apache.openjpa.azure.jdbc.conf.AzureConfiguration.RangeType;
+import org.apache.openjpa.azure.util.AzureUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Routing of a federation key to its member slice, and fan-out to all members.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class TargetSliceBenchmark {
+
+    private static final int KEYS = 1024;
+
+    @Param({ "2", "16", "64", "256" })
+    public int members;
+
+    @Param({ "BIGINT", "INT", "UNIQUEIDENTIFIER", "VARBINARY" })
+    public RangeType type;
+
+    private SyntheticFederation federation;
+
+    private Object[] keys;
+
+    private int index;
+
+    @Setup
+    public void setup() {
+        federation = new SyntheticFederation(members, type);
+        keys = federation.newKeys(KEYS, 42);
+    }
+
+    @Benchmark
+    public List<String> route() {
+        index = (index + 1) & (KEYS - 1);
+        return AzureUtils.getTargetSlice(federation.getRoutingTable(), federation.getSliceNames(),
+                federation.getFederation(), keys[index]);
+    }
+
+    @Benchmark
+    public List<String> fanOut() {
+        return AzureUtils.getTargetSlice(federation.getRoutingTable(), federation.getSliceNames(),
+                federation.getFederation(), null);
+    }
+}
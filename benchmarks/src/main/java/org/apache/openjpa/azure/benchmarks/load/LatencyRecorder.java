@@ -0,0 +1,77 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.openjpa.azure.benchmarks.load;
+
+import java.util.Arrays;
+
+/**
+ * Records operation latencies (nanoseconds) of a single worker thread; recorders are merged once the run is over.
+ */
+public class LatencyRecorder {
+
+    private long[] values = new long[1024];
+
+    private int size = 0;
+
+    private long errors = 0;
+
+    public void record(final long nanos) {
+        if (size == values.length) {
+            values = Arrays.copyOf(values, size * 2);
+        }
+        values[size++] = nanos;
+    }
+
+    public void error() {
+        errors++;
+    }
+
+    public int getCount() {
+        return size;
+    }
+
+    public long getErrors() {
+        return errors;
+    }
+
+    public void merge(final LatencyRecorder other) {
+        if (size + other.size > values.length) {
+            values = Arrays.copyOf(values, size + other.size);
+        }
+        System.arraycopy(other.values, 0, values, size, other.size);
+        size += other.size;
+        errors += other.errors;
+    }
+
+    /**
+     * Percentile (nearest rank) of recorded latencies; sorts values, hence to be invoked once recording is over.
+     *
+     * @param percentile percentile, between 0 and 100.
+     * @return latency in nanoseconds; 0 if nothing was recorded.
+     */
+    public long getPercentile(final double percentile) {
+        if (size == 0) {
+            return 0;
+        }
+        Arrays.sort(values, 0, size);
+
+        final int rank = (int) Math.ceil(percentile / 100 * size);
+        return values[Math.max(0, Math.min(size, rank) - 1)];
+    }
+}
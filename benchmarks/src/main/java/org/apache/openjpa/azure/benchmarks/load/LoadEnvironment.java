@@ -0,0 +1,183 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.openjpa.azure.benchmarks.load;
+
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.Persistence;
+import org.apache.openjpa.azure.emulator.EmulatedMember;
+import org.apache.openjpa.azure.emulator.EmulatorDriver;
+import org.apache.openjpa.azure.emulator.FederationEmulator;
+import org.apache.openjpa.azure.jdbc.conf.AzureConfiguration.RangeType;
+
+/**
+ * Emulated federation with <code>members</code> members, each owning a key range of {@link #SPAN} ids, plus the
+ * EntityManagerFactory configured with one slice per member.
+ */
+public class LoadEnvironment {
+
+    public static final String PERSISTENCE_UNIT = "azure-load";
+
+    public static final String FEDERATION = "FED_1";
+
+    /**
+     * Width of the key range owned by each member.
+     */
+    public static final long SPAN = 1000000000L;
+
+    private final String name;
+
+    private final int members;
+
+    private final int rowsPerMember;
+
+    private final int batchSize;
+
+    private final FederationEmulator emulator;
+
+    private EntityManagerFactory emf;
+
+    public LoadEnvironment(final int members, final int rowsPerMember, final int batchSize)
+            throws SQLException {
+
+        this.name = "load_" + members;
+        this.members = members;
+        this.rowsPerMember = rowsPerMember;
+        this.batchSize = batchSize;
+
+        FederationEmulator.drop(name);
+        emulator = FederationEmulator.getInstance(name);
+
+        emulator.createFederation(FEDERATION, "range_id", RangeType.BIGINT);
+        for (int i = 1; i < members; i++) {
+            emulator.split(FEDERATION, String.valueOf(i * SPAN));
+        }
+    }
+
+    public int getMembers() {
+        return members;
+    }
+
+    public int getRowsPerMember() {
+        return rowsPerMember;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public FederationEmulator getEmulator() {
+        return emulator;
+    }
+
+    private Map<String, String> getProperties() {
+        final String url = EmulatorDriver.URL_PREFIX + name;
+        final String driver = EmulatorDriver.class.getName();
+
+        final Map<String, String> props = new HashMap<String, String>();
+        props.put("openjpa.ConnectionURL", url);
+        props.put("openjpa.ConnectionDriverName", driver);
+
+        props.put("openjpa.azure.Federations", FEDERATION);
+        props.put("openjpa.azure." + FEDERATION + ".RangeMappingType", RangeType.BIGINT.name());
+        props.put("openjpa.azure." + FEDERATION + ".Tables", "LoadItem");
+        props.put("openjpa.azure." + FEDERATION + ".LoadItem.RangeMappingName", "id");
+        props.put("openjpa.azure.BulkIngestBatchSize", String.valueOf(batchSize));
+
+        final StringBuilder names = new StringBuilder("ROOT");
+        for (int i = 0; i < members; i++) {
+            names.append(',').append(FEDERATION).append('.').append(i);
+        }
+        props.put("openjpa.slice.Names", names.toString());
+
+        for (String slice : names.toString().split(",")) {
+            props.put("openjpa.slice." + slice + ".ConnectionURL", url);
+            props.put("openjpa.slice." + slice + ".ConnectionDriverName", driver);
+        }
+
+        return props;
+    }
+
+    /**
+     * Create the EntityManagerFactory (hence the schema) and load <code>rowsPerMember</code> items per member.
+     *
+     * @return EntityManagerFactory.
+     */
+    public EntityManagerFactory open() {
+        emf = Persistence.createEntityManagerFactory(PERSISTENCE_UNIT, getProperties());
+
+        final EntityManager em = emf.createEntityManager();
+        try {
+            for (int row = 0; row < rowsPerMember; row += batchSize) {
+                em.getTransaction().begin();
+                for (int member = 0; member < members; member++) {
+                    for (int i = row; i < Math.min(rowsPerMember, row + batchSize); i++) {
+                        em.persist(new LoadItem(member * SPAN + i, "item" + i, i));
+                    }
+                }
+                em.getTransaction().commit();
+                em.clear();
+            }
+        } finally {
+            em.close();
+        }
+
+        return emf;
+    }
+
+    public void setLatency(final long latency) {
+        for (EmulatedMember member : emulator.getFederation(FEDERATION).getMembers()) {
+            member.setLatency(latency);
+        }
+        emulator.getRoot().setLatency(latency);
+    }
+
+    /**
+     * Currently open connections to the root and to all members.
+     */
+    public int getOpenConnections() {
+        int count = emulator.getRoot().getOpenConnections();
+        for (EmulatedMember member : emulator.getFederation(FEDERATION).getMembers()) {
+            count += member.getOpenConnections();
+        }
+        return count;
+    }
+
+    public long randomId(final Random random) {
+        return random.nextInt(members) * SPAN + random.nextInt(rowsPerMember);
+    }
+
+    /**
+     * Id of a new item, not loaded by {@link #open()}: consecutive sequence values land on different members.
+     */
+    public long nextNewId(final long sequence) {
+        return (sequence % members) * SPAN + rowsPerMember + sequence / members;
+    }
+
+    public void close() {
+        if (emf != null) {
+            emf.close();
+        }
+        FederationEmulator.drop(name);
+    }
+}
@@ -0,0 +1,243 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.openjpa.azure.benchmarks.load;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.persistence.EntityManagerFactory;
+import org.apache.openjpa.azure.AzureDistributedBrokerFactory;
+
+/**
+ * End-to-end load driver against the in-process federation emulator: for each number of members, concurrency level
+ * and scenario, runs a timed load and reports latency percentiles, throughput and connection counts as JSON.
+ *
+ * Arguments are <code>key=value</code> pairs (defaults in brackets): <code>members</code> [2,4,8],
+ * <code>threads</code> [1,8,32], <code>scenarios</code> [FIND,QUERY,FLUSH,INGEST,AGGREGATE], <code>duration</code> seconds
+ * [10], <code>warmup</code> seconds [3], <code>latency</code> per statement ms [0], <code>rows</code> per member
+ * [1000], <code>batch</code> [50], <code>out</code> [load-report.json], <code>label</code> [library version].
+ */
+public final class LoadHarness {
+
+    private final Map<String, String> config = new LinkedHashMap<String, String>();
+
+    private final List<Map<String, Object>> results = new ArrayList<Map<String, Object>>();
+
+    private LoadHarness(final String[] args) {
+        config.put("members", "2,4,8");
+        config.put("threads", "1,8,32");
+        config.put("scenarios", "FIND,QUERY,FLUSH,INGEST,AGGREGATE");
+        config.put("duration", "10");
+        config.put("warmup", "3");
+        config.put("latency", "0");
+        config.put("rows", "1000");
+        config.put("batch", "50");
+        config.put("out", "load-report.json");
+
+        final String version = AzureDistributedBrokerFactory.class.getPackage().getImplementationVersion();
+        config.put("label", "openjpa-azure-" + (version == null ? "dev" : version));
+
+        for (String arg : args) {
+            final int index = arg.indexOf('=');
+            if (index < 0 || !config.containsKey(arg.substring(0, index))) {
+                throw new IllegalArgumentException("Invalid argument " + arg + ", expected one of " + config.keySet());
+            }
+            config.put(arg.substring(0, index), arg.substring(index + 1));
+        }
+    }
+
+    private int getInt(final String key) {
+        return Integer.parseInt(config.get(key));
+    }
+
+    private List<String> getList(final String key) {
+        return Arrays.asList(config.get(key).split("\\s*,\\s*"));
+    }
+
+    public static void main(final String[] args)
+            throws Exception {
+
+        final LoadHarness harness = new LoadHarness(args);
+        harness.run();
+        harness.writeReport(new File(harness.config.get("out")));
+    }
+
+    private void run()
+            throws Exception {
+
+        for (String members : getList("members")) {
+            final LoadEnvironment env =
+                    new LoadEnvironment(Integer.parseInt(members), getInt("rows"), getInt("batch"));
+            try {
+                final EntityManagerFactory emf = env.open();
+                env.setLatency(getInt("latency"));
+
+                for (String scenario : getList("scenarios")) {
+                    for (String threads : getList("threads")) {
+                        final Map<String, Object> result =
+                                run(emf, env, Scenario.valueOf(scenario.toUpperCase()), Integer.parseInt(threads));
+                        results.add(result);
+                        System.out.println(result);
+                    }
+                }
+            } finally {
+                env.close();
+            }
+        }
+    }
+
+    private Map<String, Object> run(
+            final EntityManagerFactory emf, final LoadEnvironment env, final Scenario scenario, final int threads)
+            throws InterruptedException {
+
+        final long start = System.nanoTime();
+        final long measureFrom = start + getInt("warmup") * 1000000000L;
+        final long end = measureFrom + getInt("duration") * 1000000000L;
+
+        final LatencyRecorder[] recorders = new LatencyRecorder[threads];
+        final CountDownLatch done = new CountDownLatch(threads);
+        final AtomicInteger maxConnections = new AtomicInteger();
+
+        for (int i = 0; i < threads; i++) {
+            final LatencyRecorder recorder = new LatencyRecorder();
+            recorders[i] = recorder;
+            final Random random = new Random(i);
+
+            final Thread worker = new Thread(new Runnable() {
+
+                @Override
+                public void run() {
+                    try {
+                        long now = System.nanoTime();
+                        while (now < end) {
+                            final long before = now;
+                            boolean failed = false;
+                            try {
+                                scenario.execute(emf, env, random);
+                            } catch (RuntimeException e) {
+                                failed = true;
+                            }
+                            now = System.nanoTime();
+
+                            if (before >= measureFrom) {
+                                if (failed) {
+                                    recorder.error();
+                                } else {
+                                    recorder.record(now - before);
+                                }
+                            }
+                        }
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            }, "load-" + scenario + "-" + i);
+            worker.setDaemon(true);
+            worker.start();
+        }
+
+        while (!done.await(10, TimeUnit.MILLISECONDS)) {
+            final int connections = env.getOpenConnections();
+            if (connections > maxConnections.get()) {
+                maxConnections.set(connections);
+            }
+        }
+
+        final LatencyRecorder total = new LatencyRecorder();
+        for (LatencyRecorder recorder : recorders) {
+            total.merge(recorder);
+        }
+
+        final double seconds = getInt("duration");
+
+        final Map<String, Object> result = new LinkedHashMap<String, Object>();
+        result.put("scenario", scenario.name());
+        result.put("members", env.getMembers());
+        result.put("threads", threads);
+        result.put("operations", total.getCount());
+        result.put("errors", total.getErrors());
+        result.put("throughput", total.getCount() / seconds);
+        result.put("p50Ms", total.getPercentile(50) / 1000000.0);
+        result.put("p99Ms", total.getPercentile(99) / 1000000.0);
+        result.put("p999Ms", total.getPercentile(99.9) / 1000000.0);
+        result.put("maxMs", total.getPercentile(100) / 1000000.0);
+        result.put("maxConnections", maxConnections.get());
+        result.put("openConnections", env.getOpenConnections());
+        return result;
+    }
+
+    private void writeReport(final File file)
+            throws IOException {
+
+        final StringBuilder json = new StringBuilder();
+        json.append("{\n  \"label\": ").append(quote(config.get("label")));
+        json.append(",\n  \"timestamp\": ").append(new Date().getTime());
+        json.append(",\n  \"config\": ").append(toJson(new LinkedHashMap<String, Object>(config)));
+        json.append(",\n  \"results\": [");
+        for (int i = 0; i < results.size(); i++) {
+            json.append(i == 0 ? "\n    " : ",\n    ").append(toJson(results.get(i)));
+        }
+        json.append("\n  ]\n}\n");
+
+        final Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+        try {
+            writer.write(json.toString());
+        } finally {
+            writer.close();
+        }
+        System.out.println("Report written to " + file.getAbsolutePath());
+    }
+
+    private static String toJson(final Map<String, Object> map) {
+        final StringBuilder json = new StringBuilder("{");
+        for (Map.Entry<String, Object> entry : map.entrySet()) {
+            if (json.length() > 1) {
+                json.append(", ");
+            }
+            json.append(quote(entry.getKey())).append(": ");
+
+            final Object value = entry.getValue();
+            if (value instanceof Double) {
+                json.append(String.format(Locale.ENGLISH, "%.3f", value));
+            } else if (value instanceof Number) {
+                json.append(value);
+            } else {
+                json.append(quote(String.valueOf(value)));
+            }
+        }
+        return json.append('}').toString();
+    }
+
+    private static String quote(final String value) {
+        return '"' + value.replace("\\", "\\\\").replace("\"", "\\\"") + '"';
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.openjpa.azure.benchmarks.load;
+
+import java.io.Serializable;
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Version;
+
+/**
+ * Entity federated on its id, assigned by the load driver.
+ */
+@Entity
+public class LoadItem implements Serializable {
+
+    private static final long serialVersionUID = -3870396658357442618L;
+
+    @Id
+    @Column(columnDefinition = "bigint")
+    private Long id;
+
+    @Column(nullable = false)
+    private String name;
+
+    private long amount;
+
+    @Version
+    private int version;
+
+    public LoadItem() {
+    }
+
+    public LoadItem(final long id, final String name, final long amount) {
+        this.id = id;
+        this.name = name;
+        this.amount = amount;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(final String name) {
+        this.name = name;
+    }
+
+    public long getAmount() {
+        return amount;
+    }
+
+    public void setAmount(final long amount) {
+        this.amount = amount;
+    }
+
+    public int getVersion() {
+        return version;
+    }
+}
@@ -0,0 +1,140 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.openjpa.azure.benchmarks.load;
+
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import org.apache.openjpa.persistence.JPAFacadeHelper;
+import org.apache.openjpa.slice.jdbc.DistributedJDBCStoreManager;
+
+/**
+ * Load scenarios: each invocation of {@link #execute(EntityManagerFactory, LoadEnvironment, Random)} is a single
+ * measured operation.
+ */
+public enum Scenario {
+
+    /**
+     * Point find, routed to a single member by AzureFinderTargetPolicy.
+     */
+    FIND {
+
+        @Override
+        public void execute(final EntityManagerFactory emf, final LoadEnvironment env, final Random random) {
+            final EntityManager em = emf.createEntityManager();
+            try {
+                if (em.find(LoadItem.class, env.randomId(random)) == null) {
+                    throw new IllegalStateException("Item not found");
+                }
+            } finally {
+                em.close();
+            }
+        }
+    },
+    /**
+     * Ordered JPQL query fanned out to all members.
+     */
+    QUERY {
+
+        @Override
+        public void execute(final EntityManagerFactory emf, final LoadEnvironment env, final Random random) {
+            final long low = random.nextInt(env.getRowsPerMember());
+
+            final EntityManager em = emf.createEntityManager();
+            try {
+                em.createQuery("SELECT i FROM LoadItem i WHERE i.amount BETWEEN :low AND :high ORDER BY i.id").
+                        setParameter("low", low).
+                        setParameter("high", low + 10).
+                        getResultList();
+            } finally {
+                em.close();
+            }
+        }
+    },
+    /**
+     * Transaction persisting a batch of new items spread over all members.
+     */
+    FLUSH {
+
+        @Override
+        public void execute(final EntityManagerFactory emf, final LoadEnvironment env, final Random random) {
+            final EntityManager em = emf.createEntityManager();
+            try {
+                em.getTransaction().begin();
+                for (int i = 0; i < env.getBatchSize(); i++) {
+                    final long id = env.nextNewId(SEQUENCE.getAndIncrement());
+                    em.persist(new LoadItem(id, "new" + id, random.nextInt(env.getRowsPerMember())));
+                }
+                em.getTransaction().commit();
+            } finally {
+                if (em.getTransaction().isActive()) {
+                    em.getTransaction().rollback();
+                }
+                em.close();
+            }
+        }
+    },
+    /**
+     * Transaction persisting a large number of new items spread over all members, flushed in bulk ingest mode:
+     * <code>batch</code> items per member batch, four batches per member.
+     */
+    INGEST {
+
+        @Override
+        public void execute(final EntityManagerFactory emf, final LoadEnvironment env, final Random random) {
+            final EntityManager em = emf.createEntityManager();
+            try {
+                ((DistributedJDBCStoreManager) JPAFacadeHelper.toBroker(em).getStoreManager().getInnermostDelegate()).
+                        setBulkIngest(true);
+
+                em.getTransaction().begin();
+                for (int i = 0; i < env.getBatchSize() * env.getMembers() * 4; i++) {
+                    final long id = env.nextNewId(SEQUENCE.getAndIncrement());
+                    em.persist(new LoadItem(id, "new" + id, random.nextInt(env.getRowsPerMember())));
+                }
+                em.getTransaction().commit();
+            } finally {
+                if (em.getTransaction().isActive()) {
+                    em.getTransaction().rollback();
+                }
+                em.close();
+            }
+        }
+    },
+    /**
+     * Native aggregate query, merged by AzureNativeAggregatorROP.
+     */
+    AGGREGATE {
+
+        @Override
+        public void execute(final EntityManagerFactory emf, final LoadEnvironment env, final Random random) {
+            final EntityManager em = emf.createEntityManager();
+            try {
+                em.createNativeQuery("SELECT COUNT(*) FROM LoadItem").getSingleResult();
+            } finally {
+                em.close();
+            }
+        }
+    };
+
+    private static final AtomicLong SEQUENCE = new AtomicLong();
+
+    public abstract void execute(EntityManagerFactory emf, LoadEnvironment env, Random random);
+}
@@ -21,12 +21,24 @@ package org.apache.openjpa.azure;
 import java.lang.reflect.Proxy;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 import org.apache.commons.lang.StringUtils;
+import org.apache.openjpa.azure.datacache.FederatedDataCache;
+import org.apache.openjpa.azure.datacache.SliceQueryCache;
+import org.apache.openjpa.azure.jdbc.QueryPlanCache;
 import org.apache.openjpa.azure.jdbc.conf.AzureConfiguration;
 import org.apache.openjpa.azure.jdbc.conf.AzureConfigurationImpl;
 import org.apache.openjpa.azure.jdbc.meta.AzureMappingTool;
 import org.apache.openjpa.azure.kernel.AzureBroker;
+import org.apache.openjpa.azure.metrics.MetricsRegistry;
+import org.apache.openjpa.azure.retry.TransientFaultPolicy;
+import org.apache.openjpa.azure.routing.FederationRegistry;
+import org.apache.openjpa.azure.routing.RoutingRefresher;
+import org.apache.openjpa.azure.routing.SliceLocationCache;
+import org.apache.openjpa.azure.trace.QueryTrace;
+import org.apache.openjpa.azure.trace.Tracer;
+import org.apache.openjpa.datacache.DataCacheManager;
 import org.apache.openjpa.jdbc.conf.JDBCConfiguration;
 import org.apache.openjpa.jdbc.meta.MappingRepository;
 import org.apache.openjpa.jdbc.meta.MappingTool;
@@ -38,16 +50,139 @@ import org.apache.openjpa.slice.Slice;
 import org.apache.openjpa.slice.jdbc.DistributedJDBCBrokerFactory;
 import org.apache.openjpa.slice.jdbc.DistributedJDBCConfiguration;
 import org.apache.openjpa.slice.jdbc.DistributedJDBCStoreManager;
+import org.apache.openjpa.slice.jdbc.DistributedStoreComponents;
 import org.apache.openjpa.util.UserException;
 
-public class AzureDistributedBrokerFactory extends DistributedJDBCBrokerFactory {
+public class AzureDistributedBrokerFactory extends DistributedJDBCBrokerFactory
+        implements DistributedStoreComponents {
 
     private static final Localizer _loc = Localizer.forPackage(AzureDistributedBrokerFactory.class);
 
     private static final long serialVersionUID = 3111066668150403201L;
 
+    private final transient FederationRegistry registry = new FederationRegistry();
+
+    private final transient RoutingRefresher refresher;
+
+    private final transient TransientFaultPolicy faultPolicy;
+
+    private final transient MetricsRegistry metrics;
+
+    private final transient QueryTrace trace;
+
+    private final transient Tracer tracer;
+
+    private final transient SliceQueryCache queryCache;
+
+    private final transient SliceLocationCache locations;
+
+    private final transient QueryPlanCache plans;
+
     public AzureDistributedBrokerFactory(AzureConfiguration conf) {
         super(conf);
+        refresher = new RoutingRefresher(this, registry);
+        metrics = MetricsRegistry.newInstance(conf);
+        faultPolicy = TransientFaultPolicy.newInstance(conf, metrics);
+        trace = QueryTrace.newInstance(conf);
+        tracer = conf.getTracerInstance();
+        queryCache = SliceQueryCache.newInstance(conf);
+        locations = SliceLocationCache.newInstance(conf, registry);
+        plans = QueryPlanCache.newInstance(conf);
+    }
+
+    /**
+     * Federation member bounds shared by all the brokers created by this factory.
+     */
+    public FederationRegistry getFederationRegistry() {
+        return registry;
+    }
+
+    @Override
+    public RoutingRefresher getRoutingRefresher() {
+        return refresher;
+    }
+
+    /**
+     * Transient fault handling (retries and per-slice circuit breakers) shared by all the brokers created by this
+     * factory.
+     */
+    @Override
+    public TransientFaultPolicy getTransientFaultPolicy() {
+        return faultPolicy;
+    }
+
+    /**
+     * Per-slice metrics shared by all the brokers created by this factory.
+     */
+    @Override
+    public MetricsRegistry getMetricsRegistry() {
+        return metrics;
+    }
+
+    /**
+     * Query trace shared by all the brokers created by this factory.
+     */
+    @Override
+    public QueryTrace getQueryTrace() {
+        return trace;
+    }
+
+    /**
+     * Tracer producing spans of the distributed executions of all the brokers created by this factory.
+     */
+    @Override
+    public Tracer getTracer() {
+        return tracer;
+    }
+
+    /**
+     * Cache of the partial results of distributed queries, shared by all the brokers created by this factory.
+     */
+    @Override
+    public SliceQueryCache getSliceQueryCache() {
+        return queryCache;
+    }
+
+    /**
+     * Slices where instances were found or flushed, shared by all the brokers created by this factory.
+     */
+    @Override
+    public SliceLocationCache getSliceLocationCache() {
+        return locations;
+    }
+
+    /**
+     * Distributed plans of the queries executed by all the brokers created by this factory.
+     */
+    @Override
+    public QueryPlanCache getQueryPlanCache() {
+        return plans;
+    }
+
+    @Override
+    public void postCreationCallback() {
+        super.postCreationCallback();
+
+        final DataCacheManager cacheManager = getConfiguration().getDataCacheManagerInstance();
+        if (cacheManager != null && cacheManager.getSystemDataCache() instanceof FederatedDataCache) {
+            ((FederatedDataCache) cacheManager.getSystemDataCache()).
+                    setAzureConfiguration((AzureConfiguration) getConfiguration());
+        }
+
+        refresher.start();
+        metrics.start();
+    }
+
+    @Override
+    public void close() {
+        refresher.stop();
+        metrics.stop();
+        trace.close();
+        tracer.close();
+        queryCache.clear();
+        locations.clear();
+        plans.clear();
+        super.close();
     }
 
     @Override
@@ -58,7 +193,7 @@ public class AzureDistributedBrokerFactory extends DistributedJDBCBrokerFactory
 
     @Override
     protected DistributedJDBCStoreManager newStoreManager() {
-        return new DistributedJDBCStoreManager(getConfiguration());
+        return new DistributedJDBCStoreManager(getConfiguration(), this);
     }
 
     public static AzureDistributedBrokerFactory newInstance(ConfigurationProvider cp) {
@@ -74,8 +209,22 @@ public class AzureDistributedBrokerFactory extends DistributedJDBCBrokerFactory
 
     @Override
     protected void synchronizeMappings(ClassLoader loader) {
-        final List<Slice> slices = getConfiguration().getSlices(Slice.Status.ACTIVE);
+        synchronizeMappings(loader, getConfiguration().getSlices(Slice.Status.ACTIVE));
+    }
+
+    /**
+     * Invoked for slices added at runtime (i.e. new federation members).
+     */
+    @Override
+    protected void synchronizeMappings(ClassLoader loader, JDBCConfiguration conf) {
+        for (Slice slice : getConfiguration().getSlices(Slice.Status.ACTIVE)) {
+            if (slice.getConfiguration() == conf) {
+                synchronizeMappings(loader, Collections.singletonList(slice));
+            }
+        }
+    }
 
+    private void synchronizeMappings(final ClassLoader loader, final List<Slice> slices) {
         String action = ((JDBCConfiguration) getConfiguration()).getSynchronizeMappings();
         if (StringUtils.isEmpty(action)) {
             return;
@@ -105,7 +254,8 @@ public class AzureDistributedBrokerFactory extends DistributedJDBCBrokerFactory
         final JDBCConfiguration conf =
                 (JDBCConfiguration) Proxy.newProxyInstance(AzureSliceConfiguration.class.getClassLoader(),
                 new Class<?>[]{AzureSliceConfiguration.class},
-                new JDBCConfInterceptor(new AzureSliceConfigurationImpl(slice, (AzureConfiguration) getConfiguration())));
+                new JDBCConfInterceptor(
+                new AzureSliceConfigurationImpl(slice, (AzureConfiguration) getConfiguration(), registry)));
 
         final MappingTool tool = new AzureMappingTool(conf, action, false);
         Configurations.configureInstance(tool, conf, props, "SynchronizeMappings");
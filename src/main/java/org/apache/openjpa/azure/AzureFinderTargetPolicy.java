@@ -19,10 +19,12 @@
 package org.apache.openjpa.azure;
 
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 import org.apache.openjpa.azure.jdbc.conf.AzureConfiguration;
+import org.apache.openjpa.azure.trace.QueryTrace;
 import org.apache.openjpa.azure.util.AzureUtils;
 import org.apache.openjpa.datacache.DataCacheStoreManager;
 import org.apache.openjpa.jdbc.conf.JDBCConfiguration;
@@ -30,14 +32,13 @@ import org.apache.openjpa.jdbc.schema.Table;
 import org.apache.openjpa.kernel.Broker;
 import org.apache.openjpa.kernel.StoreManager;
 import org.apache.openjpa.lib.log.Log;
-import org.apache.openjpa.slice.FinderTargetPolicy;
 import org.apache.openjpa.slice.jdbc.DistributedJDBCStoreManager;
 
 /**
  *
  * @author fabio
  */
-public class AzureFinderTargetPolicy implements FinderTargetPolicy {
+public class AzureFinderTargetPolicy implements OrdinalFinderTargetPolicy {
 
     @Override
     public String[] getTargets(
@@ -46,16 +47,42 @@ public class AzureFinderTargetPolicy implements FinderTargetPolicy {
             final List<String> slices,
             final Object context) {
 
-        final Broker broker = (Broker) context;
-        final AzureConfiguration conf = (AzureConfiguration) broker.getConfiguration();
+        final List<String> result = findTargets(cls, oid, slices, (Broker) context);
+        return result.toArray(new String[result.size()]);
+    }
+
+    @Override
+    public BitSet getTargetOrdinals(
+            final Class<?> cls,
+            final Object oid,
+            final DistributedJDBCStoreManager store,
+            final Object context) {
+
+        final BitSet result = new BitSet();
+        for (String slice : findTargets(cls, oid, store.getConfiguration().getActiveSliceNames(), (Broker) context)) {
+            final int ordinal = store.getSliceOrdinal(slice);
+            if (ordinal >= 0) {
+                result.set(ordinal);
+            }
+        }
+        return result;
+    }
+
+    private List<String> findTargets(
+            final Class<?> cls,
+            final Object oid,
+            final List<String> slices,
+            final Broker broker) {
 
-        Log log = conf.getLog(JDBCConfiguration.LOG_DIAG);
+        final AzureConfiguration conf = (AzureConfiguration) broker.getConfiguration();
 
-        log.info("Evaluate target policy for '" + cls.getSimpleName() + ":" + oid + "'");
+        final Log log = conf.getLog(JDBCConfiguration.LOG_DIAG);
 
         final Table table = AzureUtils.getTable(conf, cls);
 
-        log.info("Search location for table " + table);
+        if (log.isTraceEnabled()) {
+            log.trace("Evaluate target policy for '" + cls.getSimpleName() + ":" + oid + "' on table " + table);
+        }
 
         final Set<Federation> federations = new HashSet<Federation>(conf.getFederations(table));
 
@@ -77,8 +104,15 @@ public class AzureFinderTargetPolicy implements FinderTargetPolicy {
 
         }
 
-        log.info("Retrieved targets " + result);
+        if (log.isTraceEnabled()) {
+            log.trace("Retrieved targets " + result);
+        }
 
-        return result.toArray(new String[result.size()]);
+        final QueryTrace trace = AzureUtils.getQueryTrace(broker);
+        if (trace.sample()) {
+            trace.record(QueryTrace.Kind.FIND_TARGETS, null, oid, result);
+        }
+
+        return result;
     }
 }
@@ -27,6 +27,8 @@ import java.util.Set;
 import org.apache.commons.lang.StringUtils;
 import org.apache.openjpa.azure.jdbc.conf.AzureConfiguration;
 import org.apache.openjpa.azure.jdbc.meta.AzureMappingTool;
+import org.apache.openjpa.azure.trace.QueryTrace;
+import org.apache.openjpa.azure.util.AzureUtils;
 import org.apache.openjpa.azure.util.NativeQueryInfo;
 import org.apache.openjpa.jdbc.conf.JDBCConfiguration;
 import org.apache.openjpa.jdbc.identifier.DBIdentifier;
@@ -59,9 +61,7 @@ public class AzureQueryTargetPolicy implements QueryTargetPolicy {
         final Broker broker = (Broker) context;
         final AzureConfiguration conf = (AzureConfiguration) broker.getConfiguration();
 
-        Log log = conf.getLog(JDBCConfiguration.LOG_DIAG);
-
-        log.info("Evaluate query target policy for '" + query + "'");
+        final Log log = conf.getLog(JDBCConfiguration.LOG_DIAG);
 
         init(conf);
 
@@ -69,7 +69,9 @@ public class AzureQueryTargetPolicy implements QueryTargetPolicy {
 
         final List<String> tableNames = queryInfo.getTableNames();
 
-        log.info("Search location for tables " + tableNames);
+        if (log.isTraceEnabled()) {
+            log.trace("Evaluate query target policy for '" + query + "' on tables " + tableNames);
+        }
 
         final List<String> result = new ArrayList<String>();
 
@@ -90,8 +92,15 @@ public class AzureQueryTargetPolicy implements QueryTargetPolicy {
             }
         }
 
-        log.info("Retrieved targets " + result);
-        
+        if (log.isTraceEnabled()) {
+            log.trace("Retrieved targets " + result);
+        }
+
+        final QueryTrace trace = AzureUtils.getQueryTrace(broker);
+        if (trace.sample()) {
+            trace.record(QueryTrace.Kind.QUERY_TARGETS, null, query, result);
+        }
+
         return result.toArray(new String[result.size()]);
     }
 
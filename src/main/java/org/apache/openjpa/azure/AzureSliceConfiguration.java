@@ -21,6 +21,7 @@ package org.apache.openjpa.azure;
 import java.util.Collection;
 import java.util.List;
 import org.apache.openjpa.azure.jdbc.conf.AzureConfiguration;
+import org.apache.openjpa.azure.routing.FederationRegistry;
 import org.apache.openjpa.jdbc.conf.JDBCConfiguration;
 import org.apache.openjpa.jdbc.schema.Table;
 
@@ -37,4 +38,6 @@ public interface AzureSliceConfiguration extends JDBCConfiguration {
     JDBCConfiguration getSliceConf();
     
     AzureConfiguration getGlobalConf();
+
+    FederationRegistry getFederationRegistry();
 }
@@ -21,6 +21,7 @@ package org.apache.openjpa.azure;
 import java.util.Collection;
 import java.util.List;
 import org.apache.openjpa.azure.jdbc.conf.AzureConfiguration;
+import org.apache.openjpa.azure.routing.FederationRegistry;
 import org.apache.openjpa.jdbc.conf.JDBCConfiguration;
 import org.apache.openjpa.jdbc.conf.JDBCConfigurationImpl;
 import org.apache.openjpa.jdbc.schema.Table;
@@ -32,9 +33,13 @@ public class AzureSliceConfigurationImpl extends JDBCConfigurationImpl implement
 
     private final Slice slice;
 
-    public AzureSliceConfigurationImpl(final Slice slice, final AzureConfiguration conf) {
+    private final FederationRegistry registry;
+
+    public AzureSliceConfigurationImpl(
+            final Slice slice, final AzureConfiguration conf, final FederationRegistry registry) {
         this.globalConf = conf;
         this.slice = slice;
+        this.registry = registry;
     }
 
     @Override
@@ -66,4 +71,9 @@ public class AzureSliceConfigurationImpl extends JDBCConfigurationImpl implement
     public AzureConfiguration getGlobalConf() {
         return globalConf;
     }
+
+    @Override
+    public FederationRegistry getFederationRegistry() {
+        return registry;
+    }
 }
@@ -34,6 +34,8 @@ public class Federation {
 
     private RangeType rangeMappingType;
 
+    private int cacheSize = -1;
+
     private final Map<String, String> tables;
 
     public Federation() {
@@ -69,6 +71,19 @@ public class Federation {
         this.rangeMappingType = rangeMappingType;
     }
 
+    /**
+     * Get the maximum number of instances held in the data cache partition of each member of this federation.
+     *
+     * @return cache size; -1 to use the size configured for the data cache.
+     */
+    public int getCacheSize() {
+        return cacheSize;
+    }
+
+    public void setCacheSize(final int cacheSize) {
+        this.cacheSize = cacheSize;
+    }
+
     public Set<String> getTables() {
         return tables.keySet();
     }
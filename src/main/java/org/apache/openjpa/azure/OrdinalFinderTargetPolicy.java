@@ -0,0 +1,41 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.openjpa.azure;
+
+import java.util.BitSet;
+import org.apache.openjpa.slice.FinderTargetPolicy;
+import org.apache.openjpa.slice.jdbc.DistributedJDBCStoreManager;
+
+/**
+ * Finder target policy returning target slices as ordinals, e.g. positions in the slice list of the given store
+ * manager, so that callers do not need to resolve slice names for each lookup.
+ */
+public interface OrdinalFinderTargetPolicy extends FinderTargetPolicy {
+
+    /**
+     * Get the ordinals of the slices where the given instance could be found.
+     *
+     * @param cls the class of the instance to be found.
+     * @param oid the identifier of the instance to be found.
+     * @param store store manager owning the slices.
+     * @param context generic persistence context (i.e. broker).
+     * @return ordinals of target slices; empty if no slice is targeted.
+     */
+    BitSet getTargetOrdinals(Class<?> cls, Object oid, DistributedJDBCStoreManager store, Object context);
+}
@@ -0,0 +1,247 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.openjpa.azure.datacache;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import org.apache.openjpa.azure.Federation;
+import org.apache.openjpa.azure.jdbc.conf.AzureConfiguration;
+import org.apache.openjpa.datacache.ConcurrentDataCache;
+import org.apache.openjpa.datacache.DataCache;
+import org.apache.openjpa.datacache.DataCacheManager;
+import org.apache.openjpa.datacache.DataCachePCData;
+import org.apache.openjpa.event.RemoteCommitEvent;
+import org.apache.openjpa.lib.conf.Configuration;
+
+/**
+ * Data cache partitioned by slice: each instance is cached in the partition named after the slice (federation member
+ * or ROOT) it has been loaded from, as selected by {@link SliceCacheDistributionPolicy}.
+ *
+ * Partitions are created on first use, each with its own cache map, eviction and statistics; the size of a partition
+ * is the one configured for the owning federation via <code>openjpa.azure.&lt;federation&gt;.CacheSize</code>, or the
+ * <code>CacheSize</code> of this cache otherwise. Lookups, evictions and pins issued onto this cache (i.e. through
+ * <code>StoreCache</code>) are extended to all partitions.
+ * <pre>
+ * openjpa.DataCache=org.apache.openjpa.azure.datacache.FederatedDataCache(CacheSize=1000, EnableStatistics=true)
+ * openjpa.CacheDistributionPolicy=org.apache.openjpa.azure.datacache.SliceCacheDistributionPolicy
+ * </pre>
+ */
+public class FederatedDataCache extends ConcurrentDataCache {
+
+    private static final long serialVersionUID = -6129774206531877433L;
+
+    private final ConcurrentMap<String, DataCache> partitions = new ConcurrentHashMap<String, DataCache>();
+
+    private DataCacheManager manager;
+
+    private boolean statistics;
+
+    private AzureConfiguration azureConf;
+
+    @Override
+    public void setConfiguration(final Configuration conf) {
+        super.setConfiguration(conf);
+        if (conf instanceof AzureConfiguration) {
+            this.azureConf = (AzureConfiguration) conf;
+        }
+    }
+
+    /**
+     * Set the configuration providing federation cache sizes, when this cache is configured by a slice configuration.
+     *
+     * @param azureConf Azure configuration.
+     */
+    public void setAzureConfiguration(final AzureConfiguration azureConf) {
+        this.azureConf = azureConf;
+    }
+
+    @Override
+    public void setEnableStatistics(final boolean enable) {
+        super.setEnableStatistics(enable);
+        this.statistics = enable;
+    }
+
+    @Override
+    public void initialize(final DataCacheManager manager) {
+        super.initialize(manager);
+        this.manager = manager;
+    }
+
+    /**
+     * Get the partition with the given name, creating it on first request.
+     *
+     * @param name partition (slice) name.
+     * @param create ignored: partitions are always created on first request.
+     * @return partition; null if the given name is null.
+     */
+    @Override
+    public DataCache getPartition(final String name, final boolean create) {
+        if (name == null) {
+            return null;
+        }
+
+        DataCache partition = partitions.get(name);
+        if (partition == null) {
+            synchronized (partitions) {
+                partition = partitions.get(name);
+                if (partition == null) {
+                    partition = newPartition(name);
+                    partitions.put(name, partition);
+                }
+            }
+        }
+        return partition;
+    }
+
+    @Override
+    public Set<String> getPartitionNames() {
+        return Collections.unmodifiableSet(partitions.keySet());
+    }
+
+    @Override
+    public boolean isPartitioned() {
+        return true;
+    }
+
+    /**
+     * Find the partition holding the given instance.
+     *
+     * @param oid object id.
+     * @return name of the partition holding the given instance; null if not cached.
+     */
+    public String findPartition(final Object oid) {
+        for (DataCache partition : partitions.values()) {
+            if (partition.contains(oid)) {
+                return partition.getName();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Get the maximum number of instances held by the partition with the given name.
+     *
+     * @param name partition (slice) name.
+     * @return cache size configured for the federation owning the given slice, if any; cache size of this cache
+     * otherwise.
+     */
+    public int getPartitionSize(final String name) {
+        if (azureConf != null) {
+            final Federation federation = azureConf.getFederation(name);
+            if (federation != null && federation.getCacheSize() >= 0) {
+                return federation.getCacheSize();
+            }
+        }
+        return getCacheSize();
+    }
+
+    protected DataCache newPartition(final String name) {
+        final ConcurrentDataCache partition = new ConcurrentDataCache();
+        partition.setConfiguration(conf);
+        partition.startConfiguration();
+        partition.setName(name);
+        partition.setCacheSize(getPartitionSize(name));
+        partition.setSoftReferenceSize(getSoftReferenceSize());
+        partition.setLru(getLru());
+        partition.setEvictionSchedule(getEvictionSchedule());
+        partition.setEnableStatistics(statistics);
+        partition.endConfiguration();
+
+        if (manager != null) {
+            partition.initialize(manager);
+        }
+        return partition;
+    }
+
+    /**
+     * Partitions listen to remote commits on their own: events are not extended to partitions from here.
+     */
+    @Override
+    public void afterCommit(final RemoteCommitEvent event) {
+        // nothing to do
+    }
+
+    @Override
+    protected DataCachePCData getInternal(final Object key) {
+        DataCachePCData data = super.getInternal(key);
+        for (DataCache partition : partitions.values()) {
+            if (data != null) {
+                break;
+            }
+            data = partition.get(key);
+        }
+        return data;
+    }
+
+    @Override
+    protected DataCachePCData removeInternal(final Object key) {
+        DataCachePCData removed = super.removeInternal(key);
+        for (DataCache partition : partitions.values()) {
+            final DataCachePCData data = partition.remove(key);
+            if (removed == null) {
+                removed = data;
+            }
+        }
+        return removed;
+    }
+
+    @Override
+    protected void removeAllInternal(final Class<?> cls, final boolean subs) {
+        super.removeAllInternal(cls, subs);
+        for (DataCache partition : partitions.values()) {
+            partition.removeAll(cls, subs);
+        }
+    }
+
+    @Override
+    protected void clearInternal() {
+        super.clearInternal();
+        for (DataCache partition : partitions.values()) {
+            partition.clear();
+        }
+    }
+
+    @Override
+    protected boolean pinInternal(final Object key) {
+        boolean pinned = super.pinInternal(key);
+        for (DataCache partition : partitions.values()) {
+            pinned |= partition.pin(key);
+        }
+        return pinned;
+    }
+
+    @Override
+    protected boolean unpinInternal(final Object key) {
+        boolean unpinned = super.unpinInternal(key);
+        for (DataCache partition : partitions.values()) {
+            unpinned |= partition.unpin(key);
+        }
+        return unpinned;
+    }
+
+    @Override
+    protected void close(final boolean clear) {
+        super.close(clear);
+        for (DataCache partition : partitions.values()) {
+            partition.close();
+        }
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.openjpa.azure.datacache;
+
+import org.apache.openjpa.datacache.CacheDistributionPolicy;
+import org.apache.openjpa.datacache.DataCache;
+import org.apache.openjpa.kernel.OpenJPAStateManager;
+import org.apache.openjpa.lib.conf.Configuration;
+import org.apache.openjpa.slice.SliceImplHelper;
+
+/**
+ * Selects the {@link FederatedDataCache} partition named after the slice an instance is assigned to.
+ *
+ * Instances not assigned yet (i.e. looked up by id) are searched among existing partitions, with no need to evaluate
+ * target policies; if not found, the default cache is selected and the instance is cached in the partition of its
+ * slice once loaded from the store. Slice assignment is cached along with the instance, hence restored on cache hits:
+ * operations following a cache hit do not evaluate target policies either.
+ */
+public class SliceCacheDistributionPolicy implements CacheDistributionPolicy {
+
+    @Override
+    public String selectCache(final OpenJPAStateManager sm, final Object context) {
+        if (SliceImplHelper.isSliceAssigned(sm)) {
+            final String[] slices = SliceImplHelper.getSliceInfo(sm).getSlices();
+            return slices.length == 0 ? null : slices[0];
+        }
+
+        final Object oid = sm.getObjectId();
+        if (oid == null || sm.getContext() == null) {
+            return null;
+        }
+
+        final DataCache cache = sm.getContext().getConfiguration().
+                getDataCacheManagerInstance().getSystemDataCache();
+        if (!(cache instanceof FederatedDataCache)) {
+            return null;
+        }
+
+        final String slice = ((FederatedDataCache) cache).findPartition(oid);
+        return slice == null ? cache.getName() : slice;
+    }
+
+    @Override
+    public void setConfiguration(final Configuration conf) {
+        // nothing to configure
+    }
+
+    @Override
+    public void startConfiguration() {
+        // nothing to configure
+    }
+
+    @Override
+    public void endConfiguration() {
+        // nothing to configure
+    }
+}
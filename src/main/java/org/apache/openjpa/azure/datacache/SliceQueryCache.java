@@ -0,0 +1,433 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.openjpa.azure.datacache;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.openjpa.azure.jdbc.conf.AzureConfiguration;
+import org.apache.openjpa.enhance.PersistenceCapable;
+import org.apache.openjpa.kernel.FetchConfiguration;
+import org.apache.openjpa.kernel.StoreContext;
+import org.apache.openjpa.util.CacheMap;
+
+/**
+ * Cache of the partial results returned by single slices to distributed queries.
+ *
+ * Entries are keyed by slice, routing snapshot version, query and parameters; each entry records the generation that
+ * the types accessed by the query had on its slice when the query was sent. Commits increase the generation of the
+ * types written onto each slice, so that entries of other slices stay valid: a distributed query is sent again only to
+ * the slices whose partial results are missing or stale.
+ *
+ * Instances are cached as object ids and found again through the broker (hence through the data cache, if any); other
+ * values are cached as they are. Only changes committed through the brokers sharing this cache are seen.
+ */
+public class SliceQueryCache {
+
+    /**
+     * Cache holding nothing.
+     */
+    public static final SliceQueryCache DISABLED = new SliceQueryCache(0);
+
+    /**
+     * Key of a partial result.
+     */
+    public static final class Key {
+
+        private final String slice;
+
+        private final long routingVersion;
+
+        private final String query;
+
+        private final Class<?> candidate;
+
+        private final boolean subclasses;
+
+        private final List<Object> params;
+
+        private final long start;
+
+        private final long end;
+
+        private final int hash;
+
+        public Key(final String slice, final long routingVersion, final String query, final Class<?> candidate,
+                final boolean subclasses, final Object[] params, final long start, final long end) {
+
+            this.slice = slice;
+            this.routingVersion = routingVersion;
+            this.query = query;
+            this.candidate = candidate;
+            this.subclasses = subclasses;
+            this.params = params == null ? Collections.emptyList() : Arrays.asList(params.clone());
+            this.start = start;
+            this.end = end;
+
+            int result = slice.hashCode();
+            result = 31 * result + (int) (routingVersion ^ (routingVersion >>> 32));
+            result = 31 * result + query.hashCode();
+            result = 31 * result + this.params.hashCode();
+            this.hash = result;
+        }
+
+        public String getSlice() {
+            return slice;
+        }
+
+        @Override
+        public boolean equals(final Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            final Key other = (Key) obj;
+            return hash == other.hash
+                    && routingVersion == other.routingVersion
+                    && subclasses == other.subclasses
+                    && start == other.start
+                    && end == other.end
+                    && slice.equals(other.slice)
+                    && query.equals(other.query)
+                    && (candidate == null ? other.candidate == null : candidate.equals(other.candidate))
+                    && params.equals(other.params);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public String toString() {
+            return slice + "@" + routingVersion + " " + query + " " + params;
+        }
+    }
+
+    private static final class Entry {
+
+        private final Class<?>[] types;
+
+        private final long[] generations;
+
+        private final List<Object> rows;
+
+        Entry(final Class<?>[] types, final long[] generations, final List<Object> rows) {
+            this.types = types;
+            this.generations = generations;
+            this.rows = rows;
+        }
+    }
+
+    /**
+     * Reference to a cached instance.
+     */
+    private static final class InstanceRef {
+
+        private final Object oid;
+
+        InstanceRef(final Object oid) {
+            this.oid = oid;
+        }
+    }
+
+    /**
+     * Marker of values that cannot be cached.
+     */
+    public static final Object UNCACHEABLE = new Object();
+
+    private final CacheMap entries;
+
+    private final ConcurrentMap<String, AtomicLong> generations = new ConcurrentHashMap<String, AtomicLong>();
+
+    private final AtomicLong hits = new AtomicLong();
+
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * Constructor.
+     *
+     * @param size maximum number of partial results held, least recently used ones are evicted first; 0 to disable.
+     */
+    public SliceQueryCache(final int size) {
+        if (size > 0) {
+            entries = new CacheMap(true, size);
+            entries.setSoftReferenceSize(0);
+        } else {
+            entries = null;
+        }
+    }
+
+    public static SliceQueryCache newInstance(final AzureConfiguration conf) {
+        return conf.getSliceQueryCacheSize() > 0 ? new SliceQueryCache(conf.getSliceQueryCacheSize()) : DISABLED;
+    }
+
+    public boolean isEnabled() {
+        return entries != null;
+    }
+
+    /**
+     * Get the current generations of the given types on the given slice; to be taken before sending the query whose
+     * result is going to be cached.
+     *
+     * @param slice slice name.
+     * @param types types accessed by the query.
+     * @return generations, in the order of the given types.
+     */
+    public long[] getGenerations(final String slice, final Class<?>[] types) {
+        final long[] result = new long[types.length];
+        for (int i = 0; i < types.length; i++) {
+            result[i] = generation(slice, types[i]).get();
+        }
+        return result;
+    }
+
+    /**
+     * Get a cached partial result, if still valid.
+     *
+     * @param key key.
+     * @return cached values, as returned by {@link #toCached(Object, StoreContext)}; null if not cached or stale.
+     */
+    public List<Object> get(final Key key) {
+        if (entries == null) {
+            return null;
+        }
+
+        final Entry entry = (Entry) entries.get(key);
+        if (entry == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+
+        for (int i = 0; i < entry.types.length; i++) {
+            if (generation(key.getSlice(), entry.types[i]).get() != entry.generations[i]) {
+                entries.remove(key);
+                misses.incrementAndGet();
+                return null;
+            }
+        }
+
+        hits.incrementAndGet();
+        return entry.rows;
+    }
+
+    /**
+     * Cache a partial result.
+     *
+     * @param key key.
+     * @param types types accessed by the query.
+     * @param generations generations of the given types, as taken before sending the query.
+     * @param rows values, as returned by {@link #toCached(Object, StoreContext)}.
+     */
+    public void put(final Key key, final Class<?>[] types, final long[] generations, final List<Object> rows) {
+        if (entries != null) {
+            entries.put(key, new Entry(types, generations, Collections.unmodifiableList(rows)));
+        }
+    }
+
+    /**
+     * Invalidate the partial results of the given slice accessing any of the given types.
+     *
+     * @param slice slice name.
+     * @param types types written onto the given slice, including their persistent superclasses.
+     */
+    public void invalidate(final String slice, final Collection<Class<?>> types) {
+        if (entries != null) {
+            for (Class<?> type : types) {
+                generation(slice, type).incrementAndGet();
+            }
+        }
+    }
+
+    public void clear() {
+        if (entries != null) {
+            entries.clear();
+        }
+    }
+
+    public int size() {
+        return entries == null ? 0 : entries.size();
+    }
+
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    private AtomicLong generation(final String slice, final Class<?> type) {
+        final String key = slice + ':' + type.getName();
+
+        AtomicLong generation = generations.get(key);
+        if (generation == null) {
+            final AtomicLong newGeneration = new AtomicLong();
+            generation = generations.putIfAbsent(key, newGeneration);
+            if (generation == null) {
+                generation = newGeneration;
+            }
+        }
+        return generation;
+    }
+
+    /**
+     * Check whether the given value can be part of a key.
+     *
+     * @param value parameter value.
+     * @return TRUE if immutable.
+     */
+    public static boolean isCacheableParameter(final Object value) {
+        return value == null
+                || value instanceof String
+                || value instanceof Integer
+                || value instanceof Long
+                || value instanceof Short
+                || value instanceof Byte
+                || value instanceof Double
+                || value instanceof Float
+                || value instanceof BigDecimal
+                || value instanceof BigInteger
+                || value instanceof Boolean
+                || value instanceof Character
+                || value instanceof Enum;
+    }
+
+    /**
+     * Convert a result object into a cacheable value: persistent instances are replaced by references to their object
+     * ids, projections are converted element by element.
+     *
+     * @param value result object.
+     * @param ctx store context.
+     * @return cacheable value; {@link #UNCACHEABLE} if the given value cannot be cached.
+     */
+    public static Object toCached(final Object value, final StoreContext ctx) {
+        if (value instanceof Object[]) {
+            final Object[] values = (Object[]) value;
+            final Object[] result = new Object[values.length];
+            for (int i = 0; i < values.length; i++) {
+                result[i] = toCached(values[i], ctx);
+                if (result[i] == UNCACHEABLE) {
+                    return UNCACHEABLE;
+                }
+            }
+            return result;
+        }
+
+        if (value instanceof PersistenceCapable) {
+            final Object oid = ctx.isNew(value) ? null : ctx.getObjectId(value);
+            return oid == null ? UNCACHEABLE : new InstanceRef(oid);
+        }
+
+        if (value instanceof Date) {
+            return ((Date) value).clone();
+        }
+
+        return isCacheableParameter(value) ? value : UNCACHEABLE;
+    }
+
+    /**
+     * Convert cached values back into result objects, finding cached instances through the given context.
+     *
+     * @param rows cached values.
+     * @param ctx store context.
+     * @param fetch fetch configuration of the query.
+     * @return result objects; null if any of the cached instances was not found.
+     */
+    public static List<Object> materialize(final List<Object> rows, final StoreContext ctx,
+            final FetchConfiguration fetch) {
+
+        final List<Object> oids = new ArrayList<Object>();
+        for (Object row : rows) {
+            collect(row, oids);
+        }
+
+        final Map<InstanceRef, Object> found = new IdentityHashMap<InstanceRef, Object>();
+        if (!oids.isEmpty()) {
+            final Object[] instances = ctx.findAll(oids, fetch, null, null, StoreContext.OID_NODELETED);
+            int index = 0;
+            for (Object row : rows) {
+                index = bind(row, instances, index, found);
+            }
+            if (found.values().contains(null)) {
+                return null;
+            }
+        }
+
+        final List<Object> result = new ArrayList<Object>(rows.size());
+        for (Object row : rows) {
+            result.add(toResult(row, found));
+        }
+        return result;
+    }
+
+    private static void collect(final Object value, final List<Object> oids) {
+        if (value instanceof Object[]) {
+            for (Object element : (Object[]) value) {
+                collect(element, oids);
+            }
+        } else if (value instanceof InstanceRef) {
+            oids.add(((InstanceRef) value).oid);
+        }
+    }
+
+    private static int bind(final Object value, final Object[] instances, final int index,
+            final Map<InstanceRef, Object> found) {
+
+        int next = index;
+        if (value instanceof Object[]) {
+            for (Object element : (Object[]) value) {
+                next = bind(element, instances, next, found);
+            }
+        } else if (value instanceof InstanceRef) {
+            found.put((InstanceRef) value, instances[next++]);
+        }
+        return next;
+    }
+
+    private static Object toResult(final Object value, final Map<InstanceRef, Object> found) {
+        if (value instanceof Object[]) {
+            final Object[] values = (Object[]) value;
+            final Object[] result = new Object[values.length];
+            for (int i = 0; i < values.length; i++) {
+                result[i] = toResult(values[i], found);
+            }
+            return result;
+        }
+        if (value instanceof InstanceRef) {
+            return found.get((InstanceRef) value);
+        }
+        if (value instanceof Date) {
+            return ((Date) value).clone();
+        }
+        return value;
+    }
+}
@@ -45,7 +45,8 @@ public class AzureNativeAggregatorROP extends AzureUniqueResultObjectProvider {
         for (ResultObjectProvider rop : _rops) {
             if (rop.next()) {
 
-                Integer row = (Integer) rop.getResultObject();
+                // Integer from SQL Server, Long from drivers mapping COUNT(*) to BIGINT
+                Number row = (Number) rop.getResultObject();
 
                 single = count(single, row);
             }
@@ -0,0 +1,326 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.openjpa.azure.jdbc;
+
+import java.util.Arrays;
+import org.apache.openjpa.kernel.StoreQuery;
+import org.apache.openjpa.lib.rop.ResultObjectProvider;
+
+/**
+ * Merges the ordered partial results of several slices into a single ordered result.
+ *
+ * Unlike {@link org.apache.openjpa.kernel.OrderingMergedResultObjectProvider}, which compares the current row of
+ * every slice for each returned row, slices are arranged into a loser tree: each row costs log2(slices) comparisons.
+ * Sort keys are extracted once per row into per-slice buffers, with integral values kept as longs, and compared
+ * column by column with the direction resolved at construction time.
+ *
+ * Rows with equal sort keys are returned in slice order, as the default merge does.
+ */
+public class AzureOrderingMergedResultObjectProvider implements ResultObjectProvider {
+
+    private final ResultObjectProvider[] _rops;
+
+    private final StoreQuery.Executor[] _execs;
+
+    private final StoreQuery _query;
+
+    private final Object[] _params;
+
+    /**
+     * 1 for ascending, -1 for descending orderings.
+     */
+    private final int[] _signs;
+
+    /**
+     * Current row of each slice.
+     */
+    private final Object[] _values;
+
+    /**
+     * Sort keys of the current row of each slice.
+     */
+    private final Object[][] _keys;
+
+    /**
+     * Integral sort keys of the current row of each slice.
+     */
+    private final long[][] _integrals;
+
+    private final boolean[][] _integral;
+
+    /**
+     * Whether each slice has no more rows.
+     */
+    private final boolean[] _done;
+
+    /**
+     * Loser tree: _tree[0] holds the winner (slice with the least current row), the other nodes the loser of their
+     * match; leaves are the slices themselves, at positions from slices count on.
+     */
+    private final int[] _tree;
+
+    private boolean _opened;
+
+    private boolean _started;
+
+    public AzureOrderingMergedResultObjectProvider(final ResultObjectProvider[] rops, final boolean[] asc,
+            final StoreQuery.Executor[] execs, final StoreQuery query, final Object[] params) {
+
+        _rops = rops;
+        _execs = execs;
+        _query = query;
+        _params = params;
+
+        _signs = new int[asc.length];
+        for (int i = 0; i < asc.length; i++) {
+            _signs[i] = asc[i] ? 1 : -1;
+        }
+
+        _values = new Object[rops.length];
+        _keys = new Object[rops.length][asc.length];
+        _integrals = new long[rops.length][asc.length];
+        _integral = new boolean[rops.length][asc.length];
+        _done = new boolean[rops.length];
+        _tree = new int[Math.max(rops.length, 1)];
+    }
+
+    @Override
+    public boolean supportsRandomAccess() {
+        return false;
+    }
+
+    @Override
+    public void open()
+            throws Exception {
+        if (_opened) {
+            return;
+        }
+        for (ResultObjectProvider rop : _rops) {
+            rop.open();
+        }
+        _opened = true;
+    }
+
+    @Override
+    public boolean next()
+            throws Exception {
+        if (!_opened) {
+            open();
+        }
+        if (_rops.length == 0) {
+            return false;
+        }
+
+        if (_started) {
+            if (_done[_tree[0]]) {
+                return false;
+            }
+            advance(_tree[0]);
+            replay(_tree[0]);
+        } else {
+            for (int i = 0; i < _rops.length; i++) {
+                advance(i);
+            }
+            _tree[0] = build(1);
+            _started = true;
+        }
+
+        return !_done[_tree[0]];
+    }
+
+    @Override
+    public Object getResultObject()
+            throws Exception {
+        return _started && _rops.length > 0 && !_done[_tree[0]] ? _values[_tree[0]] : null;
+    }
+
+    @Override
+    public boolean absolute(final int pos)
+            throws Exception {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public int size()
+            throws Exception {
+        if (!_opened) {
+            open();
+        }
+        long size = 0;
+        for (ResultObjectProvider rop : _rops) {
+            final int partial = rop.size();
+            if (partial == Integer.MAX_VALUE) {
+                return Integer.MAX_VALUE;
+            }
+            size += partial;
+        }
+        return size > Integer.MAX_VALUE ? Integer.MAX_VALUE : (int) size;
+    }
+
+    @Override
+    public void reset()
+            throws Exception {
+        for (ResultObjectProvider rop : _rops) {
+            rop.reset();
+        }
+        clear();
+    }
+
+    @Override
+    public void close()
+            throws Exception {
+        Exception failure = null;
+        for (ResultObjectProvider rop : _rops) {
+            try {
+                rop.close();
+            } catch (Exception e) {
+                if (failure == null) {
+                    failure = e;
+                }
+            }
+        }
+        clear();
+        _opened = false;
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    @Override
+    public void handleCheckedException(final Exception e) {
+        if (_rops.length == 0) {
+            throw new RuntimeException(e);
+        }
+        _rops[0].handleCheckedException(e);
+    }
+
+    private void clear() {
+        _started = false;
+        Arrays.fill(_values, null);
+        Arrays.fill(_done, false);
+        for (Object[] keys : _keys) {
+            Arrays.fill(keys, null);
+        }
+    }
+
+    /**
+     * Moves the given slice to its next row, extracting its sort keys.
+     */
+    private void advance(final int slice)
+            throws Exception {
+        if (!_rops[slice].next()) {
+            _done[slice] = true;
+            _values[slice] = null;
+            Arrays.fill(_keys[slice], null);
+            return;
+        }
+
+        final Object value = _rops[slice].getResultObject();
+        _values[slice] = value;
+
+        final StoreQuery.Executor exec = _execs.length == 1 ? _execs[0] : _execs[slice];
+        for (int i = 0; i < _signs.length; i++) {
+            final Object key = exec.getOrderingValue(_query, _params, value, i);
+            _keys[slice][i] = key;
+            _integral[slice][i] = key instanceof Long || key instanceof Integer
+                    || key instanceof Short || key instanceof Byte;
+            if (_integral[slice][i]) {
+                _integrals[slice][i] = ((Number) key).longValue();
+            }
+        }
+    }
+
+    /**
+     * Plays the matches of the subtree rooted at the given node, storing losers.
+     *
+     * @return winner of the subtree.
+     */
+    private int build(final int node) {
+        if (node >= _rops.length) {
+            return node - _rops.length;
+        }
+
+        final int left = build(2 * node);
+        final int right = build(2 * node + 1);
+        if (less(left, right)) {
+            _tree[node] = right;
+            return left;
+        }
+        _tree[node] = left;
+        return right;
+    }
+
+    /**
+     * Plays again the matches on the path from the given slice, just advanced, to the root.
+     */
+    private void replay(final int slice) {
+        int winner = slice;
+        for (int node = (slice + _rops.length) >> 1; node > 0; node >>= 1) {
+            if (less(_tree[node], winner)) {
+                final int loser = winner;
+                winner = _tree[node];
+                _tree[node] = loser;
+            }
+        }
+        _tree[0] = winner;
+    }
+
+    /**
+     * Whether the current row of slice a comes before the current row of slice b: exhausted slices come last, ties are
+     * broken by slice order.
+     */
+    private boolean less(final int a, final int b) {
+        if (_done[a] || _done[b]) {
+            return !_done[a] || (_done[b] && a < b);
+        }
+        final int result = compare(a, b);
+        return result < 0 || (result == 0 && a < b);
+    }
+
+    private int compare(final int a, final int b) {
+        for (int i = 0; i < _signs.length; i++) {
+            int result;
+            if (_integral[a][i] && _integral[b][i]) {
+                final long x = _integrals[a][i];
+                final long y = _integrals[b][i];
+                result = x < y ? -1 : (x == y ? 0 : 1);
+            } else {
+                result = compare(_keys[a][i], _keys[b][i]);
+            }
+            if (result != 0) {
+                return result * _signs[i];
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Compares the given sort keys, nulls being greater than any other value.
+     */
+    @SuppressWarnings("unchecked")
+    private static int compare(final Object x, final Object y) {
+        if (x == null) {
+            return y == null ? 0 : 1;
+        }
+        if (y == null) {
+            return -1;
+        }
+        return ((Comparable<Object>) x).compareTo(y);
+    }
+}
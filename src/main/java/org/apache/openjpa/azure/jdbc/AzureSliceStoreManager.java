@@ -22,41 +22,96 @@ import java.sql.Connection;
 import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
 import org.apache.openjpa.azure.Federation;
 import org.apache.openjpa.azure.jdbc.conf.AzureConfiguration;
 import org.apache.openjpa.azure.jdbc.kernel.AzureJDBCStoreQuery;
+import org.apache.openjpa.azure.metrics.MetricsRegistry;
+import org.apache.openjpa.azure.metrics.SliceMetrics;
+import org.apache.openjpa.azure.retry.TransientFaultPolicy;
+import org.apache.openjpa.azure.routing.FederationRegistry;
+import org.apache.openjpa.azure.trace.Span;
+import org.apache.openjpa.azure.trace.TraceContext;
+import org.apache.openjpa.azure.trace.Tracer;
 import org.apache.openjpa.azure.util.AzureUtils;
 import org.apache.openjpa.jdbc.conf.JDBCConfiguration;
+import org.apache.openjpa.jdbc.kernel.ConnectionInfo;
+import org.apache.openjpa.jdbc.kernel.EagerFetchModes;
+import org.apache.openjpa.jdbc.kernel.JDBCFetchConfiguration;
 import org.apache.openjpa.jdbc.kernel.PreparedSQLStoreQuery;
 import org.apache.openjpa.jdbc.kernel.SQLStoreQuery;
+import org.apache.openjpa.jdbc.meta.ClassMapping;
+import org.apache.openjpa.jdbc.meta.Joinable;
+import org.apache.openjpa.jdbc.schema.Column;
+import org.apache.openjpa.jdbc.sql.Result;
+import org.apache.openjpa.jdbc.sql.SQLBuffer;
+import org.apache.openjpa.jdbc.sql.SQLExceptions;
+import org.apache.openjpa.jdbc.sql.Select;
+import org.apache.openjpa.kernel.OpenJPAStateManager;
+import org.apache.openjpa.kernel.PCState;
 import org.apache.openjpa.kernel.QueryLanguages;
 import org.apache.openjpa.kernel.StoreContext;
 import org.apache.openjpa.kernel.StoreQuery;
 import org.apache.openjpa.kernel.exps.ExpressionParser;
-import org.apache.openjpa.lib.jdbc.DecoratingDataSource;
-import org.apache.openjpa.lib.log.Log;
 import org.apache.openjpa.slice.Slice;
 import org.apache.openjpa.slice.jdbc.SliceStoreManager;
+import org.apache.openjpa.util.ApplicationIds;
+import org.apache.openjpa.util.Id;
+import org.apache.openjpa.util.OpenJPAId;
+import org.apache.openjpa.util.StoreException;
 
 public class AzureSliceStoreManager extends SliceStoreManager {
 
-    public static Map<Federation, List<Object>> federations = null;
+    /**
+     * Rows of hollow instances of the same class, selected by primary key with a single IN-list query.
+     */
+    public static class Batch {
 
-    private Object fedLowerBound = null;
+        private final ClassMapping mapping;
 
-    private boolean fedMultiMember = false;
+        private final Map<Object, OpenJPAStateManager> sms = new LinkedHashMap<Object, OpenJPAStateManager>();
+
+        private Result result;
+
+        Batch(final ClassMapping mapping) {
+            this.mapping = mapping;
+        }
+
+        public Collection<OpenJPAStateManager> getStateManagers() {
+            return sms.values();
+        }
+
+        /**
+         * Release the selected rows without loading them.
+         */
+        public void close() {
+            if (result != null) {
+                result.close();
+                result = null;
+            }
+        }
+    }
+
+    private final FederationRegistry registry;
+
+    private final TransientFaultPolicy faultPolicy;
+
+    private final SliceMetrics metrics;
 
     private Federation federation = null;
 
     private AzureConfiguration azureConf;
 
-    private static Log log = null;
+    public AzureSliceStoreManager(final Slice slice, final FederationRegistry registry,
+            final TransientFaultPolicy faultPolicy, final MetricsRegistry metrics) {
 
-    public AzureSliceStoreManager(Slice slice) {
         super(slice);
+        this.registry = registry;
+        this.faultPolicy = faultPolicy;
+        this.metrics = metrics.getSliceMetrics(slice.getName());
     }
 
     @Override
@@ -64,15 +119,12 @@ public class AzureSliceStoreManager extends SliceStoreManager {
         super.setContext(ctx, conf);
         azureConf = (AzureConfiguration) ctx.getConfiguration();
 
-        if (log == null) {
-            log = conf.getLog(JDBCConfiguration.LOG_DIAG);
-        }
-
-        if (AzureSliceStoreManager.federations == null || AzureSliceStoreManager.federations.isEmpty()) {
+        if (!registry.isInitialized()) {
             Connection conn = null;
             try {
-                conn = getNewConnection();
-                initFederations(azureConf, conn);
+                // federation members are read from root
+                conn = super.getNewConnection();
+                registry.init(azureConf, conn);
             } finally {
                 try {
                     if (conn != null) {
@@ -83,42 +135,125 @@ public class AzureSliceStoreManager extends SliceStoreManager {
                 }
             }
         }
-
-        if (federation != null) {
-            initMembers();
-        }
     }
 
+    /**
+     * Connections are retried on transient faults (i.e. throttling) and not attempted while the circuit of this slice
+     * is open; connecting is just a step of the request being served, hence its success does not close the circuit.
+     */
     @Override
     protected RefCountConnection connectInternal()
             throws SQLException {
 
-        final RefCountConnection conn = super.connectInternal();
+        try {
+            return faultPolicy.executeStep(getName(), new Callable<RefCountConnection>() {
 
-        if (((AzureConfiguration) getContext().getConfiguration()).isPerformUseFederation() && federation != null) {
-            AzureUtils.useFederation(conn, federation, fedLowerBound);
+                @Override
+                public RefCountConnection call()
+                        throws Exception {
+                    return doConnect();
+                }
+            });
+        } catch (SQLException e) {
+            throw e;
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new StoreException(e);
         }
+    }
+
+    private RefCountConnection doConnect()
+            throws SQLException {
+
+        final long start = metrics.begin();
+        try {
+            final RefCountConnection conn;
 
+            final Span span = TraceContext.current().child(Tracer.CONNECT);
+            try {
+                conn = super.connectInternal();
+            } catch (SQLException e) {
+                span.error(e);
+                throw e;
+            } finally {
+                span.end();
+            }
+
+            try {
+                useFederation(conn);
+            } catch (SQLException e) {
+                conn.free();
+                throw e;
+            }
+            return conn;
+        } finally {
+            metrics.end(SliceMetrics.Operation.CONNECT, start);
+        }
+    }
+
+    /**
+     * Connections handed out for single statements, i.e. counting rows to check whether an instance exists, are bound
+     * to the federation member of this slice as well.
+     */
+    @Override
+    public Connection getNewConnection() {
+        final Connection conn = super.getNewConnection();
+        try {
+            useFederation(conn);
+        } catch (SQLException e) {
+            try {
+                conn.close();
+            } catch (SQLException ignore) {
+                // ignore
+            }
+            throw SQLExceptions.getStore(e, getDBDictionary());
+        }
         return conn;
     }
 
+    private void useFederation(final Connection conn)
+            throws SQLException {
+
+        final Object fedLowerBound = getFedLowerBound();
+
+        // member bounds could be still unknown while reading federation members
+        if (((AzureConfiguration) getContext().getConfiguration()).isPerformUseFederation()
+                && federation != null && fedLowerBound != null) {
+            final Span span = TraceContext.current().child(Tracer.USE_FEDERATION);
+            try {
+                AzureUtils.useFederation(conn, federation, fedLowerBound);
+            } catch (SQLException e) {
+                span.error(e);
+                throw e;
+            } finally {
+                span.end();
+            }
+        }
+    }
+
     public void setFederation(final Federation federation) {
         this.federation = federation;
     }
 
-    private void initMembers() {
-        final List<Object> members = federations.get(federation);
-        final int memberIndexPos = AzureUtils.getSliceMemberIndex(getName());
-        fedMultiMember = members.size() > 1;
-        fedLowerBound = members.get(memberIndexPos);
+    public FederationRegistry getFederationRegistry() {
+        return registry;
+    }
+
+    public TransientFaultPolicy getTransientFaultPolicy() {
+        return faultPolicy;
+    }
+
+    public SliceMetrics getMetrics() {
+        return metrics;
     }
 
     public Object getFedLowerBound() {
-        return fedLowerBound;
+        return registry.get().getLowerBound(getName());
     }
 
     public boolean isFedMultiMember() {
-        return fedMultiMember;
+        return federation != null && registry.get().isMultiMember(federation);
     }
 
     public String getFedName() {
@@ -129,6 +264,191 @@ public class AzureSliceStoreManager extends SliceStoreManager {
         return federation;
     }
 
+    /**
+     * Check whether the given instance can be loaded through {@link #selectAll(Collection, JDBCFetchConfiguration, int)}:
+     * hollow instance of a class without subclasses, identified by a single primary key column.
+     *
+     * @param sm state manager.
+     * @return TRUE if the given instance can be loaded in batch.
+     */
+    public static boolean isBatchable(final OpenJPAStateManager sm) {
+        if (sm.getManagedInstance() != null || !(sm.getMetaData() instanceof ClassMapping)
+                || !(sm.getObjectId() instanceof OpenJPAId)) {
+
+            return false;
+        }
+        final ClassMapping mapping = (ClassMapping) sm.getMetaData();
+        return mapping.getPrimaryKeyColumns().length == 1 && mapping.getPCSubclassMappings().length == 0;
+    }
+
+    /**
+     * Select the rows of the given hollow instances with one IN-list query per class and per <code>batchSize</code>
+     * instances. Only the rows are fetched: instances are left untouched, so that this method can be called from a
+     * slice thread, while {@link #initializeAll(Batch, PCState, JDBCFetchConfiguration)} has to be called from the
+     * thread owning the broker. Eager relations are not joined, but loaded afterwards as for any unloaded field.
+     *
+     * @param sms state managers, all accepted by {@link #isBatchable(OpenJPAStateManager)}.
+     * @param fetch fetch configuration.
+     * @param batchSize maximum number of instances per query.
+     * @return selected batches.
+     */
+    public List<Batch> selectAll(final Collection<OpenJPAStateManager> sms, final JDBCFetchConfiguration fetch,
+            final int batchSize)
+            throws SQLException {
+
+        final List<Batch> result = new ArrayList<Batch>();
+        try {
+            for (Batch batch : toBatches(sms, batchSize)) {
+                final Select sel = getSQLFactory().newSelect();
+                if (select(sel, batch.mapping, Select.SUBS_EXACT, null, null, fetch, EagerFetchModes.EAGER_NONE,
+                        true, false)) {
+
+                    whereIn(sel, batch);
+                    batch.result = sel.execute(this, fetch);
+                    result.add(batch);
+                }
+            }
+        } catch (SQLException e) {
+            for (Batch batch : result) {
+                batch.close();
+            }
+            throw e;
+        }
+        return result;
+    }
+
+    /**
+     * Check which of the given hollow instances exist on this slice, with one IN-list query per class and per
+     * <code>batchSize</code> instances selecting primary keys only. Instances are left untouched, so that this method
+     * can be called from a slice thread.
+     *
+     * @param sms state managers, all accepted by {@link #isBatchable(OpenJPAStateManager)}.
+     * @param fetch fetch configuration.
+     * @param batchSize maximum number of instances per query.
+     * @return the given state managers whose row is found.
+     */
+    public Collection<OpenJPAStateManager> existAll(final Collection<OpenJPAStateManager> sms,
+            final JDBCFetchConfiguration fetch, final int batchSize)
+            throws SQLException {
+
+        final Collection<OpenJPAStateManager> found = new ArrayList<OpenJPAStateManager>();
+        for (Batch batch : toBatches(sms, batchSize)) {
+            final Select sel = getSQLFactory().newSelect();
+            sel.selectPrimaryKey(batch.mapping);
+            batch.mapping.getDiscriminator().addClassConditions(sel, false, null);
+            whereIn(sel, batch);
+
+            final Result result = sel.execute(this, fetch);
+            try {
+                while (result.next()) {
+                    final OpenJPAStateManager sm =
+                            batch.sms.get(batch.mapping.getObjectId(this, result, null, true, null));
+                    if (sm != null) {
+                        found.add(sm);
+                    }
+                }
+            } finally {
+                result.close();
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Split the given instances into batches of the same class, each holding at most <code>batchSize</code>
+     * instances.
+     */
+    private static List<Batch> toBatches(final Collection<OpenJPAStateManager> sms, final int batchSize) {
+        final Map<ClassMapping, List<Batch>> byMapping = new LinkedHashMap<ClassMapping, List<Batch>>();
+        for (OpenJPAStateManager sm : sms) {
+            final ClassMapping mapping = (ClassMapping) sm.getMetaData();
+
+            List<Batch> batches = byMapping.get(mapping);
+            if (batches == null) {
+                batches = new ArrayList<Batch>();
+                byMapping.put(mapping, batches);
+            }
+            if (batches.isEmpty() || batches.get(batches.size() - 1).sms.size() >= batchSize) {
+                batches.add(new Batch(mapping));
+            }
+            batches.get(batches.size() - 1).sms.put(sm.getObjectId(), sm);
+        }
+
+        final List<Batch> result = new ArrayList<Batch>();
+        for (List<Batch> batches : byMapping.values()) {
+            result.addAll(batches);
+        }
+        return result;
+    }
+
+    /**
+     * Restrict the given select to the primary keys of the given batch.
+     */
+    private void whereIn(final Select sel, final Batch batch) {
+        final Column pk = batch.mapping.getPrimaryKeyColumns()[0];
+        final Joinable joinable = batch.mapping.assertJoinable(pk);
+
+        final SQLBuffer where = new SQLBuffer(getDBDictionary());
+        where.append(sel.getColumnAlias(pk)).append(" IN (");
+        boolean first = true;
+        for (Object oid : batch.sms.keySet()) {
+            if (!first) {
+                where.append(", ");
+            }
+            where.appendValue(joinable.getJoinValue(pkValue(batch.mapping, joinable, oid), pk, this), pk);
+            first = false;
+        }
+        where.append(")");
+        sel.where(where);
+        sel.setExpectedResultCount(batch.sms.size(), false);
+    }
+
+    private static Object pkValue(final ClassMapping mapping, final Joinable joinable, final Object oid) {
+        if (mapping.getIdentityType() == ClassMapping.ID_APPLICATION) {
+            return ApplicationIds.toPKValues(oid, mapping)[mapping.getField(joinable.getFieldIndex()).
+                    getPrimaryKeyIndex()];
+        }
+        return ((Id) oid).getId();
+    }
+
+    /**
+     * Load the given selected batch into its instances.
+     *
+     * @param batch batch returned by {@link #selectAll(Collection, JDBCFetchConfiguration, int)}.
+     * @param state state to initialize instances with.
+     * @param fetch fetch configuration.
+     * @return ids of instances not found.
+     */
+    public Collection<Object> initializeAll(final Batch batch, final PCState state,
+            final JDBCFetchConfiguration fetch) {
+
+        final Map<Object, OpenJPAStateManager> remaining = new LinkedHashMap<Object, OpenJPAStateManager>(batch.sms);
+        final Collection<Object> failed = new ArrayList<Object>();
+        try {
+            while (batch.result.next()) {
+                final OpenJPAStateManager sm =
+                        remaining.remove(batch.mapping.getObjectId(this, batch.result, null, true, null));
+                if (sm != null) {
+                    final ConnectionInfo info = new ConnectionInfo();
+                    info.result = batch.result;
+                    info.mapping = batch.mapping;
+                    if (!initialize(sm, state, fetch, info)) {
+                        failed.add(sm.getId());
+                    }
+                }
+            }
+        } catch (SQLException e) {
+            throw new StoreException(e);
+        } finally {
+            batch.close();
+        }
+
+        for (OpenJPAStateManager sm : remaining.values()) {
+            failed.add(sm.getId());
+        }
+        return failed;
+    }
+
     // ---------------------------------
     // Just for min implemenation
     // ---------------------------------
@@ -151,33 +471,4 @@ public class AzureSliceStoreManager extends SliceStoreManager {
         return newStoreQuery(language);
     }
     // ---------------------------------
-
-    public static void initFederations(final AzureConfiguration conf, final Connection conn) {
-        if (log == null) {
-            log = conf.getLog(JDBCConfiguration.LOG_DIAG);
-        }
-
-        Collection<Federation> feds = conf.getFederations();
-        AzureSliceStoreManager.federations = new HashMap<Federation, List<Object>>(feds.size());
-
-        for (Federation fed : feds) {
-
-            List<Object> members = federations.get(fed);
-
-            if (members == null) {
-                members = new ArrayList<Object>();
-                federations.put(fed, members);
-            }
-
-            try {
-                for (Object obj : AzureUtils.getMemberDistribution(conn, fed)) {
-                    log.info("Init member '" + obj + "' for " + fed);
-                    members.add(obj);
-                }
-            } catch (SQLException e) {
-                log.error("Error searching for federation members", e);
-            }
-
-        }
-    }
 }
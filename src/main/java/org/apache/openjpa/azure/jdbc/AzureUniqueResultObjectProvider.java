@@ -39,21 +39,75 @@ public class AzureUniqueResultObjectProvider implements ResultObjectProvider {
 
     private static final String SUM = "Sum";
 
+    /**
+     * Kind of merge applied to a projection of the partial results.
+     */
+    public enum Aggregate {
+
+        COUNT,
+        MAX,
+        MIN,
+        SUM,
+        UNSUPPORTED,
+        NONE
+
+    }
+
     protected final ResultObjectProvider[] _rops;
 
     private final StoreQuery _query;
 
     private final QueryExpressions[] _exps;
 
+    private final Aggregate[] _aggregates;
+
     protected Object _single;
 
     protected boolean _opened;
 
     public AzureUniqueResultObjectProvider(
             final ResultObjectProvider[] rops, final StoreQuery query, final QueryExpressions[] exps) {
+        this(rops, query, exps, getAggregates(exps));
+    }
+
+    public AzureUniqueResultObjectProvider(final ResultObjectProvider[] rops, final StoreQuery query,
+            final QueryExpressions[] exps, final Aggregate[] aggregates) {
         _rops = rops;
         _query = query;
         _exps = exps;
+        _aggregates = aggregates;
+    }
+
+    /**
+     * Finds out how each projection of the given expressions is merged.
+     *
+     * @param exps query expressions; null for native queries.
+     * @return one kind per projection.
+     */
+    public static Aggregate[] getAggregates(final QueryExpressions[] exps) {
+        if (exps == null || exps.length == 0) {
+            return new Aggregate[0];
+        }
+
+        final Value[] values = exps[0].projections;
+        final Aggregate[] aggregates = new Aggregate[values.length];
+        for (int i = 0; i < values.length; i++) {
+            final String op = values[i].getClass().getSimpleName();
+            if (!values[i].isAggregate()) {
+                aggregates[i] = Aggregate.NONE;
+            } else if (COUNT.equals(op)) {
+                aggregates[i] = Aggregate.COUNT;
+            } else if (MAX.equals(op)) {
+                aggregates[i] = Aggregate.MAX;
+            } else if (MIN.equals(op)) {
+                aggregates[i] = Aggregate.MIN;
+            } else if (SUM.equals(op)) {
+                aggregates[i] = Aggregate.SUM;
+            } else {
+                aggregates[i] = Aggregate.UNSUPPORTED;
+            }
+        }
+        return aggregates;
     }
 
     public boolean absolute(int pos)
@@ -94,34 +148,36 @@ public class AzureUniqueResultObjectProvider implements ResultObjectProvider {
 
         Value[] values = _exps[0].projections;
         Object[] single = new Object[values.length];
-        for (int i = 0; i < values.length; i++) {
-            Value v = values[i];
-            boolean isAggregate = v.isAggregate();
-
-            String op = v.getClass().getSimpleName();
-
-            for (ResultObjectProvider rop : _rops) {
-                if (rop.next()) {
-
-                    Object[] row = (Object[]) rop.getResultObject();
-
-                    if (isAggregate) {
-                        if (COUNT.equals(op)) {
-                            single[i] = count(single[i], row[i]);
-                        } else if (MAX.equals(op)) {
-                            single[i] = max(single[i], row[i]);
-                        } else if (MIN.equals(op)) {
-                            single[i] = min(single[i], row[i]);
-                        } else if (SUM.equals(op)) {
-                            single[i] = sum(single[i], row[i]);
-                        } else {
-                            throw new UnsupportedOperationException(_loc.get("aggregate-unsupported", op).toString());
-                        }
-                    } else {
+
+        // each partial result is made of a single row, merged projection by projection
+        for (ResultObjectProvider rop : _rops) {
+            if (!rop.next()) {
+                continue;
+            }
+
+            Object[] row = (Object[]) rop.getResultObject();
+
+            for (int i = 0; i < values.length; i++) {
+                switch (_aggregates[i]) {
+                    case COUNT:
+                        single[i] = count(single[i], row[i]);
+                        break;
+                    case MAX:
+                        single[i] = max(single[i], row[i]);
+                        break;
+                    case MIN:
+                        single[i] = min(single[i], row[i]);
+                        break;
+                    case SUM:
+                        single[i] = sum(single[i], row[i]);
+                        break;
+                    case UNSUPPORTED:
+                        throw new UnsupportedOperationException(
+                                _loc.get("aggregate-unsupported", values[i].getClass().getSimpleName()).toString());
+                    default:
                         single[i] = row[i];
-                    }
-                    single[i] = Filters.convert(single[i], v.getType());
                 }
+                single[i] = Filters.convert(single[i], values[i].getType());
             }
         }
         _single = single;
@@ -0,0 +1,378 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.openjpa.azure.jdbc;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import org.apache.openjpa.azure.Federation;
+import org.apache.openjpa.azure.jdbc.conf.AzureConfiguration;
+import org.apache.openjpa.azure.metrics.SliceMetrics;
+import org.apache.openjpa.azure.retry.TransientFaultPolicy;
+import org.apache.openjpa.azure.routing.RoutingRefresher;
+import org.apache.openjpa.azure.routing.RoutingTable;
+import org.apache.openjpa.azure.util.AzureUtils;
+import org.apache.openjpa.jdbc.conf.JDBCConfiguration;
+import org.apache.openjpa.kernel.StoreQuery;
+import org.apache.openjpa.lib.log.Log;
+import org.apache.openjpa.meta.ClassMetaData;
+import org.apache.openjpa.slice.SliceThread;
+import org.apache.openjpa.slice.jdbc.DistributedJDBCStoreManager;
+import org.apache.openjpa.slice.jdbc.SliceStoreManager;
+import org.apache.openjpa.util.StoreException;
+
+/**
+ * Executes bulk update / delete statements onto the given slices in parallel.
+ *
+ * Statements rejected because reaching the wrong federation member (i.e. after a split) are executed again, once,
+ * after refreshing the member distribution of the federation: the retry involves the members split off the rejecting
+ * ones, i.e. whose lower bound was routed to a rejecting member before refreshing. Splits only narrow member ranges,
+ * hence the rejecting members are never involved again.
+ *
+ * Transient faults are retried according to the {@link TransientFaultPolicy}; such faults could abort the enclosing
+ * transaction, hence statements executed within a transaction are retried only when protected by a savepoint, as
+ * flushes are.
+ */
+class BulkStatementExecutor {
+
+    private final DistributedJDBCStoreManager store;
+
+    private final RoutingRefresher refresher;
+
+    private final TransientFaultPolicy faultPolicy;
+
+    private final StoreQuery q;
+
+    private final Object[] params;
+
+    private final boolean delete;
+
+    private final boolean lenient;
+
+    private final Log log;
+
+    /**
+     * Routing table the targets were computed against.
+     */
+    private final RoutingTable routing;
+
+    private final Map<SliceStoreManager, Target> targets = new LinkedHashMap<SliceStoreManager, Target>();
+
+    /**
+     * Constructor.
+     *
+     * @param store distributed store manager.
+     * @param q query providing the context.
+     * @param params query parameters.
+     * @param delete TRUE to execute delete statements, FALSE for updates.
+     * @param lenient TRUE if routing errors have to be ignored when the statement succeeded onto another member of the
+     * same federation (i.e. native inserts sent to all the members).
+     */
+    BulkStatementExecutor(final DistributedJDBCStoreManager store, final StoreQuery q, final Object[] params,
+            final boolean delete, final boolean lenient) {
+
+        this.store = store;
+        this.refresher = store.getRoutingRefresher();
+        this.faultPolicy = store.getTransientFaultPolicy();
+        this.q = q;
+        this.params = params;
+        this.delete = delete;
+        this.lenient = lenient;
+        this.log = store.getConfiguration().getLog(JDBCConfiguration.LOG_DIAG);
+        this.routing = store.getFederationRegistry().get();
+    }
+
+    public void add(final SliceStoreManager slice, final StoreQuery query, final StoreQuery.Executor executor) {
+        targets.put(slice, new Target(slice, query, executor));
+    }
+
+    public int execute(final ClassMetaData meta, final boolean subclasses) {
+        final Map<SliceStoreManager, Throwable> failures = new LinkedHashMap<SliceStoreManager, Throwable>();
+        final Set<Federation> succeeded = new HashSet<Federation>();
+
+        int result = execute(new ArrayList<Target>(targets.values()), failures, succeeded);
+
+        if (failures.isEmpty()) {
+            return result;
+        }
+
+        final boolean retryEnabled = ((AzureConfiguration) store.getConfiguration()).isRoutingRetry();
+
+        final Map<SliceStoreManager, Throwable> rejected = new LinkedHashMap<SliceStoreManager, Throwable>();
+        final Map<Federation, Set<String>> rejecting = new LinkedHashMap<Federation, Set<String>>();
+
+        for (Map.Entry<SliceStoreManager, Throwable> failure : failures.entrySet()) {
+            final Federation fed = ((AzureSliceStoreManager) failure.getKey()).getFederation();
+
+            if (lenient && succeeded.contains(fed)) {
+                continue;
+            }
+
+            if (fed == null || !retryEnabled) {
+                refresher.refreshOnError(failure.getValue(), fed);
+                throw new StoreException(failure.getValue());
+            }
+
+            rejected.put(failure.getKey(), failure.getValue());
+
+            Set<String> names = rejecting.get(fed);
+            if (names == null) {
+                names = new HashSet<String>();
+                rejecting.put(fed, names);
+            }
+            names.add(failure.getKey().getName());
+        }
+
+        if (rejected.isEmpty()) {
+            return result;
+        }
+
+        final List<Target> retry = new ArrayList<Target>();
+
+        for (Map.Entry<Federation, Set<String>> entry : rejecting.entrySet()) {
+            final Federation fed = entry.getKey();
+
+            log.warn("Statement rejected by " + entry.getValue() + ", retrying on refreshed members of "
+                    + fed.getName());
+
+            final RoutingTable refreshed = refresher.refresh(fed);
+
+            final List<SliceStoreManager> members = store.getSlices(fed);
+            final List<String> names = new ArrayList<String>(members.size());
+            for (SliceStoreManager slice : members) {
+                names.add(slice.getName());
+            }
+
+            for (SliceStoreManager slice : members) {
+                if (!targets.containsKey(slice)
+                        && isSplitOff(refreshed.getLowerBound(slice.getName()), fed, names, entry.getValue())) {
+
+                    retry.add(newTarget(slice, meta, subclasses));
+                }
+            }
+        }
+
+        final Map<SliceStoreManager, Throwable> retryFailures = new LinkedHashMap<SliceStoreManager, Throwable>();
+        final Set<Federation> retrySucceeded = new HashSet<Federation>();
+
+        result += execute(retry, retryFailures, retrySucceeded);
+
+        rejected.putAll(retryFailures);
+        for (Map.Entry<SliceStoreManager, Throwable> failure : rejected.entrySet()) {
+            final Federation fed = ((AzureSliceStoreManager) failure.getKey()).getFederation();
+
+            if (!lenient || !retrySucceeded.contains(fed)) {
+                throw new StoreException(failure.getValue());
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Check if the member with the given lower bound has been split off one of the given rejecting members: its lower
+     * bound, as federation key, was routed to one of them before refreshing.
+     */
+    private boolean isSplitOff(
+            final Object lowerBound, final Federation fed, final List<String> names, final Set<String> rejecting) {
+
+        if (lowerBound == null) {
+            return false;
+        }
+
+        for (String name : AzureUtils.getTargetSlice(routing, names, fed, lowerBound)) {
+            if (rejecting.contains(name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private Target newTarget(final SliceStoreManager slice, final ClassMetaData meta, final boolean subclasses) {
+        final StoreQuery query = slice.newQuery(q.getContext().getLanguage());
+        query.setContext(q.getContext());
+
+        return new Target(slice, query, query.newDataStoreExecutor(meta, subclasses));
+    }
+
+    /**
+     * Execute the statement onto the given targets: routing errors are collected, the first other error is thrown once
+     * all the targets are done.
+     */
+    private int execute(
+            final List<Target> toExecute, final Map<SliceStoreManager, Throwable> failures,
+            final Set<Federation> succeeded) {
+
+        final ExecutorService threadPool = SliceThread.getPool();
+
+        final List<Future<Number>> futures = new ArrayList<Future<Number>>(toExecute.size());
+        for (Target target : toExecute) {
+            futures.add(threadPool.submit(target));
+        }
+
+        int result = 0;
+        StoreException error = null;
+
+        for (int i = 0; i < futures.size(); i++) {
+            final SliceStoreManager slice = toExecute.get(i).slice;
+
+            try {
+                final Number n = futures.get(i).get();
+                result += (n == null) ? 0 : n.intValue();
+                succeeded.add(((AzureSliceStoreManager) slice).getFederation());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+
+                // statements not started yet are not worth waiting for
+                for (int j = i; j < futures.size(); j++) {
+                    futures.get(j).cancel(false);
+                }
+                throw new StoreException(e);
+            } catch (ExecutionException e) {
+                if (refresher.isRoutingError(e.getCause())) {
+                    failures.put(slice, e.getCause());
+                } else if (error == null) {
+                    error = new StoreException(e.getCause());
+                }
+            }
+        }
+
+        if (error != null) {
+            throw error;
+        }
+
+        return result;
+    }
+
+    private class Target implements Callable<Number> {
+
+        final SliceStoreManager slice;
+
+        final StoreQuery query;
+
+        final StoreQuery.Executor executor;
+
+        Target(final SliceStoreManager slice, final StoreQuery query, final StoreQuery.Executor executor) {
+            this.slice = slice;
+            this.query = query;
+            this.executor = executor;
+        }
+
+        /**
+         * Statements outside of a transaction are retried as they are; statements within a transaction are rolled back
+         * to a savepoint before each retry, and not retried at all if no savepoint could be set.
+         */
+        @Override
+        public Number call()
+                throws Exception {
+
+            Savepoint savepoint = null;
+            boolean retry = true;
+
+            if (faultPolicy.getMaxRetries() > 0) {
+                final Connection conn = slice.getConnection();
+                try {
+                    if (!conn.getAutoCommit()) {
+                        savepoint = setSavepoint(conn);
+                        retry = savepoint != null;
+                    }
+                } finally {
+                    close(conn);
+                }
+            }
+
+            final Savepoint rollbackTo = savepoint;
+            return faultPolicy.execute(slice.getName(), new Callable<Number>() {
+
+                private Exception fault;
+
+                @Override
+                public Number call()
+                        throws Exception {
+
+                    if (fault != null && rollbackTo != null) {
+                        rollback(rollbackTo, fault);
+                    }
+
+                    final SliceMetrics metrics = ((AzureSliceStoreManager) slice).getMetrics();
+                    final long start = metrics.begin();
+                    try {
+                        return delete ? executor.executeDelete(query, params) : executor.executeUpdate(query, params);
+                    } catch (Exception e) {
+                        fault = e;
+                        throw e;
+                    } finally {
+                        metrics.end(SliceMetrics.Operation.QUERY, start);
+                    }
+                }
+            }, retry);
+        }
+
+        /**
+         * Set a savepoint, unless not needed by the fault policy or not available.
+         */
+        private Savepoint setSavepoint(final Connection conn) {
+            if (!faultPolicy.isSavepointNeeded(slice.getName())) {
+                return null;
+            }
+
+            try {
+                return conn.setSavepoint();
+            } catch (SQLException e) {
+                log.trace("Savepoint not available on " + slice.getName() + ": " + e.getMessage());
+                return null;
+            }
+        }
+
+        /**
+         * Roll back to the given savepoint before retrying after the given fault.
+         */
+        private void rollback(final Savepoint savepoint, final Exception fault)
+                throws SQLException {
+
+            final Connection conn = slice.getConnection();
+            try {
+                conn.rollback(savepoint);
+            } catch (SQLException e) {
+                log.error("Error rolling back " + slice.getName() + " to savepoint after " + fault.getMessage(), e);
+                throw e;
+            } finally {
+                close(conn);
+            }
+        }
+
+        private void close(final Connection conn) {
+            try {
+                conn.close();
+            } catch (SQLException ignore) {
+                // ignore
+            }
+        }
+    }
+}
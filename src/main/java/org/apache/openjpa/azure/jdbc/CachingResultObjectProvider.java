@@ -0,0 +1,152 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.openjpa.azure.jdbc;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.apache.openjpa.azure.datacache.SliceQueryCache;
+import org.apache.openjpa.kernel.StoreContext;
+import org.apache.openjpa.lib.rop.ResultObjectProvider;
+
+/**
+ * Records the rows read from the partial result of a slice, caching them on close if the result has been read
+ * sequentially up to its end and all the rows were cacheable.
+ *
+ * Partial results of aggregates without grouping are made of a single row, hence complete once such row is read.
+ */
+class CachingResultObjectProvider implements ResultObjectProvider {
+
+    private final ResultObjectProvider delegate;
+
+    private final SliceQueryCache cache;
+
+    private final SliceQueryCache.Key key;
+
+    private final Class<?>[] types;
+
+    private final long[] generations;
+
+    private final StoreContext ctx;
+
+    private final boolean single;
+
+    private final List<Object> rows = new ArrayList<Object>();
+
+    private boolean cacheable = true;
+
+    private boolean pending = false;
+
+    private boolean complete = false;
+
+    CachingResultObjectProvider(final ResultObjectProvider delegate, final SliceQueryCache cache,
+            final SliceQueryCache.Key key, final Class<?>[] types, final long[] generations, final StoreContext ctx,
+            final boolean single) {
+
+        this.delegate = delegate;
+        this.cache = cache;
+        this.key = key;
+        this.types = types;
+        this.generations = generations;
+        this.ctx = ctx;
+        this.single = single;
+    }
+
+    @Override
+    public boolean supportsRandomAccess() {
+        return delegate.supportsRandomAccess();
+    }
+
+    @Override
+    public void open()
+            throws Exception {
+        delegate.open();
+    }
+
+    @Override
+    public Object getResultObject()
+            throws Exception {
+        final Object result = delegate.getResultObject();
+        if (pending && cacheable) {
+            final Object cached = SliceQueryCache.toCached(result, ctx);
+            if (cached == SliceQueryCache.UNCACHEABLE) {
+                cacheable = false;
+                rows.clear();
+            } else {
+                rows.add(cached);
+                complete |= single;
+            }
+        }
+        pending = false;
+        return result;
+    }
+
+    @Override
+    public boolean next()
+            throws Exception {
+        // rows skipped without being read cannot be recorded
+        if (pending) {
+            cacheable = false;
+            rows.clear();
+        }
+
+        final boolean next = delegate.next();
+        pending = next;
+        complete = !next;
+        return next;
+    }
+
+    @Override
+    public boolean absolute(final int pos)
+            throws Exception {
+        cacheable = false;
+        rows.clear();
+        return delegate.absolute(pos);
+    }
+
+    @Override
+    public int size()
+            throws Exception {
+        return delegate.size();
+    }
+
+    @Override
+    public void reset()
+            throws Exception {
+        cacheable = false;
+        rows.clear();
+        delegate.reset();
+    }
+
+    @Override
+    public void close()
+            throws Exception {
+        if (complete && cacheable) {
+            cache.put(key, types, generations, new ArrayList<Object>(rows));
+        }
+        rows.clear();
+        cacheable = false;
+
+        delegate.close();
+    }
+
+    @Override
+    public void handleCheckedException(final Exception e) {
+        delegate.handleCheckedException(e);
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.openjpa.azure.jdbc;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import org.apache.openjpa.azure.Federation;
+import org.apache.openjpa.azure.jdbc.conf.AzureConfiguration;
+import org.apache.openjpa.kernel.QueryContext;
+
+/**
+ * Facts about the distributed execution of a compiled query, not depending on parameters nor on target slices: whether
+ * accessed types are replicated among federations or within each federation, how partial results are merged and how
+ * aggregate projections are merged.
+ */
+public class DistributedQueryPlan {
+
+    /**
+     * How partial results are merged.
+     */
+    public enum Merge {
+
+        UNIQUE,
+        NATIVE_AGGREGATE,
+        ORDERING,
+        MERGED
+
+    }
+
+    private final boolean replicated;
+
+    private final Map<Federation, Boolean> locallyReplicated;
+
+    private final Merge merge;
+
+    private final boolean[] ascending;
+
+    private final AzureUniqueResultObjectProvider.Aggregate[] aggregates;
+
+    public DistributedQueryPlan(
+            final boolean replicated,
+            final Map<Federation, Boolean> locallyReplicated,
+            final Merge merge,
+            final boolean[] ascending,
+            final AzureUniqueResultObjectProvider.Aggregate[] aggregates) {
+
+        this.replicated = replicated;
+        this.locallyReplicated = Collections.unmodifiableMap(locallyReplicated);
+        this.merge = merge;
+        this.ascending = ascending;
+        this.aggregates = aggregates;
+    }
+
+    /**
+     * Plan the given query, finding out whether its tables are replicated within each configured federation.
+     *
+     * @param ctx query context.
+     * @param replicated whether any accessed type is replicated among federations.
+     * @param merge how partial results are merged.
+     * @param ascending ordering directions, empty if not ordered.
+     * @param aggregates how aggregate projections are merged; null if not merging with {@link Merge#UNIQUE}.
+     * @return query plan.
+     */
+    public static DistributedQueryPlan newInstance(final QueryContext ctx, final boolean replicated, final Merge merge,
+            final boolean[] ascending, final AzureUniqueResultObjectProvider.Aggregate[] aggregates) {
+
+        final AzureConfiguration conf = (AzureConfiguration) ctx.getStoreContext().getConfiguration();
+
+        final Map<Federation, Boolean> locallyReplicated = new HashMap<Federation, Boolean>();
+        for (Federation federation : conf.getFederations()) {
+            locallyReplicated.put(federation,
+                    DistributedSQLStoreQuery.ParallelExecutor.isLocallyReplicated(ctx, federation));
+        }
+
+        return new DistributedQueryPlan(replicated, locallyReplicated, merge, ascending, aggregates);
+    }
+
+    /**
+     * @return TRUE if any accessed type is replicated among federations: the query is executed on a single slice.
+     */
+    public boolean isReplicated() {
+        return replicated;
+    }
+
+    /**
+     * @param federation federation.
+     * @return TRUE if accessed types are replicated among the members of the given federation: the query is executed
+     * on a single member.
+     */
+    public boolean isLocallyReplicated(final Federation federation) {
+        return Boolean.TRUE.equals(locallyReplicated.get(federation));
+    }
+
+    public Merge getMerge() {
+        return merge;
+    }
+
+    public boolean[] getAscending() {
+        return ascending;
+    }
+
+    public AzureUniqueResultObjectProvider.Aggregate[] getAggregates() {
+        return aggregates;
+    }
+}
@@ -26,19 +26,21 @@ import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
 import org.apache.openjpa.azure.Federation;
 import org.apache.openjpa.azure.jdbc.conf.AzureConfiguration;
+import org.apache.openjpa.azure.metrics.SliceMetrics;
+import org.apache.openjpa.azure.retry.TransientFaultPolicy;
+import org.apache.openjpa.azure.routing.RoutingContext;
+import org.apache.openjpa.azure.trace.QueryTrace;
+import org.apache.openjpa.azure.trace.Span;
+import org.apache.openjpa.azure.trace.TraceContext;
+import org.apache.openjpa.azure.trace.Tracer;
 import org.apache.openjpa.azure.util.AzureUtils;
 import org.apache.openjpa.azure.util.NativeQueryInfo;
-import org.apache.openjpa.jdbc.conf.JDBCConfiguration;
 
 import org.apache.openjpa.jdbc.kernel.JDBCStore;
 import org.apache.openjpa.jdbc.kernel.SQLStoreQuery;
 import org.apache.openjpa.kernel.FetchConfiguration;
-import org.apache.openjpa.kernel.OrderingMergedResultObjectProvider;
 import org.apache.openjpa.kernel.QueryContext;
-import org.apache.openjpa.kernel.StoreManager;
 import org.apache.openjpa.kernel.StoreQuery;
-import org.apache.openjpa.lib.jdbc.ReportingSQLException;
-import org.apache.openjpa.lib.log.Log;
 import org.apache.openjpa.lib.rop.MergedResultObjectProvider;
 import org.apache.openjpa.lib.rop.RangeResultObjectProvider;
 import org.apache.openjpa.lib.rop.ResultObjectProvider;
@@ -60,11 +62,8 @@ public class DistributedSQLStoreQuery extends SQLStoreQuery {
 
     private List<StoreQuery> _queries = new ArrayList<StoreQuery>();
 
-    private final Log log;
-
     public DistributedSQLStoreQuery(JDBCStore store) {
         super(store);
-        log = store.getConfiguration().getLog(JDBCConfiguration.LOG_DIAG);
     }
 
     public void add(StoreQuery q) {
@@ -105,9 +104,12 @@ public class DistributedSQLStoreQuery extends SQLStoreQuery {
 
         private DistributedSQLStoreQuery owner = null;
 
+        private final ClassMetaData meta;
+
         public ParallelExecutor(DistributedSQLStoreQuery dsq, ClassMetaData meta, boolean p) {
             super(dsq, meta);
             owner = dsq;
+            this.meta = meta;
         }
 
         public void addExecutor(StoreQuery.Executor ex) {
@@ -123,17 +125,26 @@ public class DistributedSQLStoreQuery extends SQLStoreQuery {
             final List<StoreQuery.Executor> usedExecutors = new ArrayList<StoreQuery.Executor>();
             final List<ResultObjectProvider> rops = new ArrayList<ResultObjectProvider>();
 
-            final List<SliceStoreManager> targets = findTargets();
-
             final QueryContext ctx = q.getContext();
-            final boolean isReplicated = containsReplicated(ctx);
+            final RoutingContext targets = findTargets(ctx);
+
+            final DistributedQueryPlan plan = getPlan(q, ctx);
+            final boolean isReplicated = plan.isReplicated();
 
             Federation previousFed = null;
 
             final ExecutorService threadPool = SliceThread.getPool();
 
+            final QueryTrace trace = owner.getDistributedStore().getQueryTrace();
+            final boolean traced = trace.sample();
+
+            final Span root = owner.getDistributedStore().getTracer().startSpan(Tracer.QUERY);
+            if (root.isRecording()) {
+                root.tag("query", ctx.getQueryString());
+            }
+
             for (int i = 0; i < owner._queries.size(); i++) {
-                StoreManager sm = owner.getDistributedStore().getSlice(i);
+                SliceStoreManager sm = owner.getDistributedStore().getSlice(i);
 
                 final Federation fed = ((AzureSliceStoreManager) sm).getFederation();
 
@@ -154,13 +165,13 @@ public class DistributedSQLStoreQuery extends SQLStoreQuery {
                     // * if rangeMappingName is null then the object is "locally" replicated.
                     // ------------------------------------------
                     if (previousFed != null && previousFed.equals(fed)
-                            && DistributedSQLStoreQuery.ParallelExecutor.isLocallyReplicated(ctx, fed)) {
+                            && plan.isLocallyReplicated(fed)) {
                         break;
                     }
                     // ------------------------------------------
                 }
 
-                if (!targets.contains(sm)) {
+                if (!targets.get(i)) {
                     continue;
                 }
 
@@ -176,48 +187,58 @@ public class DistributedSQLStoreQuery extends SQLStoreQuery {
                 call.query.setContext(q.getContext());
                 call.params = params;
                 call.range = range;
+                call.faultPolicy = owner.getDistributedStore().getTransientFaultPolicy();
+                call.sliceName = sm.getName();
+                call.metrics = ((AzureSliceStoreManager) sm).getMetrics();
+                call.span = root.child(Tracer.SLICE).tag("slice", sm.getName());
 
-                owner.log.info("[" + ((AzureSliceStoreManager) sm).getSlice().getName() + "] Execute query: "
-                        + query.getContext().getQueryString());
+                if (traced) {
+                    trace.record(QueryTrace.Kind.QUERY, sm.getName(), query.getContext().getQueryString(), null);
+                }
 
                 futures.add(threadPool.submit(call));
             }
 
-            for (Future<ResultObjectProvider> future : futures) {
+            for (int i = 0; i < futures.size(); i++) {
                 try {
-                    rops.add(future.get());
+                    rops.add(futures.get(i).get());
                 } catch (InterruptedException e) {
-                    throw new RuntimeException(e);
+                    Thread.currentThread().interrupt();
+                    root.error(e);
+                    root.end();
+                    DistributedStoreQuery.discard(rops, futures.subList(i + 1, futures.size()));
+                    throw new StoreException(e);
                 } catch (ExecutionException e) {
+                    root.error(e.getCause());
+                    root.end();
+                    DistributedStoreQuery.discard(rops, futures.subList(i + 1, futures.size()));
+                    owner.getDistributedStore().getRoutingRefresher().refreshOnError(e.getCause());
                     throw new StoreException(e.getCause());
                 }
             }
 
             ResultObjectProvider[] arops = rops.toArray(new ResultObjectProvider[rops.size()]);
             ResultObjectProvider result = null;
-            boolean[] ascending = getAscending(q);
-            boolean isAscending = ascending.length > 0;
-
-            // TODO: remove temporary patch for aggregate function COUNT
-            boolean isAggregate = ctx.isAggregate();
-            boolean isNativeAggregate = ctx.getQueryString().matches(".*COUNT(.*).*");
-
             boolean hasRange = ctx.getEndRange() != Long.MAX_VALUE;
 
             // ----------------------
             // TODO: SLICE-PATCH
             // ----------------------
-            if (isAggregate) {
-                result = new AzureUniqueResultObjectProvider(arops, q, getQueryExpressions());
-            } else if (isNativeAggregate) {
-                result = new AzureNativeAggregatorROP(arops, q, getQueryExpressions());
-            } else if (isAscending) {
-                result = new OrderingMergedResultObjectProvider(
-                        arops,
-                        ascending,
-                        usedExecutors.toArray(new StoreQuery.Executor[usedExecutors.size()]), q, params);
-            } else {
-                result = new MergedResultObjectProvider(arops);
+            switch (plan.getMerge()) {
+                case UNIQUE:
+                    result = new AzureUniqueResultObjectProvider(arops, q, getQueryExpressions(), plan.getAggregates());
+                    break;
+                case NATIVE_AGGREGATE:
+                    result = new AzureNativeAggregatorROP(arops, q, getQueryExpressions());
+                    break;
+                case ORDERING:
+                    result = new AzureOrderingMergedResultObjectProvider(
+                            arops,
+                            plan.getAscending(),
+                            usedExecutors.toArray(new StoreQuery.Executor[usedExecutors.size()]), q, params);
+                    break;
+                default:
+                    result = new MergedResultObjectProvider(arops);
             }
 
             if (hasRange) {
@@ -225,7 +246,8 @@ public class DistributedSQLStoreQuery extends SQLStoreQuery {
             }
             // ----------------------
 
-            return result;
+            // merge phase and root span end when results are closed
+            return root.isRecording() ? new TracedResultObjectProvider(result, root) : result;
         }
 
         static boolean isLocallyReplicated(final QueryContext query, final Federation fed) {
@@ -267,6 +289,35 @@ public class DistributedSQLStoreQuery extends SQLStoreQuery {
             return auto && res;
         }
 
+        /**
+         * Gets the distributed plan of the given query, computed on first execution.
+         */
+        private DistributedQueryPlan getPlan(StoreQuery q, QueryContext ctx) {
+            final QueryPlanCache cache = owner.getDistributedStore().getQueryPlanCache();
+            final QueryPlanCache.Key key = QueryPlanCache.Key.of(ctx);
+
+            DistributedQueryPlan plan = cache.get(key);
+            if (plan == null) {
+                final boolean[] ascending = getAscending(q);
+
+                DistributedQueryPlan.Merge merge = DistributedQueryPlan.Merge.MERGED;
+                if (ctx.isAggregate()) {
+                    merge = DistributedQueryPlan.Merge.UNIQUE;
+                } else if (ctx.getQueryString().matches(".*COUNT(.*).*")) {
+                    // TODO: remove temporary patch for aggregate function COUNT
+                    merge = DistributedQueryPlan.Merge.NATIVE_AGGREGATE;
+                } else if (ascending.length > 0) {
+                    merge = DistributedQueryPlan.Merge.ORDERING;
+                }
+
+                plan = DistributedQueryPlan.newInstance(ctx, containsReplicated(ctx), merge, ascending,
+                        merge == DistributedQueryPlan.Merge.UNIQUE
+                        ? AzureUniqueResultObjectProvider.getAggregates(getQueryExpressions()) : null);
+                cache.put(key, plan);
+            }
+            return plan;
+        }
+
         /**
          * Scans metadata to find out if a replicated class is the candidate.
          */
@@ -294,109 +345,54 @@ public class DistributedSQLStoreQuery extends SQLStoreQuery {
         }
 
         public Number executeDelete(StoreQuery q, Object[] params) {
-            List<Future<Number>> futures = null;
-            int result = 0;
-
-            List<SliceStoreManager> targets = findTargets();
-
-            ExecutorService threadPool = SliceThread.getPool();
-
-            for (int i = 0; i < owner._queries.size(); i++) {
-                StoreManager sm = owner.getDistributedStore().getSlice(i);
-                if (!targets.contains(sm)) {
-                    continue;
-                }
-                StoreQuery query = owner._queries.get(i);
-                StoreQuery.Executor executor = executors.get(i);
-
-                if (futures == null) {
-                    futures = new ArrayList<Future<Number>>();
-                }
-
-                DistributedSQLStoreQuery.DeleteExecutor call = new DistributedSQLStoreQuery.DeleteExecutor();
-                call.executor = executor;
-                call.query = query;
-                call.query.setContext(q.getContext());
-                call.params = params;
-
-                owner.log.info("[" + ((AzureSliceStoreManager) sm).getSlice().getName() + "] Execute delete query: "
-                        + query.getContext().getQueryString());
-
-                futures.add(threadPool.submit(call));
-            }
-            for (Future<Number> future : futures) {
-                try {
-                    Number n = future.get();
-                    if (n != null) {
-                        result += n.intValue();
-                    }
-                } catch (InterruptedException e) {
-                    throw new RuntimeException(e);
-                } catch (ExecutionException e) {
-                    throw new StoreException(e.getCause());
-                }
-            }
-            return result;
+            return executeBulk(q, params, true);
         }
 
         public Number executeUpdate(StoreQuery q, Object[] params) {
-            List<Future<Number>> futures = null;
-            int result = 0;
+            return executeBulk(q, params, false);
+        }
 
-            List<SliceStoreManager> targets = findTargets();
+        /**
+         * Statements rejected by the wrong federation member are executed again, once, after refreshing member
+         * distribution: native statements are sent to all the members, hence routing errors are ignored as long as one member
+         * of the same federation accepted the statement.
+         */
+        private Number executeBulk(StoreQuery q, Object[] params, boolean delete) {
+            final BulkStatementExecutor bulk =
+                    new BulkStatementExecutor(owner.getDistributedStore(), q, params, delete, true);
 
-            ExecutorService threadPool = SliceThread.getPool();
-            for (int i = 0; i < owner._queries.size(); i++) {
-                StoreManager sm = owner.getDistributedStore().getSlice(i);
+            RoutingContext targets = findTargets(q.getContext());
+
+            final QueryTrace trace = owner.getDistributedStore().getQueryTrace();
+            final boolean traced = trace.sample();
 
-                if (!targets.contains(sm)) {
+            for (int i = 0; i < owner._queries.size(); i++) {
+                SliceStoreManager sm = owner.getDistributedStore().getSlice(i);
+                if (!targets.get(i)) {
                     continue;
                 }
 
                 StoreQuery query = owner._queries.get(i);
-                StoreQuery.Executor executor = executors.get(i);
+                query.setContext(q.getContext());
 
-                if (futures == null) {
-                    futures = new ArrayList<Future<Number>>();
+                if (traced) {
+                    trace.record(delete ? QueryTrace.Kind.DELETE : QueryTrace.Kind.UPDATE, sm.getName(),
+                            query.getContext().getQueryString(), null);
                 }
 
-                DistributedSQLStoreQuery.UpdateExecutor call = new DistributedSQLStoreQuery.UpdateExecutor();
-                call.executor = executor;
-                call.query = query;
-                call.query.setContext(q.getContext());
-                call.params = params;
-
-                owner.log.info("[" + ((AzureSliceStoreManager) sm).getSlice().getName() + "] Execute update query: "
-                        + query.getContext().getQueryString());
-
-                futures.add(threadPool.submit(call));
+                bulk.add(sm, query, executors.get(i));
             }
 
-            for (Future<Number> future : futures) {
-                try {
-                    Number n = future.get();
-                    result += (n == null) ? 0 : n.intValue();
-                } catch (InterruptedException e) {
-                    throw new RuntimeException(e);
-                } catch (ExecutionException e) {
-                    final Throwable ex = e.getCause();
-                    int code = ex != null && ex.getCause() instanceof ReportingSQLException
-                            ? ((ReportingSQLException) ex.getCause()).getErrorCode()
-                            : 0;
-
-                    // In case of native inserts we cannot avoid SQLExceptions retrieved inserting rows in wrong members
-                    if (code != 45022) {
-                        throw new StoreException(e.getCause());
-                    }
-                }
-            }
-
-            return result;
+            return bulk.execute(meta, false);
         }
 
-        List<SliceStoreManager> findTargets() {
-            FetchConfiguration fetch = owner.getContext().getFetchConfiguration();
-            return owner.getDistributedStore().getTargets(fetch);
+        /**
+         * Targets are read from the context of the query being executed: executors are shared by all queries compiled
+         * from the same string, hence the owner context may carry the hints of a previous query.
+         */
+        RoutingContext findTargets(QueryContext ctx) {
+            FetchConfiguration fetch = ctx.getFetchConfiguration();
+            return owner.getDistributedStore().getRoutingContext(fetch);
         }
     }
 
@@ -410,37 +406,54 @@ public class DistributedSQLStoreQuery extends SQLStoreQuery {
 
         StoreQuery.Range range;
 
-        public ResultObjectProvider call()
-                throws Exception {
-            return executor.executeQuery(query, params, range);
-        }
-    }
-
-    static class DeleteExecutor implements Callable<Number> {
-
-        StoreQuery query;
-
-        StoreQuery.Executor executor;
-
-        Object[] params;
-
-        public Number call()
-                throws Exception {
-            return executor.executeDelete(query, params);
-        }
-    }
-
-    static class UpdateExecutor implements Callable<Number> {
+        TransientFaultPolicy faultPolicy;
 
-        StoreQuery query;
+        String sliceName;
 
-        StoreQuery.Executor executor;
+        SliceMetrics metrics;
 
-        Object[] params;
+        Span span;
 
-        public Number call()
+        /**
+         * Results are opened by the slice thread, so that transient faults can be retried; each attempt is timed onto
+         * the slice metrics and traced as an execute span, child of the slice span.
+         */
+        public ResultObjectProvider call()
                 throws Exception {
-            return executor.executeUpdate(query, params);
+            try {
+                return faultPolicy.execute(sliceName, new Callable<ResultObjectProvider>() {
+
+                    @Override
+                    public ResultObjectProvider call()
+                            throws Exception {
+                        final long start = metrics.begin();
+                        final Span execute = span.child(Tracer.EXECUTE);
+                        TraceContext.set(execute);
+                        try {
+                            final ResultObjectProvider rop = executor.executeQuery(query, params, range);
+                            try {
+                                rop.open();
+                            } catch (Exception e) {
+                                rop.close();
+                                throw e;
+                            }
+                            return new OpenedResultObjectProvider(rop, metrics, span);
+                        } catch (Exception e) {
+                            execute.error(e);
+                            throw e;
+                        } finally {
+                            execute.end();
+                            metrics.end(SliceMetrics.Operation.QUERY, start);
+                        }
+                    }
+                });
+            } catch (Exception e) {
+                span.error(e);
+                span.end();
+                throw e;
+            } finally {
+                TraceContext.clear();
+            }
         }
     }
 }
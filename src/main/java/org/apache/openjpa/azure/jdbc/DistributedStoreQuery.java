@@ -19,24 +19,34 @@
 package org.apache.openjpa.azure.jdbc;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
+import java.util.Set;
 import java.util.concurrent.Future;
 import org.apache.openjpa.azure.Federation;
+import org.apache.openjpa.azure.datacache.SliceQueryCache;
 import org.apache.openjpa.azure.jdbc.kernel.AzureJDBCStoreQuery;
-import org.apache.openjpa.jdbc.conf.JDBCConfiguration;
-
+import org.apache.openjpa.azure.metrics.SliceMetrics;
+import org.apache.openjpa.azure.retry.TransientFaultPolicy;
+import org.apache.openjpa.azure.routing.RoutingContext;
+import org.apache.openjpa.azure.trace.QueryTrace;
+import org.apache.openjpa.azure.trace.Span;
+import org.apache.openjpa.azure.trace.TraceContext;
+import org.apache.openjpa.azure.trace.Tracer;
 import org.apache.openjpa.jdbc.kernel.JDBCStore;
 import org.apache.openjpa.kernel.ExpressionStoreQuery;
 import org.apache.openjpa.kernel.FetchConfiguration;
-import org.apache.openjpa.kernel.OrderingMergedResultObjectProvider;
 import org.apache.openjpa.kernel.QueryContext;
-import org.apache.openjpa.kernel.StoreManager;
+import org.apache.openjpa.kernel.StoreContext;
 import org.apache.openjpa.kernel.StoreQuery;
 import org.apache.openjpa.kernel.exps.ExpressionParser;
-import org.apache.openjpa.lib.log.Log;
+import org.apache.openjpa.lib.rop.ListResultObjectProvider;
 import org.apache.openjpa.lib.rop.MergedResultObjectProvider;
 import org.apache.openjpa.lib.rop.RangeResultObjectProvider;
 import org.apache.openjpa.lib.rop.ResultObjectProvider;
@@ -60,12 +70,9 @@ public class DistributedStoreQuery extends AzureJDBCStoreQuery {
 
     private ExpressionParser _parser;
 
-    private final Log log;
-
     public DistributedStoreQuery(JDBCStore store, ExpressionParser parser) {
         super(store, parser);
         _parser = parser;
-        log = store.getConfiguration().getLog(JDBCConfiguration.LOG_DIAG);
     }
 
     public void add(StoreQuery q) {
@@ -98,17 +105,65 @@ public class DistributedStoreQuery extends AzureJDBCStoreQuery {
         }
     }
 
+    /**
+     * Releases the partial results of a query failed onto some slice: the given pending executions are awaited (or
+     * cancelled, if the current thread is interrupted), then all the providers obtained are closed, ignoring errors.
+     *
+     * @param rops providers obtained so far.
+     * @param pending executions not collected yet; null elements are skipped.
+     */
+    static void discard(final List<ResultObjectProvider> rops, final List<Future<ResultObjectProvider>> pending) {
+        for (Future<ResultObjectProvider> future : pending) {
+            if (future == null) {
+                continue;
+            }
+
+            if (Thread.currentThread().isInterrupted()) {
+                future.cancel(true);
+                continue;
+            }
+
+            try {
+                rops.add(future.get());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                future.cancel(true);
+            } catch (ExecutionException ignore) {
+                // the first failure is reported by the caller
+            } catch (CancellationException ignore) {
+                // ignore
+            }
+        }
+
+        for (ResultObjectProvider rop : rops) {
+            try {
+                if (rop != null) {
+                    rop.close();
+                }
+            } catch (Exception ignore) {
+                // ignore
+            }
+        }
+        rops.clear();
+    }
+
     public static class ParallelExecutor extends ExpressionStoreQuery.DataStoreExecutor {
 
         private List<StoreQuery.Executor> executors = new ArrayList<StoreQuery.Executor>();
 
         private DistributedStoreQuery owner = null;
 
+        private final ClassMetaData meta;
+
+        private final boolean subclasses;
+
         public ParallelExecutor(DistributedStoreQuery dsq, ClassMetaData meta,
                 boolean subclasses, ExpressionParser parser, Object parsed,
                 boolean parallel) {
             super(dsq, meta, subclasses, parser, parsed);
             owner = dsq;
+            this.meta = meta;
+            this.subclasses = subclasses;
         }
 
         public void addExecutor(StoreQuery.Executor ex) {
@@ -117,21 +172,40 @@ public class DistributedStoreQuery extends AzureJDBCStoreQuery {
 
         /**
          * Each child query must be executed with slice context and not the given query context.
+         *
+         * Partial results found in the slice query cache are not sent again to their slices; the other partial results
+         * are recorded for caching while read.
          */
         public ResultObjectProvider executeQuery(StoreQuery q, final Object[] params, final StoreQuery.Range range) {
             final List<Future<ResultObjectProvider>> futures = new ArrayList<Future<ResultObjectProvider>>();
             final List<StoreQuery.Executor> usedExecutors = new ArrayList<StoreQuery.Executor>();
             final List<ResultObjectProvider> rops = new ArrayList<ResultObjectProvider>();
-            final List<SliceStoreManager> targets = findTargets();
             final QueryContext ctx = q.getContext();
+            final RoutingContext targets = findTargets(ctx);
 
-            boolean isReplicated = containsReplicated(ctx);
+            final DistributedQueryPlan plan = getPlan(q, ctx);
+            boolean isReplicated = plan.isReplicated();
             ExecutorService threadPool = SliceThread.getPool();
 
+            final SliceQueryCache cache = owner.getDistributedStore().getSliceQueryCache();
+            final Class<?>[] types = range.lrs ? null : getCacheableTypes(cache, ctx, params);
+            final long routingVersion = targets.getVersion();
+            final List<DistributedStoreQuery.QueryExecutor> calls =
+                    new ArrayList<DistributedStoreQuery.QueryExecutor>();
+            final List<List<Object>> cached = new ArrayList<List<Object>>();
+
+            final QueryTrace trace = owner.getDistributedStore().getQueryTrace();
+            final boolean traced = trace.sample();
+
+            final Span root = owner.getDistributedStore().getTracer().startSpan(Tracer.QUERY);
+            if (root.isRecording()) {
+                root.tag("query", ctx.getQueryString());
+            }
+
             Federation previousFed = null;
 
             for (int i = 0; i < owner._queries.size(); i++) {
-                StoreManager sm = owner.getDistributedStore().getSlice(i);
+                SliceStoreManager sm = owner.getDistributedStore().getSlice(i);
 
                 final Federation fed = ((AzureSliceStoreManager) sm).getFederation();
 
@@ -151,14 +225,13 @@ public class DistributedStoreQuery extends AzureJDBCStoreQuery {
                     // * get rangeMappingName;
                     // * if rangeMappingName is null then the object is "locally" replicated.
                     // ------------------------------------------
-                    if (previousFed != null && previousFed.equals(fed)
-                            && DistributedSQLStoreQuery.ParallelExecutor.isLocallyReplicated(ctx, fed)) {
+                    if (previousFed != null && previousFed.equals(fed) && plan.isLocallyReplicated(fed)) {
                         break;
                     }
                     // ------------------------------------------
                 }
 
-                if (!targets.contains(sm)) {
+                if (!targets.get(i)) {
                     continue;
                 }
 
@@ -175,19 +248,78 @@ public class DistributedStoreQuery extends AzureJDBCStoreQuery {
                 call.query.setContext(q.getContext());
                 call.params = params;
                 call.range = range;
+                call.faultPolicy = owner.getDistributedStore().getTransientFaultPolicy();
+                call.sliceName = sm.getName();
+                call.metrics = ((AzureSliceStoreManager) sm).getMetrics();
+                call.span = root.child(Tracer.SLICE).tag("slice", sm.getName());
+
+                List<Object> rows = null;
+                if (types != null) {
+                    call.cacheKey = new SliceQueryCache.Key(sm.getName(), routingVersion, ctx.getQueryString(),
+                            ctx.getCandidateType(), subclasses, params, range.start, range.end);
+                    rows = cache.get(call.cacheKey);
+                    if (rows == null) {
+                        call.generations = cache.getGenerations(sm.getName(), types);
+                    }
+                }
+                calls.add(call);
+                cached.add(rows);
+
+                if (rows == null) {
+                    if (traced) {
+                        trace.record(QueryTrace.Kind.QUERY, sm.getName(), query.getContext().getQueryString(), null);
+                    }
 
-                owner.log.info("[" + ((AzureSliceStoreManager) sm).getSlice().getName() + "] Execute query: "
-                        + query.getContext().getQueryString());
+                    futures.add(threadPool.submit(call));
+                } else {
+                    futures.add(null);
+                }
+            }
 
-                futures.add(threadPool.submit(call));
+            // cached instances are found while the other slices execute; if any is gone, its slice executes anyway
+            for (int i = 0; i < calls.size(); i++) {
+                if (cached.get(i) != null) {
+                    final DistributedStoreQuery.QueryExecutor call = calls.get(i);
+                    final List<Object> found = SliceQueryCache.materialize(
+                            cached.get(i), ctx.getStoreContext(), ctx.getFetchConfiguration());
+                    if (found == null) {
+                        call.generations = cache.getGenerations(call.sliceName, types);
+                        if (traced) {
+                            trace.record(QueryTrace.Kind.QUERY, call.sliceName, ctx.getQueryString(), null);
+                        }
+                        futures.set(i, threadPool.submit(call));
+                    } else {
+                        call.span.tag("cached", found.size());
+                        call.span.end();
+                    }
+                    cached.set(i, found);
+                }
             }
 
-            for (Future<ResultObjectProvider> future : futures) {
+            for (int i = 0; i < futures.size(); i++) {
+                final Future<ResultObjectProvider> future = futures.get(i);
+                if (future == null) {
+                    rops.add(new ListResultObjectProvider(cached.get(i)));
+                    continue;
+                }
+
+                final DistributedStoreQuery.QueryExecutor call = calls.get(i);
                 try {
-                    rops.add(future.get());
+                    rops.add(call.generations == null
+                            ? future.get()
+                            : new CachingResultObjectProvider(future.get(), cache, call.cacheKey, types,
+                                    call.generations, ctx.getStoreContext(), ctx.isAggregate() && !ctx.hasGrouping()));
                 } catch (InterruptedException e) {
-                    throw new RuntimeException(e);
+                    Thread.currentThread().interrupt();
+                    root.error(e);
+                    root.end();
+                    discard(rops, futures.subList(i + 1, futures.size()));
+                    throw new StoreException(e);
                 } catch (ExecutionException e) {
+                    root.error(e.getCause());
+                    root.end();
+                    discard(rops, futures.subList(i + 1, futures.size()));
+                    owner.getDistributedStore().getRoutingRefresher().refreshOnError(e.getCause());
                     throw new StoreException(e.getCause());
                 }
             }
@@ -195,23 +327,23 @@ public class DistributedStoreQuery extends AzureJDBCStoreQuery {
             ResultObjectProvider[] arops = rops.toArray(new ResultObjectProvider[rops.size()]);
 
             ResultObjectProvider result = null;
-            boolean[] ascending = getAscending(q);
-            boolean isAscending = ascending.length > 0;
-            boolean isAggregate = ctx.isAggregate();
             boolean hasRange = ctx.getEndRange() != Long.MAX_VALUE;
 
             // ----------------------
             // TODO: SLICE-PATCH
             // ----------------------
-            if (isAggregate) {
-                result = new AzureUniqueResultObjectProvider(arops, q, getQueryExpressions());
-            } else if (isAscending) {
-                result = new OrderingMergedResultObjectProvider(
-                        arops,
-                        ascending,
-                        usedExecutors.toArray(new StoreQuery.Executor[usedExecutors.size()]), q, params);
-            } else {
-                result = new MergedResultObjectProvider(arops);
+            switch (plan.getMerge()) {
+                case UNIQUE:
+                    result = new AzureUniqueResultObjectProvider(arops, q, getQueryExpressions(), plan.getAggregates());
+                    break;
+                case ORDERING:
+                    result = new AzureOrderingMergedResultObjectProvider(
+                            arops,
+                            plan.getAscending(),
+                            usedExecutors.toArray(new StoreQuery.Executor[usedExecutors.size()]), q, params);
+                    break;
+                default:
+                    result = new MergedResultObjectProvider(arops);
             }
 
             if (hasRange) {
@@ -219,9 +351,94 @@ public class DistributedStoreQuery extends AzureJDBCStoreQuery {
             }
             // ----------------------
 
+            // merge phase and root span end when results are closed
+            return root.isRecording() ? new TracedResultObjectProvider(result, root) : result;
+        }
+
+        /**
+         * Gets the distributed plan of the given query, computed on first execution.
+         */
+        private DistributedQueryPlan getPlan(StoreQuery q, QueryContext ctx) {
+            QueryPlanCache cache = owner.getDistributedStore().getQueryPlanCache();
+            QueryPlanCache.Key key = QueryPlanCache.Key.of(ctx);
+
+            DistributedQueryPlan plan = cache.get(key);
+            if (plan == null) {
+                boolean[] ascending = getAscending(q);
+                DistributedQueryPlan.Merge merge = DistributedQueryPlan.Merge.MERGED;
+                if (ctx.isAggregate()) {
+                    merge = DistributedQueryPlan.Merge.UNIQUE;
+                } else if (ascending.length > 0) {
+                    merge = DistributedQueryPlan.Merge.ORDERING;
+                }
+
+                plan = DistributedQueryPlan.newInstance(ctx, containsReplicated(ctx), merge, ascending,
+                        merge == DistributedQueryPlan.Merge.UNIQUE
+                        ? AzureUniqueResultObjectProvider.getAggregates(getQueryExpressions()) : null);
+                cache.put(key, plan);
+            }
+            return plan;
+        }
+
+        /**
+         * Finds the types accessed by the given query, if its partial results can be cached: not if reading with
+         * locks, with parameters other than immutable values, or if any of the accessed types has been changed by the
+         * current transaction, hence results must include changes not committed yet.
+         *
+         * @return accessed types; null if partial results must not be cached.
+         */
+        private Class<?>[] getCacheableTypes(SliceQueryCache cache, QueryContext ctx, Object[] params) {
+            if (!cache.isEnabled() || ctx.getQueryString() == null) {
+                return null;
+            }
+
+            FetchConfiguration fetch = ctx.getFetchConfiguration();
+            if (!fetch.getQueryCacheEnabled() || fetch.getReadLockLevel() > 0) {
+                return null;
+            }
+
+            if (params != null) {
+                for (Object param : params) {
+                    if (!SliceQueryCache.isCacheableParameter(param)) {
+                        return null;
+                    }
+                }
+            }
+
+            ClassMetaData[] metas = ctx.getAccessPathMetaDatas();
+            if (metas == null || metas.length == 0) {
+                return null;
+            }
+
+            Set<Class<?>> types = new LinkedHashSet<Class<?>>();
+            if (ctx.getCandidateType() != null) {
+                types.add(ctx.getCandidateType());
+            }
+            for (ClassMetaData accessed : metas) {
+                types.add(accessed.getDescribedType());
+            }
+            Class<?>[] result = types.toArray(new Class<?>[types.size()]);
+
+            StoreContext sc = ctx.getStoreContext();
+            if (isDirty(result, sc.getPersistedTypes()) || isDirty(result, sc.getUpdatedTypes())
+                    || isDirty(result, sc.getDeletedTypes()) || owner.getDistributedStore().isWritten(result)) {
+                return null;
+            }
+
             return result;
         }
 
+        private static boolean isDirty(Class<?>[] types, Collection<Class<?>> dirty) {
+            for (Class<?> changed : dirty) {
+                for (Class<?> type : types) {
+                    if (type.isAssignableFrom(changed)) {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+
         /**
          * Scans metadata to find out if a replicated class is the candidate.
          */
@@ -244,99 +461,61 @@ public class DistributedStoreQuery extends AzureJDBCStoreQuery {
         }
 
         public Number executeDelete(StoreQuery q, Object[] params) {
-            List<Future<Number>> futures = null;
-            int result = 0;
-
-            List<SliceStoreManager> targets = findTargets();
-
-            ExecutorService threadPool = SliceThread.getPool();
-            for (int i = 0; i < owner._queries.size(); i++) {
-                StoreManager sm = owner.getDistributedStore().getSlice(i);
-                if (!targets.contains(sm)) {
-                    continue;
-                }
+            return executeBulk(q, params, true);
+        }
 
-                StoreQuery query = owner._queries.get(i);
-                StoreQuery.Executor ex = executors.get(i);
+        public Number executeUpdate(StoreQuery q, Object[] params) {
+            return executeBulk(q, params, false);
+        }
 
-                if (futures == null) {
-                    futures = new ArrayList<Future<Number>>();
-                }
+        /**
+         * Statements rejected by the wrong federation member are executed again, once, after refreshing member
+         * distribution.
+         */
+        private Number executeBulk(StoreQuery q, Object[] params, boolean delete) {
+            final BulkStatementExecutor bulk =
+                    new BulkStatementExecutor(owner.getDistributedStore(), q, params, delete, false);
 
-                DistributedStoreQuery.DeleteExecutor call = new DistributedStoreQuery.DeleteExecutor();
-                call.executor = ex;
-                call.query = query;
-                call.query.setContext(q.getContext());
-                call.params = params;
+            RoutingContext targets = findTargets(q.getContext());
 
-                owner.log.info("[" + ((AzureSliceStoreManager) sm).getSlice().getName() + "] Execute delete query: "
-                        + query.getContext().getQueryString());
+            final QueryTrace trace = owner.getDistributedStore().getQueryTrace();
+            final boolean traced = trace.sample();
 
-                futures.add(threadPool.submit(call));
-            }
-            for (Future<Number> future : futures) {
-                try {
-                    Number n = future.get();
-                    if (n != null) {
-                        result += n.intValue();
-                    }
-                } catch (InterruptedException e) {
-                    throw new RuntimeException(e);
-                } catch (ExecutionException e) {
-                    throw new StoreException(e.getCause());
-                }
+            final List<ClassMetaData> written = new ArrayList<ClassMetaData>();
+            written.add(meta);
+            if (subclasses && meta != null) {
+                written.addAll(Arrays.asList(meta.getPCSubclassMetaDatas()));
             }
-            return result;
-        }
-
-        public Number executeUpdate(StoreQuery q, Object[] params) {
-            List<Future<Number>> futures = null;
-            int result = 0;
-
-            List<SliceStoreManager> targets = findTargets();
 
-            ExecutorService threadPool = SliceThread.getPool();
             for (int i = 0; i < owner._queries.size(); i++) {
-                StoreManager sm = owner.getDistributedStore().getSlice(i);
-                if (!targets.contains(sm)) {
+                SliceStoreManager sm = owner.getDistributedStore().getSlice(i);
+                if (!targets.get(i)) {
                     continue;
                 }
 
                 StoreQuery query = owner._queries.get(i);
+                query.setContext(q.getContext());
 
-                StoreQuery.Executor ex = executors.get(i);
-
-                if (futures == null) {
-                    futures = new ArrayList<Future<Number>>();
+                if (traced) {
+                    trace.record(delete ? QueryTrace.Kind.DELETE : QueryTrace.Kind.UPDATE, sm.getName(),
+                            query.getContext().getQueryString(), null);
                 }
 
-                DistributedStoreQuery.UpdateExecutor call = new DistributedStoreQuery.UpdateExecutor();
-                call.executor = ex;
-                call.query = query;
-                call.query.setContext(q.getContext());
-                call.params = params;
-
-                owner.log.info("[" + ((AzureSliceStoreManager) sm).getSlice().getName() + "] Execute update query: "
-                        + query.getContext().getQueryString());
+                owner.getDistributedStore().recordWrite(sm.getName(), written);
 
-                futures.add(threadPool.submit(call));
+                bulk.add(sm, query, executors.get(i));
             }
-            for (Future<Number> future : futures) {
-                try {
-                    Number n = future.get();
-                    result += (n == null) ? 0 : n.intValue();
-                } catch (InterruptedException e) {
-                    throw new RuntimeException(e);
-                } catch (ExecutionException e) {
-                    throw new StoreException(e.getCause());
-                }
-            }
-            return result;
+
+            return bulk.execute(meta, subclasses);
         }
 
-        List<SliceStoreManager> findTargets() {
-            FetchConfiguration fetch = owner.getContext().getFetchConfiguration();
-            return owner.getDistributedStore().getTargets(fetch);
+        /**
+         * Targets are read from the context of the query being executed: executors are shared by all queries compiled
+         * from the same string, hence the owner context may carry the hints of a previous query.
+         */
+        RoutingContext findTargets(QueryContext ctx) {
+            FetchConfiguration fetch = ctx.getFetchConfiguration();
+            return owner.getDistributedStore().getRoutingContext(fetch);
         }
     }
 
@@ -350,37 +529,58 @@ public class DistributedStoreQuery extends AzureJDBCStoreQuery {
 
         StoreQuery.Range range;
 
-        public ResultObjectProvider call()
-                throws Exception {
-            return executor.executeQuery(query, params, range);
-        }
-    }
-
-    static class DeleteExecutor implements Callable<Number> {
-
-        StoreQuery query;
-
-        StoreQuery.Executor executor;
-
-        Object[] params;
+        TransientFaultPolicy faultPolicy;
 
-        public Number call()
-                throws Exception {
-            return executor.executeDelete(query, params);
-        }
-    }
+        String sliceName;
 
-    static class UpdateExecutor implements Callable<Number> {
+        SliceMetrics metrics;
 
-        StoreQuery query;
+        Span span;
 
-        StoreQuery.Executor executor;
+        SliceQueryCache.Key cacheKey;
 
-        Object[] params;
+        long[] generations;
 
-        public Number call()
+        /**
+         * Results are opened by the slice thread, so that transient faults can be retried; each attempt is timed onto
+         * the slice metrics and traced as an execute span, child of the slice span.
+         */
+        public ResultObjectProvider call()
                 throws Exception {
-            return executor.executeUpdate(query, params);
+            try {
+                return faultPolicy.execute(sliceName, new Callable<ResultObjectProvider>() {
+
+                    @Override
+                    public ResultObjectProvider call()
+                            throws Exception {
+                        final long start = metrics.begin();
+                        final Span execute = span.child(Tracer.EXECUTE);
+                        TraceContext.set(execute);
+                        try {
+                            final ResultObjectProvider rop = executor.executeQuery(query, params, range);
+                            try {
+                                rop.open();
+                            } catch (Exception e) {
+                                rop.close();
+                                throw e;
+                            }
+                            return new OpenedResultObjectProvider(rop, metrics, span);
+                        } catch (Exception e) {
+                            execute.error(e);
+                            throw e;
+                        } finally {
+                            execute.end();
+                            metrics.end(SliceMetrics.Operation.QUERY, start);
+                        }
+                    }
+                });
+            } catch (Exception e) {
+                span.error(e);
+                span.end();
+                throw e;
+            } finally {
+                TraceContext.clear();
+            }
         }
     }
 }
@@ -0,0 +1,123 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.openjpa.azure.jdbc;
+
+import org.apache.openjpa.azure.metrics.SliceMetrics;
+import org.apache.openjpa.azure.trace.Span;
+import org.apache.openjpa.azure.trace.Tracer;
+import org.apache.openjpa.lib.rop.ResultObjectProvider;
+
+/**
+ * Wraps a result object provider already opened by a slice thread: opening it again is a no-op.
+ *
+ * Rows read are counted locally and added to the slice metrics on close; reading is traced as a fetch span, ending
+ * together with the slice span on close.
+ */
+class OpenedResultObjectProvider implements ResultObjectProvider {
+
+    private final ResultObjectProvider delegate;
+
+    private final SliceMetrics metrics;
+
+    private final Span span;
+
+    private Span fetch;
+
+    private long rows = 0;
+
+    OpenedResultObjectProvider(final ResultObjectProvider delegate, final SliceMetrics metrics, final Span span) {
+        this.delegate = delegate;
+        this.metrics = metrics;
+        this.span = span;
+    }
+
+    @Override
+    public boolean supportsRandomAccess() {
+        return delegate.supportsRandomAccess();
+    }
+
+    @Override
+    public void open()
+            throws Exception {
+        // already open
+    }
+
+    @Override
+    public Object getResultObject()
+            throws Exception {
+        return delegate.getResultObject();
+    }
+
+    @Override
+    public boolean next()
+            throws Exception {
+        if (fetch == null) {
+            fetch = span.child(Tracer.FETCH);
+        }
+
+        final boolean next = delegate.next();
+        if (next) {
+            rows++;
+        }
+        return next;
+    }
+
+    @Override
+    public boolean absolute(final int pos)
+            throws Exception {
+        return delegate.absolute(pos);
+    }
+
+    @Override
+    public int size()
+            throws Exception {
+        return delegate.size();
+    }
+
+    @Override
+    public void reset()
+            throws Exception {
+        delegate.reset();
+    }
+
+    @Override
+    public void close()
+            throws Exception {
+        metrics.rows(rows);
+
+        if (fetch != null && fetch.isRecording()) {
+            fetch.tag("rows", rows);
+        }
+        rows = 0;
+
+        try {
+            delegate.close();
+        } finally {
+            if (fetch != null) {
+                fetch.end();
+            }
+            span.end();
+        }
+    }
+
+    @Override
+    public void handleCheckedException(final Exception e) {
+        delegate.handleCheckedException(e);
+    }
+}
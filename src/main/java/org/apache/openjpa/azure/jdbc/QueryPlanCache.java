@@ -0,0 +1,146 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.openjpa.azure.jdbc;
+
+import org.apache.openjpa.azure.jdbc.conf.AzureConfiguration;
+import org.apache.openjpa.kernel.QueryContext;
+import org.apache.openjpa.util.CacheMap;
+
+/**
+ * Cache of distributed query plans, keyed as query compilations: plans are computed once per query, then each
+ * execution only binds parameters and target slices.
+ */
+public class QueryPlanCache {
+
+    /**
+     * Cache holding nothing.
+     */
+    public static final QueryPlanCache DISABLED = new QueryPlanCache(0);
+
+    /**
+     * Key of a plan.
+     */
+    public static final class Key {
+
+        private final String language;
+
+        private final String query;
+
+        private final Class<?> candidate;
+
+        private final boolean subclasses;
+
+        private final int hash;
+
+        public Key(final String language, final String query, final Class<?> candidate, final boolean subclasses) {
+            this.language = language;
+            this.query = query;
+            this.candidate = candidate;
+            this.subclasses = subclasses;
+
+            int result = language.hashCode();
+            result = 31 * result + query.hashCode();
+            result = 31 * result + (candidate == null ? 0 : candidate.hashCode());
+            result = 31 * result + (subclasses ? 1 : 0);
+            this.hash = result;
+        }
+
+        @Override
+        public boolean equals(final Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            final Key other = (Key) obj;
+            return hash == other.hash
+                    && subclasses == other.subclasses
+                    && language.equals(other.language)
+                    && query.equals(other.query)
+                    && (candidate == null ? other.candidate == null : candidate.equals(other.candidate));
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        /**
+         * Key of the plan of the given query.
+         *
+         * @param ctx query context.
+         * @return key; null if the query has no string form, hence cannot be cached.
+         */
+        public static Key of(final QueryContext ctx) {
+            return ctx.getLanguage() == null || ctx.getQueryString() == null
+                    ? null
+                    : new Key(ctx.getLanguage(), ctx.getQueryString(), ctx.getCandidateType(), ctx.hasSubclasses());
+        }
+
+        @Override
+        public String toString() {
+            return language + ": " + query;
+        }
+    }
+
+    private final CacheMap plans;
+
+    /**
+     * Constructor.
+     *
+     * @param size maximum number of plans held, randomly evicted when full; 0 to disable.
+     */
+    public QueryPlanCache(final int size) {
+        if (size > 0) {
+            plans = new CacheMap(false, size);
+            plans.setSoftReferenceSize(0);
+        } else {
+            plans = null;
+        }
+    }
+
+    public static QueryPlanCache newInstance(final AzureConfiguration conf) {
+        return conf.getQueryPlanCacheSize() > 0 ? new QueryPlanCache(conf.getQueryPlanCacheSize()) : DISABLED;
+    }
+
+    public boolean isEnabled() {
+        return plans != null;
+    }
+
+    public DistributedQueryPlan get(final Key key) {
+        return plans == null || key == null ? null : (DistributedQueryPlan) plans.get(key);
+    }
+
+    public void put(final Key key, final DistributedQueryPlan plan) {
+        if (plans != null && key != null) {
+            plans.put(key, plan);
+        }
+    }
+
+    public void clear() {
+        if (plans != null) {
+            plans.clear();
+        }
+    }
+
+    public int size() {
+        return plans == null ? 0 : plans.size();
+    }
+}
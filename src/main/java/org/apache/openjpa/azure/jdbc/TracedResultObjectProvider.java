@@ -0,0 +1,110 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.openjpa.azure.jdbc;
+
+import org.apache.openjpa.azure.trace.Span;
+import org.apache.openjpa.azure.trace.Tracer;
+import org.apache.openjpa.lib.rop.ResultObjectProvider;
+
+/**
+ * Wraps the merged results of a distributed query: merging is traced as a child of the given root span, which ends
+ * when results are closed.
+ */
+class TracedResultObjectProvider implements ResultObjectProvider {
+
+    private final ResultObjectProvider delegate;
+
+    private final Span root;
+
+    private Span merge;
+
+    TracedResultObjectProvider(final ResultObjectProvider delegate, final Span root) {
+        this.delegate = delegate;
+        this.root = root;
+    }
+
+    private void startMerge() {
+        if (merge == null) {
+            merge = root.child(Tracer.MERGE);
+        }
+    }
+
+    @Override
+    public boolean supportsRandomAccess() {
+        return delegate.supportsRandomAccess();
+    }
+
+    @Override
+    public void open()
+            throws Exception {
+        startMerge();
+        delegate.open();
+    }
+
+    @Override
+    public Object getResultObject()
+            throws Exception {
+        return delegate.getResultObject();
+    }
+
+    @Override
+    public boolean next()
+            throws Exception {
+        startMerge();
+        return delegate.next();
+    }
+
+    @Override
+    public boolean absolute(final int pos)
+            throws Exception {
+        startMerge();
+        return delegate.absolute(pos);
+    }
+
+    @Override
+    public int size()
+            throws Exception {
+        return delegate.size();
+    }
+
+    @Override
+    public void reset()
+            throws Exception {
+        delegate.reset();
+    }
+
+    @Override
+    public void close()
+            throws Exception {
+        try {
+            delegate.close();
+        } finally {
+            if (merge != null) {
+                merge.end();
+            }
+            root.end();
+        }
+    }
+
+    @Override
+    public void handleCheckedException(final Exception e) {
+        root.error(e);
+        delegate.handleCheckedException(e);
+    }
+}
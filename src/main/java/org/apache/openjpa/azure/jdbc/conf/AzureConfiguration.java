@@ -22,6 +22,7 @@ import java.util.Collection;
 import java.util.List;
 import java.util.Set;
 import org.apache.openjpa.azure.Federation;
+import org.apache.openjpa.azure.trace.Tracer;
 import org.apache.openjpa.jdbc.schema.Table;
 import org.apache.openjpa.slice.Slice;
 import org.apache.openjpa.slice.jdbc.DistributedJDBCConfiguration;
@@ -123,6 +124,186 @@ public interface AzureConfiguration extends DistributedJDBCConfiguration {
      */
     Set<String> getFederatedTables(final String federationName);
 
+    /**
+     * Get the interval (milliseconds) between two consecutive reads of federation member distributions; 0 (default)
+     * means that member distributions are read only at startup or on routing errors.
+     *
+     * @return refresh interval.
+     */
+    int getRoutingRefreshInterval();
+
+    /**
+     * Get the SQL error codes signaling that a statement reached the wrong federation member (defaults to 45022).
+     *
+     * @return SQL error codes triggering a refresh of federation member distributions.
+     */
+    Set<Integer> getRoutingErrorCodes();
+
+    /**
+     * Have statements rejected by the wrong federation member to be executed again, once, after refreshing member
+     * distributions (defaults to true)?
+     */
+    boolean isRoutingRetry();
+
+    /**
+     * Have every flush onto a slice to be protected by a savepoint, so that even the first transient fault or routing
+     * error can be retried or rerouted (defaults to true)? This costs one extra round trip per slice flush; when
+     * false, savepoints are set only onto slices faulted in the last {@link #getCircuitBreakerTimeout()} milliseconds,
+     * and the first fault on any other slice fails the whole flush - hence the transaction.
+     */
+    boolean isFlushSavepoints();
+
+    /**
+     * Get the SQL error codes of transient faults (defaults to 40501, 40197, 40613, 49918).
+     *
+     * @return SQL error codes triggering a retry with backoff.
+     */
+    Set<Integer> getTransientErrorCodes();
+
+    /**
+     * Get the maximum number of retries on transient faults (defaults to 3); 0 disables retries.
+     *
+     * @return maximum number of retries.
+     */
+    int getTransientRetries();
+
+    /**
+     * Get the backoff (milliseconds) before the first retry on transient faults (defaults to 100); backoff doubles at
+     * each retry and is randomized.
+     *
+     * @return base backoff.
+     */
+    int getTransientRetryDelay();
+
+    /**
+     * Get the maximum backoff (milliseconds) between two retries on transient faults (defaults to 5000).
+     *
+     * @return maximum backoff.
+     */
+    int getTransientRetryMaxDelay();
+
+    /**
+     * Get the number of consecutive transient faults making requests to a slice fail fast (defaults to 5); 0 disables
+     * circuit breakers.
+     *
+     * @return circuit breaker threshold.
+     */
+    int getCircuitBreakerThreshold();
+
+    /**
+     * Get the time (milliseconds) requests to a slice fail fast before probing it again (defaults to 30000).
+     *
+     * @return circuit breaker timeout.
+     */
+    int getCircuitBreakerTimeout();
+
+    /**
+     * Have per-slice metrics (latencies, rows returned, errors, retries, requests in flight) to be collected (defaults
+     * to true)?
+     */
+    boolean isMetrics();
+
+    /**
+     * Have per-slice metrics to be registered as MBeans onto the platform MBean server (defaults to true)?
+     */
+    boolean isMetricsJMX();
+
+    /**
+     * Get the {@link org.apache.openjpa.azure.metrics.MetricsExporter} plugins to push per-slice metrics to (defaults
+     * to none).
+     *
+     * @return exporter plugin strings.
+     */
+    String[] getMetricsExporters();
+
+    /**
+     * Get the interval (milliseconds) between two consecutive invocations of metrics exporters (defaults to 60000).
+     *
+     * @return export interval.
+     */
+    int getMetricsExportInterval();
+
+    /**
+     * Have statements sent to slices and target policy evaluations to be traced in memory (defaults to false)? The
+     * trace can be dumped on demand, i.e. through JMX.
+     */
+    boolean isQueryTrace();
+
+    /**
+     * Get the query trace sampling: one operation every the returned value is traced (defaults to 1, all operations).
+     *
+     * @return query trace sampling.
+     */
+    int getQueryTraceSampling();
+
+    /**
+     * Get the number of events held by the query trace (defaults to 1024); older events are overwritten.
+     *
+     * @return query trace size.
+     */
+    int getQueryTraceSize();
+
+    /**
+     * Get the tracer producing spans of distributed executions (defaults to
+     * {@link org.apache.openjpa.azure.trace.NoopTracer}).
+     *
+     * @return tracer.
+     */
+    Tracer getTracerInstance();
+
+    /**
+     * Have flushes made only of new, non-replicated instances to be streamed onto members in batches (defaults to
+     * false)? Batches are written in routing order, so parents have to be persisted before their children.
+     */
+    boolean isBulkIngest();
+
+    /**
+     * Get the number of new instances written to a member by each bulk ingest batch (defaults to 1000).
+     *
+     * @return bulk ingest batch size.
+     */
+    int getBulkIngestBatchSize();
+
+    /**
+     * Get the number of bulk ingest batches routed to a member and not yet written, above which routing waits for the
+     * member to catch up (defaults to 2).
+     *
+     * @return maximum bulk ingest batches in flight per member.
+     */
+    int getBulkIngestMaxInFlight();
+
+    /**
+     * Get the maximum number of hollow instances loaded from a slice by a single IN-list query; 0 disables batched
+     * loading (defaults to 100).
+     *
+     * @return load batch size.
+     */
+    int getLoadBatchSize();
+
+    /**
+     * Get the maximum number of per-slice query results held by the slice query cache; 0 disables the cache (defaults
+     * to 0).
+     *
+     * @return slice query cache size.
+     */
+    int getSliceQueryCacheSize();
+
+    /**
+     * Get the maximum number of object id to slice associations remembered by finds and lazy loads, so that they do
+     * not evaluate the finder target policy again; 0 disables the cache (defaults to 10000).
+     *
+     * @return maximum number of cached slice locations.
+     */
+    int getSliceLocationCacheSize();
+
+    /**
+     * Get the maximum number of distributed query plans (replication, merge strategy and aggregates of compiled
+     * queries) held for reuse by later executions; 0 disables the cache (defaults to 1000).
+     *
+     * @return query plan cache size.
+     */
+    int getQueryPlanCacheSize();
+
     Federation getFederation(final Slice slice);
 
     Federation getFederation(final String sliceName);
@@ -22,6 +22,7 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -30,11 +31,16 @@ import org.apache.commons.lang.builder.EqualsBuilder;
 import org.apache.commons.lang.builder.HashCodeBuilder;
 import org.apache.openjpa.azure.Federation;
 import org.apache.openjpa.azure.ProductDerivation;
+import org.apache.openjpa.azure.jdbc.kernel.AzureHiLoSeq;
 import org.apache.openjpa.azure.kernel.AzureBroker;
+import org.apache.openjpa.azure.trace.NoopTracer;
+import org.apache.openjpa.azure.trace.Tracer;
 import org.apache.openjpa.azure.util.AzureUtils;
 import org.apache.openjpa.jdbc.schema.ForeignKey;
 import org.apache.openjpa.jdbc.schema.Table;
 import org.apache.openjpa.lib.conf.BooleanValue;
+import org.apache.openjpa.lib.conf.IntValue;
+import org.apache.openjpa.lib.conf.PluginValue;
 import org.apache.openjpa.lib.conf.StringListValue;
 import org.apache.openjpa.lib.util.Localizer;
 import org.apache.openjpa.slice.Slice;
@@ -52,13 +58,160 @@ public class AzureConfigurationImpl extends DistributedJDBCConfigurationImpl imp
     
     private BooleanValue performUseFederation;
 
+    private final IntValue routingRefreshInterval;
+
+    private final StringListValue routingErrorCodes;
+
+    private final BooleanValue routingRetry;
+
+    private final BooleanValue flushSavepoints;
+
+    private final StringListValue transientErrorCodes;
+
+    private final IntValue transientRetries;
+
+    private final IntValue transientRetryDelay;
+
+    private final IntValue transientRetryMaxDelay;
+
+    private final IntValue circuitBreakerThreshold;
+
+    private final IntValue circuitBreakerTimeout;
+
+    private final BooleanValue metrics;
+
+    private final BooleanValue metricsJMX;
+
+    private final StringListValue metricsExporters;
+
+    private final IntValue metricsExportInterval;
+
+    private final BooleanValue queryTrace;
+
+    private final IntValue queryTraceSampling;
+
+    private final IntValue queryTraceSize;
+
+    private final PluginValue tracerPlugin;
+
+    private final BooleanValue bulkIngest;
+
+    private final IntValue bulkIngestBatchSize;
+
+    private final IntValue bulkIngestMaxInFlight;
+
+    private final IntValue loadBatchSize;
+
+    private final IntValue sliceQueryCacheSize;
+
+    private final IntValue sliceLocationCacheSize;
+
+    private final IntValue queryPlanCacheSize;
+
     private Map<String, List<Federation>> federatedTables = new HashMap<String, List<Federation>>();
 
     public AzureConfigurationImpl() {
         super();
         federationsPlugin = addStringList(ProductDerivation.PREFIX_AZURE + ".Federations");
         performUseFederation = addBoolean(ProductDerivation.PREFIX_AZURE + ".PerformUseFederation");
+
+        routingRefreshInterval = addInt(ProductDerivation.PREFIX_AZURE + ".RoutingRefreshInterval");
+        routingRefreshInterval.setDefault("0");
+        routingRefreshInterval.set(0);
+
+        routingErrorCodes = addStringList(ProductDerivation.PREFIX_AZURE + ".RoutingErrorCodes");
+        routingErrorCodes.setDefault("45022");
+        routingErrorCodes.setString("45022");
+
+        routingRetry = addBoolean(ProductDerivation.PREFIX_AZURE + ".RoutingRetry");
+        routingRetry.setDefault("true");
+        routingRetry.set(true);
+
+        flushSavepoints = addBoolean(ProductDerivation.PREFIX_AZURE + ".FlushSavepoints");
+        flushSavepoints.setDefault("true");
+        flushSavepoints.set(true);
+
+        transientErrorCodes = addStringList(ProductDerivation.PREFIX_AZURE + ".TransientErrorCodes");
+        transientErrorCodes.setDefault("40501,40197,40613,49918");
+        transientErrorCodes.setString("40501,40197,40613,49918");
+
+        transientRetries = addInt(ProductDerivation.PREFIX_AZURE + ".TransientRetries");
+        transientRetries.setDefault("3");
+        transientRetries.set(3);
+
+        transientRetryDelay = addInt(ProductDerivation.PREFIX_AZURE + ".TransientRetryDelay");
+        transientRetryDelay.setDefault("100");
+        transientRetryDelay.set(100);
+
+        transientRetryMaxDelay = addInt(ProductDerivation.PREFIX_AZURE + ".TransientRetryMaxDelay");
+        transientRetryMaxDelay.setDefault("5000");
+        transientRetryMaxDelay.set(5000);
+
+        circuitBreakerThreshold = addInt(ProductDerivation.PREFIX_AZURE + ".CircuitBreakerThreshold");
+        circuitBreakerThreshold.setDefault("5");
+        circuitBreakerThreshold.set(5);
+
+        circuitBreakerTimeout = addInt(ProductDerivation.PREFIX_AZURE + ".CircuitBreakerTimeout");
+        circuitBreakerTimeout.setDefault("30000");
+        circuitBreakerTimeout.set(30000);
+
+        metrics = addBoolean(ProductDerivation.PREFIX_AZURE + ".Metrics");
+        metrics.setDefault("true");
+        metrics.set(true);
+
+        metricsJMX = addBoolean(ProductDerivation.PREFIX_AZURE + ".MetricsJMX");
+        metricsJMX.setDefault("true");
+        metricsJMX.set(true);
+
+        metricsExporters = addStringList(ProductDerivation.PREFIX_AZURE + ".MetricsExporters");
+
+        metricsExportInterval = addInt(ProductDerivation.PREFIX_AZURE + ".MetricsExportInterval");
+        metricsExportInterval.setDefault("60000");
+        metricsExportInterval.set(60000);
+
+        queryTrace = addBoolean(ProductDerivation.PREFIX_AZURE + ".QueryTrace");
+        queryTrace.setDefault("false");
+        queryTrace.set(false);
+
+        queryTraceSampling = addInt(ProductDerivation.PREFIX_AZURE + ".QueryTraceSampling");
+        queryTraceSampling.setDefault("1");
+        queryTraceSampling.set(1);
+
+        queryTraceSize = addInt(ProductDerivation.PREFIX_AZURE + ".QueryTraceSize");
+        queryTraceSize.setDefault("1024");
+        queryTraceSize.set(1024);
+
+        tracerPlugin = addPlugin(ProductDerivation.PREFIX_AZURE + ".Tracer", true);
+        tracerPlugin.setDefault(NoopTracer.class.getName());
+        tracerPlugin.setString(NoopTracer.class.getName());
+
+        bulkIngest = addBoolean(ProductDerivation.PREFIX_AZURE + ".BulkIngest");
+        bulkIngest.setDefault("false");
+        bulkIngest.set(false);
+
+        bulkIngestBatchSize = addInt(ProductDerivation.PREFIX_AZURE + ".BulkIngestBatchSize");
+        bulkIngestBatchSize.setDefault("1000");
+        bulkIngestBatchSize.set(1000);
+
+        bulkIngestMaxInFlight = addInt(ProductDerivation.PREFIX_AZURE + ".BulkIngestMaxInFlight");
+        bulkIngestMaxInFlight.setDefault("2");
+        bulkIngestMaxInFlight.set(2);
+
+        loadBatchSize = addInt(ProductDerivation.PREFIX_AZURE + ".LoadBatchSize");
+        loadBatchSize.setDefault("100");
+        loadBatchSize.set(100);
+
+        sliceQueryCacheSize = addInt(ProductDerivation.PREFIX_AZURE + ".SliceQueryCacheSize");
+        sliceQueryCacheSize.setDefault("0");
+        sliceQueryCacheSize.set(0);
+        sliceLocationCacheSize = addInt(ProductDerivation.PREFIX_AZURE + ".SliceLocationCacheSize");
+        sliceLocationCacheSize.setDefault("10000");
+        sliceLocationCacheSize.set(10000);
+        queryPlanCacheSize = addInt(ProductDerivation.PREFIX_AZURE + ".QueryPlanCacheSize");
+        queryPlanCacheSize.setDefault("1000");
+        queryPlanCacheSize.set(1000);
         brokerPlugin.setString(AzureBroker.class.getName());
+        seqPlugin.setString(AzureHiLoSeq.class.getName());
     }
 
     @Override
@@ -71,6 +224,150 @@ public class AzureConfigurationImpl extends DistributedJDBCConfigurationImpl imp
         return performUseFederation.get();
     }
     
+    @Override
+    public int getRoutingRefreshInterval() {
+        return routingRefreshInterval.get();
+    }
+
+    @Override
+    public Set<Integer> getRoutingErrorCodes() {
+        return toErrorCodes(routingErrorCodes.get());
+    }
+
+    @Override
+    public boolean isRoutingRetry() {
+        return routingRetry.get();
+    }
+
+    @Override
+    public boolean isFlushSavepoints() {
+        return flushSavepoints.get();
+    }
+
+    @Override
+    public Set<Integer> getTransientErrorCodes() {
+        return toErrorCodes(transientErrorCodes.get());
+    }
+
+    @Override
+    public int getTransientRetries() {
+        return transientRetries.get();
+    }
+
+    @Override
+    public int getTransientRetryDelay() {
+        return transientRetryDelay.get();
+    }
+
+    @Override
+    public int getTransientRetryMaxDelay() {
+        return transientRetryMaxDelay.get();
+    }
+
+    @Override
+    public int getCircuitBreakerThreshold() {
+        return circuitBreakerThreshold.get();
+    }
+
+    @Override
+    public int getCircuitBreakerTimeout() {
+        return circuitBreakerTimeout.get();
+    }
+
+    @Override
+    public boolean isMetrics() {
+        return metrics.get();
+    }
+
+    @Override
+    public boolean isMetricsJMX() {
+        return metricsJMX.get();
+    }
+
+    @Override
+    public String[] getMetricsExporters() {
+        return metricsExporters.get() == null ? new String[0] : metricsExporters.get();
+    }
+
+    @Override
+    public int getMetricsExportInterval() {
+        return metricsExportInterval.get();
+    }
+
+    @Override
+    public boolean isQueryTrace() {
+        return queryTrace.get();
+    }
+
+    @Override
+    public int getQueryTraceSampling() {
+        return queryTraceSampling.get();
+    }
+
+    @Override
+    public int getQueryTraceSize() {
+        return queryTraceSize.get();
+    }
+
+    @Override
+    public Tracer getTracerInstance() {
+        if (tracerPlugin.get() == null) {
+            tracerPlugin.instantiate(Tracer.class, this);
+        }
+        return (Tracer) tracerPlugin.get();
+    }
+
+    @Override
+    public boolean isBulkIngest() {
+        return bulkIngest.get();
+    }
+
+    @Override
+    public int getBulkIngestBatchSize() {
+        return bulkIngestBatchSize.get();
+    }
+
+    @Override
+    public int getBulkIngestMaxInFlight() {
+        return bulkIngestMaxInFlight.get();
+    }
+
+    @Override
+    public int getLoadBatchSize() {
+        return loadBatchSize.get();
+    }
+
+    @Override
+    public int getSliceQueryCacheSize() {
+        return sliceQueryCacheSize.get();
+    }
+
+    @Override
+    public int getSliceLocationCacheSize() {
+        return sliceLocationCacheSize.get();
+    }
+
+    @Override
+    public int getQueryPlanCacheSize() {
+        return queryPlanCacheSize.get();
+    }
+
+    private Set<Integer> toErrorCodes(final String[] codes) {
+        final Set<Integer> res = new HashSet<Integer>();
+
+        for (String code : codes) {
+            if (StringUtils.isNotBlank(code)) {
+                try {
+                    res.add(Integer.valueOf(code.trim()));
+                } catch (NumberFormatException e) {
+                    getConfigurationLog().warn("Invalid SQL error code: " + code);
+                }
+            }
+        }
+
+        return res;
+    }
+
     @Override
     public String getDistributionName(final String federationName) {
         final Federation fed = federations.get(federationName);
@@ -156,6 +453,17 @@ public class AzureConfigurationImpl extends DistributedJDBCConfigurationImpl imp
                     federation.setRangeMappingType(RangeType.BIGINT);
                 }
 
+                final String cacheSize = newProps.get(ProductDerivation.PREFIX_AZURE + "."
+                        + federationName + ".CacheSize");
+                if (StringUtils.isNotBlank(cacheSize)) {
+                    try {
+                        federation.setCacheSize(Integer.parseInt(cacheSize.trim()));
+                    } catch (NumberFormatException e) {
+                        getConfigurationLog().info(_loc.get("invalid-property", ProductDerivation.PREFIX_AZURE + "."
+                                + federationName + ".CacheSize"));
+                    }
+                }
+
                 final String fedTableNames = newProps.get(ProductDerivation.PREFIX_AZURE + "."
                         + federationName + ".Tables");
 
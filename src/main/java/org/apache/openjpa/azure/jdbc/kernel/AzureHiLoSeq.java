@@ -0,0 +1,120 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.openjpa.azure.jdbc.kernel;
+
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.openjpa.jdbc.kernel.JDBCStore;
+import org.apache.openjpa.jdbc.kernel.TableJDBCSeq;
+import org.apache.openjpa.jdbc.meta.ClassMapping;
+
+/**
+ * Hi/lo sequence: each value taken from the sequence table (on the master slice) reserves a block of
+ * <code>BlockSize</code> identifiers for this JVM, handed out in memory without locking; the database is hit only once
+ * per block.
+ *
+ * Generated identifiers are <code>hi * BlockSize + lo</code>: since the sequence table is shared, blocks never overlap
+ * among JVMs, nor with identifiers previously generated by {@link TableJDBCSeq} on the same table. The opposite does
+ * not hold: do not switch back to a plain table sequence once this one has been used.
+ *
+ * This is the default sequence of Azure persistence units; configure it as
+ * <code>openjpa.Sequence=org.apache.openjpa.azure.jdbc.kernel.AzureHiLoSeq(BlockSize=100000)</code> to change the block
+ * size (defaults to 10000).
+ */
+public class AzureHiLoSeq extends TableJDBCSeq {
+
+    /**
+     * Identifiers reserved for this JVM, from <code>next</code> (included) to <code>end</code> (excluded).
+     */
+    static final class Block {
+
+        private final AtomicLong next;
+
+        private final long end;
+
+        Block(final long start, final long end) {
+            this.next = new AtomicLong(start);
+            this.end = end;
+        }
+
+        /**
+         * Take the next identifier of this block, if any.
+         *
+         * @return next identifier; -1 if this block is exhausted.
+         */
+        long take() {
+            final long value = next.getAndIncrement();
+            return value < end ? value : -1;
+        }
+    }
+
+    private int blockSize = 10000;
+
+    private volatile Block block;
+
+    public AzureHiLoSeq() {
+        super();
+        // one hi value per round trip, not to waste blocks when the JVM stops
+        setAllocate(1);
+    }
+
+    public int getBlockSize() {
+        return blockSize;
+    }
+
+    public void setBlockSize(final int blockSize) {
+        this.blockSize = Math.max(1, blockSize);
+    }
+
+    @Override
+    protected Object nextInternal(final JDBCStore store, final ClassMapping mapping)
+            throws Exception {
+
+        while (true) {
+            final Block current = block;
+            if (current != null) {
+                final long value = current.take();
+                if (value >= 0) {
+                    return value;
+                }
+            }
+            reserve(store, mapping, current);
+        }
+    }
+
+    /**
+     * Reserve a new block, unless another thread already replaced the exhausted one.
+     */
+    private synchronized void reserve(final JDBCStore store, final ClassMapping mapping, final Block exhausted)
+            throws Exception {
+
+        if (block == exhausted) {
+            final long hi = nextHi(store, mapping);
+            block = new Block(hi * blockSize, (hi + 1) * blockSize);
+        }
+    }
+
+    /**
+     * Take the next hi value from the sequence table.
+     */
+    protected long nextHi(final JDBCStore store, final ClassMapping mapping)
+            throws Exception {
+
+        return ((Number) super.nextInternal(store, mapping)).longValue();
+    }
+}
@@ -0,0 +1,229 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.openjpa.azure.jdbc.kernel;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.commons.lang.StringUtils;
+import org.apache.openjpa.azure.Federation;
+import org.apache.openjpa.azure.jdbc.conf.AzureConfiguration;
+import org.apache.openjpa.azure.jdbc.conf.AzureConfiguration.RangeType;
+import org.apache.openjpa.azure.metrics.MetricsRegistry;
+import org.apache.openjpa.azure.routing.RoutingTable;
+import org.apache.openjpa.jdbc.conf.JDBCConfiguration;
+import org.apache.openjpa.jdbc.kernel.JDBCStore;
+import org.apache.openjpa.jdbc.meta.ClassMapping;
+import org.apache.openjpa.slice.SlicePersistence;
+import org.apache.openjpa.slice.jdbc.DistributedJDBCStoreManager;
+
+/**
+ * Hi/lo sequence choosing the federation member first, then generating an identifier within the range of that member,
+ * so that new rows are spread among members instead of landing on the member covering the current sequence value.
+ *
+ * The target member is the one given by the {@link SlicePersistence#HINT_TARGET} hint, if set onto the current fetch
+ * configuration; otherwise it is chosen according to the <code>Strategy</code> property:
+ * <ul>
+ * <li><code>round-robin</code> (default): members in turn;</li>
+ * <li><code>least-loaded</code>: member with fewest requests in flight (as per slice metrics), ties in turn.</li>
+ * </ul>
+ * Identifiers are <code>max(fedLowerBound, 0) + hi * BlockSize + lo</code>, where hi values are taken from the
+ * sequence table as for {@link AzureHiLoSeq}; members whose range is exhausted are skipped.
+ *
+ * Applies to classes mapped onto federated tables with a <code>BIGINT</code> or <code>INT</code> range mapping,
+ * generating the range mapping column; other classes get plain hi/lo identifiers. Configure it as
+ * <code>openjpa.Sequence=org.apache.openjpa.azure.jdbc.kernel.AzureRangeSeq(Strategy=least-loaded)</code>.
+ */
+public class AzureRangeSeq extends AzureHiLoSeq {
+
+    public enum Strategy {
+
+        ROUND_ROBIN,
+        LEAST_LOADED
+
+    }
+
+    private Strategy strategy = Strategy.ROUND_ROBIN;
+
+    private final AtomicInteger turn = new AtomicInteger();
+
+    private final ConcurrentMap<String, Block> blocks = new ConcurrentHashMap<String, Block>();
+
+    private final Set<String> exhausted = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+    public String getStrategy() {
+        return strategy.name().toLowerCase().replace('_', '-');
+    }
+
+    public void setStrategy(final String strategy) {
+        this.strategy = Strategy.valueOf(strategy.trim().toUpperCase().replace('-', '_'));
+    }
+
+    @Override
+    protected Object nextInternal(final JDBCStore store, final ClassMapping mapping)
+            throws Exception {
+
+        if (!(store instanceof DistributedJDBCStoreManager) || mapping == null) {
+            return super.nextInternal(store, mapping);
+        }
+        final DistributedJDBCStoreManager dstore = (DistributedJDBCStoreManager) store;
+
+        final List<Federation> federations =
+                ((AzureConfiguration) dstore.getConfiguration()).getFederations(mapping.getTable());
+        final Federation fed = federations.isEmpty() ? null : federations.get(0);
+        if (fed == null
+                || (fed.getRangeMappingType() != RangeType.BIGINT && fed.getRangeMappingType() != RangeType.INT)
+                || StringUtils.isBlank(fed.getRangeMappingName(mapping.getTable().getFullIdentifier().getName()))) {
+
+            return super.nextInternal(store, mapping);
+        }
+
+        // read a single snapshot: member bounds could be refreshed meanwhile
+        final RoutingTable routing = dstore.getFederationRegistry().get();
+        final List<Object> bounds = routing.getMembers(fed);
+        if (bounds.isEmpty()) {
+            return super.nextInternal(store, mapping);
+        }
+
+        final List<String> members = new ArrayList<String>(bounds.size());
+        for (Object bound : bounds) {
+            members.add(routing.getSliceName(fed, bound));
+        }
+
+        final int first = choose(members, getHint(store), dstore.getMetricsRegistry());
+        for (int i = 0; i < bounds.size(); i++) {
+            final int index = (first + i) % bounds.size();
+
+            final long low = Long.parseLong(bounds.get(index).toString());
+            final long high = index + 1 < bounds.size()
+                    ? Long.parseLong(bounds.get(index + 1).toString())
+                    : fed.getRangeMappingType() == RangeType.INT ? Integer.MAX_VALUE : Long.MAX_VALUE;
+
+            final long value = nextInMember(store, mapping, fed.getName() + "." + low, Math.max(low, 0), high);
+            if (value >= 0) {
+                return value;
+            }
+        }
+
+        final String message = "Ranges of all members of " + fed.getName() + " are exhausted, generating hi/lo ids";
+        if (getConfiguration() != null && getConfiguration().getLog(JDBCConfiguration.LOG_DIAG).isWarnEnabled()) {
+            getConfiguration().getLog(JDBCConfiguration.LOG_DIAG).warn(message);
+        }
+        return super.nextInternal(store, mapping);
+    }
+
+    private Object getHint(final JDBCStore store) {
+        return store.getContext() == null || store.getContext().getFetchConfiguration() == null
+                ? null
+                : store.getContext().getFetchConfiguration().getHint(SlicePersistence.HINT_TARGET);
+    }
+
+    /**
+     * Choose the target member.
+     *
+     * @param members slice names bound to federation members, sorted by lower bound; null for unbound members.
+     * @param hint target slice name(s) requested by the caller; can be null.
+     * @param metrics slice metrics, for least loaded strategy; can be null.
+     * @return index of the chosen member.
+     */
+    int choose(final List<String> members, final Object hint, final MetricsRegistry metrics) {
+        if (hint != null) {
+            final List<?> targets = hint instanceof Object[] ? Arrays.asList((Object[]) hint) : Arrays.asList(hint);
+            for (Object target : targets) {
+                final int index = members.indexOf(String.valueOf(target));
+                if (index >= 0) {
+                    return index;
+                }
+            }
+        }
+
+        final int start = (turn.getAndIncrement() & Integer.MAX_VALUE) % members.size();
+        if (strategy == Strategy.ROUND_ROBIN || metrics == null) {
+            return start;
+        }
+
+        int chosen = start;
+        long least = Long.MAX_VALUE;
+        for (int i = 0; i < members.size(); i++) {
+            final int index = (start + i) % members.size();
+            final long inFlight = members.get(index) == null
+                    ? Long.MAX_VALUE - 1
+                    : metrics.getSliceMetrics(members.get(index)).getInFlight();
+            if (inFlight < least) {
+                least = inFlight;
+                chosen = index;
+            }
+        }
+        return chosen;
+    }
+
+    /**
+     * Generate an identifier within the range of a member.
+     *
+     * @param store store.
+     * @param mapping mapping.
+     * @param member member key.
+     * @param base lowest identifier of the member.
+     * @param high first identifier beyond the member range.
+     * @return identifier; -1 if the member range is exhausted.
+     */
+    long nextInMember(final JDBCStore store, final ClassMapping mapping, final String member, final long base,
+            final long high)
+            throws Exception {
+
+        while (!exhausted.contains(member)) {
+            final Block current = blocks.get(member);
+            if (current != null) {
+                final long value = current.take();
+                if (value >= 0 && value < high) {
+                    return value;
+                }
+            }
+            if (!reserve(store, mapping, member, current, base, high)) {
+                return -1;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Reserve a new block for the given member, unless another thread already replaced the exhausted one.
+     *
+     * @return false if the member range is exhausted.
+     */
+    private synchronized boolean reserve(final JDBCStore store, final ClassMapping mapping, final String member,
+            final Block previous, final long base, final long high)
+            throws Exception {
+
+        if (blocks.get(member) == previous) {
+            final long start = base + nextHi(store, mapping) * getBlockSize();
+            if (start < base || start >= high) {
+                exhausted.add(member);
+                return false;
+            }
+            blocks.put(member, new Block(start, Math.min(high, start + getBlockSize())));
+        }
+        return true;
+    }
+}
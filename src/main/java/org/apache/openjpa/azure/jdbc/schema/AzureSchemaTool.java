@@ -31,8 +31,8 @@ import java.util.List;
 import java.util.Map;
 import org.apache.openjpa.azure.AzureSliceConfiguration;
 import org.apache.openjpa.azure.Federation;
-import org.apache.openjpa.azure.jdbc.AzureSliceStoreManager;
 import org.apache.openjpa.azure.jdbc.conf.AzureConfiguration;
+import org.apache.openjpa.azure.routing.FederationRegistry;
 import org.apache.openjpa.azure.util.AzureUtils;
 import org.apache.openjpa.jdbc.conf.JDBCConfiguration;
 import org.apache.openjpa.jdbc.schema.ForeignKey;
@@ -302,13 +302,7 @@ public class AzureSchemaTool extends SchemaTool {
 
         if (conn != null && fed != null 
                 && ((AzureConfiguration)((AzureSliceConfiguration) conf).getGlobalConf()).isPerformUseFederation()) {
-            if (AzureSliceStoreManager.federations == null || AzureSliceStoreManager.federations.isEmpty()) {
-                AzureSliceStoreManager.initFederations(((AzureSliceConfiguration) conf).getGlobalConf(), conn.getKey());
-            }
-
-            int index = AzureUtils.getSliceMemberIndex(sliceName);
-
-            AzureUtils.useFederation(conn.getKey(), fed, AzureSliceStoreManager.federations.get(fed).get(index));
+            AzureUtils.useFederation(conn.getKey(), fed, getFedLowerBound(sliceName, conn.getKey()));
         }
 
         return conn;
@@ -323,16 +317,15 @@ public class AzureSchemaTool extends SchemaTool {
             final Federation fed = ((AzureSliceConfiguration) conf).getFederation(sliceName);
 
             if (conn != null && fed != null) {
-                if (AzureSliceStoreManager.federations == null || AzureSliceStoreManager.federations.isEmpty()) {
-                    AzureSliceStoreManager.initFederations(((AzureSliceConfiguration) conf).getGlobalConf(), conn);
-                }
-
-                int index = AzureUtils.getSliceMemberIndex(sliceName);
-
-                AzureUtils.useFederation(conn, fed, AzureSliceStoreManager.federations.get(fed).get(index));
+                AzureUtils.useFederation(conn, fed, getFedLowerBound(sliceName, conn));
             }
         }
 
         return conn;
     }
+
+    private Object getFedLowerBound(final String sliceName, final Connection conn) {
+        final FederationRegistry registry = ((AzureSliceConfiguration) conf).getFederationRegistry();
+        return registry.init(((AzureSliceConfiguration) conf).getGlobalConf(), conn).getLowerBound(sliceName);
+    }
 }
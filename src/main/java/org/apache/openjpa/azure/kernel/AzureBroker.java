@@ -20,7 +20,9 @@ package org.apache.openjpa.azure.kernel;
 
 import org.apache.openjpa.azure.AzureQueryImpl;
 import org.apache.openjpa.kernel.QueryImpl;
+import org.apache.openjpa.kernel.StateManagerImpl;
 import org.apache.openjpa.kernel.StoreQuery;
+import org.apache.openjpa.meta.ClassMetaData;
 import org.apache.openjpa.slice.DistributedBrokerImpl;
 
 public class AzureBroker extends DistributedBrokerImpl {
@@ -31,4 +33,11 @@ public class AzureBroker extends DistributedBrokerImpl {
     protected QueryImpl newQueryImpl(String lang, StoreQuery sq) {
         return new AzureQueryImpl(this, lang, sq);
     }
+
+    /**
+     * Create a state manager able to be flushed concurrently onto several slices.
+     */
+    protected StateManagerImpl newStateManagerImpl(Object oid, ClassMetaData meta) {
+        return new AzureStateManager(oid, meta, this);
+    }
 }
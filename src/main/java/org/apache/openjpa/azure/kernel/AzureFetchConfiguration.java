@@ -0,0 +1,109 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.openjpa.azure.kernel;
+
+import org.apache.openjpa.azure.routing.RoutingContext;
+import org.apache.openjpa.kernel.FetchConfiguration;
+import org.apache.openjpa.slice.SlicePersistence;
+import org.apache.openjpa.slice.jdbc.TargetFetchConfiguration;
+
+/**
+ * Fetch configuration carrying the {@link RoutingContext} resolved from its target hint, so that target slice names
+ * are matched once per query execution instead of at each use; the context is dropped whenever targets are set again.
+ */
+@SuppressWarnings("serial")
+public class AzureFetchConfiguration extends TargetFetchConfiguration {
+
+    private RoutingContext.Reason _reason = RoutingContext.Reason.ALL;
+
+    private volatile RoutingContext _routing;
+
+    public AzureFetchConfiguration() {
+        super();
+    }
+
+    protected AzureFetchConfiguration(final ConfigurationState state, final JDBCConfigurationState jstate) {
+        super(state, jstate);
+    }
+
+    @Override
+    protected AzureFetchConfiguration newInstance(final ConfigurationState state) {
+        return new AzureFetchConfiguration(state, state == null ? null : _state);
+    }
+
+    @Override
+    public void copy(final FetchConfiguration fetch) {
+        super.copy(fetch);
+        if (fetch instanceof AzureFetchConfiguration) {
+            _reason = ((AzureFetchConfiguration) fetch)._reason;
+            _routing = ((AzureFetchConfiguration) fetch)._routing;
+        }
+    }
+
+    @Override
+    public void setHint(final String key, final Object value) {
+        super.setHint(key, value);
+        targetsChanged(key, RoutingContext.Reason.HINT);
+    }
+
+    @Override
+    public void setHint(final String key, final Object value, final Object original) {
+        super.setHint(key, value, original);
+        targetsChanged(key, RoutingContext.Reason.HINT);
+    }
+
+    /**
+     * Set the targets computed by the query target policy.
+     */
+    @Override
+    public void setTargets(final String[] targets) {
+        super.setTargets(targets);
+        targetsChanged(SlicePersistence.HINT_TARGET, RoutingContext.Reason.POLICY);
+    }
+
+    private void targetsChanged(final String key, final RoutingContext.Reason reason) {
+        if (SlicePersistence.HINT_TARGET.equals(key)) {
+            _reason = reason;
+            _routing = null;
+        }
+    }
+
+    /**
+     * Get the reason of the targets currently set as hint.
+     *
+     * @return {@link RoutingContext.Reason#HINT} if set by the user, {@link RoutingContext.Reason#POLICY} if set by
+     * the query target policy, {@link RoutingContext.Reason#ALL} if never set.
+     */
+    public RoutingContext.Reason getTargetReason() {
+        return _reason;
+    }
+
+    /**
+     * Get the routing context last resolved from the current targets, if any.
+     *
+     * @return routing context; null if not resolved yet or targets changed since.
+     */
+    public RoutingContext getRoutingContext() {
+        return _routing;
+    }
+
+    public void setRoutingContext(final RoutingContext routing) {
+        _routing = routing;
+    }
+}
@@ -0,0 +1,180 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.openjpa.azure.kernel;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+import org.apache.openjpa.kernel.BrokerImpl;
+import org.apache.openjpa.kernel.StateManagerImpl;
+import org.apache.openjpa.meta.ClassMetaData;
+import org.apache.openjpa.slice.SliceInfo;
+
+/**
+ * State manager supporting concurrent flushes of replicated instances onto several slices.
+ *
+ * While a replica flush is in progress, field access is serialized by a per-instance lock and each slice thread sees
+ * its own version, bound via {@link #bindSliceVersions(Map)}: version checks and increments performed by a slice flush
+ * do not affect the flushes running onto other slices. The shared version is assigned once, when the replica flush
+ * ends.
+ *
+ * Ordinals of the slices this instance is bound to are cached as well, to spare name lookups when binning flushes.
+ */
+public class AzureStateManager extends StateManagerImpl {
+
+    private static final long serialVersionUID = -4418602457713690226L;
+
+    private static final ThreadLocal<Map<AzureStateManager, Object>> SLICE_VERSIONS =
+            new ThreadLocal<Map<AzureStateManager, Object>>();
+
+    private transient volatile boolean replicaFlush;
+
+    private transient ReentrantLock replicaLock;
+
+    private transient SliceInfo sliceInfo;
+
+    private transient int[] sliceOrdinals;
+
+    protected AzureStateManager(final Object id, final ClassMetaData meta, final BrokerImpl broker) {
+        super(id, meta, broker);
+    }
+
+    /**
+     * Get the cached slice ordinals.
+     *
+     * @param info current slice assignment.
+     * @return ordinals cached for the given slice assignment; null if not cached or if assignment has changed.
+     */
+    public int[] getSliceOrdinals(final SliceInfo info) {
+        return info == sliceInfo ? sliceOrdinals : null;
+    }
+
+    /**
+     * Cache slice ordinals.
+     *
+     * @param info slice assignment.
+     * @param ordinals ordinals of the slices in the given assignment.
+     */
+    public void setSliceOrdinals(final SliceInfo info, final int[] ordinals) {
+        this.sliceInfo = info;
+        this.sliceOrdinals = ordinals;
+    }
+
+    /**
+     * Start a replica flush; to be invoked before handing this instance to slice threads.
+     */
+    public void beginReplicaFlush() {
+        if (replicaLock == null) {
+            replicaLock = new ReentrantLock();
+        }
+        replicaFlush = true;
+    }
+
+    /**
+     * End a replica flush; to be invoked once all slice threads are done with this instance.
+     *
+     * @param versions versions resulting from the flush onto each slice, in slice order; the last one found for this
+     * instance becomes the shared version.
+     */
+    public void endReplicaFlush(final Iterable<Map<AzureStateManager, Object>> versions) {
+        replicaFlush = false;
+
+        Object next = null;
+        boolean found = false;
+        for (Map<AzureStateManager, Object> slice : versions) {
+            if (slice != null && slice.containsKey(this)) {
+                next = slice.get(this);
+                found = true;
+            }
+        }
+        if (found) {
+            super.setNextVersion(next);
+        }
+    }
+
+    /**
+     * Bind the given versions to the current (slice) thread.
+     *
+     * @param versions versions of the instances flushed onto the slice, as seen before flushing any slice.
+     */
+    public static void bindSliceVersions(final Map<AzureStateManager, Object> versions) {
+        SLICE_VERSIONS.set(new IdentityHashMap<AzureStateManager, Object>(versions));
+    }
+
+    /**
+     * Unbind versions from the current (slice) thread.
+     *
+     * @return versions as left by the flush onto the slice.
+     */
+    public static Map<AzureStateManager, Object> unbindSliceVersions() {
+        final Map<AzureStateManager, Object> versions = SLICE_VERSIONS.get();
+        SLICE_VERSIONS.remove();
+        return versions;
+    }
+
+    private Map<AzureStateManager, Object> sliceVersions() {
+        if (!replicaFlush) {
+            return null;
+        }
+        final Map<AzureStateManager, Object> versions = SLICE_VERSIONS.get();
+        return versions == null || !versions.containsKey(this) ? null : versions;
+    }
+
+    @Override
+    public Object getVersion() {
+        final Map<AzureStateManager, Object> versions = sliceVersions();
+        return versions == null ? super.getVersion() : versions.get(this);
+    }
+
+    @Override
+    public void setVersion(final Object version) {
+        final Map<AzureStateManager, Object> versions = sliceVersions();
+        if (versions == null) {
+            super.setVersion(version);
+        } else {
+            versions.put(this, version);
+        }
+    }
+
+    @Override
+    public void setNextVersion(final Object version) {
+        final Map<AzureStateManager, Object> versions = sliceVersions();
+        if (versions == null) {
+            super.setNextVersion(version);
+        } else {
+            versions.put(this, version);
+        }
+    }
+
+    @Override
+    protected void lock() {
+        if (replicaFlush) {
+            replicaLock.lock();
+        }
+        super.lock();
+    }
+
+    @Override
+    protected void unlock() {
+        super.unlock();
+        if (replicaLock != null && replicaLock.isHeldByCurrentThread()) {
+            replicaLock.unlock();
+        }
+    }
+}
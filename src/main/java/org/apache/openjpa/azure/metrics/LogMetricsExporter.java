@@ -0,0 +1,52 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.openjpa.azure.metrics;
+
+import java.util.Collection;
+import org.apache.openjpa.azure.jdbc.conf.AzureConfiguration;
+import org.apache.openjpa.jdbc.conf.JDBCConfiguration;
+import org.apache.openjpa.lib.log.Log;
+
+/**
+ * Writes one line per slice onto the <code>openjpa.jdbc.JDBC</code> diagnostic log, at INFO level.
+ */
+public class LogMetricsExporter implements MetricsExporter {
+
+    private Log log;
+
+    @Override
+    public void init(final AzureConfiguration conf) {
+        log = conf.getLog(JDBCConfiguration.LOG_DIAG);
+    }
+
+    @Override
+    public void export(final Collection<SliceMetrics> metrics) {
+        if (log == null || !log.isInfoEnabled()) {
+            return;
+        }
+        for (SliceMetrics slice : metrics) {
+            log.info("Metrics " + slice);
+        }
+    }
+
+    @Override
+    public void close() {
+        // nothing to release
+    }
+}
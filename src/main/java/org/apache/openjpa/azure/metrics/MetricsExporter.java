@@ -0,0 +1,51 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.openjpa.azure.metrics;
+
+import java.util.Collection;
+import org.apache.openjpa.azure.jdbc.conf.AzureConfiguration;
+
+/**
+ * Pushes slice metrics to an external monitoring system.
+ *
+ * Exporters are listed (as OpenJPA plugin strings) by the <code>openjpa.azure.MetricsExporters</code> property: each
+ * exporter is instantiated once per broker factory and invoked periodically, from a single background thread, every
+ * <code>openjpa.azure.MetricsExportInterval</code> milliseconds.
+ */
+public interface MetricsExporter {
+
+    /**
+     * Invoked once, before the first export.
+     *
+     * @param conf configuration of the broker factory.
+     */
+    void init(AzureConfiguration conf);
+
+    /**
+     * Export the current metrics of all the known slices.
+     *
+     * @param metrics slice metrics; values are cumulative since the broker factory has been created.
+     */
+    void export(Collection<SliceMetrics> metrics);
+
+    /**
+     * Invoked once, when the broker factory is closed.
+     */
+    void close();
+}
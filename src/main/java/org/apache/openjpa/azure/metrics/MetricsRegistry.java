@@ -0,0 +1,255 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.openjpa.azure.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import org.apache.commons.lang.StringUtils;
+import org.apache.openjpa.azure.jdbc.conf.AzureConfiguration;
+import org.apache.openjpa.jdbc.conf.JDBCConfiguration;
+import org.apache.openjpa.lib.conf.Configurations;
+import org.apache.openjpa.lib.log.Log;
+import org.apache.openjpa.util.UserException;
+
+/**
+ * Per-slice metrics shared by all the brokers created by the same broker factory.
+ *
+ * Slice metrics are registered as MBeans named
+ * <code>org.apache.openjpa.azure:type=SliceMetrics,unit=&lt;id&gt;,factory=&lt;hash&gt;,slice=&lt;slice&gt;</code> (if
+ * JMX exposure is enabled) and periodically pushed to the configured {@link MetricsExporter}s.
+ */
+public class MetricsRegistry {
+
+    public static final String DOMAIN = "org.apache.openjpa.azure";
+
+    private final boolean enabled;
+
+    private final boolean jmx;
+
+    private final String unit;
+
+    private final int exportInterval;
+
+    private final Log log;
+
+    private final ConcurrentMap<String, SliceMetrics> slices = new ConcurrentHashMap<String, SliceMetrics>();
+
+    private final List<ObjectName> registered = Collections.synchronizedList(new ArrayList<ObjectName>());
+
+    private final List<MetricsExporter> exporters = new ArrayList<MetricsExporter>();
+
+    private ScheduledExecutorService scheduler;
+
+    /**
+     * Constructor.
+     *
+     * @param enabled TRUE to collect metrics.
+     * @param jmx TRUE to register slice metrics as MBeans.
+     * @param unit persistence unit name, used to build MBean names.
+     * @param exportInterval milliseconds between two consecutive invocations of exporters.
+     * @param log diagnostic log; can be null.
+     */
+    public MetricsRegistry(final boolean enabled, final boolean jmx, final String unit, final int exportInterval,
+            final Log log) {
+
+        this.enabled = enabled;
+        this.jmx = jmx;
+        this.unit = StringUtils.isBlank(unit) ? "default" : unit;
+        this.exportInterval = exportInterval;
+        this.log = log;
+    }
+
+    public static MetricsRegistry newInstance(final AzureConfiguration conf) {
+        final MetricsRegistry registry = new MetricsRegistry(
+                conf.isMetrics(),
+                conf.isMetricsJMX(),
+                conf.getId(),
+                conf.getMetricsExportInterval(),
+                conf.getLog(JDBCConfiguration.LOG_DIAG));
+
+        if (registry.enabled) {
+            final ClassLoader loader = conf.getClassResolverInstance().getClassLoader(MetricsRegistry.class, null);
+
+            for (String plugin : conf.getMetricsExporters()) {
+                if (StringUtils.isBlank(plugin)) {
+                    continue;
+                }
+
+                final Object exporter = Configurations.newInstance(
+                        Configurations.getClassName(plugin), conf, Configurations.getProperties(plugin), loader);
+                if (!(exporter instanceof MetricsExporter)) {
+                    throw new UserException("Invalid metrics exporter: " + plugin);
+                }
+
+                ((MetricsExporter) exporter).init(conf);
+                registry.exporters.add((MetricsExporter) exporter);
+            }
+        }
+
+        return registry;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Get metrics of the given slice, registering them if not known yet.
+     *
+     * @param sliceName slice name.
+     * @return slice metrics; {@link SliceMetrics#DISABLED} if metrics are disabled.
+     */
+    public SliceMetrics getSliceMetrics(final String sliceName) {
+        if (!enabled) {
+            return SliceMetrics.DISABLED;
+        }
+
+        SliceMetrics metrics = slices.get(sliceName);
+        if (metrics == null) {
+            metrics = new SliceMetrics(sliceName);
+            final SliceMetrics existing = slices.putIfAbsent(sliceName, metrics);
+            if (existing == null) {
+                register(metrics);
+            } else {
+                metrics = existing;
+            }
+        }
+        return metrics;
+    }
+
+    /**
+     * Get metrics of all the known slices.
+     */
+    public Collection<SliceMetrics> getSliceMetrics() {
+        return Collections.unmodifiableCollection(slices.values());
+    }
+
+    ObjectName getObjectName(final String sliceName)
+            throws Exception {
+
+        return new ObjectName(DOMAIN + ":type=SliceMetrics"
+                + ",unit=" + ObjectName.quote(unit)
+                + ",factory=" + Integer.toHexString(System.identityHashCode(this))
+                + ",slice=" + ObjectName.quote(sliceName));
+    }
+
+    private void register(final SliceMetrics metrics) {
+        if (!jmx) {
+            return;
+        }
+
+        try {
+            final ObjectName name = getObjectName(metrics.getSliceName());
+            ManagementFactory.getPlatformMBeanServer().registerMBean(new SliceMetricsMBean(metrics), name);
+            registered.add(name);
+        } catch (Exception e) {
+            warn("Could not register metrics of " + metrics.getSliceName() + " with JMX: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Start invoking exporters, if any.
+     */
+    public synchronized void start() {
+        if (exporters.isEmpty() || exportInterval <= 0 || scheduler != null) {
+            return;
+        }
+
+        scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+
+            @Override
+            public Thread newThread(final Runnable runnable) {
+                final Thread thread = new Thread(runnable, "openjpa-azure-metrics-exporter");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+
+        scheduler.scheduleWithFixedDelay(new Runnable() {
+
+            @Override
+            public void run() {
+                export();
+            }
+        }, exportInterval, exportInterval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Push current metrics to all the configured exporters.
+     */
+    public void export() {
+        final Collection<SliceMetrics> metrics = getSliceMetrics();
+
+        for (MetricsExporter exporter : exporters) {
+            try {
+                exporter.export(metrics);
+            } catch (Exception e) {
+                warn("Metrics export failed on " + exporter.getClass().getName() + ": " + e.getMessage());
+            }
+        }
+    }
+
+    private void warn(final String message) {
+        if (log != null && log.isWarnEnabled()) {
+            log.warn(message);
+        }
+    }
+
+    /**
+     * Stop exporters and unregister MBeans.
+     */
+    public synchronized void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+
+        for (MetricsExporter exporter : exporters) {
+            try {
+                exporter.close();
+            } catch (Exception e) {
+                warn("Could not close metrics exporter " + exporter.getClass().getName() + ": " + e.getMessage());
+            }
+        }
+        exporters.clear();
+
+        final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        synchronized (registered) {
+            for (ObjectName name : registered) {
+                try {
+                    server.unregisterMBean(name);
+                } catch (Exception ignore) {
+                    // already unregistered
+                }
+            }
+            registered.clear();
+        }
+    }
+}
@@ -0,0 +1,220 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.openjpa.azure.metrics;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.openjpa.azure.util.AzureUtils;
+
+/**
+ * Metrics of a single slice: latency histograms per operation, rows returned, errors by SQL error code, retries and
+ * requests in flight.
+ *
+ * Operations are timed as follows:
+ * <pre>
+ * final long start = metrics.begin();
+ * try {
+ *     ...
+ * } finally {
+ *     metrics.end(SliceMetrics.Operation.QUERY, start);
+ * }
+ * </pre>
+ */
+public class SliceMetrics {
+
+    public enum Operation {
+
+        QUERY,
+        FLUSH,
+        FIND,
+        CONNECT
+
+    }
+
+    /**
+     * Metrics collecting nothing, used when metrics are disabled.
+     */
+    public static final SliceMetrics DISABLED = new SliceMetrics(null, false);
+
+    private final String sliceName;
+
+    private final boolean enabled;
+
+    private final Map<Operation, LatencyHistogram> latencies =
+            new EnumMap<Operation, LatencyHistogram>(Operation.class);
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    private final AtomicLong rows = new AtomicLong();
+
+    private final AtomicLong retries = new AtomicLong();
+
+    private final ConcurrentMap<Integer, AtomicLong> errors = new ConcurrentHashMap<Integer, AtomicLong>();
+
+    public SliceMetrics(final String sliceName) {
+        this(sliceName, true);
+    }
+
+    private SliceMetrics(final String sliceName, final boolean enabled) {
+        this.sliceName = sliceName;
+        this.enabled = enabled;
+
+        for (Operation operation : Operation.values()) {
+            latencies.put(operation, new LatencyHistogram());
+        }
+    }
+
+    public String getSliceName() {
+        return sliceName;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Mark the beginning of an operation.
+     *
+     * @return start time, to be passed to {@link #end(Operation, long)}.
+     */
+    public long begin() {
+        if (!enabled) {
+            return 0;
+        }
+        inFlight.incrementAndGet();
+        return System.nanoTime();
+    }
+
+    /**
+     * Mark the end of an operation started by {@link #begin()}.
+     *
+     * @param operation operation.
+     * @param start start time returned by {@link #begin()}.
+     */
+    public void end(final Operation operation, final long start) {
+        if (!enabled) {
+            return;
+        }
+        inFlight.decrementAndGet();
+        latencies.get(operation).record((System.nanoTime() - start) / 1000);
+    }
+
+    /**
+     * Count the given number of rows returned by this slice.
+     */
+    public void rows(final long count) {
+        if (enabled && count > 0) {
+            rows.addAndGet(count);
+        }
+    }
+
+    /**
+     * Count a retry of a request sent to this slice.
+     */
+    public void retry() {
+        if (enabled) {
+            retries.incrementAndGet();
+        }
+    }
+
+    /**
+     * Count an error raised by this slice, by SQL error code (0 when not caused by a SQL exception).
+     */
+    public void error(final Throwable error) {
+        if (!enabled || error == null) {
+            return;
+        }
+
+        final Integer code = AzureUtils.getSQLErrorCode(error);
+
+        AtomicLong counter = errors.get(code);
+        if (counter == null) {
+            counter = new AtomicLong();
+            final AtomicLong existing = errors.putIfAbsent(code, counter);
+            if (existing != null) {
+                counter = existing;
+            }
+        }
+        counter.incrementAndGet();
+    }
+
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    public long getRows() {
+        return rows.get();
+    }
+
+    public long getRetries() {
+        return retries.get();
+    }
+
+    /**
+     * Get errors counted so far, by SQL error code.
+     */
+    public Map<Integer, Long> getErrors() {
+        final Map<Integer, Long> result = new TreeMap<Integer, Long>();
+        for (Map.Entry<Integer, AtomicLong> entry : errors.entrySet()) {
+            result.put(entry.getKey(), entry.getValue().get());
+        }
+        return result;
+    }
+
+    public long getErrorCount() {
+        long total = 0;
+        for (AtomicLong counter : errors.values()) {
+            total += counter.get();
+        }
+        return total;
+    }
+
+    /**
+     * Get a snapshot of the latency histogram of the given operation.
+     */
+    public LatencyHistogram getLatency(final Operation operation) {
+        return latencies.get(operation).snapshot();
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder builder = new StringBuilder(String.valueOf(sliceName)).
+                append(": inFlight=").append(getInFlight()).
+                append(", rows=").append(getRows()).
+                append(", retries=").append(getRetries()).
+                append(", errors=").append(getErrors());
+
+        for (Operation operation : Operation.values()) {
+            final LatencyHistogram latency = getLatency(operation);
+            if (latency.getCount() > 0) {
+                builder.append(", ").append(operation.name().toLowerCase()).
+                        append("[n=").append(latency.getCount()).
+                        append(", p50=").append(latency.getValueAtPercentile(50)).
+                        append("us, p99=").append(latency.getValueAtPercentile(99)).
+                        append("us, max=").append(latency.getMax()).append("us]");
+            }
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,165 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.openjpa.azure.metrics;
+
+import java.util.ArrayList;
+import java.util.List;
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanOperationInfo;
+
+/**
+ * Read-only JMX view of {@link SliceMetrics}.
+ *
+ * Besides <code>InFlight</code>, <code>Rows</code>, <code>Retries</code>, <code>ErrorCount</code> and
+ * <code>Errors</code>, each operation exposes <code>&lt;Operation&gt;Count</code>, <code>&lt;Operation&gt;Mean</code>,
+ * <code>&lt;Operation&gt;P50</code>, <code>&lt;Operation&gt;P99</code>, <code>&lt;Operation&gt;P999</code> and
+ * <code>&lt;Operation&gt;Max</code> (i.e. <code>QueryP99</code>); latencies are in microseconds.
+ */
+class SliceMetricsMBean implements DynamicMBean {
+
+    private static final String[] STATISTICS = {"Count", "Mean", "P50", "P99", "P999", "Max"};
+
+    private final SliceMetrics metrics;
+
+    private final MBeanInfo info;
+
+    SliceMetricsMBean(final SliceMetrics metrics) {
+        this.metrics = metrics;
+
+        final List<MBeanAttributeInfo> attributes = new ArrayList<MBeanAttributeInfo>();
+        attributes.add(attribute("SliceName", String.class, "Slice name"));
+        attributes.add(attribute("InFlight", Integer.class, "Requests in flight"));
+        attributes.add(attribute("Rows", Long.class, "Rows returned"));
+        attributes.add(attribute("Retries", Long.class, "Retries on transient faults"));
+        attributes.add(attribute("ErrorCount", Long.class, "Errors"));
+        attributes.add(attribute("Errors", String.class, "Errors by SQL error code"));
+        for (SliceMetrics.Operation operation : SliceMetrics.Operation.values()) {
+            for (String statistic : STATISTICS) {
+                attributes.add(attribute(prefix(operation) + statistic,
+                        "Mean".equals(statistic) ? Double.class : Long.class,
+                        operation.name().toLowerCase() + " latency " + statistic.toLowerCase() + " (microseconds)"));
+            }
+        }
+
+        info = new MBeanInfo(getClass().getName(), "Metrics of slice " + metrics.getSliceName(),
+                attributes.toArray(new MBeanAttributeInfo[attributes.size()]),
+                null, new MBeanOperationInfo[0], null);
+    }
+
+    private static MBeanAttributeInfo attribute(final String name, final Class<?> type, final String description) {
+        return new MBeanAttributeInfo(name, type.getName(), description, true, false, false);
+    }
+
+    private static String prefix(final SliceMetrics.Operation operation) {
+        return operation.name().charAt(0) + operation.name().substring(1).toLowerCase();
+    }
+
+    @Override
+    public Object getAttribute(final String attribute)
+            throws AttributeNotFoundException {
+
+        if ("SliceName".equals(attribute)) {
+            return metrics.getSliceName();
+        }
+        if ("InFlight".equals(attribute)) {
+            return metrics.getInFlight();
+        }
+        if ("Rows".equals(attribute)) {
+            return metrics.getRows();
+        }
+        if ("Retries".equals(attribute)) {
+            return metrics.getRetries();
+        }
+        if ("ErrorCount".equals(attribute)) {
+            return metrics.getErrorCount();
+        }
+        if ("Errors".equals(attribute)) {
+            return metrics.getErrors().toString();
+        }
+
+        for (SliceMetrics.Operation operation : SliceMetrics.Operation.values()) {
+            final String prefix = prefix(operation);
+            if (attribute != null && attribute.startsWith(prefix)) {
+                final LatencyHistogram latency = metrics.getLatency(operation);
+                final String statistic = attribute.substring(prefix.length());
+
+                if ("Count".equals(statistic)) {
+                    return latency.getCount();
+                }
+                if ("Mean".equals(statistic)) {
+                    return latency.getMean();
+                }
+                if ("P50".equals(statistic)) {
+                    return latency.getValueAtPercentile(50);
+                }
+                if ("P99".equals(statistic)) {
+                    return latency.getValueAtPercentile(99);
+                }
+                if ("P999".equals(statistic)) {
+                    return latency.getValueAtPercentile(99.9);
+                }
+                if ("Max".equals(statistic)) {
+                    return latency.getMax();
+                }
+            }
+        }
+
+        throw new AttributeNotFoundException(attribute);
+    }
+
+    @Override
+    public AttributeList getAttributes(final String[] attributes) {
+        final AttributeList result = new AttributeList();
+        for (String attribute : attributes) {
+            try {
+                result.add(new Attribute(attribute, getAttribute(attribute)));
+            } catch (AttributeNotFoundException ignore) {
+                // skip unknown attributes, as per DynamicMBean contract
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public void setAttribute(final Attribute attribute)
+            throws AttributeNotFoundException {
+
+        throw new AttributeNotFoundException("Read-only attribute: " + attribute.getName());
+    }
+
+    @Override
+    public AttributeList setAttributes(final AttributeList attributes) {
+        return new AttributeList();
+    }
+
+    @Override
+    public Object invoke(final String actionName, final Object[] params, final String[] signature) {
+        throw new UnsupportedOperationException(actionName);
+    }
+
+    @Override
+    public MBeanInfo getMBeanInfo() {
+        return info;
+    }
+}
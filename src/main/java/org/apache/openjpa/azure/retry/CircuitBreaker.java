@@ -0,0 +1,138 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.openjpa.azure.retry;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Circuit breaker guarding a single slice.
+ *
+ * After <code>threshold</code> consecutive transient failures the circuit opens and requests fail fast; once
+ * <code>timeout</code> milliseconds elapsed a single probe request is let through: its success closes the circuit, its
+ * failure opens it again.
+ */
+public class CircuitBreaker {
+
+    public enum State {
+
+        CLOSED,
+        OPEN,
+        HALF_OPEN
+
+    }
+
+    private final String name;
+
+    private final int threshold;
+
+    private final long timeoutNanos;
+
+    private State state = State.CLOSED;
+
+    private int failures = 0;
+
+    private long openedAt;
+
+    private Thread probe = null;
+
+    /**
+     * Constructor.
+     *
+     * @param name slice name.
+     * @param threshold consecutive failures opening the circuit; 0 or less disables the circuit breaker.
+     * @param timeout milliseconds before letting a probe request through an open circuit.
+     */
+    public CircuitBreaker(final String name, final int threshold, final long timeout) {
+        this.name = name;
+        this.threshold = threshold;
+        this.timeoutNanos = TimeUnit.MILLISECONDS.toNanos(timeout);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    /**
+     * Check if a request can be sent to the slice; moves an open circuit to half-open when the timeout has elapsed.
+     *
+     * @return FALSE if the request has to fail fast.
+     */
+    public synchronized boolean allowRequest() {
+        switch (state) {
+            case OPEN:
+                if (System.nanoTime() - openedAt < timeoutNanos) {
+                    return false;
+                }
+                state = State.HALF_OPEN;
+                probe = Thread.currentThread();
+                return true;
+
+            case HALF_OPEN:
+                // just one probe at a time; nested requests of the probing thread (i.e. connecting) are let through
+                if (probe != null && probe != Thread.currentThread()) {
+                    return false;
+                }
+                probe = Thread.currentThread();
+                return true;
+
+            default:
+                return true;
+        }
+    }
+
+    public synchronized void onSuccess() {
+        state = State.CLOSED;
+        failures = 0;
+        probe = null;
+    }
+
+    /**
+     * Neither success nor failure (i.e. a request rejected for non-transient reasons, or a step of a request which is
+     * not telling whether the slice serves requests): a probe held by the current thread is released, so that the next
+     * request probes the slice again.
+     */
+    public synchronized void release() {
+        if (probe == Thread.currentThread()) {
+            probe = null;
+        }
+    }
+
+    public synchronized void onFailure() {
+        probe = null;
+
+        if (threshold <= 0) {
+            return;
+        }
+
+        failures++;
+        if (state == State.HALF_OPEN || failures >= threshold) {
+            state = State.OPEN;
+            openedAt = System.nanoTime();
+        }
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "CircuitBreaker[" + name + ", state=" + state + ", failures=" + failures + "]";
+    }
+}
@@ -0,0 +1,391 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.openjpa.azure.retry;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import org.apache.openjpa.azure.jdbc.conf.AzureConfiguration;
+import org.apache.openjpa.azure.metrics.MetricsRegistry;
+import org.apache.openjpa.azure.util.AzureUtils;
+import org.apache.openjpa.jdbc.conf.JDBCConfiguration;
+import org.apache.openjpa.lib.log.Log;
+
+/**
+ * Handles transient faults (i.e. Azure SQL throttling) reported by slices.
+ *
+ * Requests failing with one of the configured transient error codes are retried with jittered exponential backoff;
+ * each slice is guarded by a {@link CircuitBreaker} so that an unavailable member is not hit at full rate.
+ *
+ * Only the outcome of the outermost request sent to a slice is recorded onto its circuit breaker: steps of a request
+ * (i.e. connecting) are retried on their own, but do not tell whether the slice serves requests.
+ *
+ * Errors and retries are counted onto the slice metrics of the given {@link MetricsRegistry}, if any.
+ *
+ * Retrying a flush requires a savepoint: by default every flush is protected; when savepoints are not always required,
+ * they are set only onto slices faulted in the last circuit breaker timeout.
+ */
+public class TransientFaultPolicy {
+
+    private final Set<Integer> errorCodes;
+
+    private final int maxRetries;
+
+    private final long baseDelay;
+
+    private final long maxDelay;
+
+    private final int breakerThreshold;
+
+    private final long breakerTimeout;
+
+    private final ConcurrentMap<String, CircuitBreaker> breakers = new ConcurrentHashMap<String, CircuitBreaker>();
+
+    /**
+     * Time of the last fault reported by each slice.
+     */
+    private final ConcurrentMap<String, Long> faults = new ConcurrentHashMap<String, Long>();
+
+    private boolean savepoints;
+
+    private final Random random = new Random();
+
+    /**
+     * Slice the current thread is sending a request to, if any.
+     */
+    private final ThreadLocal<String> request = new ThreadLocal<String>();
+
+    private Log log;
+
+    private MetricsRegistry metrics;
+
+    /**
+     * Constructor.
+     *
+     * @param errorCodes SQL error codes to be considered transient.
+     * @param maxRetries maximum number of retries; 0 disables retries.
+     * @param baseDelay backoff (milliseconds) before the first retry.
+     * @param maxDelay maximum backoff (milliseconds).
+     * @param breakerThreshold consecutive transient failures opening a circuit; 0 disables circuit breakers.
+     * @param breakerTimeout milliseconds before letting a probe request through an open circuit.
+     */
+    public TransientFaultPolicy(final Set<Integer> errorCodes, final int maxRetries, final long baseDelay,
+            final long maxDelay, final int breakerThreshold, final long breakerTimeout) {
+
+        this.errorCodes = Collections.unmodifiableSet(new HashSet<Integer>(errorCodes));
+        this.maxRetries = Math.max(0, maxRetries);
+        this.baseDelay = Math.max(0, baseDelay);
+        this.maxDelay = Math.max(this.baseDelay, maxDelay);
+        this.breakerThreshold = breakerThreshold;
+        this.breakerTimeout = breakerTimeout;
+    }
+
+    public static TransientFaultPolicy newInstance(final AzureConfiguration conf, final MetricsRegistry metrics) {
+        final TransientFaultPolicy policy = new TransientFaultPolicy(
+                conf.getTransientErrorCodes(),
+                conf.getTransientRetries(),
+                conf.getTransientRetryDelay(),
+                conf.getTransientRetryMaxDelay(),
+                conf.getCircuitBreakerThreshold(),
+                conf.getCircuitBreakerTimeout());
+
+        policy.log = conf.getLog(JDBCConfiguration.LOG_DIAG);
+        policy.metrics = metrics;
+        policy.savepoints = conf.isFlushSavepoints();
+        return policy;
+    }
+
+    /**
+     * Count errors and retries onto the slice metrics of the given registry.
+     */
+    public void setMetricsRegistry(final MetricsRegistry metrics) {
+        this.metrics = metrics;
+    }
+
+    public int getMaxRetries() {
+        return maxRetries;
+    }
+
+    /**
+     * Have every flush to be protected by a savepoint, not only the ones onto faulted slices?
+     */
+    public void setSavepoints(final boolean savepoints) {
+        this.savepoints = savepoints;
+    }
+
+    /**
+     * Check if flushes onto the given slice have to be protected by a savepoint, in order to be retried.
+     *
+     * @param sliceName slice name.
+     * @return TRUE if savepoints are always required or the slice faulted in the last circuit breaker timeout.
+     */
+    public boolean isSavepointNeeded(final String sliceName) {
+        if (savepoints) {
+            return true;
+        }
+
+        final Long last = faults.get(sliceName);
+        return last != null && System.currentTimeMillis() - last < breakerTimeout;
+    }
+
+    /**
+     * Record a fault worth a retry (transient fault or routing error) reported by the given slice.
+     *
+     * @param sliceName slice name.
+     */
+    public void faulted(final String sliceName) {
+        faults.put(sliceName, System.currentTimeMillis());
+    }
+
+    /**
+     * Check if the given exception has been caused by a transient fault.
+     *
+     * @param t exception.
+     * @return TRUE if the SQL error code is one of the configured transient error codes.
+     */
+    public boolean isTransient(final Throwable t) {
+        return errorCodes.contains(AzureUtils.getSQLErrorCode(t));
+    }
+
+    /**
+     * Get the (full jitter) backoff before the given retry: a random delay between 0 and
+     * <code>min(maxDelay, baseDelay * 2^attempt)</code>.
+     *
+     * @param attempt retry number, starting from 0.
+     * @return milliseconds to wait.
+     */
+    public long getBackoff(final int attempt) {
+        final long cap = attempt >= 30 ? maxDelay : Math.min(maxDelay, baseDelay << attempt);
+        return cap <= 0 ? 0 : (long) (random.nextDouble() * (cap + 1));
+    }
+
+    public CircuitBreaker getCircuitBreaker(final String sliceName) {
+        CircuitBreaker breaker = breakers.get(sliceName);
+        if (breaker == null) {
+            breaker = new CircuitBreaker(sliceName, breakerThreshold, breakerTimeout);
+            final CircuitBreaker existing = breakers.putIfAbsent(sliceName, breaker);
+            if (existing != null) {
+                breaker = existing;
+            }
+        }
+        return breaker;
+    }
+
+    /**
+     * Fail fast if the circuit of the given slice is open.
+     *
+     * @param sliceName slice name.
+     * @throws CircuitOpenException if the circuit is open.
+     */
+    public void checkAvailable(final String sliceName) {
+        if (!getCircuitBreaker(sliceName).allowRequest()) {
+            throw new CircuitOpenException(sliceName);
+        }
+    }
+
+    /**
+     * Record the outcome of a request sent to the given slice: only transient faults count as failures, other errors
+     * are neutral.
+     *
+     * @param sliceName slice name.
+     * @param error error raised by the request; null in case of success.
+     */
+    public void record(final String sliceName, final Throwable error) {
+        if (error != null && metrics != null) {
+            metrics.getSliceMetrics(sliceName).error(error);
+        }
+
+        if (error == null) {
+            getCircuitBreaker(sliceName).onSuccess();
+        } else if (isTransient(error)) {
+            faulted(sliceName);
+            getCircuitBreaker(sliceName).onFailure();
+        } else {
+            getCircuitBreaker(sliceName).release();
+        }
+    }
+
+    /**
+     * Release the probe of the given slice, if held by the current thread, without recording any outcome.
+     *
+     * @param sliceName slice name.
+     */
+    public void release(final String sliceName) {
+        getCircuitBreaker(sliceName).release();
+    }
+
+    /**
+     * Mark the current thread as sending a request to the given slice, whose outcome is recorded by the caller: steps
+     * of the request do not record theirs.
+     *
+     * @param sliceName slice name.
+     * @return the previous mark, to be restored by {@link #endRequest(String)}.
+     */
+    public String beginRequest(final String sliceName) {
+        final String previous = request.get();
+        request.set(sliceName);
+        return previous;
+    }
+
+    /**
+     * Restore the given request mark of the current thread.
+     *
+     * @param previous mark returned by {@link #beginRequest(String)}.
+     */
+    public void endRequest(final String previous) {
+        if (previous == null) {
+            request.remove();
+        } else {
+            request.set(previous);
+        }
+    }
+
+    private boolean inRequest(final String sliceName) {
+        return sliceName.equals(request.get());
+    }
+
+    /**
+     * Wait before the given retry.
+     *
+     * @param sliceName slice name.
+     * @param attempt retry number, starting from 0.
+     * @param cause transient fault being retried.
+     */
+    public void backoff(final String sliceName, final int attempt, final Throwable cause) {
+        final long delay = getBackoff(attempt);
+
+        if (metrics != null) {
+            metrics.getSliceMetrics(sliceName).retry();
+        }
+
+        if (log != null && log.isWarnEnabled()) {
+            log.warn("Transient fault on " + sliceName + " (" + AzureUtils.getSQLErrorCode(cause) + "), retry "
+                    + (attempt + 1) + "/" + maxRetries + " in " + delay + "ms");
+        }
+
+        if (delay > 0) {
+            try {
+                Thread.sleep(delay);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Execute the given request onto the given slice, retrying on transient faults and recording its outcome; nested
+     * into another request to the same slice, it is executed as a step of that request.
+     *
+     * @param sliceName slice name.
+     * @param action action to be executed.
+     * @return action result.
+     * @throws Exception the last error raised by the action, or {@link CircuitOpenException} if the circuit of the
+     * given slice is open.
+     */
+    public <T> T execute(final String sliceName, final Callable<T> action)
+            throws Exception {
+
+        return execute(sliceName, action, true);
+    }
+
+    /**
+     * Execute the given request onto the given slice, as per {@link #execute(String, Callable)}; requests that cannot
+     * be executed again (i.e. statements of a transaction not protected by a savepoint) are not retried.
+     *
+     * @param sliceName slice name.
+     * @param action action to be executed.
+     * @param retry TRUE if the action can be executed again after a transient fault.
+     * @return action result.
+     * @throws Exception the last error raised by the action, or {@link CircuitOpenException} if the circuit of the
+     * given slice is open.
+     */
+    public <T> T execute(final String sliceName, final Callable<T> action, final boolean retry)
+            throws Exception {
+
+        final int retries = retry ? maxRetries : 0;
+
+        if (inRequest(sliceName)) {
+            return execute(sliceName, action, retries, false, false);
+        }
+
+        final String previous = beginRequest(sliceName);
+        try {
+            return execute(sliceName, action, retries, true, true);
+        } finally {
+            endRequest(previous);
+        }
+    }
+
+    /**
+     * Execute a step of a request (i.e. connecting) onto the given slice, retrying on transient faults.
+     *
+     * The success of a step is never recorded, since the request could still fail; its failures are recorded unless
+     * the step is part of a request, whose outcome is recorded instead.
+     *
+     * @param sliceName slice name.
+     * @param action action to be executed.
+     * @return action result.
+     * @throws Exception the last error raised by the action, or {@link CircuitOpenException} if the circuit of the
+     * given slice is open.
+     */
+    public <T> T executeStep(final String sliceName, final Callable<T> action)
+            throws Exception {
+
+        if (inRequest(sliceName)) {
+            return execute(sliceName, action, maxRetries, false, false);
+        }
+
+        try {
+            return execute(sliceName, action, maxRetries, true, false);
+        } finally {
+            release(sliceName);
+        }
+    }
+
+    private <T> T execute(final String sliceName, final Callable<T> action, final int retries,
+            final boolean recordFailures, final boolean recordSuccess)
+            throws Exception {
+
+        for (int attempt = 0;; attempt++) {
+            checkAvailable(sliceName);
+
+            try {
+                final T result = action.call();
+                if (recordSuccess) {
+                    record(sliceName, null);
+                }
+                return result;
+            } catch (Exception e) {
+                if (recordFailures) {
+                    record(sliceName, e);
+                }
+
+                if (attempt >= retries || !isTransient(e)) {
+                    throw e;
+                }
+
+                backoff(sliceName, attempt, e);
+            }
+        }
+    }
+}
@@ -0,0 +1,137 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.openjpa.azure.routing;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+import org.apache.openjpa.azure.Federation;
+import org.apache.openjpa.azure.jdbc.conf.AzureConfiguration;
+import org.apache.openjpa.azure.util.AzureUtils;
+import org.apache.openjpa.jdbc.conf.JDBCConfiguration;
+import org.apache.openjpa.lib.log.Log;
+
+/**
+ * Holds the current {@link RoutingTable} of a broker factory.
+ *
+ * Readers get the published snapshot without locking; loads and refreshes are serialized and swap the snapshot
+ * atomically.
+ */
+public class FederationRegistry {
+
+    private final AtomicReference<RoutingTable> current = new AtomicReference<RoutingTable>(RoutingTable.EMPTY);
+
+    private final Object lock = new Object();
+
+    /**
+     * Get the current routing snapshot.
+     *
+     * @return current routing table; never null.
+     */
+    public RoutingTable get() {
+        return current.get();
+    }
+
+    public boolean isInitialized() {
+        return current.get().isInitialized();
+    }
+
+    /**
+     * Read member distributions of all configured federations, unless already done.
+     *
+     * @param conf configuration.
+     * @param conn connection to the federation root.
+     * @return current routing table.
+     */
+    public RoutingTable init(final AzureConfiguration conf, final Connection conn) {
+        if (isInitialized()) {
+            return get();
+        }
+
+        synchronized (lock) {
+            if (isInitialized()) {
+                return get();
+            }
+
+            final Log log = conf.getLog(JDBCConfiguration.LOG_DIAG);
+
+            final Map<Federation, List<Object>> distributions = new HashMap<Federation, List<Object>>();
+
+            for (Federation fed : conf.getFederations()) {
+                final List<Object> members = new ArrayList<Object>();
+
+                try {
+                    for (Object obj : AzureUtils.getMemberDistribution(conn, fed)) {
+                        log.info("Init member '" + obj + "' for " + fed);
+                        members.add(obj);
+                    }
+                } catch (SQLException e) {
+                    log.error("Error searching for federation members", e);
+                }
+
+                distributions.put(fed, members);
+            }
+
+            final Map<String, Federation> sliceFeds = new HashMap<String, Federation>();
+            for (String sliceName : conf.getActiveSliceNames()) {
+                sliceFeds.put(sliceName, conf.getFederation(sliceName));
+            }
+
+            current.set(RoutingTable.newInstance(distributions, sliceFeds));
+            return get();
+        }
+    }
+
+    /**
+     * Read again member distribution of the given federation and publish a new snapshot if changed.
+     *
+     * @param federation federation.
+     * @param conn connection to the federation root.
+     * @return current routing table.
+     * @throws SQLException in case of failure reading member distribution.
+     */
+    public RoutingTable refresh(final Federation federation, final Connection conn)
+            throws SQLException {
+
+        final List<Object> members = new ArrayList<Object>();
+        for (Object obj : AzureUtils.getMemberDistribution(conn, federation)) {
+            members.add(obj);
+        }
+
+        return update(federation, members);
+    }
+
+    /**
+     * Publish a new snapshot with the given member distribution for the given federation.
+     *
+     * @param federation federation.
+     * @param members member lower bounds, sorted.
+     * @return current routing table.
+     */
+    public RoutingTable update(final Federation federation, final List<Object> members) {
+        synchronized (lock) {
+            current.set(current.get().withMembers(federation, members));
+            return get();
+        }
+    }
+}
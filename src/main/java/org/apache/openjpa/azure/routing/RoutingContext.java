@@ -0,0 +1,151 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.openjpa.azure.routing;
+
+import java.util.BitSet;
+
+/**
+ * Immutable outcome of target slice resolution: ordinals of target slices, the routing snapshot version they were
+ * resolved with and the reason why they were chosen.
+ *
+ * Contexts are resolved once from the target hint (slice names) and then reused, as long as the hint value and the
+ * routing snapshot do not change, by any query, extent or load executed with the same fetch configuration.
+ */
+public final class RoutingContext {
+
+    /**
+     * Why target slices were chosen.
+     */
+    public enum Reason {
+
+        /**
+         * No (valid) target was given: all active slices.
+         */
+        ALL,
+        /**
+         * Targets explicitly given by the {@link org.apache.openjpa.slice.SlicePersistence#HINT_TARGET} hint.
+         */
+        HINT,
+        /**
+         * Targets computed by the query target policy.
+         */
+        POLICY,
+        /**
+         * Targets computed from an object id, by the finder target policy or the slice location cache.
+         */
+        KEY_PRUNED
+
+    }
+
+    private final BitSet slices;
+
+    private final int size;
+
+    private final long version;
+
+    private final Reason reason;
+
+    private final Object source;
+
+    /**
+     * Constructor.
+     *
+     * @param slices ordinals of target slices; copied.
+     * @param size number of active slices when resolving.
+     * @param version routing snapshot version when resolving.
+     * @param reason why target slices were chosen.
+     * @param source value the targets were resolved from (e.g. target hint value); compared by identity.
+     */
+    public RoutingContext(
+            final BitSet slices, final int size, final long version, final Reason reason, final Object source) {
+
+        this.slices = (BitSet) slices.clone();
+        this.size = size;
+        this.version = version;
+        this.reason = reason;
+        this.source = source;
+    }
+
+    public boolean get(final int ordinal) {
+        return slices.get(ordinal);
+    }
+
+    /**
+     * Get the first target ordinal starting from the given one, as per {@link BitSet#nextSetBit(int)}.
+     *
+     * @param from first ordinal to check.
+     * @return next target ordinal; -1 if none.
+     */
+    public int nextSlice(final int from) {
+        return slices.nextSetBit(from);
+    }
+
+    public int cardinality() {
+        return slices.cardinality();
+    }
+
+    public boolean isEmpty() {
+        return slices.isEmpty();
+    }
+
+    /**
+     * Whether all the slices active when resolving are targeted.
+     */
+    public boolean isAll() {
+        return slices.cardinality() == size;
+    }
+
+    /**
+     * Get a copy of target ordinals.
+     *
+     * @return target ordinals.
+     */
+    public BitSet getSlices() {
+        return (BitSet) slices.clone();
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public Reason getReason() {
+        return reason;
+    }
+
+    /**
+     * Check whether this context can be reused.
+     *
+     * @param source value targets would be resolved from now.
+     * @param size number of active slices now.
+     * @param version current routing snapshot version.
+     * @return true if this context was resolved from the same value, slices and routing snapshot.
+     */
+    public boolean isCurrent(final Object source, final int size, final long version) {
+        return this.source == source && this.size == size && this.version == version;
+    }
+
+    @Override
+    public String toString() {
+        return reason + "@" + version + " " + slices;
+    }
+}
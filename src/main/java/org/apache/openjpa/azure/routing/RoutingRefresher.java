@@ -0,0 +1,321 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.openjpa.azure.routing;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import org.apache.openjpa.azure.AzureDistributedBrokerFactory;
+import org.apache.openjpa.azure.Federation;
+import org.apache.openjpa.azure.jdbc.conf.AzureConfiguration;
+import org.apache.openjpa.azure.util.AzureUtils;
+import org.apache.openjpa.jdbc.conf.JDBCConfiguration;
+import org.apache.openjpa.lib.log.Log;
+import org.apache.openjpa.slice.Slice;
+
+/**
+ * Keeps the routing table of a broker factory aligned with federation member distributions.
+ *
+ * Member distributions are read again periodically (if a refresh interval is configured) and whenever a statement
+ * fails with one of the configured routing error codes (i.e. after an <code>ALTER FEDERATION ... SPLIT AT</code>).
+ * Slices for new federation members are added to the running broker factory.
+ */
+public class RoutingRefresher {
+
+    private final AzureDistributedBrokerFactory factory;
+
+    private final AzureConfiguration conf;
+
+    private final FederationRegistry registry;
+
+    private final Set<Integer> errorCodes;
+
+    private final Log log;
+
+    /**
+     * Key of refresh requests for all the configured federations.
+     */
+    private static final Object ALL = new Object();
+
+    /**
+     * Federations (or {@link #ALL}) whose refresh has been requested and not completed yet.
+     */
+    private final ConcurrentMap<Object, Boolean> pending = new ConcurrentHashMap<Object, Boolean>();
+
+    private ScheduledExecutorService scheduler;
+
+    private boolean polling;
+
+    private boolean stopped;
+
+    public RoutingRefresher(final AzureDistributedBrokerFactory factory, final FederationRegistry registry) {
+        this.factory = factory;
+        this.conf = (AzureConfiguration) factory.getConfiguration();
+        this.registry = registry;
+        this.errorCodes = conf.getRoutingErrorCodes();
+        this.log = conf.getLog(JDBCConfiguration.LOG_DIAG);
+    }
+
+    public FederationRegistry getFederationRegistry() {
+        return registry;
+    }
+
+    /**
+     * Start polling member distributions, if a refresh interval has been configured.
+     */
+    public synchronized void start() {
+        final int interval = conf.getRoutingRefreshInterval();
+
+        if (interval <= 0 || polling || getScheduler() == null) {
+            return;
+        }
+
+        scheduler.scheduleWithFixedDelay(new Runnable() {
+
+            @Override
+            public void run() {
+                refresh();
+            }
+        }, interval, interval, TimeUnit.MILLISECONDS);
+        polling = true;
+    }
+
+    public synchronized void stop() {
+        stopped = true;
+        polling = false;
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+    }
+
+    /**
+     * Get the single thread running both periodic and on error refreshes, creating it if needed.
+     *
+     * @return refresher thread; null once stopped.
+     */
+    private synchronized ScheduledExecutorService getScheduler() {
+        if (scheduler == null && !stopped) {
+            scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+
+                @Override
+                public Thread newThread(final Runnable runnable) {
+                    final Thread thread = new Thread(runnable, "openjpa-azure-routing-refresher");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return scheduler;
+    }
+
+    /**
+     * Check if the given exception signals that a statement reached the wrong federation member.
+     *
+     * @param t exception.
+     * @return TRUE if the SQL error code is one of the configured routing error codes.
+     */
+    public boolean isRoutingError(final Throwable t) {
+        return errorCodes.contains(AzureUtils.getSQLErrorCode(t));
+    }
+
+    /**
+     * Schedule an asynchronous refresh of all the configured federations if the given exception is a routing error,
+     * as per {@link #refreshOnError(Throwable, Federation)}.
+     *
+     * @param t exception.
+     * @return TRUE if the given exception is a routing error.
+     */
+    public boolean refreshOnError(final Throwable t) {
+        return refreshOnError(t, null);
+    }
+
+    /**
+     * Schedule an asynchronous refresh if the given exception is a routing error. Refreshes run one at a time on the
+     * refresher thread; requests for a federation whose refresh is still pending are discarded.
+     *
+     * @param t exception.
+     * @param federation federation to refresh; null for all the configured federations.
+     * @return TRUE if the given exception is a routing error.
+     */
+    public boolean refreshOnError(final Throwable t, final Federation federation) {
+        if (!isRoutingError(t)) {
+            return false;
+        }
+
+        final Object key = federation == null ? ALL : federation;
+        if (pending.putIfAbsent(key, Boolean.TRUE) == null) {
+            final ScheduledExecutorService executor = getScheduler();
+            try {
+                if (executor == null) {
+                    pending.remove(key);
+                } else {
+                    executor.execute(new Runnable() {
+
+                        @Override
+                        public void run() {
+                            try {
+                                if (federation == null) {
+                                    refresh();
+                                } else {
+                                    refresh(federation);
+                                }
+                            } finally {
+                                pending.remove(key);
+                            }
+                        }
+                    });
+                }
+            } catch (RejectedExecutionException e) {
+                // stopped meanwhile
+                pending.remove(key);
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Read again member distributions of all the configured federations.
+     *
+     * @return current routing table.
+     */
+    public RoutingTable refresh() {
+        return refresh(conf.getFederations());
+    }
+
+    /**
+     * Read again member distribution of the given federation.
+     *
+     * @param federation federation.
+     * @return current routing table.
+     */
+    public RoutingTable refresh(final Federation federation) {
+        return refresh(Collections.singleton(federation));
+    }
+
+    private synchronized RoutingTable refresh(final Collection<Federation> federations) {
+        final long version = registry.get().getVersion();
+
+        Connection conn = null;
+        try {
+            conn = getRootConnection();
+            for (Federation fed : federations) {
+                registry.refresh(fed, conn);
+            }
+        } catch (SQLException e) {
+            log.error("Error refreshing federation members", e);
+        } finally {
+            try {
+                if (conn != null) {
+                    conn.close();
+                }
+            } catch (SQLException ignore) {
+                // ignore
+            }
+        }
+
+        final RoutingTable routing = registry.get();
+
+        if (routing.getVersion() != version) {
+            log.info("Federation members changed: " + routing);
+            addSlices(routing);
+        }
+
+        return routing;
+    }
+
+    private Connection getRootConnection()
+            throws SQLException {
+
+        final Connection conn =
+                ((JDBCConfiguration) conf.getMasterSlice().getConfiguration()).getDataSource(null).getConnection();
+
+        if (conf.isPerformUseFederation()) {
+            AzureUtils.useFederationRoot(conn);
+        }
+
+        return conn;
+    }
+
+    /**
+     * Add a slice for each federation member not bound to any configured slice yet; connection properties are taken
+     * from another slice of the same federation.
+     */
+    private void addSlices(final RoutingTable routing) {
+        for (String sliceName : routing.getSliceNames()) {
+            if (conf.getSlice(sliceName) != null) {
+                continue;
+            }
+
+            final Slice sibling = findSibling(sliceName);
+            if (sibling == null) {
+                log.warn("No slice found to connect new federation member " + sliceName);
+                continue;
+            }
+
+            final JDBCConfiguration siblingConf = (JDBCConfiguration) sibling.getConfiguration();
+            final String prefix = "openjpa.slice." + sliceName + ".";
+
+            final Map<String, String> props = new HashMap<String, String>();
+            putIfNotNull(props, prefix + "ConnectionURL", siblingConf.getConnectionURL());
+            putIfNotNull(props, prefix + "ConnectionDriverName", siblingConf.getConnectionDriverName());
+            putIfNotNull(props, prefix + "ConnectionUserName", siblingConf.getConnectionUserName());
+            putIfNotNull(props, prefix + "ConnectionPassword", siblingConf.getConnectionPassword());
+            putIfNotNull(props, prefix + "ConnectionProperties", siblingConf.getConnectionProperties());
+
+            log.info("Add slice " + sliceName + " for member '" + routing.getLowerBound(sliceName) + "'");
+
+            try {
+                factory.addSlice(sliceName, props);
+            } catch (Exception e) {
+                log.error("Error adding slice " + sliceName, e);
+            }
+        }
+    }
+
+    private Slice findSibling(final String sliceName) {
+        final String fedName = AzureUtils.getFederationName(sliceName);
+
+        for (Slice slice : conf.getSlices(Slice.Status.ACTIVE)) {
+            if (fedName.equals(AzureUtils.getFederationName(slice.getName()))) {
+                return slice;
+            }
+        }
+
+        return null;
+    }
+
+    private static void putIfNotNull(final Map<String, String> props, final String key, final String value) {
+        if (value != null) {
+            props.put(key, value);
+        }
+    }
+}
@@ -0,0 +1,225 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.openjpa.azure.routing;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import org.apache.openjpa.azure.Federation;
+import org.apache.openjpa.azure.util.AzureUtils;
+
+/**
+ * Immutable snapshot of federation member distributions and of the slice each member is bound to.
+ *
+ * A new snapshot, with an increased version, is built every time member bounds change: instances are never modified
+ * once published, hence they can be read without any locking.
+ */
+public final class RoutingTable {
+
+    /**
+     * Placeholder published before member distributions have been read.
+     */
+    public static final RoutingTable EMPTY = new RoutingTable(0,
+            Collections.<Federation, List<Object>>emptyMap(), Collections.<String, Object>emptyMap());
+
+    private final long version;
+
+    private final Map<Federation, List<Object>> members;
+
+    private final Map<String, Object> sliceBounds;
+
+    private RoutingTable(
+            final long version, final Map<Federation, List<Object>> members, final Map<String, Object> sliceBounds) {
+
+        this.version = version;
+        this.members = members;
+        this.sliceBounds = sliceBounds;
+    }
+
+    /**
+     * Build the first snapshot: slice names are bound to members by their index (i.e. 'FED_1.1' is bound to the
+     * second member of 'FED_1').
+     *
+     * @param distributions member lower bounds, sorted, per federation.
+     * @param federations federation of each configured slice name; null values for non federated slices.
+     * @return initial routing table.
+     */
+    public static RoutingTable newInstance(
+            final Map<Federation, List<Object>> distributions, final Map<String, Federation> federations) {
+
+        final Map<String, Object> bounds = new HashMap<String, Object>();
+
+        for (Map.Entry<String, Federation> entry : federations.entrySet()) {
+            final List<Object> fedMembers = entry.getValue() == null ? null : distributions.get(entry.getValue());
+
+            if (fedMembers != null) {
+                final int index = AzureUtils.getSliceMemberIndex(entry.getKey());
+                if (index < fedMembers.size()) {
+                    bounds.put(entry.getKey(), fedMembers.get(index));
+                }
+            }
+        }
+
+        return new RoutingTable(1, copy(distributions), Collections.unmodifiableMap(bounds));
+    }
+
+    /**
+     * Build a new snapshot replacing member bounds of the given federation.
+     *
+     * Slices keep their own member as long as its lower bound still exists; members not bound to any slice yet are
+     * assigned to new slice names (first free index after the given federation name).
+     *
+     * @param federation federation whose members changed.
+     * @param distribution new member lower bounds, sorted.
+     * @return new routing table, or this one if nothing changed.
+     */
+    public RoutingTable withMembers(final Federation federation, final List<Object> distribution) {
+        final List<Object> current = members.get(federation);
+
+        if (current != null && sameBounds(current, distribution)) {
+            return this;
+        }
+
+        final Map<Federation, List<Object>> newMembers = new HashMap<Federation, List<Object>>(members);
+        newMembers.put(federation, distribution);
+
+        final Map<String, Object> newBounds = new HashMap<String, Object>(sliceBounds);
+
+        final List<Object> unbound = new ArrayList<Object>(distribution);
+        int nextIndex = 0;
+
+        for (Map.Entry<String, Object> entry : sliceBounds.entrySet()) {
+            if (federation.getName().equals(AzureUtils.getFederationName(entry.getKey()))) {
+                nextIndex = Math.max(nextIndex, AzureUtils.getSliceMemberIndex(entry.getKey()) + 1);
+
+                if (!removeBound(unbound, entry.getValue())) {
+                    // member has been dropped
+                    newBounds.remove(entry.getKey());
+                }
+            }
+        }
+
+        for (Object bound : unbound) {
+            newBounds.put(federation.getName() + "." + nextIndex++, bound);
+        }
+
+        return new RoutingTable(version + 1, copy(newMembers), Collections.unmodifiableMap(newBounds));
+    }
+
+    private static boolean sameBound(final Object left, final Object right) {
+        return left instanceof byte[] && right instanceof byte[]
+                ? Arrays.equals((byte[]) left, (byte[]) right)
+                : left.equals(right);
+    }
+
+    private static boolean sameBounds(final List<Object> left, final List<Object> right) {
+        if (left.size() != right.size()) {
+            return false;
+        }
+        for (int i = 0; i < left.size(); i++) {
+            if (!sameBound(left.get(i), right.get(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean removeBound(final List<Object> bounds, final Object bound) {
+        for (Iterator<Object> itor = bounds.iterator(); itor.hasNext();) {
+            if (sameBound(itor.next(), bound)) {
+                itor.remove();
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static Map<Federation, List<Object>> copy(final Map<Federation, List<Object>> distributions) {
+        final Map<Federation, List<Object>> res = new HashMap<Federation, List<Object>>(distributions.size());
+
+        for (Map.Entry<Federation, List<Object>> entry : distributions.entrySet()) {
+            res.put(entry.getKey(), Collections.unmodifiableList(new ArrayList<Object>(entry.getValue())));
+        }
+
+        return Collections.unmodifiableMap(res);
+    }
+
+    /**
+     * Snapshot version: 0 until member distributions are read, then increased at each change.
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    public boolean isInitialized() {
+        return version > 0;
+    }
+
+    public List<Object> getMembers(final Federation federation) {
+        final List<Object> res = members.get(federation);
+        return res == null ? Collections.emptyList() : res;
+    }
+
+    public boolean isMultiMember(final Federation federation) {
+        return getMembers(federation).size() > 1;
+    }
+
+    /**
+     * Get the lower bound of the federation member bound to the given slice.
+     *
+     * @param sliceName slice name.
+     * @return member lower bound; null if the given slice is not bound to any federation member.
+     */
+    public Object getLowerBound(final String sliceName) {
+        return sliceBounds.get(sliceName);
+    }
+
+    /**
+     * Get the name of the slice bound to the given federation member.
+     *
+     * @param federation federation.
+     * @param lowerBound member lower bound.
+     * @return slice name; null if no slice is bound to the given member.
+     */
+    public String getSliceName(final Federation federation, final Object lowerBound) {
+        for (Map.Entry<String, Object> entry : sliceBounds.entrySet()) {
+            if (federation.getName().equals(AzureUtils.getFederationName(entry.getKey()))
+                    && sameBound(entry.getValue(), lowerBound)) {
+                return entry.getKey();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Get the name of all the slices bound to a federation member.
+     */
+    public List<String> getSliceNames() {
+        return new ArrayList<String>(sliceBounds.keySet());
+    }
+
+    @Override
+    public String toString() {
+        return "RoutingTable[version=" + version + ", members=" + members + "]";
+    }
+}
@@ -0,0 +1,139 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.openjpa.azure.routing;
+
+import org.apache.openjpa.azure.jdbc.conf.AzureConfiguration;
+import org.apache.openjpa.util.CacheMap;
+
+/**
+ * Bounded cache of the slices where instances were found, loaded or flushed, so that finds and lazy loads of the same
+ * object ids do not evaluate the finder target policy again.
+ *
+ * Each location remembers the routing snapshot version it was computed with: locations computed with previous
+ * snapshots are ignored (and dropped) once member distribution changes.
+ */
+public class SliceLocationCache {
+
+    /**
+     * Cache holding nothing.
+     */
+    public static final SliceLocationCache DISABLED = new SliceLocationCache(null, 0);
+
+    private static final class Location {
+
+        private final String slice;
+
+        private final long version;
+
+        Location(final String slice, final long version) {
+            this.slice = slice;
+            this.version = version;
+        }
+    }
+
+    private final FederationRegistry registry;
+
+    private final CacheMap locations;
+
+    /**
+     * Constructor.
+     *
+     * @param registry federation registry providing the current routing snapshot.
+     * @param size maximum number of locations held, randomly evicted when full; 0 to disable.
+     */
+    public SliceLocationCache(final FederationRegistry registry, final int size) {
+        this.registry = registry;
+        if (size > 0) {
+            locations = new CacheMap(false, size);
+            locations.setSoftReferenceSize(0);
+        } else {
+            locations = null;
+        }
+    }
+
+    public static SliceLocationCache newInstance(final AzureConfiguration conf, final FederationRegistry registry) {
+        return conf.getSliceLocationCacheSize() > 0
+                ? new SliceLocationCache(registry, conf.getSliceLocationCacheSize())
+                : DISABLED;
+    }
+
+    public boolean isEnabled() {
+        return locations != null;
+    }
+
+    /**
+     * Get the current routing snapshot version, to be taken before computing the location to be cached.
+     *
+     * @return routing snapshot version.
+     */
+    public long getVersion() {
+        return registry == null ? 0 : registry.get().getVersion();
+    }
+
+    /**
+     * Get the slice where the instance with the given object id is located.
+     *
+     * @param oid object id.
+     * @return slice name; null if not known with the current routing snapshot.
+     */
+    public String get(final Object oid) {
+        if (locations == null || oid == null) {
+            return null;
+        }
+
+        final Location location = (Location) locations.get(oid);
+        if (location == null) {
+            return null;
+        }
+        if (location.version != getVersion()) {
+            locations.remove(oid);
+            return null;
+        }
+        return location.slice;
+    }
+
+    /**
+     * Remember the slice where the instance with the given object id is located.
+     *
+     * @param oid object id.
+     * @param slice slice name.
+     * @param version routing snapshot version the location was computed with.
+     */
+    public void put(final Object oid, final String slice, final long version) {
+        if (locations != null && oid != null && slice != null && version == getVersion()) {
+            locations.put(oid, new Location(slice, version));
+        }
+    }
+
+    public void remove(final Object oid) {
+        if (locations != null && oid != null) {
+            locations.remove(oid);
+        }
+    }
+
+    public void clear() {
+        if (locations != null) {
+            locations.clear();
+        }
+    }
+
+    public int size() {
+        return locations == null ? 0 : locations.size();
+    }
+}
@@ -0,0 +1,190 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.openjpa.azure.trace;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Tracer keeping ended spans in memory, mainly meant for tests.
+ */
+public class InMemoryTracer implements Tracer {
+
+    /**
+     * A span recorded by {@link InMemoryTracer}.
+     */
+    public class RecordedSpan implements Span {
+
+        private final long id;
+
+        private final RecordedSpan parent;
+
+        private final String name;
+
+        private final long start;
+
+        private volatile long end = -1;
+
+        private final Map<String, Object> tags = Collections.synchronizedMap(new LinkedHashMap<String, Object>());
+
+        private volatile Throwable error;
+
+        RecordedSpan(final RecordedSpan parent, final String name) {
+            this.id = ids.incrementAndGet();
+            this.parent = parent;
+            this.name = name;
+            this.start = System.nanoTime();
+        }
+
+        public long getId() {
+            return id;
+        }
+
+        /**
+         * Get the parent span; null for root spans.
+         */
+        public RecordedSpan getParent() {
+            return parent;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * Get the start time, as returned by {@link System#nanoTime()}.
+         */
+        public long getStart() {
+            return start;
+        }
+
+        /**
+         * Get the duration, in nanoseconds; -1 if not ended yet.
+         */
+        public long getDuration() {
+            return end < 0 ? -1 : end - start;
+        }
+
+        public boolean isEnded() {
+            return end >= 0;
+        }
+
+        public Map<String, Object> getTags() {
+            synchronized (tags) {
+                return new LinkedHashMap<String, Object>(tags);
+            }
+        }
+
+        public Throwable getError() {
+            return error;
+        }
+
+        @Override
+        public Span child(final String name) {
+            return new RecordedSpan(this, name);
+        }
+
+        @Override
+        public Span tag(final String key, final Object value) {
+            tags.put(key, value);
+            return this;
+        }
+
+        @Override
+        public void error(final Throwable error) {
+            this.error = error;
+        }
+
+        @Override
+        public synchronized void end() {
+            if (end < 0) {
+                end = System.nanoTime();
+                spans.add(this);
+            }
+        }
+
+        @Override
+        public boolean isRecording() {
+            return true;
+        }
+
+        @Override
+        public String toString() {
+            return name + "#" + id + (parent == null ? "" : "<" + parent.getId()) + " " + getTags()
+                    + (isEnded() ? " " + getDuration() / 1000 + "us" : " (running)")
+                    + (error == null ? "" : " error=" + error);
+        }
+    }
+
+    private final AtomicLong ids = new AtomicLong();
+
+    private final ConcurrentLinkedQueue<RecordedSpan> spans = new ConcurrentLinkedQueue<RecordedSpan>();
+
+    @Override
+    public Span startSpan(final String name) {
+        return new RecordedSpan(null, name);
+    }
+
+    /**
+     * Get ended spans, in end order.
+     */
+    public List<RecordedSpan> getSpans() {
+        return new ArrayList<RecordedSpan>(spans);
+    }
+
+    /**
+     * Get ended spans with the given name.
+     */
+    public List<RecordedSpan> getSpans(final String name) {
+        final List<RecordedSpan> result = new ArrayList<RecordedSpan>();
+        for (RecordedSpan span : spans) {
+            if (span.getName().equals(name)) {
+                result.add(span);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Get ended children of the given span.
+     */
+    public List<RecordedSpan> getChildren(final RecordedSpan parent) {
+        final List<RecordedSpan> result = new ArrayList<RecordedSpan>();
+        for (RecordedSpan span : spans) {
+            if (span.getParent() == parent) {
+                result.add(span);
+            }
+        }
+        return result;
+    }
+
+    public void clear() {
+        spans.clear();
+    }
+
+    @Override
+    public void close() {
+        clear();
+    }
+}
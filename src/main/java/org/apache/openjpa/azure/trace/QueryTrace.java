@@ -0,0 +1,287 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.openjpa.azure.trace;
+
+import java.lang.management.ManagementFactory;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import javax.management.ObjectName;
+import org.apache.commons.lang.StringUtils;
+import org.apache.openjpa.azure.jdbc.conf.AzureConfiguration;
+import org.apache.openjpa.jdbc.conf.JDBCConfiguration;
+import org.apache.openjpa.lib.log.Log;
+
+/**
+ * Sampled trace of the statements sent to slices and of target policy evaluations, kept in a fixed-size ring buffer.
+ *
+ * Events only hold references to the traced objects: nothing is formatted until the trace is dumped, either through
+ * {@link #dump()} or through the <code>org.apache.openjpa.azure:type=QueryTrace</code> MBean. Tracing is disabled by
+ * default; when disabled, {@link #sample()} is the only cost paid by callers:
+ * <pre>
+ * if (trace.sample()) {
+ *     trace.record(QueryTrace.Kind.QUERY, sliceName, queryString, null);
+ * }
+ * </pre>
+ */
+public class QueryTrace implements QueryTraceMBean {
+
+    public enum Kind {
+
+        QUERY,
+        UPDATE,
+        DELETE,
+        FIND_TARGETS,
+        QUERY_TARGETS
+
+    }
+
+    /**
+     * A traced event.
+     */
+    public static final class Event {
+
+        private final long timestamp;
+
+        private final String thread;
+
+        private final Kind kind;
+
+        private final String slice;
+
+        private final Object subject;
+
+        private final Object detail;
+
+        Event(final Kind kind, final String slice, final Object subject, final Object detail) {
+            this.timestamp = System.currentTimeMillis();
+            this.thread = Thread.currentThread().getName();
+            this.kind = kind;
+            this.slice = slice;
+            this.subject = subject;
+            this.detail = detail;
+        }
+
+        public long getTimestamp() {
+            return timestamp;
+        }
+
+        public String getThread() {
+            return thread;
+        }
+
+        public Kind getKind() {
+            return kind;
+        }
+
+        public String getSlice() {
+            return slice;
+        }
+
+        public Object getSubject() {
+            return subject;
+        }
+
+        public Object getDetail() {
+            return detail;
+        }
+
+        @Override
+        public String toString() {
+            return kind + (slice == null ? "" : " [" + slice + "]") + " " + format(subject)
+                    + (detail == null ? "" : " -> " + format(detail));
+        }
+    }
+
+    /**
+     * Trace recording nothing.
+     */
+    public static final QueryTrace DISABLED = new QueryTrace(false, 1, 1, null);
+
+    private final boolean enabled;
+
+    private final int sampling;
+
+    private final AtomicReferenceArray<Event> events;
+
+    private final int mask;
+
+    private final AtomicLong sequence = new AtomicLong();
+
+    private final AtomicLong samples = new AtomicLong();
+
+    private final Log log;
+
+    private ObjectName name;
+
+    /**
+     * Constructor.
+     *
+     * @param enabled TRUE to record events.
+     * @param sampling trace one operation every <code>sampling</code>.
+     * @param size ring buffer capacity, rounded up to the next power of two.
+     * @param log log receiving dumps at TRACE level; can be null.
+     */
+    public QueryTrace(final boolean enabled, final int sampling, final int size, final Log log) {
+        this.enabled = enabled;
+        this.sampling = Math.max(1, sampling);
+
+        int capacity = 1;
+        while (capacity < Math.max(1, size) && capacity < (1 << 30)) {
+            capacity <<= 1;
+        }
+        this.events = new AtomicReferenceArray<Event>(enabled ? capacity : 1);
+        this.mask = enabled ? capacity - 1 : 0;
+        this.log = log;
+    }
+
+    public static QueryTrace newInstance(final AzureConfiguration conf) {
+        if (!conf.isQueryTrace()) {
+            return DISABLED;
+        }
+
+        final QueryTrace trace = new QueryTrace(true, conf.getQueryTraceSampling(), conf.getQueryTraceSize(),
+                conf.getLog(JDBCConfiguration.LOG_DIAG));
+
+        if (conf.isMetricsJMX()) {
+            trace.register(StringUtils.isBlank(conf.getId()) ? "default" : conf.getId());
+        }
+        return trace;
+    }
+
+    private void register(final String unit) {
+        try {
+            name = new ObjectName("org.apache.openjpa.azure:type=QueryTrace"
+                    + ",unit=" + ObjectName.quote(unit)
+                    + ",factory=" + Integer.toHexString(System.identityHashCode(this)));
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, name);
+        } catch (Exception e) {
+            name = null;
+            if (log != null && log.isWarnEnabled()) {
+                log.warn("Could not register query trace with JMX: " + e.getMessage());
+            }
+        }
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Decide whether the current operation has to be traced.
+     *
+     * @return TRUE if tracing is enabled and the current operation has been sampled.
+     */
+    public boolean sample() {
+        return enabled && (sampling == 1 || samples.getAndIncrement() % sampling == 0);
+    }
+
+    /**
+     * Record an event of an operation for which {@link #sample()} returned TRUE.
+     *
+     * @param kind event kind.
+     * @param slice slice name; can be null.
+     * @param subject traced subject (i.e. query string, object id).
+     * @param detail additional information (i.e. targets); can be null.
+     */
+    public void record(final Kind kind, final String slice, final Object subject, final Object detail) {
+        if (enabled) {
+            events.set((int) (sequence.getAndIncrement() & mask), new Event(kind, slice, subject, detail));
+        }
+    }
+
+    /**
+     * Get recorded events, oldest first.
+     */
+    public List<Event> getEvents() {
+        final List<Event> result = new ArrayList<Event>();
+        if (!enabled) {
+            return result;
+        }
+
+        final long last = sequence.get();
+        for (long i = Math.max(0, last - events.length()); i < last; i++) {
+            final Event event = events.get((int) (i & mask));
+            if (event != null) {
+                result.add(event);
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public String dump() {
+        final SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS");
+
+        final StringBuilder builder = new StringBuilder();
+        for (Event event : getEvents()) {
+            builder.append(format.format(new Date(event.getTimestamp()))).
+                    append(" [").append(event.getThread()).append("] ").
+                    append(event).append('\n');
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Write recorded events onto the diagnostic log, at TRACE level.
+     */
+    public void dumpToLog() {
+        if (log != null && log.isTraceEnabled()) {
+            log.trace("Query trace:\n" + dump());
+        }
+    }
+
+    @Override
+    public void clear() {
+        for (int i = 0; i < events.length(); i++) {
+            events.set(i, null);
+        }
+    }
+
+    @Override
+    public long getRecorded() {
+        return sequence.get();
+    }
+
+    /**
+     * Unregister the MBean, if any.
+     */
+    public void close() {
+        if (name != null) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+            } catch (Exception ignore) {
+                // already unregistered
+            }
+            name = null;
+        }
+    }
+
+    private static String format(final Object value) {
+        if (value instanceof Object[]) {
+            return Arrays.toString((Object[]) value);
+        }
+        return String.valueOf(value);
+    }
+}
@@ -0,0 +1,42 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.openjpa.azure.trace;
+
+/**
+ * JMX management interface of {@link QueryTrace}.
+ */
+public interface QueryTraceMBean {
+
+    boolean isEnabled();
+
+    /**
+     * Get the number of events recorded so far, including the ones overwritten in the ring buffer.
+     */
+    long getRecorded();
+
+    /**
+     * Format the events currently held by the ring buffer, oldest first, one per line.
+     */
+    String dump();
+
+    /**
+     * Discard the events currently held by the ring buffer.
+     */
+    void clear();
+}
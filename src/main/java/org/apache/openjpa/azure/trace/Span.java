@@ -0,0 +1,88 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.openjpa.azure.trace;
+
+/**
+ * A timed phase of a distributed execution; spans are started by {@link Tracer#startSpan(String)} or
+ * {@link #child(String)} and are not thread-safe: each span is expected to be started and ended by a single thread at
+ * a time.
+ */
+public interface Span {
+
+    /**
+     * Span recording nothing: its children are the span itself.
+     */
+    Span NOOP = new Span() {
+
+        @Override
+        public Span child(final String name) {
+            return this;
+        }
+
+        @Override
+        public Span tag(final String key, final Object value) {
+            return this;
+        }
+
+        @Override
+        public void error(final Throwable error) {
+            // nothing to record
+        }
+
+        @Override
+        public void end() {
+            // nothing to record
+        }
+
+        @Override
+        public boolean isRecording() {
+            return false;
+        }
+    };
+
+    /**
+     * Start a child span.
+     *
+     * @param name span name.
+     * @return child span, started.
+     */
+    Span child(String name);
+
+    /**
+     * Attach the given key / value pair.
+     *
+     * @return this span.
+     */
+    Span tag(String key, Object value);
+
+    /**
+     * Mark this span as failed.
+     */
+    void error(Throwable error);
+
+    /**
+     * End this span; further invocations are ignored.
+     */
+    void end();
+
+    /**
+     * Check if this span records anything: callers can skip building tag values otherwise.
+     */
+    boolean isRecording();
+}
@@ -0,0 +1,56 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.openjpa.azure.trace;
+
+/**
+ * Holds the span being executed by the current thread, so that phases timed far from the query executors (i.e.
+ * connection and <code>USE FEDERATION</code>) can be attached to it.
+ */
+public final class TraceContext {
+
+    private static final ThreadLocal<Span> CURRENT = new ThreadLocal<Span>();
+
+    private TraceContext() {
+    }
+
+    /**
+     * Get the span being executed by the current thread.
+     *
+     * @return current span; {@link Span#NOOP} if none.
+     */
+    public static Span current() {
+        final Span span = CURRENT.get();
+        return span == null ? Span.NOOP : span;
+    }
+
+    /**
+     * Set the span being executed by the current thread; spans not recording anything are not set.
+     *
+     * @param span span.
+     */
+    public static void set(final Span span) {
+        if (span.isRecording()) {
+            CURRENT.set(span);
+        }
+    }
+
+    public static void clear() {
+        CURRENT.remove();
+    }
+}
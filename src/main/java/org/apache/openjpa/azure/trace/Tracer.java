@@ -0,0 +1,59 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.openjpa.azure.trace;
+
+/**
+ * Produces the spans of distributed executions.
+ *
+ * Each distributed query gets a {@link #QUERY} root span with one {@link #SLICE} child per target slice; slice spans
+ * are split into {@link #EXECUTE} (with nested {@link #CONNECT} and {@link #USE_FEDERATION} when a new connection is
+ * needed) and {@link #FETCH}, while results are combined by a {@link #MERGE} child of the root span.
+ *
+ * The tracer is configured, as an OpenJPA plugin string, by the <code>openjpa.azure.Tracer</code> property: the
+ * default does not record anything.
+ */
+public interface Tracer {
+
+    String QUERY = "query";
+
+    String SLICE = "slice";
+
+    String EXECUTE = "execute";
+
+    String CONNECT = "connect";
+
+    String USE_FEDERATION = "use-federation";
+
+    String FETCH = "fetch";
+
+    String MERGE = "merge";
+
+    /**
+     * Start a root span.
+     *
+     * @param name span name.
+     * @return root span, started.
+     */
+    Span startSpan(String name);
+
+    /**
+     * Invoked once, when the broker factory is closed.
+     */
+    void close();
+}
@@ -31,17 +31,19 @@ import java.util.Map;
 import java.util.Set;
 import javax.persistence.Embeddable;
 import org.apache.commons.lang.StringUtils;
+import org.apache.openjpa.azure.AzureDistributedBrokerFactory;
 import org.apache.openjpa.azure.Federation;
 import org.apache.openjpa.azure.jdbc.conf.AzureConfiguration;
 import org.apache.openjpa.azure.jdbc.conf.AzureConfiguration.RangeType;
 import org.apache.openjpa.jdbc.meta.MappingRepository;
 import org.apache.openjpa.jdbc.schema.ForeignKey;
 import org.apache.openjpa.jdbc.schema.Table;
+import org.apache.openjpa.kernel.Broker;
 import org.apache.openjpa.kernel.OpenJPAStateManager;
 import org.apache.openjpa.meta.ClassMetaData;
-import org.apache.openjpa.azure.jdbc.AzureSliceStoreManager;
+import org.apache.openjpa.azure.routing.RoutingTable;
+import org.apache.openjpa.azure.trace.QueryTrace;
 import org.apache.openjpa.slice.jdbc.DistributedJDBCStoreManager;
-import org.apache.openjpa.slice.jdbc.SliceStoreManager;
 import org.apache.openjpa.util.ObjectId;
 
 public final class AzureUtils {
@@ -82,6 +84,60 @@ public final class AzureUtils {
         return conn;
     }
 
+    /**
+     * Switch the given connection back to the federation root.
+     *
+     * @param conn connection.
+     * @return the given connection.
+     * @throws SQLException
+     */
+    public static Connection useFederationRoot(final Connection conn)
+            throws SQLException {
+
+        Statement stmt = null;
+        try {
+            stmt = conn.createStatement();
+            stmt.execute("USE FEDERATION ROOT WITH RESET");
+        } finally {
+            if (stmt != null) {
+                try {
+                    stmt.close();
+                } catch (SQLException ignore) {
+                    // ignore exception
+                }
+            }
+        }
+
+        return conn;
+    }
+
+    /**
+     * Get the query trace of the broker factory of the given broker.
+     *
+     * @param broker broker.
+     * @return query trace; {@link QueryTrace#DISABLED} if not created by an Azure broker factory.
+     */
+    public static QueryTrace getQueryTrace(final Broker broker) {
+        return broker.getBrokerFactory() instanceof AzureDistributedBrokerFactory
+                ? ((AzureDistributedBrokerFactory) broker.getBrokerFactory()).getQueryTrace()
+                : QueryTrace.DISABLED;
+    }
+
+    /**
+     * Get the error code of the first SQLException found in the given exception chain.
+     *
+     * @param t exception.
+     * @return SQL error code; 0 if no SQLException is found.
+     */
+    public static int getSQLErrorCode(final Throwable t) {
+        for (Throwable cause = t; cause != null; cause = cause.getCause() == cause ? null : cause.getCause()) {
+            if (cause instanceof SQLException) {
+                return ((SQLException) cause).getErrorCode();
+            }
+        }
+        return 0;
+    }
+
     public static boolean checkForFederationMember(final Federation federation, final Object member, Object oid) {
 
         if (federation == null || member == null) {
@@ -352,27 +408,56 @@ public final class AzureUtils {
     public static List<String> getTargetSlice(
             final DistributedJDBCStoreManager store, final List<String> slices, final Federation fed, final Object id) {
 
+        // read a single snapshot: member bounds could be refreshed meanwhile
+        return getTargetSlice(store.getFederationRegistry().get(), slices, fed, id);
+    }
+
+    /**
+     * Find the slices of the given federation targeted by the given id, against the given routing snapshot.
+     *
+     * Member indexes do not follow lower bounds once a member other than the last one is split: the id is then routed
+     * to the member with the greatest lower bound not exceeding it, whatever its slice name.
+     *
+     * @param routing routing table snapshot.
+     * @param slices slice names.
+     * @param fed federation.
+     * @param id federation key; null to target all members.
+     * @return target slice names; 'ROOT' if no federation member is found.
+     */
+    public static List<String> getTargetSlice(
+            final RoutingTable routing, final List<String> slices, final Federation fed, final Object id) {
+
         final List<String> res = new ArrayList<String>();
 
         boolean firstMatchOnly = id != null;
 
-        for (int i = slices.size() - 1; i >= 0 || firstMatchOnly; i--) {
+        final boolean isSingleMember = !routing.isMultiMember(fed);
+
+        String target = null;
+        Object targetLowerBound = null;
+
+        for (int i = slices.size() - 1; i >= 0; i--) {
 
-            final SliceStoreManager sliceStore = store.getSlice(i);
+            final String sliceName = slices.get(i);
 
-            final Object fedLowerBound = ((AzureSliceStoreManager) sliceStore).getFedLowerBound();
-            final boolean isSingleMember = !((AzureSliceStoreManager) sliceStore).isFedMultiMember();
+            final Object fedLowerBound = routing.getLowerBound(sliceName);
 
-            if (fed.getName().equals(((AzureSliceStoreManager) sliceStore).getFedName())) {
+            if (fedLowerBound != null && fed.getName().equals(getFederationName(sliceName))) {
                 if (isSingleMember || !firstMatchOnly) {
-                    res.add(sliceStore.getName());
-                } else if (AzureUtils.checkForFederationMember(fed, fedLowerBound, id)) {
-                    res.add(sliceStore.getName());
-                    return res;
+                    res.add(sliceName);
+                } else if (AzureUtils.checkForFederationMember(fed, fedLowerBound, id)
+                        && (target == null
+                        || AzureUtils.checkForFederationMember(fed, targetLowerBound, fedLowerBound))) {
+                    target = sliceName;
+                    targetLowerBound = fedLowerBound;
                 }
             }
         }
 
+        if (target != null) {
+            res.add(target);
+        }
+
         if (res.isEmpty()) {
             res.add("ROOT");
         }
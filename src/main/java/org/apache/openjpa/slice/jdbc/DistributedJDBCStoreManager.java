@@ -20,29 +20,62 @@ package org.apache.openjpa.slice.jdbc;
 
 import java.sql.Connection;
 import java.sql.SQLException;
+import java.sql.Savepoint;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.BitSet;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.apache.openjpa.azure.Federation;
+import org.apache.openjpa.azure.OrdinalFinderTargetPolicy;
+import org.apache.openjpa.azure.datacache.SliceQueryCache;
 import org.apache.openjpa.azure.jdbc.AzureSliceStoreManager;
 import org.apache.openjpa.azure.jdbc.DistributedSQLStoreQuery;
 import org.apache.openjpa.azure.jdbc.DistributedStoreQuery;
+import org.apache.openjpa.azure.jdbc.QueryPlanCache;
 import org.apache.openjpa.azure.jdbc.conf.AzureConfiguration;
 import org.apache.openjpa.azure.jdbc.conf.AzureConfigurationImpl;
+import org.apache.openjpa.azure.kernel.AzureFetchConfiguration;
+import org.apache.openjpa.azure.kernel.AzureStateManager;
+import org.apache.openjpa.azure.metrics.MetricsRegistry;
+import org.apache.openjpa.azure.metrics.SliceMetrics;
+import org.apache.openjpa.azure.retry.TransientFaultPolicy;
+import org.apache.openjpa.azure.routing.FederationRegistry;
+import org.apache.openjpa.azure.routing.RoutingContext;
+import org.apache.openjpa.azure.routing.RoutingRefresher;
+import org.apache.openjpa.azure.routing.SliceLocationCache;
+import org.apache.openjpa.azure.trace.QueryTrace;
+import org.apache.openjpa.azure.trace.Tracer;
+import org.apache.openjpa.azure.util.AzureUtils;
+import org.apache.openjpa.datacache.DataCache;
+import org.apache.openjpa.datacache.DataCacheManager;
 import org.apache.openjpa.datacache.QueryCache;
 import org.apache.openjpa.datacache.QueryCacheStoreQuery;
 import org.apache.openjpa.enhance.PersistenceCapable;
 import org.apache.openjpa.jdbc.conf.JDBCConfiguration;
 import org.apache.openjpa.jdbc.kernel.ConnectionInfo;
+import org.apache.openjpa.jdbc.kernel.JDBCFetchConfiguration;
 import org.apache.openjpa.jdbc.kernel.JDBCStore;
 import org.apache.openjpa.jdbc.kernel.JDBCStoreManager;
+import org.apache.openjpa.jdbc.meta.ClassMapping;
+import org.apache.openjpa.jdbc.meta.FieldMapping;
 import org.apache.openjpa.jdbc.sql.Result;
 import org.apache.openjpa.jdbc.sql.ResultSetResult;
 import org.apache.openjpa.kernel.FetchConfiguration;
@@ -85,10 +118,37 @@ public class DistributedJDBCStoreManager extends JDBCStoreManager
 
     private final List<SliceStoreManager> _slices;
 
+    private final Map<String, Integer> _ordinals = new ConcurrentHashMap<String, Integer>();
+
     private JDBCStoreManager _master;
 
     private final DistributedJDBCConfiguration _conf;
 
+    private final FederationRegistry _registry;
+
+    private final RoutingRefresher _refresher;
+
+    private final TransientFaultPolicy _faultPolicy;
+
+    private final MetricsRegistry _metrics;
+
+    private final QueryTrace _trace;
+
+    private final Tracer _tracer;
+
+    private final SliceQueryCache _queryCache;
+
+    private final SliceLocationCache _locations;
+
+    private final QueryPlanCache _plans;
+
+    /**
+     * Types written onto each slice by the current transaction, for slice query cache invalidation on commit.
+     */
+    private final Map<String, Set<Class<?>>> _written = new HashMap<String, Set<Class<?>>>();
+
+    private boolean _bulkIngest;
+
     private final Log log;
 
     private static final Localizer _loc = Localizer.forPackage(DistributedJDBCStoreManager.class);
@@ -98,23 +158,38 @@ public class DistributedJDBCStoreManager extends JDBCStoreManager
      *
      * The supplied configuration carries multiple URL for underlying physical slices. The first slice is referred as
      * <em>master</em> and is used to get Sequence based entity identifiers.
+     *
+     * Federation member bounds are read from the registry of the given routing refresher; the refresher and the other
+     * given components are shared by all the store managers of the same broker factory.
      */
-    public DistributedJDBCStoreManager(DistributedJDBCConfiguration conf) {
+    public DistributedJDBCStoreManager(DistributedJDBCConfiguration conf, DistributedStoreComponents components) {
         super();
         _conf = conf;
+        _refresher = components.getRoutingRefresher();
+        _registry = _refresher.getFederationRegistry();
+        _faultPolicy = components.getTransientFaultPolicy();
+        _metrics = components.getMetricsRegistry();
+        _trace = components.getQueryTrace();
+        _tracer = components.getTracer();
+        _queryCache = components.getSliceQueryCache();
+        _locations = components.getSliceLocationCache();
+        _plans = components.getQueryPlanCache();
+        _bulkIngest = ((AzureConfiguration) conf).isBulkIngest();
 
         log = conf.getLog(JDBCConfiguration.LOG_DIAG);
 
-        _slices = new ArrayList<SliceStoreManager>();
+        // slices could be added at runtime, while in use by other threads
+        _slices = new CopyOnWriteArrayList<SliceStoreManager>();
 
         List<Slice> slices = conf.getSlices(Slice.Status.ACTIVE);
         Slice masterSlice = conf.getMasterSlice();
 
         for (Slice slice : slices) {
-            AzureSliceStoreManager store = new AzureSliceStoreManager(slice);
+            AzureSliceStoreManager store = new AzureSliceStoreManager(slice, _registry, _faultPolicy, _metrics);
             store.setFederation(((AzureConfiguration) getConfiguration()).getFederation(slice));
 
             _slices.add(store);
+            _ordinals.put(store.getName(), _slices.size() - 1);
 
             if (slice == masterSlice) {
                 _master = store;
@@ -126,16 +201,150 @@ public class DistributedJDBCStoreManager extends JDBCStoreManager
         return _conf;
     }
 
+    public FederationRegistry getFederationRegistry() {
+        return _registry;
+    }
+
+    public RoutingRefresher getRoutingRefresher() {
+        return _refresher;
+    }
+
+    public TransientFaultPolicy getTransientFaultPolicy() {
+        return _faultPolicy;
+    }
+
+    public MetricsRegistry getMetricsRegistry() {
+        return _metrics;
+    }
+
+    public boolean isBulkIngest() {
+        return _bulkIngest;
+    }
+
+    /**
+     * Enable or disable bulk ingest for the flushes of this store manager, overriding the configured default.
+     *
+     * @see AzureConfiguration#isBulkIngest()
+     */
+    public void setBulkIngest(boolean bulkIngest) {
+        _bulkIngest = bulkIngest;
+    }
+
+    public QueryTrace getQueryTrace() {
+        return _trace;
+    }
+
+    public Tracer getTracer() {
+        return _tracer;
+    }
+
+    public SliceQueryCache getSliceQueryCache() {
+        return _queryCache;
+    }
+
+    public SliceLocationCache getSliceLocationCache() {
+        return _locations;
+    }
+
+    public QueryPlanCache getQueryPlanCache() {
+        return _plans;
+    }
+
+    /**
+     * Records that the given types (and their persistent superclasses) are being written onto the given slice: the
+     * partial results accessing them on that slice are invalidated when the current transaction commits.
+     */
+    public void recordWrite(String slice, Collection<ClassMetaData> metas) {
+        if (!_queryCache.isEnabled()) {
+            return;
+        }
+        synchronized (_written) {
+            Set<Class<?>> types = _written.get(slice);
+            if (types == null) {
+                types = new HashSet<Class<?>>();
+                _written.put(slice, types);
+            }
+            for (ClassMetaData meta : metas) {
+                for (ClassMetaData m = meta; m != null; m = m.getPCSuperclassMetaData()) {
+                    types.add(m.getDescribedType());
+                }
+            }
+        }
+    }
+
+    /**
+     * Checks whether any of the given types has been written by the current transaction, onto any slice.
+     */
+    public boolean isWritten(Class<?>[] types) {
+        synchronized (_written) {
+            for (Set<Class<?>> written : _written.values()) {
+                for (Class<?> type : types) {
+                    if (written.contains(type)) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    private void recordWrite(SliceStoreManager slice, StateManagerSet subset) {
+        if (_queryCache.isEnabled()) {
+            Set<ClassMetaData> metas = new HashSet<ClassMetaData>();
+            for (OpenJPAStateManager sm : subset) {
+                metas.add(sm.getMetaData());
+            }
+            recordWrite(slice.getName(), metas);
+        }
+    }
+
+    /**
+     * Commits, then invalidates the partial results of the slices written by the transaction.
+     */
+    @Override
+    public void commit() {
+        super.commit();
+
+        synchronized (_written) {
+            for (Map.Entry<String, Set<Class<?>>> entry : _written.entrySet()) {
+                _queryCache.invalidate(entry.getKey(), entry.getValue());
+            }
+            _written.clear();
+        }
+    }
+
+    @Override
+    public void rollback() {
+        synchronized (_written) {
+            _written.clear();
+        }
+        super.rollback();
+    }
+
     public SliceStoreManager getSlice(int i) {
         return _slices.get(i);
     }
 
-    public SliceStoreManager addSlice(Slice slice) {
-        AzureSliceStoreManager result = new AzureSliceStoreManager(slice);
+    /**
+     * Gets the slices bound to members of the given federation.
+     */
+    public List<SliceStoreManager> getSlices(Federation federation) {
+        List<SliceStoreManager> result = new ArrayList<SliceStoreManager>();
+        for (SliceStoreManager slice : _slices) {
+            if (federation.equals(((AzureSliceStoreManager) slice).getFederation())) {
+                result.add(slice);
+            }
+        }
+        return result;
+    }
+
+    public synchronized SliceStoreManager addSlice(Slice slice) {
+        AzureSliceStoreManager result = new AzureSliceStoreManager(slice, _registry, _faultPolicy, _metrics);
         result.setFederation(((AzureConfigurationImpl) getConfiguration()).getFederation(slice));
 
         result.setContext(getContext(), (JDBCConfiguration) slice.getConfiguration());
         _slices.add(result);
+        _ordinals.put(result.getName(), _slices.size() - 1);
 
         return result;
     }
@@ -171,6 +380,7 @@ public class DistributedJDBCStoreManager extends JDBCStoreManager
             return;
         }
         new SliceInfo(hint).setInto(sm);
+        _locations.put(sm.getObjectId(), hint, _locations.getVersion());
     }
 
     /**
@@ -250,233 +460,1281 @@ public class DistributedJDBCStoreManager extends JDBCStoreManager
     public ResultObjectProvider executeExtent(ClassMetaData meta,
             boolean subclasses, FetchConfiguration fetch) {
         int i = 0;
-        List<SliceStoreManager> targets = getTargets(fetch);
-        ResultObjectProvider[] tmp = new ResultObjectProvider[targets.size()];
-        for (SliceStoreManager slice : targets) {
-            tmp[i++] = slice.executeExtent(meta, subclasses, fetch);
+        RoutingContext targets = getRoutingContext(fetch);
+        ResultObjectProvider[] tmp = new ResultObjectProvider[targets.cardinality()];
+        for (int ordinal = targets.nextSlice(0); ordinal >= 0; ordinal = targets.nextSlice(ordinal + 1)) {
+            tmp[i++] = _slices.get(ordinal).executeExtent(meta, subclasses, fetch);
         }
         return new MergedResultObjectProvider(tmp);
     }
 
+    /**
+     * Checks whether the given instance exists, probing first the slices computed by the finder target policy (or the
+     * ones already assigned to the instance) and then, if not found there, the remaining slices in parallel.
+     *
+     * Failures of the computed slices are rethrown when no slice reports the instance; failures of the remaining
+     * slices are ignored, since the instance's table could not be available there.
+     */
     public boolean exists(OpenJPAStateManager sm, Object edata) {
+        BitSet ordinals = SliceImplHelper.isSliceAssigned(sm)
+                ? toOrdinals(SliceImplHelper.getSliceInfo(sm).getSlices())
+                : getFinderTargets(sm).getSlices();
+        List<SliceStoreManager> targets = new ArrayList<SliceStoreManager>();
+        for (int i = ordinals.nextSetBit(0); i >= 0 && i < _slices.size(); i = ordinals.nextSetBit(i + 1)) {
+            targets.add(_slices.get(i));
+        }
+
+        RuntimeException failure = null;
         String origin = null;
-        for (SliceStoreManager slice : _slices) {
+        if (!targets.isEmpty()) {
             try {
-                if (slice.exists(sm, edata)) {
-                    origin = slice.getName();
-                    break;
+                origin = exists(targets, sm, edata, true);
+            } catch (RuntimeException e) {
+                _refresher.refreshOnError(e);
+                failure = e;
+            }
+        }
+        if (origin == null) {
+            List<SliceStoreManager> remaining = new ArrayList<SliceStoreManager>();
+            for (int i = ordinals.nextClearBit(0); i < _slices.size(); i = ordinals.nextClearBit(i + 1)) {
+                remaining.add(_slices.get(i));
+            }
+            if (!remaining.isEmpty()) {
+                if (log.isTraceEnabled()) {
+                    log.trace("Instance " + sm.getObjectId() + " not found on " + targets + ", probing " + remaining);
                 }
-            } catch (Exception ignore) {
-                // ignore exception because target could be wrong
+                origin = exists(remaining, sm, edata, false);
             }
         }
         if (origin != null) {
             assignSlice(sm, origin);
+            return true;
         }
-        return origin != null;
+        if (failure != null) {
+            throw failure;
+        }
+        return false;
     }
 
     /**
-     * Flush the given StateManagers after binning them to respective physical slices.
+     * Probes the given slices, in parallel if more than one.
+     *
+     * @return name of the first given slice reporting the instance; null if none.
      */
-    public Collection flush(Collection sms) {
-        Collection exceptions = new ArrayList();
-        List<Future<Collection>> futures = new ArrayList<Future<Collection>>();
-        Map<String, StateManagerSet> subsets = bin(sms, null);
-        Collection<StateManagerSet> remaining =
-                new ArrayList<StateManagerSet>(subsets.values());
-        ExecutorService threadPool = SliceThread.getPool();
-        for (int i = 0; i < _slices.size(); i++) {
-            SliceStoreManager slice = _slices.get(i);
-            StateManagerSet subset = subsets.get(slice.getName());
-            if (subset.isEmpty()) {
-                continue;
-            }
-            if (subset.containsReplicated()) {
-                Map<OpenJPAStateManager, Object> oldVersions = cacheVersion(
-                        subset.getReplicated());
-                collectException(slice.flush(subset), exceptions);
-                remaining.remove(subset);
-                rollbackVersion(subset.getReplicated(), oldVersions, remaining);
-            } else {
-                futures.add(threadPool.submit(new Flusher(slice, subset)));
+    private String exists(List<SliceStoreManager> slices, OpenJPAStateManager sm, Object edata, boolean rethrow) {
+        if (slices.size() == 1) {
+            try {
+                return exists(slices.get(0), sm, edata) ? slices.get(0).getName() : null;
+            } catch (RuntimeException e) {
+                if (rethrow) {
+                    throw e;
+                }
+                return null;
             }
         }
-        for (Future<Collection> future : futures) {
+
+        List<Future<Boolean>> futures = new ArrayList<Future<Boolean>>();
+        for (SliceStoreManager slice : slices) {
+            futures.add(SliceThread.getPool().submit(new Prober(slice, sm, edata, null)));
+        }
+        // wait for all slices, since the StateManager is shared among slice threads
+        String origin = null;
+        StoreException failure = null;
+        for (int i = 0; i < futures.size(); i++) {
             try {
-                collectException(future.get(), exceptions);
+                if (futures.get(i).get() && origin == null) {
+                    origin = slices.get(i).getName();
+                }
             } catch (InterruptedException e) {
-                throw new StoreException(e);
+                if (failure == null) {
+                    failure = new StoreException(e);
+                }
             } catch (ExecutionException e) {
-                throw new StoreException(e.getCause());
+                if (rethrow && failure == null) {
+                    failure = new StoreException(e.getCause());
+                }
             }
         }
-
-        return exceptions;
+        if (origin == null && failure != null) {
+            throw failure;
+        }
+        return origin;
     }
 
-    private void collectException(Collection error, Collection holder) {
-        if (!(error == null || error.isEmpty())) {
-            holder.addAll(error);
+    /**
+     * Checks whether the given instance exists on the given slice, timing the lookup onto the slice metrics.
+     */
+    private boolean exists(SliceStoreManager slice, OpenJPAStateManager sm, Object edata) {
+        SliceMetrics metrics = ((AzureSliceStoreManager) slice).getMetrics();
+        long start = metrics.begin();
+        try {
+            return slice.exists(sm, edata);
+        } finally {
+            metrics.end(SliceMetrics.Operation.FIND, start);
         }
     }
 
     /**
-     * Collect the current versions of the given StateManagers.
+     * Evaluates the finder target policy for the given instance.
+     *
+     * @return routing context of target slices, pruned by object id
      */
-    private Map<OpenJPAStateManager, Object> cacheVersion(
-            List<OpenJPAStateManager> sms) {
-        Map<OpenJPAStateManager, Object> result =
-                new HashMap<OpenJPAStateManager, Object>();
-        for (OpenJPAStateManager sm : sms) {
-            result.put(sm, sm.getVersion());
+    private RoutingContext getFinderTargets(OpenJPAStateManager sm) {
+        long version = _registry.get().getVersion();
+        Class<?> candidate = sm.getMetaData() == null ? null : sm.getMetaData().getDescribedType();
+        if (candidate == null) {
+            return new RoutingContext(new BitSet(), _slices.size(), version, RoutingContext.Reason.KEY_PRUNED, null);
         }
-        return result;
+
+        BitSet result = new BitSet();
+        String located = _locations.get(sm.getObjectId());
+        int ordinal = located == null ? -1 : getSliceOrdinal(located);
+        if (ordinal >= 0) {
+            result.set(ordinal);
+            return new RoutingContext(result, _slices.size(), version, RoutingContext.Reason.KEY_PRUNED, located);
+        }
+
+        FinderTargetPolicy policy = _conf.getFinderTargetPolicyInstance();
+        if (policy instanceof OrdinalFinderTargetPolicy) {
+            result = ((OrdinalFinderTargetPolicy) policy).getTargetOrdinals(candidate, sm.getObjectId(), this,
+                    getContext());
+        } else {
+            result = toOrdinals(policy.getTargets(
+                    candidate, sm.getObjectId(), _conf.getActiveSliceNames(), getContext()));
+        }
+        if (result.cardinality() == 1 && !_conf.isReplicated(candidate)) {
+            _locations.put(sm.getObjectId(), _slices.get(result.nextSetBit(0)).getName(), version);
+        }
+        return new RoutingContext(result, _slices.size(), version, RoutingContext.Reason.KEY_PRUNED, null);
     }
 
     /**
-     * Sets the version of the given StateManagers from the cached versions. Provided that the StateManager does not
-     * appear in the FlusSets of the remaining.
+     * Remembers the slices of the non-replicated StateManagers just flushed, forgetting the deleted ones.
      */
-    private void rollbackVersion(List<OpenJPAStateManager> sms,
-            Map<OpenJPAStateManager, Object> oldVersions,
-            Collection<StateManagerSet> reminder) {
-        if (reminder.isEmpty()) {
+    private void locate(StateManagerSet subset) {
+        if (!_locations.isEnabled()) {
             return;
         }
-        for (OpenJPAStateManager sm : sms) {
-            if (occurs(sm, reminder)) {
-                sm.setVersion(oldVersions.get(sm));
+        long version = _locations.getVersion();
+        for (OpenJPAStateManager sm : subset) {
+            if (sm.isDeleted()) {
+                _locations.remove(sm.getObjectId());
+            } else if (SliceImplHelper.isSliceAssigned(sm)
+                    && !_conf.isReplicated(sm.getMetaData().getDescribedType())) {
+                String[] slices = SliceImplHelper.getSliceInfo(sm).getSlices();
+                if (slices.length == 1) {
+                    _locations.put(sm.getObjectId(), slices[0], version);
+                }
             }
         }
     }
 
-    boolean occurs(OpenJPAStateManager sm,
-            Collection<StateManagerSet> reminder) {
-        for (StateManagerSet set : reminder) {
-            if (set.contains(sm)) {
-                return true;
+    /**
+     * Converts the given slice names to slice ordinals, ignoring unknown slices.
+     */
+    private BitSet toOrdinals(String[] names) {
+        BitSet ordinals = new BitSet(_slices.size());
+        for (String name : names) {
+            int ordinal = getSliceOrdinal(name);
+            if (ordinal >= 0) {
+                ordinals.set(ordinal);
             }
         }
-        return false;
+        return ordinals;
     }
 
     /**
-     * Separate the given list of StateManagers in separate lists for each slice by the associated slice identifier of
-     * each StateManager.
+     * Flush the given StateManagers after binning them to respective physical slices.
+     *
+     * Subsets are flushed in parallel, replicated ones included: each slice thread sees its own version of the
+     * replicated StateManagers, so that the flush latency is bound by the slowest slice. Replicated StateManagers not
+     * supporting per-slice versions are flushed serially instead, restoring their version between slices.
      */
-    private Map<String, StateManagerSet> bin(Collection sms, Object edata) {
-        Map<String, StateManagerSet> subsets = new HashMap<String, StateManagerSet>();
-        for (SliceStoreManager slice : _slices) {
-            subsets.put(slice.getName(), new StateManagerSet(_conf));
+    @SuppressWarnings({ "rawtypes", "unchecked" })
+    public Collection<Exception> flush(Collection sms) {
+        if (_bulkIngest && isIngestable(sms)) {
+            return ingest(sms);
         }
-        for (Object x : sms) {
-            OpenJPAStateManager sm = (OpenJPAStateManager) x;
-            String[] targets = findSliceNames(sm, edata).getSlices();
-            for (String slice : targets) {
-                subsets.get(slice).add(sm);
+
+        Collection<Exception> exceptions = new ArrayList<Exception>();
+        List<Future<Collection<Exception>>> futures = new ArrayList<Future<Collection<Exception>>>();
+        List<Flusher> flushers = new ArrayList<Flusher>();
+        StateManagerSet[] subsets = bin(sms, null);
+        Map<AzureStateManager, Object> versions = beginReplicaFlush(subsets);
+        Collection<StateManagerSet> remaining = new ArrayList<StateManagerSet>();
+        for (StateManagerSet subset : subsets) {
+            if (subset != null) {
+                remaining.add(subset);
             }
         }
-        return subsets;
-    }
-
-    public Object getClientConnection() {
-        return _master.getClientConnection();
-    }
-
-    public Seq getDataStoreIdSequence(ClassMetaData forClass) {
-        return _master.getDataStoreIdSequence(forClass);
-    }
-
-    public Class<?> getDataStoreIdType(ClassMetaData meta) {
-        return _master.getDataStoreIdType(meta);
-    }
+        ExecutorService threadPool = SliceThread.getPool();
+        StoreException failure = null;
+        try {
+            for (int i = 0; i < subsets.length; i++) {
+                SliceStoreManager slice = _slices.get(i);
+                StateManagerSet subset = subsets[i];
+                if (subset == null) {
+                    continue;
+                }
+                if (subset.containsReplicated() && versions == null) {
+                    Map<OpenJPAStateManager, Object> oldVersions = cacheVersion(
+                            subset.getReplicated());
+                    collectException(flush(slice, subset), exceptions);
+                    remaining.remove(subset);
+                    rollbackVersion(subset.getReplicated(), oldVersions, remaining);
+                } else {
+                    Flusher flusher = new Flusher(slice, subset, subset.containsReplicated()
+                            ? sliceVersions(subset.getReplicated(), versions) : null);
+                    flushers.add(flusher);
+                    futures.add(threadPool.submit(flusher));
+                }
+            }
+            // wait for all slices, since replicated StateManagers are shared among slice threads
+            for (Future<Collection<Exception>> future : futures) {
+                try {
+                    collectException(future.get(), exceptions);
+                } catch (InterruptedException e) {
+                    if (failure == null) {
+                        failure = new StoreException(e);
+                    }
+                } catch (ExecutionException e) {
+                    _refresher.refreshOnError(e.getCause());
+                    if (failure == null) {
+                        failure = new StoreException(e.getCause());
+                    }
+                }
+            }
+        } finally {
+            endReplicaFlush(versions, flushers);
+        }
+        if (failure != null) {
+            throw failure;
+        }
 
-    public Class<?> getManagedType(Object oid) {
-        return _master.getManagedType(oid);
+        return exceptions;
     }
 
-    public Seq getValueSequence(FieldMetaData forField) {
-        return _master.getValueSequence(forField);
+    /**
+     * Checks whether the given StateManagers are all new and not replicated, hence eligible for bulk ingest.
+     */
+    private boolean isIngestable(Collection<OpenJPAStateManager> sms) {
+        for (OpenJPAStateManager sm : sms) {
+            if (sm.getPCState() != PCState.PNEW || _conf.isReplicated(sm.getMetaData().getDescribedType())) {
+                return false;
+            }
+        }
+        return true;
     }
 
-    public boolean initialize(OpenJPAStateManager sm, PCState state,
-            FetchConfiguration fetch, Object edata) {
-        if (edata instanceof ConnectionInfo) {
-            String origin = estimateSlice(sm, edata);
-            if (origin != null) {
-                if (lookup(origin).initialize(sm, state, fetch, edata)) {
-                    assignSlice(sm, origin);
-                    return true;
+    /**
+     * Streams the given new StateManagers onto their slices: StateManagers are routed in the given order and grouped
+     * into batches per slice; full batches are handed to a writer per slice, so that all slices are written
+     * concurrently while routing goes on. Routing waits when a slice has too many batches in flight.
+     *
+     * Inserts are ordered after their foreign keys only within a single flush: if any of the given instances has a
+     * foreign key, each slice gets a single batch.
+     */
+    private Collection<Exception> ingest(Collection<OpenJPAStateManager> sms) {
+        AzureConfiguration conf = (AzureConfiguration) _conf;
+        int batchSize = hasForeignKeys(sms) ? Integer.MAX_VALUE : Math.max(1, conf.getBulkIngestBatchSize());
+        int maxInFlight = Math.max(1, conf.getBulkIngestMaxInFlight());
+
+        Ingester[] ingesters = new Ingester[_slices.size()];
+        StateManagerSet[] batches = new StateManagerSet[_slices.size()];
+        List<Future<Collection<Exception>>> futures = new ArrayList<Future<Collection<Exception>>>();
+        boolean routed = false;
+        try {
+            for (OpenJPAStateManager sm : sms) {
+                for (int ordinal : findSliceOrdinals(sm, null)) {
+                    if (ordinal >= batches.length) {
+                        // slice added after routing started
+                        batches = Arrays.copyOf(batches, _slices.size());
+                        ingesters = Arrays.copyOf(ingesters, _slices.size());
+                    }
+                    if (batches[ordinal] == null) {
+                        batches[ordinal] = new StateManagerSet(_conf);
+                    }
+                    batches[ordinal].add(sm, false);
+                    if (batches[ordinal].size() >= batchSize) {
+                        if (ingesters[ordinal] == null) {
+                            ingesters[ordinal] = new Ingester(_slices.get(ordinal), maxInFlight);
+                            futures.add(SliceThread.getPool().submit(ingesters[ordinal]));
+                        }
+                        ingesters[ordinal].put(batches[ordinal]);
+                        batches[ordinal] = null;
+                    }
+                }
+            }
+            for (int i = 0; i < batches.length; i++) {
+                if (batches[i] != null) {
+                    if (ingesters[i] == null) {
+                        ingesters[i] = new Ingester(_slices.get(i), maxInFlight);
+                        futures.add(SliceThread.getPool().submit(ingesters[i]));
+                    }
+                    ingesters[i].put(batches[i]);
+                }
+            }
+            routed = true;
+        } finally {
+            for (Ingester ingester : ingesters) {
+                if (ingester != null) {
+                    ingester.close(routed);
+                }
+            }
+            if (!routed) {
+                // routing failed: wait for the batches being written before surfacing the error
+                for (Future<Collection<Exception>> future : futures) {
+                    try {
+                        future.get();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        break;
+                    } catch (ExecutionException ignore) {
+                        // the routing error is surfaced
+                    }
                 }
             }
         }
 
-        // ----------------------
-        // TODO: SLICE-PATCH
-        // ----------------------
-        final List<String> targets = new ArrayList<String>();
-
-        if (sm != null) {
-            Class candidate = sm.getMetaData() == null ? null : sm.getMetaData().getDescribedType();
-
-            if (candidate != null) {
-                final FinderTargetPolicy policy = _conf.getFinderTargetPolicyInstance();
-
-                final String[] targetNames =
-                        policy.getTargets(candidate, sm.getObjectId(), _conf.getActiveSliceNames(), getContext());
-
-                for (String slice : targetNames) {
-                    targets.add(slice);
+        Collection<Exception> exceptions = new ArrayList<Exception>();
+        StoreException failure = null;
+        for (Future<Collection<Exception>> future : futures) {
+            try {
+                collectException(future.get(), exceptions);
+            } catch (InterruptedException e) {
+                if (failure == null) {
+                    failure = new StoreException(e);
+                }
+            } catch (ExecutionException e) {
+                _refresher.refreshOnError(e.getCause());
+                if (failure == null) {
+                    failure = new StoreException(e.getCause());
                 }
             }
-            log.trace("Retrieved targets to initialize: " + targets);
-        } else {
-            log.trace("No State Manager found to retrieve the policy to initialize targets");
         }
-        // ----------------------
-
-        // not a part of Query result load. Look into the slices till found
+        if (failure != null) {
+            throw failure;
+        }
+        return exceptions;
+    }
 
-        for (SliceStoreManager slice : _slices) {
-            if (targets.contains(slice.getName()) && slice.initialize(sm, state, fetch, edata)) {
-                assignSlice(sm, slice.getName());
+    /**
+     * Checks whether any of the given StateManagers is mapped onto rows holding foreign keys (relations, join tables,
+     * joined inheritance).
+     */
+    private boolean hasForeignKeys(Collection<OpenJPAStateManager> sms) {
+        Set<ClassMetaData> checked = new HashSet<ClassMetaData>();
+        for (OpenJPAStateManager sm : sms) {
+            ClassMetaData meta = sm.getMetaData();
+            if (!checked.add(meta) || !(meta instanceof ClassMapping)) {
+                continue;
+            }
+            ClassMapping mapping = (ClassMapping) meta;
+            if (mapping.getJoinForeignKey() != null) {
                 return true;
             }
+            for (FieldMapping field : mapping.getFieldMappings()) {
+                if (field.getForeignKey() != null || field.getJoinForeignKey() != null
+                        || field.getElementMapping().getForeignKey() != null) {
+                    return true;
+                }
+            }
         }
         return false;
     }
 
-    public boolean load(OpenJPAStateManager sm, BitSet fields,
-            FetchConfiguration fetch, int lockLevel, Object edata) {
-        return selectStore(sm, edata).load(sm, fields, fetch, lockLevel, edata);
-    }
-
-    public Collection loadAll(Collection sms, PCState state, int load,
-            FetchConfiguration fetch, Object edata) {
-        Map<String, StateManagerSet> subsets = bin(sms, edata);
-        Collection result = new ArrayList();
-        for (SliceStoreManager slice : _slices) {
-            StateManagerSet subset = subsets.get(slice.getName());
-            if (subset.isEmpty()) {
+    /**
+     * Starts the replica flush of the replicated StateManagers found in the given subsets, if any.
+     *
+     * @return versions of the replicated StateManagers before flushing; null if any of them does not support
+     * per-slice versions, or if there are no replicated StateManagers
+     */
+    private Map<AzureStateManager, Object> beginReplicaFlush(StateManagerSet[] subsets) {
+        Map<AzureStateManager, Object> versions = null;
+        for (StateManagerSet subset : subsets) {
+            if (subset == null || !subset.containsReplicated()) {
                 continue;
             }
-            Collection tmp = slice.loadAll(subset, state, load, fetch, edata);
-            if (tmp != null && !tmp.isEmpty()) {
-                result.addAll(tmp);
+            if (versions == null) {
+                versions = new IdentityHashMap<AzureStateManager, Object>();
+            }
+            for (OpenJPAStateManager sm : subset.getReplicated()) {
+                if (!(sm instanceof AzureStateManager)) {
+                    return null;
+                }
+                versions.put((AzureStateManager) sm, sm.getVersion());
+            }
+        }
+        if (versions != null) {
+            for (AzureStateManager sm : versions.keySet()) {
+                sm.beginReplicaFlush();
             }
         }
+        return versions;
+    }
+
+    /**
+     * Selects the versions of the replicated StateManagers flushed onto a given slice.
+     */
+    private Map<AzureStateManager, Object> sliceVersions(List<OpenJPAStateManager> replicated,
+            Map<AzureStateManager, Object> versions) {
+        Map<AzureStateManager, Object> result = new IdentityHashMap<AzureStateManager, Object>();
+        for (OpenJPAStateManager sm : replicated) {
+            result.put((AzureStateManager) sm, versions.get(sm));
+        }
         return result;
     }
 
-    public Object newDataStoreId(Object oidVal, ClassMetaData meta) {
-        return _master.newDataStoreId(oidVal, meta);
+    /**
+     * Ends the replica flush, assigning replicated StateManagers the versions resulting from slice flushes.
+     */
+    private void endReplicaFlush(Map<AzureStateManager, Object> versions, List<Flusher> flushers) {
+        if (versions == null) {
+            return;
+        }
+        List<Map<AzureStateManager, Object>> sliceVersions = new ArrayList<Map<AzureStateManager, Object>>();
+        for (Flusher flusher : flushers) {
+            sliceVersions.add(flusher.sliceVersions);
+        }
+        for (AzureStateManager sm : versions.keySet()) {
+            sm.endReplicaFlush(sliceVersions);
+        }
     }
 
     /**
-     * Construct a distributed query to be executed against all the slices.
+     * Flushes the given StateManagers onto the given slice, timing the flush onto the slice metrics.
      */
-    public StoreQuery newQuery(String language) {
+    Collection<Exception> flush(SliceStoreManager slice, StateManagerSet subset) {
+        return flush(slice, subset, true);
+    }
+
+    /**
+     * Flushes the given StateManagers onto the given slice, timing the flush onto the slice metrics.
+     *
+     * @param reroute whether StateManagers rejected by the wrong federation member are flushed again onto the members
+     * of the refreshed distribution
+     */
+    private Collection<Exception> flush(SliceStoreManager slice, StateManagerSet subset, boolean reroute) {
+        recordWrite(slice, subset);
+        SliceMetrics metrics = ((AzureSliceStoreManager) slice).getMetrics();
+        long start = metrics.begin();
+        try {
+            Collection<Exception> errors = flushOnSlice(slice, subset, reroute);
+            if (errors == null || errors.isEmpty()) {
+                locate(subset);
+            }
+            return errors;
+        } finally {
+            metrics.end(SliceMetrics.Operation.FLUSH, start);
+        }
+    }
+
+    /**
+     * Flushes the given StateManagers onto the given slice.
+     *
+     * Flushes are protected by a savepoint: if statements fail because of transient faults (i.e. throttling) changes
+     * are rolled back to the savepoint and flushed again after a backoff; if statements are rejected because reaching
+     * the wrong federation member (i.e. after a split), member distribution is refreshed and the StateManagers are
+     * flushed once again onto the slices computed by distribution / replication policies.
+     *
+     * Setting a savepoint costs a round trip, hence flushes onto slices not faulted recently go without, unless the
+     * fault policy requires savepoints anyway: their faults are recorded and surfaced, later flushes are retried.
+     *
+     * StateManagers flushed again onto other members go through the circuit breakers and metrics of those members,
+     * without being rerouted once more.
+     */
+    private Collection<Exception> flushOnSlice(SliceStoreManager slice, StateManagerSet subset, boolean reroute) {
+        _faultPolicy.checkAvailable(slice.getName());
+
+        // steps of the flush (i.e. connecting, setting savepoints) do not record their outcome
+        String previous = _faultPolicy.beginRequest(slice.getName());
+        try {
+            Federation fed = ((AzureSliceStoreManager) slice).getFederation();
+            return flushOnSlice(slice, subset, fed,
+                    reroute && fed != null && ((AzureConfiguration) _conf).isRoutingRetry());
+        } finally {
+            // the circuit of this slice could be probed by this thread, whatever happened
+            _faultPolicy.release(slice.getName());
+            _faultPolicy.endRequest(previous);
+        }
+    }
+
+    private Collection<Exception> flushOnSlice(SliceStoreManager slice, StateManagerSet subset, Federation fed,
+            boolean routingRetry) {
+        boolean transientRetry = _faultPolicy.getMaxRetries() > 0;
+
+        Savepoint savepoint = (routingRetry || transientRetry) && _faultPolicy.isSavepointNeeded(slice.getName())
+                ? setSavepoint(slice) : null;
+        if (savepoint == null) {
+            Collection<Exception> errors = flushAttempt(slice, subset);
+            if (routingRetry && findError(errors, true) != null) {
+                _refresher.refreshOnError(findError(errors, true), fed);
+                _faultPolicy.faulted(slice.getName());
+            }
+            return errors;
+        }
+
+        Map<OpenJPAStateManager, Object> oldVersions = cacheVersion(new ArrayList<OpenJPAStateManager>(subset));
+        Collection<Exception> errors = flushAttempt(slice, subset);
+
+        Throwable fault = findError(errors, false);
+        for (int attempt = 0; transientRetry && fault != null && attempt < _faultPolicy.getMaxRetries(); attempt++) {
+            if (!rollback(slice, savepoint, oldVersions)) {
+                return errors;
+            }
+            _faultPolicy.backoff(slice.getName(), attempt, fault);
+            _faultPolicy.checkAvailable(slice.getName());
+
+            errors = flushAttempt(slice, subset);
+            fault = findError(errors, false);
+        }
+
+        if (!routingRetry || findError(errors, true) == null || !rollback(slice, savepoint, oldVersions)) {
+            return errors;
+        }
+
+        log.warn("Flush rejected by " + slice.getName() + ", retrying on refreshed members of " + fed.getName());
+        _refresher.refresh(fed);
+
+        // re-bin onto the members computed from the refreshed routing table
+        Map<String, StateManagerSet> subsets = new LinkedHashMap<String, StateManagerSet>();
+        for (OpenJPAStateManager sm : subset) {
+            String target = slice.getName();
+
+            String[] targets = SliceImplHelper.getSlicesByPolicy(sm, _conf, getContext()).getSlices();
+            for (String name : targets) {
+                if (fed.getName().equals(AzureUtils.getFederationName(name))) {
+                    target = name;
+                }
+            }
+
+            reassignSlice(sm, slice.getName(), target);
+
+            StateManagerSet set = subsets.get(target);
+            if (set == null) {
+                set = new StateManagerSet(_conf);
+                subsets.put(target, set);
+            }
+            set.add(sm);
+        }
+
+        Collection<Exception> result = new ArrayList<Exception>();
+        for (Map.Entry<String, StateManagerSet> entry : subsets.entrySet()) {
+            SliceStoreManager target = lookup(entry.getKey());
+            if (target == null) {
+                throw new InternalException(_loc.get("wrong-slice", entry.getKey(), entry.getValue()));
+            }
+            Collection<Exception> tmp = flush(target, entry.getValue(), false);
+            if (tmp != null) {
+                result.addAll(tmp);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Flushes the given StateManagers onto the given slice once, recording the outcome onto its circuit breaker.
+     */
+    @SuppressWarnings("unchecked")
+    private Collection<Exception> flushAttempt(SliceStoreManager slice, StateManagerSet subset) {
+        try {
+            return record(slice, slice.flush(subset));
+        } catch (RuntimeException e) {
+            _faultPolicy.record(slice.getName(), e);
+            throw e;
+        }
+    }
+
+    /**
+     * Finds the first routing error (or transient fault) among the given flush errors.
+     */
+    private Throwable findError(Collection<Exception> errors, boolean routing) {
+        if (errors != null) {
+            for (Exception ex : errors) {
+                if (routing ? _refresher.isRoutingError(ex) : _faultPolicy.isTransient(ex)) {
+                    return ex;
+                }
+            }
+        }
+        return null;
+    }
+
+    private Collection<Exception> record(SliceStoreManager slice, Collection<Exception> errors) {
+        _faultPolicy.record(slice.getName(), errors == null || errors.isEmpty() ? null : errors.iterator().next());
+        return errors;
+    }
+
+    /**
+     * Rolls back the given slice to the given savepoint and restores versions of flushed StateManagers.
+     */
+    private boolean rollback(SliceStoreManager slice, Savepoint savepoint,
+            Map<OpenJPAStateManager, Object> oldVersions) {
+        Connection conn = slice.getConnection();
+        try {
+            conn.rollback(savepoint);
+        } catch (SQLException e) {
+            log.error("Error rolling back " + slice.getName() + " to savepoint", e);
+            return false;
+        } finally {
+            close(conn);
+        }
+
+        for (Map.Entry<OpenJPAStateManager, Object> entry : oldVersions.entrySet()) {
+            entry.getKey().setVersion(entry.getValue());
+        }
+        return true;
+    }
+
+    /**
+     * Replaces the given slice with the given target in the slices assigned to the given StateManager; synchronized
+     * on the StateManager, as replicated ones are shared among slice threads.
+     */
+    private void reassignSlice(OpenJPAStateManager sm, String from, String to) {
+        if (from.equals(to)) {
+            return;
+        }
+        synchronized (sm) {
+            String[] assigned = SliceImplHelper.isSliceAssigned(sm)
+                    ? SliceImplHelper.getSliceInfo(sm).getSlices().clone()
+                    : new String[]{from};
+            for (int i = 0; i < assigned.length; i++) {
+                if (from.equals(assigned[i])) {
+                    assigned[i] = to;
+                }
+            }
+            new SliceInfo(_conf.isReplicated(sm.getMetaData().getDescribedType()), assigned).setInto(sm);
+        }
+        if (!_conf.isReplicated(sm.getMetaData().getDescribedType())) {
+            _locations.put(sm.getObjectId(), to, _locations.getVersion());
+        }
+
+        // cached copy is held by the partition of the former slice
+        DataCacheManager cacheManager = _conf.getDataCacheManagerInstance();
+        DataCache cache = cacheManager == null ? null : cacheManager.getSystemDataCache();
+        if (cache != null && cache.isPartitioned() && sm.getObjectId() != null) {
+            cache.remove(sm.getObjectId());
+        }
+    }
+
+    /**
+     * Sets a savepoint onto the connection of the given slice; null if savepoints are not available (i.e. not in a
+     * datastore transaction).
+     */
+    private Savepoint setSavepoint(SliceStoreManager slice) {
+        Connection conn = slice.getConnection();
+        try {
+            return conn.getAutoCommit() ? null : conn.setSavepoint();
+        } catch (SQLException e) {
+            log.trace("Savepoint not available on " + slice.getName() + ": " + e.getMessage());
+            return null;
+        } finally {
+            close(conn);
+        }
+    }
+
+    private void close(Connection conn) {
+        try {
+            conn.close();
+        } catch (SQLException ignore) {
+            // ignore
+        }
+    }
+
+    private void collectException(Collection<Exception> error, Collection<Exception> holder) {
+        if (!(error == null || error.isEmpty())) {
+            for (Exception ex : error) {
+                _refresher.refreshOnError(ex);
+            }
+            holder.addAll(error);
+        }
+    }
+
+    /**
+     * Collect the current versions of the given StateManagers.
+     */
+    private Map<OpenJPAStateManager, Object> cacheVersion(
+            List<OpenJPAStateManager> sms) {
+        Map<OpenJPAStateManager, Object> result =
+                new HashMap<OpenJPAStateManager, Object>();
+        for (OpenJPAStateManager sm : sms) {
+            result.put(sm, sm.getVersion());
+        }
+        return result;
+    }
+
+    /**
+     * Sets the version of the given replicated StateManagers from the cached versions. Provided that the StateManager
+     * does appear in the FlushSets of the remaining.
+     */
+    private void rollbackVersion(List<OpenJPAStateManager> sms,
+            Map<OpenJPAStateManager, Object> oldVersions,
+            Collection<StateManagerSet> reminder) {
+        if (reminder.isEmpty()) {
+            return;
+        }
+        Set<OpenJPAStateManager> remaining = getReplicated(reminder);
+        for (OpenJPAStateManager sm : sms) {
+            if (remaining.contains(sm)) {
+                sm.setVersion(oldVersions.get(sm));
+            }
+        }
+    }
+
+    /**
+     * Collects the replicated StateManagers of the given sets, so that membership is checked by identity and without
+     * scanning each set.
+     */
+    static Set<OpenJPAStateManager> getReplicated(Collection<StateManagerSet> sets) {
+        Set<OpenJPAStateManager> result = Collections.newSetFromMap(
+                new IdentityHashMap<OpenJPAStateManager, Boolean>());
+        for (StateManagerSet set : sets) {
+            if (set.containsReplicated()) {
+                result.addAll(set.getReplicated());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Separate the given list of StateManagers in separate lists for each slice by the associated slice identifier of
+     * each StateManager.
+     *
+     * @return lists indexed by slice ordinal (position in the slice list); null for slices receiving nothing
+     */
+    private StateManagerSet[] bin(Collection<OpenJPAStateManager> sms, Object edata) {
+        StateManagerSet[] subsets = new StateManagerSet[_slices.size()];
+        for (OpenJPAStateManager sm : sms) {
+            boolean replicated = _conf.isReplicated(sm.getMetaData().getDescribedType());
+            for (int ordinal : findSliceOrdinals(sm, edata)) {
+                if (ordinal >= subsets.length) {
+                    // slice added after binning started
+                    StateManagerSet[] tmp = new StateManagerSet[_slices.size()];
+                    System.arraycopy(subsets, 0, tmp, 0, subsets.length);
+                    subsets = tmp;
+                }
+                if (subsets[ordinal] == null) {
+                    subsets[ordinal] = new StateManagerSet(_conf);
+                }
+                subsets[ordinal].add(sm, replicated);
+            }
+        }
+        return subsets;
+    }
+
+    /**
+     * Finds the ordinals (positions in the slice list) of the slices the given StateManager is bound to. Ordinals are
+     * cached onto Azure StateManagers, as long as their slice assignment does not change.
+     */
+    private int[] findSliceOrdinals(OpenJPAStateManager sm, Object edata) {
+        SliceInfo info = findSliceNames(sm, edata);
+        if (sm instanceof AzureStateManager) {
+            int[] cached = ((AzureStateManager) sm).getSliceOrdinals(info);
+            if (cached != null) {
+                return cached;
+            }
+        }
+
+        String[] names = info.getSlices();
+        int[] ordinals = new int[names.length];
+        for (int i = 0; i < names.length; i++) {
+            ordinals[i] = getSliceOrdinal(names[i]);
+            if (ordinals[i] < 0) {
+                throw new InternalException(_loc.get("wrong-slice", names[i], sm));
+            }
+        }
+
+        if (sm instanceof AzureStateManager) {
+            ((AzureStateManager) sm).setSliceOrdinals(info, ordinals);
+        }
+        return ordinals;
+    }
+
+    /**
+     * Gets the ordinal (position in the slice list) of the given slice.
+     *
+     * @return slice ordinal; -1 if no slice has the given name
+     */
+    public int getSliceOrdinal(String name) {
+        Integer ordinal = name == null ? null : _ordinals.get(name);
+        return ordinal == null ? -1 : ordinal;
+    }
+
+    public Object getClientConnection() {
+        return _master.getClientConnection();
+    }
+
+    public Seq getDataStoreIdSequence(ClassMetaData forClass) {
+        return _master.getDataStoreIdSequence(forClass);
+    }
+
+    public Class<?> getDataStoreIdType(ClassMetaData meta) {
+        return _master.getDataStoreIdType(meta);
+    }
+
+    public Class<?> getManagedType(Object oid) {
+        return _master.getManagedType(oid);
+    }
+
+    public Seq getValueSequence(FieldMetaData forField) {
+        return _master.getValueSequence(forField);
+    }
+
+    public boolean initialize(OpenJPAStateManager sm, PCState state,
+            FetchConfiguration fetch, Object edata) {
+        if (edata instanceof ConnectionInfo) {
+            String origin = estimateSlice(sm, edata);
+            if (origin != null) {
+                if (initialize(lookup(origin), sm, state, fetch, edata)) {
+                    assignSlice(sm, origin);
+                    return true;
+                }
+            }
+        }
+
+        // ----------------------
+        // TODO: SLICE-PATCH
+        // ----------------------
+        if (sm == null) {
+            if (log.isTraceEnabled()) {
+                log.trace("No State Manager found to retrieve the policy to initialize targets");
+            }
+            return false;
+        }
+
+        RoutingContext targets = getFinderTargets(sm);
+        if (log.isTraceEnabled()) {
+            log.trace("Retrieved targets to initialize: " + targets);
+        }
+        // ----------------------
+
+        // not a part of Query result load. Look into the candidate slices till found
+        List<SliceStoreManager> candidates = new ArrayList<SliceStoreManager>();
+        for (int i = targets.nextSlice(0); i >= 0 && i < _slices.size(); i = targets.nextSlice(i + 1)) {
+            candidates.add(_slices.get(i));
+        }
+
+        // any replica will do: no need to probe them all
+        if (candidates.size() > 1 && !_conf.isReplicated(sm.getMetaData().getDescribedType())) {
+            SliceStoreManager origin = probe(candidates, sm);
+            if (origin == null) {
+                return false;
+            }
+            candidates = Collections.singletonList(origin);
+        }
+        for (SliceStoreManager slice : candidates) {
+            if (initialize(slice, sm, state, fetch, edata)) {
+                assignSlice(sm, slice.getName());
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Probes the given candidate slices concurrently for the given instance: the first slice reporting the instance
+     * wins and the probes not yet started are skipped. Probes already running are awaited before returning, since
+     * they hold their slice connection.
+     *
+     * @return the slice holding the instance; null if none.
+     */
+    private SliceStoreManager probe(List<SliceStoreManager> candidates, OpenJPAStateManager sm) {
+        ExecutorCompletionService<Boolean> service = new ExecutorCompletionService<Boolean>(SliceThread.getPool());
+        AtomicBoolean settled = new AtomicBoolean();
+        Map<Future<Boolean>, SliceStoreManager> probes = new HashMap<Future<Boolean>, SliceStoreManager>();
+        for (SliceStoreManager slice : candidates) {
+            probes.put(service.submit(new Prober(slice, sm, null, settled)), slice);
+        }
+
+        SliceStoreManager origin = null;
+        try {
+            for (int i = 0; i < candidates.size() && origin == null; i++) {
+                Future<Boolean> probe = service.take();
+                try {
+                    if (probe.get()) {
+                        origin = probes.get(probe);
+                    }
+                } catch (ExecutionException ignore) {
+                    // ignore exception because target could be wrong
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new StoreException(e);
+        } finally {
+            // cancelling would not tell running probes apart from the ones not yet started
+            settled.set(true);
+            for (Future<Boolean> probe : probes.keySet()) {
+                try {
+                    probe.get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                } catch (ExecutionException ignore) {
+                    // outcome no longer relevant
+                }
+            }
+        }
+        return origin;
+    }
+
+    /**
+     * Initializes the given StateManager from the given slice, timing the lookup onto the slice metrics.
+     */
+    private boolean initialize(SliceStoreManager slice, OpenJPAStateManager sm, PCState state,
+            FetchConfiguration fetch, Object edata) {
+        SliceMetrics metrics = ((AzureSliceStoreManager) slice).getMetrics();
+        long start = metrics.begin();
+        try {
+            return slice.initialize(sm, state, fetch, edata);
+        } finally {
+            metrics.end(SliceMetrics.Operation.FIND, start);
+        }
+    }
+
+    public boolean load(OpenJPAStateManager sm, BitSet fields,
+            FetchConfiguration fetch, int lockLevel, Object edata) {
+        StoreManager store = selectStore(sm, edata);
+        SliceMetrics metrics = ((AzureSliceStoreManager) store).getMetrics();
+        long start = metrics.begin();
+        try {
+            return store.load(sm, fields, fetch, lockLevel, edata);
+        } finally {
+            metrics.end(SliceMetrics.Operation.FIND, start);
+        }
+    }
+
+    /**
+     * Loads the given StateManagers after binning them to respective physical slices.
+     *
+     * Rows of hollow instances are selected concurrently on all slices, with one IN-list query per class and per
+     * batch; then rows are loaded into the instances and any remaining StateManager is loaded one by one, by the
+     * calling thread, since slice threads do not hold the broker lock.
+     */
+    @SuppressWarnings({ "rawtypes", "unchecked" })
+    public Collection<Object> loadAll(Collection sms, PCState state, int load,
+            FetchConfiguration fetch, Object edata) {
+        Collection<Object> result = new ArrayList<Object>();
+        int batchSize = ((AzureConfiguration) _conf).getLoadBatchSize();
+        StateManagerSet[] subsets = binToLoad(sms, edata, fetch, batchSize, result);
+
+        List<AzureSliceStoreManager.Batch>[] batches = new List[subsets.length];
+        if (batchSize > 0 && edata == null && fetch instanceof JDBCFetchConfiguration) {
+            selectAll(subsets, batches, (JDBCFetchConfiguration) fetch, batchSize);
+        }
+
+        try {
+            for (int i = 0; i < subsets.length; i++) {
+                StateManagerSet subset = subsets[i];
+                if (subset == null) {
+                    continue;
+                }
+                AzureSliceStoreManager slice = (AzureSliceStoreManager) _slices.get(i);
+                Collection<OpenJPAStateManager> rest = subset;
+                if (batches[i] != null && !batches[i].isEmpty()) {
+                    Set<OpenJPAStateManager> loaded = Collections.newSetFromMap(
+                            new IdentityHashMap<OpenJPAStateManager, Boolean>());
+                    for (AzureSliceStoreManager.Batch batch : batches[i]) {
+                        loaded.addAll(batch.getStateManagers());
+                        result.addAll(slice.initializeAll(batch, state, (JDBCFetchConfiguration) fetch));
+                    }
+                    rest = new ArrayList<OpenJPAStateManager>();
+                    for (OpenJPAStateManager sm : subset) {
+                        if (!loaded.contains(sm)) {
+                            rest.add(sm);
+                        }
+                    }
+                }
+                if (!rest.isEmpty()) {
+                    Collection<Object> tmp = slice.loadAll(rest, state, load, fetch, edata);
+                    if (tmp != null && !tmp.isEmpty()) {
+                        result.addAll(tmp);
+                    }
+                }
+            }
+        } finally {
+            close(batches);
+        }
+        return result;
+    }
+
+    /**
+     * Bins the given StateManagers to be loaded, each to a single slice: replicated instances are loaded from any of
+     * their slices, hollow instances not yet bound to a slice are located through the finder target policy.
+     *
+     * Hollow instances with more than one candidate slice are located with one batched existence query per slice,
+     * when batching applies; otherwise, they are probed one by one.
+     *
+     * @param failed receives the ids of instances not found on any slice
+     */
+    private StateManagerSet[] binToLoad(Collection<OpenJPAStateManager> sms, Object edata, FetchConfiguration fetch,
+            int batchSize, Collection<Object> failed) {
+        boolean batch = batchSize > 0 && edata == null && fetch instanceof JDBCFetchConfiguration;
+        Map<OpenJPAStateManager, BitSet> unbound = new LinkedHashMap<OpenJPAStateManager, BitSet>();
+
+        StateManagerSet[] subsets = new StateManagerSet[_slices.size()];
+        for (OpenJPAStateManager sm : sms) {
+            boolean replicated = _conf.isReplicated(sm.getMetaData().getDescribedType());
+
+            int ordinal;
+            if (SliceImplHelper.isSliceAssigned(sm) || sm.getPersistenceCapable() != null) {
+                ordinal = findSliceOrdinals(sm, edata)[0];
+            } else {
+                RoutingContext targets = getFinderTargets(sm);
+                if (targets.cardinality() == 1 || (!targets.isEmpty() && replicated)) {
+                    ordinal = targets.nextSlice(0);
+                } else if (batch && AzureSliceStoreManager.isBatchable(sm)) {
+                    unbound.put(sm, targets.getSlices());
+                    continue;
+                } else if (exists(sm, edata)) {
+                    ordinal = findSliceOrdinals(sm, edata)[0];
+                } else {
+                    failed.add(sm.getId());
+                    continue;
+                }
+            }
+            subsets = bin(subsets, sm, ordinal, replicated);
+        }
+
+        if (!unbound.isEmpty()) {
+            Set<OpenJPAStateManager> uncertain = Collections.newSetFromMap(
+                    new IdentityHashMap<OpenJPAStateManager, Boolean>());
+            Map<OpenJPAStateManager, Integer> origins =
+                    locateAll(unbound, (JDBCFetchConfiguration) fetch, batchSize, uncertain);
+            for (OpenJPAStateManager sm : unbound.keySet()) {
+                Integer ordinal = origins.get(sm);
+                if (ordinal != null) {
+                    assignSlice(sm, _slices.get(ordinal).getName());
+                } else if (uncertain.contains(sm) && exists(sm, edata)) {
+                    ordinal = findSliceOrdinals(sm, edata)[0];
+                } else {
+                    failed.add(sm.getId());
+                    continue;
+                }
+                subsets = bin(subsets, sm, ordinal, false);
+            }
+        }
+        return subsets;
+    }
+
+    private StateManagerSet[] bin(StateManagerSet[] subsets, OpenJPAStateManager sm, int ordinal,
+            boolean replicated) {
+        if (ordinal >= subsets.length) {
+            // slice added after binning started
+            StateManagerSet[] tmp = new StateManagerSet[_slices.size()];
+            System.arraycopy(subsets, 0, tmp, 0, subsets.length);
+            subsets = tmp;
+        }
+        if (subsets[ordinal] == null) {
+            subsets[ordinal] = new StateManagerSet(_conf);
+        }
+        subsets[ordinal].add(sm, replicated);
+        return subsets;
+    }
+
+    /**
+     * Locates the given hollow instances as {@link #exists(OpenJPAStateManager, Object)} does for a single one, but
+     * with one batched existence query per slice: first onto the slices computed by the finder target policy, then
+     * onto the remaining slices for the instances not found there.
+     *
+     * @param candidates instances to locate, with the ordinals of their target slices
+     * @param uncertain receives the instances not found, whose target slices could not all be probed
+     * @return ordinal of the slice holding each instance found
+     */
+    @SuppressWarnings({ "rawtypes", "unchecked" })
+    private Map<OpenJPAStateManager, Integer> locateAll(Map<OpenJPAStateManager, BitSet> candidates,
+            JDBCFetchConfiguration fetch, int batchSize, Collection<OpenJPAStateManager> uncertain) {
+        Map<OpenJPAStateManager, Integer> origins = new IdentityHashMap<OpenJPAStateManager, Integer>();
+
+        List<OpenJPAStateManager>[] probes = new List[_slices.size()];
+        for (Map.Entry<OpenJPAStateManager, BitSet> entry : candidates.entrySet()) {
+            BitSet ordinals = entry.getValue();
+            for (int i = ordinals.nextSetBit(0); i >= 0 && i < probes.length; i = ordinals.nextSetBit(i + 1)) {
+                addProbe(probes, i, entry.getKey());
+            }
+        }
+        BitSet failures = existAll(probes, fetch, batchSize, origins, true);
+
+        probes = new List[probes.length];
+        for (Map.Entry<OpenJPAStateManager, BitSet> entry : candidates.entrySet()) {
+            if (origins.containsKey(entry.getKey())) {
+                continue;
+            }
+            BitSet ordinals = entry.getValue();
+            if (ordinals.intersects(failures)) {
+                uncertain.add(entry.getKey());
+                continue;
+            }
+            for (int i = ordinals.nextClearBit(0); i < probes.length; i = ordinals.nextClearBit(i + 1)) {
+                addProbe(probes, i, entry.getKey());
+            }
+        }
+        existAll(probes, fetch, batchSize, origins, false);
+
+        return origins;
+    }
+
+    private static void addProbe(List<OpenJPAStateManager>[] probes, int ordinal, OpenJPAStateManager sm) {
+        if (probes[ordinal] == null) {
+            probes[ordinal] = new ArrayList<OpenJPAStateManager>();
+        }
+        probes[ordinal].add(sm);
+    }
+
+    /**
+     * Runs the given existence probes, concurrently when more than one slice is involved. Each instance found is
+     * bound to the slice with the lowest ordinal reporting it, unless already bound by a previous round.
+     *
+     * @param refresh whether failures are reported to the routing refresher
+     * @return ordinals of the slices whose probe failed
+     */
+    @SuppressWarnings({ "rawtypes", "unchecked" })
+    private BitSet existAll(List<OpenJPAStateManager>[] probes, JDBCFetchConfiguration fetch, int batchSize,
+            Map<OpenJPAStateManager, Integer> origins, boolean refresh) {
+        List<Integer> ordinals = new ArrayList<Integer>();
+        for (int i = 0; i < probes.length; i++) {
+            if (probes[i] != null) {
+                ordinals.add(i);
+            }
+        }
+
+        Collection<OpenJPAStateManager>[] found = new Collection[probes.length];
+        BitSet failures = new BitSet();
+        if (ordinals.size() == 1) {
+            int i = ordinals.get(0);
+            try {
+                found[i] = new Locator((AzureSliceStoreManager) _slices.get(i), probes[i], fetch, batchSize).call();
+            } catch (Exception e) {
+                if (refresh) {
+                    _refresher.refreshOnError(e);
+                }
+                failures.set(i);
+            }
+        } else {
+            List<Future<Collection<OpenJPAStateManager>>> futures =
+                    new ArrayList<Future<Collection<OpenJPAStateManager>>>();
+            for (int i : ordinals) {
+                futures.add(SliceThread.getPool().submit(
+                        new Locator((AzureSliceStoreManager) _slices.get(i), probes[i], fetch, batchSize)));
+            }
+            // wait for all slices, so that no connection is left in use
+            for (int j = 0; j < futures.size(); j++) {
+                int i = ordinals.get(j);
+                try {
+                    found[i] = futures.get(j).get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    for (Future<Collection<OpenJPAStateManager>> future : futures.subList(j, futures.size())) {
+                        future.cancel(false);
+                    }
+                    throw new StoreException(e);
+                } catch (ExecutionException e) {
+                    if (refresh) {
+                        _refresher.refreshOnError(e.getCause());
+                    }
+                    failures.set(i);
+                }
+            }
+        }
+
+        for (int i = 0; i < found.length; i++) {
+            if (found[i] != null) {
+                for (OpenJPAStateManager sm : found[i]) {
+                    if (!origins.containsKey(sm)) {
+                        origins.put(sm, i);
+                    }
+                }
+            }
+        }
+        return failures;
+    }
+
+    /**
+     * Selects the rows of the hollow instances of each subset on its slice, concurrently when more than one slice is
+     * involved.
+     */
+    @SuppressWarnings({ "rawtypes", "unchecked" })
+    private void selectAll(StateManagerSet[] subsets, List<AzureSliceStoreManager.Batch>[] batches,
+            JDBCFetchConfiguration fetch, int batchSize) {
+        Selector[] selectors = new Selector[subsets.length];
+        int count = 0;
+        for (int i = 0; i < subsets.length; i++) {
+            if (subsets[i] == null) {
+                continue;
+            }
+            List<OpenJPAStateManager> batchable = new ArrayList<OpenJPAStateManager>();
+            for (OpenJPAStateManager sm : subsets[i]) {
+                if (AzureSliceStoreManager.isBatchable(sm)) {
+                    batchable.add(sm);
+                }
+            }
+            if (batchable.size() > 1) {
+                selectors[i] = new Selector((AzureSliceStoreManager) _slices.get(i), batchable, fetch, batchSize);
+                count++;
+            }
+        }
+        if (count == 0) {
+            return;
+        }
+
+        Future<List<AzureSliceStoreManager.Batch>>[] futures = new Future[subsets.length];
+        StoreException failure = null;
+        for (int i = 0; i < selectors.length; i++) {
+            if (selectors[i] == null) {
+                continue;
+            }
+            if (count == 1) {
+                try {
+                    batches[i] = selectors[i].call();
+                } catch (Exception e) {
+                    _refresher.refreshOnError(e);
+                    failure = new StoreException(e);
+                }
+            } else {
+                futures[i] = SliceThread.getPool().submit(selectors[i]);
+            }
+        }
+        // wait for all slices, so that no result is left open on failure
+        for (int i = 0; i < futures.length; i++) {
+            if (futures[i] == null) {
+                continue;
+            }
+            try {
+                batches[i] = futures[i].get();
+            } catch (InterruptedException e) {
+                if (failure == null) {
+                    failure = new StoreException(e);
+                }
+            } catch (ExecutionException e) {
+                _refresher.refreshOnError(e.getCause());
+                if (failure == null) {
+                    failure = new StoreException(e.getCause());
+                }
+            }
+        }
+        if (failure != null) {
+            close(batches);
+            throw failure;
+        }
+    }
+
+    private void close(List<AzureSliceStoreManager.Batch>[] batches) {
+        for (List<AzureSliceStoreManager.Batch> selected : batches) {
+            if (selected != null) {
+                for (AzureSliceStoreManager.Batch batch : selected) {
+                    batch.close();
+                }
+            }
+        }
+    }
+
+    public Object newDataStoreId(Object oidVal, ClassMetaData meta) {
+        return _master.newDataStoreId(oidVal, meta);
+    }
+
+    /**
+     * Construct a distributed query to be executed against all the slices.
+     */
+    public StoreQuery newQuery(String language) {
         if (QueryLanguages.LANG_SQL.equals(language)) {
             DistributedSQLStoreQuery ret = new DistributedSQLStoreQuery(this);
             for (SliceStoreManager slice : _slices) {
@@ -506,7 +1764,7 @@ public class DistributedJDBCStoreManager extends JDBCStoreManager
 
     @Override
     public FetchConfiguration newFetchConfiguration() {
-        return new TargetFetchConfiguration();
+        return new AzureFetchConfiguration();
     }
 
     /**
@@ -521,12 +1779,8 @@ public class DistributedJDBCStoreManager extends JDBCStoreManager
     }
 
     private SliceStoreManager lookup(String name) {
-        for (SliceStoreManager slice : _slices) {
-            if (slice.getName().equals(name)) {
-                return slice;
-            }
-        }
-        return null;
+        int ordinal = getSliceOrdinal(name);
+        return ordinal < 0 ? null : _slices.get(ordinal);
     }
 
     public boolean syncVersion(OpenJPAStateManager sm, Object edata) {
@@ -559,59 +1813,275 @@ public class DistributedJDBCStoreManager extends JDBCStoreManager
      * active slice.
      */
     public List<SliceStoreManager> getTargets(FetchConfiguration fetch) {
-        if (fetch == null) {
+        RoutingContext routing = getRoutingContext(fetch);
+        if (routing.cardinality() == _slices.size()) {
             return _slices;
         }
-        Object hint = fetch.getHint(SlicePersistence.HINT_TARGET);
-        if (hint == null || !(hint instanceof String || hint instanceof String[])) {
-            return _slices;
+
+        List<SliceStoreManager> targets = new ArrayList<SliceStoreManager>(routing.cardinality());
+        for (int i = routing.nextSlice(0); i >= 0; i = routing.nextSlice(i + 1)) {
+            targets.add(_slices.get(i));
         }
+        return targets;
+    }
 
-        String[] targetNames = hint instanceof String ? new String[]{hint.toString()} : (String[]) hint;
+    /**
+     * Gets the ordinals of the slices mentioned as {@link SlicePersistence#HINT_TARGET hint} of the given
+     * {@link FetchConfiguration#getHint(String) fetch configuration}, as per {@link #getTargets(FetchConfiguration)}.
+     *
+     * @return ordinals of the target slices.
+     */
+    public BitSet getTargetOrdinals(FetchConfiguration fetch) {
+        return getRoutingContext(fetch).getSlices();
+    }
 
-        final List<SliceStoreManager> targets = new ArrayList<SliceStoreManager>();
+    /**
+     * Gets the routing context of the given fetch configuration, as per {@link #getTargets(FetchConfiguration)}.
+     *
+     * The context is resolved from slice names once and kept by the fetch configuration, which reuses it until the
+     * target hint is set again, slices are added or the routing snapshot changes.
+     *
+     * @return routing context of the target slices.
+     */
+    public RoutingContext getRoutingContext(FetchConfiguration fetch) {
+        int size = _slices.size();
+        long version = _registry.get().getVersion();
+        Object hint = fetch == null ? null : fetch.getHint(SlicePersistence.HINT_TARGET);
+
+        AzureFetchConfiguration routed = fetch instanceof AzureFetchConfiguration
+                ? (AzureFetchConfiguration) fetch : null;
+        RoutingContext routing = routed == null ? null : routed.getRoutingContext();
+        if (routing != null && routing.isCurrent(hint, size, version)) {
+            return routing;
+        }
 
-        for (SliceStoreManager slice : _slices) {
-            for (String name : targetNames) {
-                if (slice.getName().equals(name)) {
-                    targets.add(slice);
+        BitSet targets = new BitSet(size);
+        if (hint instanceof String || hint instanceof String[]) {
+            for (String name : hint instanceof String ? new String[]{hint.toString()} : (String[]) hint) {
+                int ordinal = getSliceOrdinal(name);
+                if (ordinal >= 0 && ordinal < size) {
+                    targets.set(ordinal);
                 }
             }
         }
 
+        RoutingContext.Reason reason;
         if (targets.isEmpty()) {
-            return _slices;
+            targets.set(0, size);
+            reason = RoutingContext.Reason.ALL;
+        } else if (routed == null) {
+            reason = RoutingContext.Reason.HINT;
+        } else {
+            reason = routed.getTargetReason();
         }
 
-        return targets;
+        routing = new RoutingContext(targets, size, version, reason, hint);
+        if (routed != null) {
+            routed.setRoutingContext(routing);
+        }
+        return routing;
     }
 
-    private static class Flusher implements Callable<Collection> {
+    private class Flusher implements Callable<Collection<Exception>> {
 
         final SliceStoreManager store;
 
         final StateManagerSet toFlush;
 
-        Flusher(SliceStoreManager store, StateManagerSet toFlush) {
+        final Map<AzureStateManager, Object> versions;
+
+        volatile Map<AzureStateManager, Object> sliceVersions;
+
+        Flusher(SliceStoreManager store, StateManagerSet toFlush, Map<AzureStateManager, Object> versions) {
             this.store = store;
             this.toFlush = toFlush;
+            this.versions = versions;
+        }
+
+        public Collection<Exception> call()
+                throws Exception {
+            if (versions == null) {
+                return flush(store, toFlush);
+            }
+
+            AzureStateManager.bindSliceVersions(versions);
+            try {
+                return flush(store, toFlush);
+            } finally {
+                sliceVersions = AzureStateManager.unbindSliceVersions();
+            }
+        }
+    }
+
+    private class Prober implements Callable<Boolean> {
+
+        final SliceStoreManager store;
+
+        final OpenJPAStateManager sm;
+
+        final Object edata;
+
+        final AtomicBoolean skip;
+
+        Prober(SliceStoreManager store, OpenJPAStateManager sm, Object edata, AtomicBoolean skip) {
+            this.store = store;
+            this.sm = sm;
+            this.edata = edata;
+            this.skip = skip;
+        }
+
+        public Boolean call()
+                throws Exception {
+            if (skip != null && skip.get()) {
+                return false;
+            }
+            return exists(store, sm, edata);
+        }
+    }
+
+    /**
+     * Selects the rows of hollow instances on a slice, timing the lookup onto the slice metrics.
+     */
+    private static class Selector implements Callable<List<AzureSliceStoreManager.Batch>> {
+
+        final AzureSliceStoreManager store;
+
+        final List<OpenJPAStateManager> sms;
+
+        final JDBCFetchConfiguration fetch;
+
+        final int batchSize;
+
+        Selector(AzureSliceStoreManager store, List<OpenJPAStateManager> sms, JDBCFetchConfiguration fetch,
+                int batchSize) {
+            this.store = store;
+            this.sms = sms;
+            this.fetch = fetch;
+            this.batchSize = batchSize;
         }
 
-        public Collection call()
+        public List<AzureSliceStoreManager.Batch> call()
                 throws Exception {
-            return store.flush(toFlush);
+            long start = store.getMetrics().begin();
+            try {
+                return store.selectAll(sms, fetch, batchSize);
+            } finally {
+                store.getMetrics().end(SliceMetrics.Operation.FIND, start);
+            }
         }
     }
 
     /**
-     * A specialized, insert-only collection of StateManagers that notes if any of its member is replicated.
+     * Checks which hollow instances exist on a slice, timing the lookup onto the slice metrics.
+     */
+    private static class Locator implements Callable<Collection<OpenJPAStateManager>> {
+
+        final AzureSliceStoreManager store;
+
+        final List<OpenJPAStateManager> sms;
+
+        final JDBCFetchConfiguration fetch;
+
+        final int batchSize;
+
+        Locator(AzureSliceStoreManager store, List<OpenJPAStateManager> sms, JDBCFetchConfiguration fetch,
+                int batchSize) {
+            this.store = store;
+            this.sms = sms;
+            this.fetch = fetch;
+            this.batchSize = batchSize;
+        }
+
+        public Collection<OpenJPAStateManager> call()
+                throws Exception {
+            long start = store.getMetrics().begin();
+            try {
+                return store.existAll(sms, fetch, batchSize);
+            } finally {
+                store.getMetrics().end(SliceMetrics.Operation.FIND, start);
+            }
+        }
+    }
+
+    /**
+     * Writes the batches of new StateManagers routed to a slice, in the order they are handed over. Once a batch fails,
+     * the following ones are discarded.
+     */
+    private class Ingester implements Callable<Collection<Exception>> {
+
+        final SliceStoreManager store;
+
+        final BlockingQueue<StateManagerSet> batches;
+
+        volatile boolean aborted;
+
+        Ingester(SliceStoreManager store, int maxInFlight) {
+            this.store = store;
+            this.batches = new ArrayBlockingQueue<StateManagerSet>(maxInFlight);
+        }
+
+        void put(StateManagerSet batch) {
+            try {
+                batches.put(batch);
+            } catch (InterruptedException e) {
+                throw new StoreException(e);
+            }
+        }
+
+        /**
+         * Signals that no more batches are going to be handed over.
+         *
+         * @param completed false if routing failed: pending batches are discarded
+         */
+        void close(boolean completed) {
+            if (!completed) {
+                aborted = true;
+                batches.clear();
+            }
+            if (!batches.offer(END_OF_BATCHES)) {
+                put(END_OF_BATCHES);
+            }
+        }
+
+        public Collection<Exception> call()
+                throws Exception {
+            Collection<Exception> errors = new ArrayList<Exception>();
+            RuntimeException failure = null;
+            for (StateManagerSet batch = batches.take(); batch != END_OF_BATCHES; batch = batches.take()) {
+                if (aborted || failure != null || !errors.isEmpty()) {
+                    continue;
+                }
+                try {
+                    Collection<Exception> tmp = flush(store, batch);
+                    if (tmp != null) {
+                        errors.addAll(tmp);
+                    }
+                } catch (RuntimeException e) {
+                    // keep on draining, not to block routing
+                    failure = e;
+                }
+            }
+            if (failure != null) {
+                throw failure;
+            }
+            return errors;
+        }
+    }
+
+    private static final StateManagerSet END_OF_BATCHES = new StateManagerSet(null);
+
+    /**
+     * A specialized collection of StateManagers, filled once by binning, that notes if any of its member is replicated.
      *
+     * Backed by a list, since StateManagers are binned once per slice and flushed in the order they were added.
      */
-    private static class StateManagerSet extends HashSet<OpenJPAStateManager> {
+    static class StateManagerSet extends ArrayList<OpenJPAStateManager> {
+
+        private static final long serialVersionUID = 2896540281722513094L;
 
-        private final DistributedConfiguration conf;
+        private final transient DistributedConfiguration conf;
 
-        List<OpenJPAStateManager> replicated;
+        transient List<OpenJPAStateManager> replicated;
 
         StateManagerSet(DistributedConfiguration conf) {
             this.conf = conf;
@@ -619,7 +2089,10 @@ public class DistributedJDBCStoreManager extends JDBCStoreManager
 
         @Override
         public boolean add(OpenJPAStateManager sm) {
-            boolean isReplicated = conf.isReplicated(sm.getMetaData().getDescribedType());
+            return add(sm, conf.isReplicated(sm.getMetaData().getDescribedType()));
+        }
+
+        boolean add(OpenJPAStateManager sm, boolean isReplicated) {
             if (isReplicated) {
                 if (replicated == null) {
                     replicated = new ArrayList<OpenJPAStateManager>();
@@ -630,8 +2103,11 @@ public class DistributedJDBCStoreManager extends JDBCStoreManager
         }
 
         @Override
-        public boolean remove(Object sm) {
-            throw new UnsupportedOperationException();
+        public boolean addAll(Collection<? extends OpenJPAStateManager> sms) {
+            for (OpenJPAStateManager sm : sms) {
+                add(sm);
+            }
+            return !sms.isEmpty();
         }
 
         boolean containsReplicated() {
@@ -0,0 +1,74 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.openjpa.slice.jdbc;
+
+import org.apache.openjpa.azure.datacache.SliceQueryCache;
+import org.apache.openjpa.azure.jdbc.QueryPlanCache;
+import org.apache.openjpa.azure.metrics.MetricsRegistry;
+import org.apache.openjpa.azure.retry.TransientFaultPolicy;
+import org.apache.openjpa.azure.routing.RoutingRefresher;
+import org.apache.openjpa.azure.routing.SliceLocationCache;
+import org.apache.openjpa.azure.trace.QueryTrace;
+import org.apache.openjpa.azure.trace.Tracer;
+
+/**
+ * Components shared by all the {@link DistributedJDBCStoreManager}s created by the same broker factory.
+ */
+public interface DistributedStoreComponents {
+
+    /**
+     * Refresher of federation member distributions; member bounds are read from its registry.
+     */
+    RoutingRefresher getRoutingRefresher();
+
+    /**
+     * Transient fault handling: retries and per-slice circuit breakers.
+     */
+    TransientFaultPolicy getTransientFaultPolicy();
+
+    /**
+     * Per-slice metrics.
+     */
+    MetricsRegistry getMetricsRegistry();
+
+    /**
+     * Query trace.
+     */
+    QueryTrace getQueryTrace();
+
+    /**
+     * Tracer producing spans of distributed executions.
+     */
+    Tracer getTracer();
+
+    /**
+     * Cache of the partial results of distributed queries.
+     */
+    SliceQueryCache getSliceQueryCache();
+
+    /**
+     * Slices where instances were found or flushed.
+     */
+    SliceLocationCache getSliceLocationCache();
+
+    /**
+     * Distributed plans of compiled queries.
+     */
+    QueryPlanCache getQueryPlanCache();
+}
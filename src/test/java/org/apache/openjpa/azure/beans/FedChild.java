@@ -0,0 +1,57 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.openjpa.azure.beans;
+
+import java.io.Serializable;
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.ManyToOne;
+
+/**
+ * Entity federated on its id, referencing a {@link FedItem} of the same member through a foreign key.
+ */
+@Entity
+public class FedChild implements Serializable {
+
+    private static final long serialVersionUID = -2183416754720459381L;
+
+    @Id
+    @Column(columnDefinition = "bigint")
+    private Long id;
+
+    @ManyToOne(optional = false)
+    private FedItem item;
+
+    public FedChild() {
+    }
+
+    public FedChild(final long id, final FedItem item) {
+        this.id = id;
+        this.item = item;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public FedItem getItem() {
+        return item;
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.openjpa.azure.datacache;
+
+import java.util.HashMap;
+import java.util.Map;
+import junit.framework.TestCase;
+import org.apache.openjpa.azure.beans.PObject;
+import org.apache.openjpa.azure.jdbc.conf.AzureConfigurationImpl;
+import org.apache.openjpa.datacache.ConcurrentDataCache;
+import org.apache.openjpa.datacache.DataCache;
+import org.apache.openjpa.datacache.DataCacheManagerImpl;
+import org.apache.openjpa.datacache.DataCachePCDataImpl;
+import org.apache.openjpa.meta.ClassMetaData;
+import org.apache.openjpa.meta.MetaDataRepository;
+import org.apache.openjpa.meta.NoneMetaDataFactory;
+import org.apache.openjpa.util.LongId;
+
+public class TestFederatedDataCache extends TestCase {
+
+    private AzureConfigurationImpl conf;
+
+    private FederatedDataCache cache;
+
+    private ClassMetaData meta;
+
+    @Override
+    public void setUp() {
+        conf = new AzureConfigurationImpl();
+
+        conf.getValue("openjpa.azure.Federations").setString("FED_1,FED_2");
+        final Map<String, String> props = new HashMap<String, String>();
+        props.put("openjpa.azure.FED_1.CacheSize", "10");
+        conf.fromProperties(props);
+        conf.setRemoteCommitProvider("sjvm");
+
+        cache = new FederatedDataCache();
+        cache.setConfiguration(conf);
+        cache.startConfiguration();
+        cache.setCacheSize(100);
+        cache.setSoftReferenceSize(0);
+        cache.setEnableStatistics(true);
+        cache.endConfiguration();
+        cache.initialize(new DataCacheManagerImpl());
+
+        final MetaDataRepository repos = new MetaDataRepository();
+        repos.setConfiguration(conf);
+        repos.setMetaDataFactory(new NoneMetaDataFactory());
+        meta = repos.addMetaData(PObject.class);
+    }
+
+    @Override
+    public void tearDown() {
+        cache.close();
+        conf.close();
+    }
+
+    private DataCachePCDataImpl newData(final Object oid, final String partition) {
+        return new DataCachePCDataImpl(oid, meta, partition);
+    }
+
+    public void testPartitionSize() {
+        assertEquals(10, cache.getPartitionSize("FED_1.0"));
+        assertEquals(100, cache.getPartitionSize("FED_2.3"));
+        assertEquals(100, cache.getPartitionSize("ROOT"));
+
+        final DataCache partition = cache.getPartition("FED_1.1", true);
+        assertNotNull(partition);
+        assertSame(partition, cache.getPartition("FED_1.1", false));
+        assertEquals(10, ((ConcurrentDataCache) partition).getCacheSize());
+        assertTrue(partition.getStatistics().isEnabled());
+
+        assertNull(cache.getPartition(null, false));
+        assertEquals(1, cache.getPartitionNames().size());
+    }
+
+    public void testLookupAndEviction() {
+        final LongId oid = new LongId(PObject.class, 42L);
+
+        final DataCache fed10 = cache.getPartition("FED_1.0", true);
+        final DataCache fed11 = cache.getPartition("FED_1.1", true);
+        fed11.put(newData(oid, "FED_1.1"));
+
+        assertFalse(fed10.contains(oid));
+        assertEquals("FED_1.1", cache.findPartition(oid));
+        assertTrue(cache.contains(oid));
+        assertNotNull(cache.get(oid));
+
+        cache.remove(oid);
+        assertFalse(fed11.contains(oid));
+        assertNull(cache.findPartition(oid));
+
+        fed10.put(newData(oid, "FED_1.0"));
+        cache.clear();
+        assertFalse(fed10.contains(oid));
+    }
+
+    public void testPartitionEviction() {
+        final DataCache partition = cache.getPartition("FED_1.0", true);
+        for (long i = 0; i < 50; i++) {
+            partition.put(newData(new LongId(PObject.class, i), "FED_1.0"));
+        }
+        assertEquals(10, ((ConcurrentDataCache) partition).getCacheMap().size());
+
+        final DataCache other = cache.getPartition("FED_2.0", true);
+        for (long i = 0; i < 50; i++) {
+            other.put(newData(new LongId(PObject.class, i), "FED_2.0"));
+        }
+        assertEquals(50, ((ConcurrentDataCache) other).getCacheMap().size());
+        assertEquals(10, ((ConcurrentDataCache) partition).getCacheMap().size());
+    }
+}
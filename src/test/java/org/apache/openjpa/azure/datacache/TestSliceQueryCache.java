@@ -0,0 +1,114 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.openjpa.azure.datacache;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import junit.framework.TestCase;
+import org.apache.openjpa.azure.beans.PObject;
+
+public class TestSliceQueryCache extends TestCase {
+
+    private static final String QUERY = "SELECT p FROM PObject p WHERE p.value = ?1";
+
+    private static final Class<?>[] TYPES = new Class<?>[] { PObject.class };
+
+    private SliceQueryCache cache;
+
+    @Override
+    public void setUp() {
+        cache = new SliceQueryCache(2);
+    }
+
+    private SliceQueryCache.Key newKey(final String slice, final long version, final Object param) {
+        return new SliceQueryCache.Key(
+                slice, version, QUERY, PObject.class, false, new Object[] { param }, 0, Long.MAX_VALUE);
+    }
+
+    private void put(final SliceQueryCache.Key key, final Object... rows) {
+        cache.put(key, TYPES, cache.getGenerations(key.getSlice(), TYPES), Arrays.asList(rows));
+    }
+
+    public void testKey() {
+        assertEquals(newKey("FED_1.0", 1, 10), newKey("FED_1.0", 1, 10));
+        assertEquals(newKey("FED_1.0", 1, 10).hashCode(), newKey("FED_1.0", 1, 10).hashCode());
+
+        assertFalse(newKey("FED_1.0", 1, 10).equals(newKey("FED_1.1", 1, 10)));
+        assertFalse(newKey("FED_1.0", 1, 10).equals(newKey("FED_1.0", 2, 10)));
+        assertFalse(newKey("FED_1.0", 1, 10).equals(newKey("FED_1.0", 1, 11)));
+    }
+
+    public void testInvalidatePerSlice() {
+        final SliceQueryCache.Key first = newKey("FED_1.0", 1, 10);
+        final SliceQueryCache.Key second = newKey("FED_1.1", 1, 10);
+        put(first, "a", "b");
+        put(second, "c");
+
+        assertEquals(Arrays.<Object>asList("a", "b"), cache.get(first));
+        assertEquals(Collections.<Object>singletonList("c"), cache.get(second));
+
+        cache.invalidate("FED_1.1", Collections.<Class<?>>singleton(PObject.class));
+
+        assertEquals(Arrays.<Object>asList("a", "b"), cache.get(first));
+        assertNull(cache.get(second));
+
+        // other types do not invalidate
+        cache.invalidate("FED_1.0", Collections.<Class<?>>singleton(String.class));
+        assertNotNull(cache.get(first));
+
+        assertEquals(4, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+    }
+
+    public void testStaleGenerations() {
+        final SliceQueryCache.Key key = newKey("FED_1.0", 1, 10);
+        final long[] generations = cache.getGenerations("FED_1.0", TYPES);
+
+        // committed while the query was executing
+        cache.invalidate("FED_1.0", Collections.<Class<?>>singleton(PObject.class));
+        cache.put(key, TYPES, generations, Collections.<Object>singletonList("a"));
+
+        assertNull(cache.get(key));
+    }
+
+    public void testSize() {
+        put(newKey("FED_1.0", 1, 1), "a");
+        put(newKey("FED_1.0", 1, 2), "b");
+        put(newKey("FED_1.0", 1, 3), "c");
+
+        assertEquals(2, cache.size());
+        assertNull(cache.get(newKey("FED_1.0", 1, 1)));
+        assertNotNull(cache.get(newKey("FED_1.0", 1, 3)));
+    }
+
+    public void testCacheableValues() {
+        assertTrue(SliceQueryCache.isCacheableParameter(10L));
+        assertTrue(SliceQueryCache.isCacheableParameter(null));
+        assertFalse(SliceQueryCache.isCacheableParameter(new StringBuilder()));
+
+        final Object[] row = (Object[]) SliceQueryCache.toCached(new Object[] { "a", 1 }, null);
+        assertEquals(Arrays.<Object>asList("a", 1), Arrays.asList(row));
+        assertSame(SliceQueryCache.UNCACHEABLE, SliceQueryCache.toCached(new Object[] { "a", new Object() }, null));
+
+        assertFalse(SliceQueryCache.DISABLED.isEnabled());
+        SliceQueryCache.DISABLED.put(newKey("FED_1.0", 1, 1), TYPES, new long[1], Collections.<Object>emptyList());
+        assertNull(SliceQueryCache.DISABLED.get(newKey("FED_1.0", 1, 1)));
+    }
+}
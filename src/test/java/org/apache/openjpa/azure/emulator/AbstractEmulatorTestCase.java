@@ -0,0 +1,225 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.openjpa.azure.emulator;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HashMap;
+import java.util.Map;
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.Persistence;
+import junit.framework.TestCase;
+import org.apache.openjpa.azure.AzureDistributedBrokerFactory;
+import org.apache.openjpa.azure.beans.FedRef;
+import org.apache.openjpa.azure.jdbc.conf.AzureConfiguration.RangeType;
+import org.apache.openjpa.kernel.Broker;
+import org.apache.openjpa.kernel.BrokerFactory;
+import org.apache.openjpa.kernel.DelegatingBrokerFactory;
+import org.apache.openjpa.persistence.JPAFacadeHelper;
+import org.apache.openjpa.slice.jdbc.DistributedJDBCStoreManager;
+
+/**
+ * Base class for tests running an EntityManagerFactory against the federation emulator: federation
+ * {@link #FEDERATION} is split into {@link #getMembers()} members, each owning {@link #SPAN} ids, and bound to one
+ * slice per member.
+ */
+public abstract class AbstractEmulatorTestCase extends TestCase {
+
+    protected static final String PERSISTENCE_UNIT = "azure-emulator";
+
+    protected static final String FEDERATION = "FED_1";
+
+    /**
+     * Width of the key range owned by each member.
+     */
+    protected static final long SPAN = 1000L;
+
+    protected FederationEmulator emulator;
+
+    protected EntityManagerFactory emf;
+
+    private String db;
+
+    protected int getMembers() {
+        return 2;
+    }
+
+    /**
+     * Federated tables, all ranged on their id column.
+     */
+    protected String[] getFederatedTables() {
+        return new String[] {"FedItem", "FedChild"};
+    }
+
+    /**
+     * Tables replicated onto every member of the federation.
+     */
+    protected String[] getReplicatedTables() {
+        return new String[] {"FedRef"};
+    }
+
+    /**
+     * Persistence unit properties; subclasses can add their own.
+     */
+    protected Map<String, String> getProperties() {
+        final String url = EmulatorDriver.URL_PREFIX + db;
+        final String driver = EmulatorDriver.class.getName();
+
+        final Map<String, String> props = new HashMap<String, String>();
+        props.put("openjpa.ConnectionURL", url);
+        props.put("openjpa.ConnectionDriverName", driver);
+
+        final StringBuilder tables = new StringBuilder();
+        for (String table : getFederatedTables()) {
+            tables.append(tables.length() == 0 ? "" : ",").append(table);
+            props.put("openjpa.azure." + FEDERATION + "." + table + ".RangeMappingName", "id");
+        }
+        for (String table : getReplicatedTables()) {
+            tables.append(tables.length() == 0 ? "" : ",").append(table);
+        }
+        props.put("openjpa.azure.Federations", FEDERATION);
+        props.put("openjpa.azure." + FEDERATION + ".RangeMappingType", RangeType.BIGINT.name());
+        props.put("openjpa.azure." + FEDERATION + ".Tables", tables.toString());
+
+        final StringBuilder names = new StringBuilder("ROOT");
+        for (int i = 0; i < getMembers(); i++) {
+            names.append(',').append(FEDERATION).append('.').append(i);
+        }
+        props.put("openjpa.slice.Names", names.toString());
+        props.put("openjpa.slice.ReplicatedTypes", FedRef.class.getName());
+
+        for (String slice : names.toString().split(",")) {
+            props.put("openjpa.slice." + slice + ".ConnectionURL", url);
+            props.put("openjpa.slice." + slice + ".ConnectionDriverName", driver);
+        }
+
+        return props;
+    }
+
+    @Override
+    public void setUp()
+            throws Exception {
+
+        db = getClass().getSimpleName() + "_" + getName();
+        FederationEmulator.drop(db);
+        emulator = FederationEmulator.getInstance(db);
+
+        emulator.createFederation(FEDERATION, "range_id", RangeType.BIGINT);
+        for (int i = 1; i < getMembers(); i++) {
+            emulator.split(FEDERATION, String.valueOf(i * SPAN));
+        }
+
+        emf = Persistence.createEntityManagerFactory(PERSISTENCE_UNIT, getProperties());
+        // schema is built when the first broker is created
+        emf.createEntityManager().close();
+    }
+
+    @Override
+    public void tearDown()
+            throws Exception {
+
+        if (emf != null) {
+            emf.close();
+            emf = null;
+        }
+        FederationEmulator.drop(db);
+    }
+
+    protected AzureDistributedBrokerFactory getBrokerFactory() {
+        BrokerFactory factory = JPAFacadeHelper.toBrokerFactory(emf);
+        while (factory instanceof DelegatingBrokerFactory) {
+            factory = ((DelegatingBrokerFactory) factory).getDelegate();
+        }
+        return (AzureDistributedBrokerFactory) factory;
+    }
+
+    protected static Broker getBroker(final EntityManager em) {
+        return JPAFacadeHelper.toBroker(em);
+    }
+
+    protected static DistributedJDBCStoreManager getStore(final EntityManager em) {
+        return (DistributedJDBCStoreManager) getBroker(em).getStoreManager().getInnermostDelegate();
+    }
+
+    protected EmulatedMember getMember(final int index) {
+        return emulator.getFederation(FEDERATION).getMembers().get(index);
+    }
+
+    /**
+     * Execute the given statement onto the member owning the given key, bypassing the persistence unit.
+     */
+    protected void execute(final long key, final String sql)
+            throws SQLException {
+
+        final Connection conn = connect(key);
+        try {
+            final Statement stmt = conn.createStatement();
+            stmt.execute(sql);
+            stmt.close();
+        } finally {
+            conn.close();
+        }
+    }
+
+    /**
+     * First column of the first row returned by the given query onto the member owning the given key, bypassing the
+     * persistence unit; <code>null</code> when no row is found.
+     */
+    protected Object query(final long key, final String sql)
+            throws SQLException {
+
+        final Connection conn = connect(key);
+        try {
+            final Statement stmt = conn.createStatement();
+            final ResultSet rs = stmt.executeQuery(sql);
+            final Object value = rs.next() ? rs.getObject(1) : null;
+            rs.close();
+            stmt.close();
+            return value;
+        } finally {
+            conn.close();
+        }
+    }
+
+    private Connection connect(final long key)
+            throws SQLException {
+
+        final Connection conn = DriverManager.getConnection(EmulatorDriver.URL_PREFIX + db);
+        try {
+            final Statement stmt = conn.createStatement();
+            stmt.execute("USE FEDERATION " + FEDERATION + " (range_id = " + key + ") WITH RESET, FILTERING = OFF");
+            stmt.close();
+        } catch (SQLException e) {
+            conn.close();
+            throw e;
+        }
+        return conn;
+    }
+
+    /**
+     * Statements executed so far onto the given member.
+     */
+    protected long getExecutions(final int index) {
+        return getMember(index).getExecutions();
+    }
+}
@@ -0,0 +1,190 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.openjpa.azure.emulator;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Emulated connection: statements are sent to the database currently selected via <code>USE FEDERATION</code>;
+ * connections to the root and to federation members are opened lazily and kept until close.
+ */
+class EmulatedConnection implements InvocationHandler {
+
+    private final FederationEmulator emulator;
+
+    private final Map<EmulatedMember, Connection> connections = new LinkedHashMap<EmulatedMember, Connection>();
+
+    private Connection proxy;
+
+    private EmulatedMember current;
+
+    private Boolean autoCommit;
+
+    private Integer isolation;
+
+    private boolean closed = false;
+
+    EmulatedConnection(final FederationEmulator emulator)
+            throws SQLException {
+
+        this.emulator = emulator;
+        switchTo(emulator.getRoot());
+    }
+
+    void setProxy(final Connection proxy) {
+        this.proxy = proxy;
+    }
+
+    Connection getProxy() {
+        return proxy;
+    }
+
+    FederationEmulator getEmulator() {
+        return emulator;
+    }
+
+    synchronized EmulatedMember getCurrentMember() {
+        return current;
+    }
+
+    synchronized Connection getCurrentConnection() {
+        return connections.get(current);
+    }
+
+    /**
+     * Route next statements to the given member, replaying connection settings.
+     */
+    synchronized void switchTo(final EmulatedMember member)
+            throws SQLException {
+
+        Connection conn = connections.get(member);
+        if (conn == null) {
+            conn = member.newConnection();
+            connections.put(member, conn);
+        }
+        if (autoCommit != null && conn.getAutoCommit() != autoCommit) {
+            conn.setAutoCommit(autoCommit);
+        }
+        if (isolation != null) {
+            conn.setTransactionIsolation(isolation);
+        }
+        current = member;
+    }
+
+    @Override
+    public Object invoke(final Object proxy, final Method method, final Object[] args)
+            throws Throwable {
+
+        final String name = method.getName();
+
+        if ("close".equals(name)) {
+            close();
+            return null;
+        }
+        if ("isClosed".equals(name)) {
+            return closed;
+        }
+        if ("equals".equals(name)) {
+            return proxy == args[0];
+        }
+        if ("hashCode".equals(name)) {
+            return System.identityHashCode(proxy);
+        }
+        if ("toString".equals(name)) {
+            return "EmulatedConnection[" + emulator.getName() + ", " + getCurrentMember() + "]";
+        }
+        if (closed) {
+            throw new SQLException("Connection is closed");
+        }
+
+        if ("setAutoCommit".equals(name)) {
+            autoCommit = (Boolean) args[0];
+        } else if ("setTransactionIsolation".equals(name)) {
+            isolation = (Integer) args[0];
+        }
+
+        final EmulatedMember member = getCurrentMember();
+        final Connection conn = getCurrentConnection();
+
+        if ("createStatement".equals(name)) {
+            return wrap(Statement.class, member, delegate(conn, method, args), null);
+        }
+        if ("prepareStatement".equals(name) || "prepareCall".equals(name)) {
+            final String sql = (String) args[0];
+            final Class<? extends Statement> type = "prepareCall".equals(name)
+                    ? CallableStatement.class : PreparedStatement.class;
+
+            if (emulator.isCommand(sql)) {
+                // prepared at execution time
+                return wrap(type, member, null, sql);
+            }
+
+            final Object[] rewritten = args.clone();
+            rewritten[0] = emulator.rewrite(sql);
+            return wrap(type, member, delegate(conn, method, rewritten), null);
+        }
+
+        return delegate(conn, method, args);
+    }
+
+    private Statement wrap(
+            final Class<? extends Statement> type, final EmulatedMember member, final Object stmt, final String sql) {
+
+        return (Statement) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{type},
+                new EmulatedStatement(this, member, (Statement) stmt, sql));
+    }
+
+    private static Object delegate(final Object target, final Method method, final Object[] args)
+            throws Throwable {
+
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getTargetException();
+        }
+    }
+
+    private synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+
+        for (Map.Entry<EmulatedMember, Connection> entry : connections.entrySet()) {
+            try {
+                entry.getValue().close();
+            } catch (SQLException ignore) {
+                // ignore
+            } finally {
+                entry.getKey().closed();
+            }
+        }
+        connections.clear();
+    }
+}
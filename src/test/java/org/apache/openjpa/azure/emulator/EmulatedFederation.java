@@ -0,0 +1,97 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.openjpa.azure.emulator;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import org.apache.openjpa.azure.jdbc.conf.AzureConfiguration.RangeType;
+
+/**
+ * An emulated federation: members are kept sorted by lower bound.
+ */
+public class EmulatedFederation {
+
+    private final int federationId;
+
+    private final String name;
+
+    private final String distributionName;
+
+    private final RangeType type;
+
+    private final List<EmulatedMember> members = new CopyOnWriteArrayList<EmulatedMember>();
+
+    EmulatedFederation(final int federationId, final String name, final String distributionName,
+            final RangeType type) {
+
+        this.federationId = federationId;
+        this.name = name;
+        this.distributionName = distributionName;
+        this.type = type;
+    }
+
+    public int getFederationId() {
+        return federationId;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getDistributionName() {
+        return distributionName;
+    }
+
+    public RangeType getType() {
+        return type;
+    }
+
+    public List<EmulatedMember> getMembers() {
+        return new ArrayList<EmulatedMember>(members);
+    }
+
+    void addMember(final EmulatedMember member) {
+        int index = 0;
+        while (index < members.size() && members.get(index).getLow().compareTo(member.getLow()) < 0) {
+            index++;
+        }
+        members.add(index, member);
+    }
+
+    /**
+     * Get the member whose range contains the given (normalized) value.
+     *
+     * @param value normalized federation key.
+     * @return member; null if not found.
+     */
+    public EmulatedMember getMember(final Comparable<Object> value) {
+        for (EmulatedMember member : members) {
+            if (member.contains(value)) {
+                return member;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public String toString() {
+        return "EmulatedFederation[" + name + " (" + distributionName + " " + type + "), members=" + members + "]";
+    }
+}
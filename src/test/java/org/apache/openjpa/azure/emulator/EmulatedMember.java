@@ -0,0 +1,211 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.openjpa.azure.emulator;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A database of the emulator: either the federation root or a federation member, backed by an in-memory H2 database.
+ *
+ * Latency and throttling errors can be injected per member.
+ */
+public class EmulatedMember {
+
+    private final int memberId;
+
+    private final EmulatedFederation federation;
+
+    private final String url;
+
+    private volatile Comparable<Object> low;
+
+    private volatile Comparable<Object> high;
+
+    private final List<String> ddl = Collections.synchronizedList(new ArrayList<String>());
+
+    private final Map<String, String> federatedTables =
+            Collections.synchronizedMap(new LinkedHashMap<String, String>());
+
+    private volatile long latency = 0;
+
+    private volatile double throttleRate = 0;
+
+    private volatile int throttleCode = 40501;
+
+    private final AtomicInteger faults = new AtomicInteger();
+
+    private volatile int faultCode;
+
+    private final AtomicLong executions = new AtomicLong();
+
+    private final AtomicInteger openConnections = new AtomicInteger();
+
+    private final Random random = new Random();
+
+    EmulatedMember(final int memberId, final EmulatedFederation federation, final String url,
+            final Comparable<Object> low, final Comparable<Object> high) {
+
+        this.memberId = memberId;
+        this.federation = federation;
+        this.url = url;
+        this.low = low;
+        this.high = high;
+    }
+
+    public int getMemberId() {
+        return memberId;
+    }
+
+    /**
+     * Federation this member belongs to; null for the federation root.
+     */
+    public EmulatedFederation getFederation() {
+        return federation;
+    }
+
+    public boolean isRoot() {
+        return federation == null;
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    /**
+     * Normalized lower bound (inclusive): Long for numeric ranges, lower case strings for uniqueidentifier and
+     * varbinary (hex) ranges.
+     */
+    public Comparable<Object> getLow() {
+        return low;
+    }
+
+    /**
+     * Normalized upper bound (exclusive); null for the last member.
+     */
+    public Comparable<Object> getHigh() {
+        return high;
+    }
+
+    void setHigh(final Comparable<Object> high) {
+        this.high = high;
+    }
+
+    public boolean contains(final Comparable<Object> value) {
+        return low.compareTo(value) <= 0 && (high == null || high.compareTo(value) > 0);
+    }
+
+    List<String> getDdl() {
+        return ddl;
+    }
+
+    /**
+     * Federated tables (upper case) with their federation column.
+     */
+    public Map<String, String> getFederatedTables() {
+        return federatedTables;
+    }
+
+    Connection newConnection()
+            throws SQLException {
+
+        final Connection conn = DriverManager.getConnection(url);
+        openConnections.incrementAndGet();
+        return conn;
+    }
+
+    void closed() {
+        openConnections.decrementAndGet();
+    }
+
+    // ---------------------------------
+    // Fault injection
+    // ---------------------------------
+    /**
+     * Delay each statement execution of the given milliseconds.
+     */
+    public void setLatency(final long latency) {
+        this.latency = latency;
+    }
+
+    /**
+     * Fail the given ratio (0..1) of statement executions with the given SQL error code.
+     */
+    public void setThrottling(final double rate, final int errorCode) {
+        this.throttleRate = rate;
+        this.throttleCode = errorCode;
+    }
+
+    /**
+     * Fail the next <code>count</code> statement executions with the given SQL error code.
+     */
+    public void failNext(final int count, final int errorCode) {
+        this.faultCode = errorCode;
+        faults.set(count);
+    }
+
+    public long getExecutions() {
+        return executions.get();
+    }
+
+    public int getOpenConnections() {
+        return openConnections.get();
+    }
+
+    /**
+     * Called before each statement execution: sleeps for the configured latency, then throws injected errors.
+     */
+    void beforeExecute()
+            throws SQLException {
+
+        executions.incrementAndGet();
+
+        if (latency > 0) {
+            try {
+                Thread.sleep(latency);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        if (faults.get() > 0 && faults.getAndDecrement() > 0) {
+            throw FederationEmulator.error("Injected fault on member " + memberId, faultCode);
+        }
+
+        if (throttleRate > 0 && random.nextDouble() < throttleRate) {
+            throw FederationEmulator.error("The service is currently busy (member " + memberId + ")", throttleCode);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return isRoot()
+                ? "EmulatedMember[ROOT]"
+                : "EmulatedMember[" + federation.getName() + ", id=" + memberId + ", low=" + low + ", high=" + high + "]";
+    }
+}
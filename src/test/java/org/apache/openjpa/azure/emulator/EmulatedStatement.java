@@ -0,0 +1,178 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.openjpa.azure.emulator;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * Emulated statement: emulator commands are executed by {@link FederationEmulator}, other statements are sent to the
+ * member the statement was created onto, after injected latency / faults.
+ */
+class EmulatedStatement implements InvocationHandler {
+
+    private final EmulatedConnection conn;
+
+    private final EmulatedMember member;
+
+    private final Statement stmt;
+
+    private final String command;
+
+    private ResultSet result;
+
+    private int updateCount = -1;
+
+    private boolean handled = false;
+
+    /**
+     * Constructor.
+     *
+     * @param conn emulated connection.
+     * @param member member the statement was created onto.
+     * @param stmt underlying statement; null for prepared emulator commands.
+     * @param command emulator command of prepared statements; null otherwise.
+     */
+    EmulatedStatement(final EmulatedConnection conn, final EmulatedMember member, final Statement stmt,
+            final String command) {
+
+        this.conn = conn;
+        this.member = member;
+        this.stmt = stmt;
+        this.command = command;
+    }
+
+    @Override
+    public Object invoke(final Object proxy, final Method method, final Object[] args)
+            throws Throwable {
+
+        final String name = method.getName();
+
+        if ("getConnection".equals(name)) {
+            return conn.getProxy();
+        }
+        if ("equals".equals(name)) {
+            return proxy == args[0];
+        }
+        if ("hashCode".equals(name)) {
+            return System.identityHashCode(proxy);
+        }
+        if ("toString".equals(name)) {
+            return "EmulatedStatement[" + member + ", " + (command == null ? stmt : command) + "]";
+        }
+
+        if (name.startsWith("execute") && !"executeBatch".equals(name)) {
+            final String sql = args != null && args.length > 0 && args[0] instanceof String
+                    ? (String) args[0] : command;
+
+            if (sql != null && conn.getEmulator().isCommand(sql)) {
+                return executeCommand(name, sql);
+            }
+
+            handled = false;
+            if (sql != null) {
+                final Object[] rewritten = args.clone();
+                rewritten[0] = conn.getEmulator().rewrite(sql);
+                return execute(method, rewritten);
+            }
+            return execute(method, args);
+        }
+
+        if ("executeBatch".equals(name)) {
+            handled = false;
+            return execute(method, args);
+        }
+
+        if (handled) {
+            if ("getResultSet".equals(name)) {
+                return result;
+            }
+            if ("getUpdateCount".equals(name)) {
+                return updateCount;
+            }
+            if ("getMoreResults".equals(name)) {
+                result = null;
+                updateCount = -1;
+                return false;
+            }
+        }
+
+        if (stmt == null) {
+            return defaultValue(method.getReturnType());
+        }
+        try {
+            return method.invoke(stmt, args);
+        } catch (InvocationTargetException e) {
+            throw e.getTargetException();
+        }
+    }
+
+    private Object executeCommand(final String name, final String sql)
+            throws SQLException {
+
+        final Object res = conn.getEmulator().execute(conn, sql);
+
+        handled = true;
+        result = res instanceof ResultSet ? (ResultSet) res : null;
+        updateCount = res instanceof ResultSet ? -1 : ((Number) res).intValue();
+
+        if ("executeQuery".equals(name)) {
+            if (result == null) {
+                throw new SQLException("Statement did not return a result set: " + sql);
+            }
+            return result;
+        }
+        if ("execute".equals(name)) {
+            return result != null;
+        }
+        if ("executeLargeUpdate".equals(name)) {
+            return (long) Math.max(updateCount, 0);
+        }
+        return Math.max(updateCount, 0);
+    }
+
+    private Object execute(final Method method, final Object[] args)
+            throws Throwable {
+
+        member.beforeExecute();
+        try {
+            return method.invoke(stmt, args);
+        } catch (InvocationTargetException e) {
+            final Throwable cause = e.getTargetException();
+            throw cause instanceof SQLException ? FederationEmulator.translate((SQLException) cause) : cause;
+        }
+    }
+
+    private static Object defaultValue(final Class<?> type) {
+        if (type == boolean.class) {
+            return Boolean.FALSE;
+        }
+        if (type == int.class) {
+            return 0;
+        }
+        if (type == long.class) {
+            return 0L;
+        }
+        return null;
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.openjpa.azure.emulator;
+
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.Driver;
+import java.sql.DriverManager;
+import java.sql.DriverPropertyInfo;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.Properties;
+import java.util.logging.Logger;
+
+/**
+ * JDBC driver for {@link FederationEmulator} databases: URLs are in the form
+ * <code>jdbc:azure-emulator:&lt;name&gt;</code>. Connections start onto the federation root.
+ */
+public class EmulatorDriver implements Driver {
+
+    public static final String URL_PREFIX = "jdbc:azure-emulator:";
+
+    static {
+        try {
+            DriverManager.registerDriver(new EmulatorDriver());
+        } catch (SQLException e) {
+            throw new IllegalStateException("Could not register " + EmulatorDriver.class.getName(), e);
+        }
+    }
+
+    @Override
+    public Connection connect(final String url, final Properties info)
+            throws SQLException {
+
+        if (!acceptsURL(url)) {
+            return null;
+        }
+
+        String name = url.substring(URL_PREFIX.length());
+        final int options = name.indexOf(';');
+        if (options >= 0) {
+            name = name.substring(0, options);
+        }
+
+        final EmulatedConnection handler = new EmulatedConnection(FederationEmulator.getInstance(name));
+        final Connection conn = (Connection) Proxy.newProxyInstance(
+                getClass().getClassLoader(), new Class<?>[]{Connection.class}, handler);
+        handler.setProxy(conn);
+        return conn;
+    }
+
+    @Override
+    public boolean acceptsURL(final String url) {
+        return url != null && url.startsWith(URL_PREFIX);
+    }
+
+    @Override
+    public DriverPropertyInfo[] getPropertyInfo(final String url, final Properties info) {
+        return new DriverPropertyInfo[0];
+    }
+
+    @Override
+    public int getMajorVersion() {
+        return 1;
+    }
+
+    @Override
+    public int getMinorVersion() {
+        return 0;
+    }
+
+    @Override
+    public boolean jdbcCompliant() {
+        return false;
+    }
+
+    public Logger getParentLogger()
+            throws SQLFeatureNotSupportedException {
+        throw new SQLFeatureNotSupportedException();
+    }
+}
@@ -0,0 +1,772 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.openjpa.azure.emulator;
+
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.apache.openjpa.azure.jdbc.conf.AzureConfiguration.RangeType;
+import org.apache.openjpa.azure.util.HexEncoderDecoder;
+import org.h2.tools.SimpleResultSet;
+
+/**
+ * In-process emulator of an Azure SQL Database with federations.
+ *
+ * The federation root and each federation member are separate in-memory H2 databases; connections obtained through
+ * {@link EmulatorDriver} understand <code>CREATE FEDERATION</code>, <code>ALTER FEDERATION ... SPLIT AT</code>,
+ * <code>DROP FEDERATION</code>, <code>USE FEDERATION</code>, <code>FEDERATED ON</code> and the federation catalog
+ * views. Federation member ranges are enforced: rows out of the member range are rejected with error 45022.
+ */
+public class FederationEmulator {
+
+    /**
+     * Error raised by Azure when a federated row does not belong to the current member.
+     */
+    public static final int ERR_OUT_OF_MEMBER = 45022;
+
+    private static final int ERR_FEDERATION = 45000;
+
+    private static final String CONSTRAINT_PREFIX = "FED_RANGE_";
+
+    private static final ConcurrentMap<String, FederationEmulator> INSTANCES =
+            new ConcurrentHashMap<String, FederationEmulator>();
+
+    private static final AtomicInteger DB_COUNTER = new AtomicInteger();
+
+    private static final int FLAGS = Pattern.CASE_INSENSITIVE | Pattern.DOTALL;
+
+    private static final Pattern USE_ROOT = Pattern.compile("^\\s*USE\\s+FEDERATION\\s+ROOT\\b.*$", FLAGS);
+
+    private static final Pattern USE = Pattern.compile(
+            "^\\s*USE\\s+FEDERATION\\s+(\\w+)\\s*\\(\\s*(\\w+)\\s*=\\s*(.+?)\\s*\\)\\s*(WITH\\b.*)?$", FLAGS);
+
+    private static final Pattern CREATE_FEDERATION = Pattern.compile(
+            "^\\s*CREATE\\s+FEDERATION\\s+(\\w+)\\s*\\(\\s*(\\w+)\\s+(\\w+)(\\s*\\(\\s*\\d+\\s*\\))?\\s+RANGE\\s*\\)\\s*;?\\s*$",
+            FLAGS);
+
+    private static final Pattern SPLIT = Pattern.compile(
+            "^\\s*ALTER\\s+FEDERATION\\s+(\\w+)\\s+SPLIT\\s+AT\\s*\\(\\s*(\\w+)\\s*=\\s*(.+?)\\s*\\)\\s*;?\\s*$", FLAGS);
+
+    private static final Pattern DROP_FEDERATION = Pattern.compile(
+            "^\\s*DROP\\s+FEDERATION\\s+(\\w+)\\s*;?\\s*$", FLAGS);
+
+    private static final Pattern FEDERATED_ON = Pattern.compile(
+            "\\s*FEDERATED\\s+ON\\s*\\(\\s*(\\w+)\\s*=\\s*(\\w+)\\s*\\)", FLAGS);
+
+    private static final Pattern CLUSTERED = Pattern.compile(
+            "\\b(PRIMARY\\s+KEY|UNIQUE)\\s+(?:NON)?CLUSTERED\\b", FLAGS);
+
+    private static final Pattern DDL = Pattern.compile(
+            "^\\s*(CREATE|ALTER|DROP)\\s+(TABLE|INDEX|UNIQUE|VIEW|SEQUENCE)\\b.*$", FLAGS);
+
+    private static final Pattern TABLE_NAME = Pattern.compile(
+            "^\\s*(?:CREATE|DROP)\\s+TABLE\\s+([\\w\\.\\[\\]\"]+)", FLAGS);
+
+    private static final Pattern SYS_FEDERATIONS = Pattern.compile(
+            "FROM\\s+sys\\.federations\\s+WHERE\\s+name\\s*=\\s*'([^']*)'", FLAGS);
+
+    private static final Pattern MEMBER_DISTRIBUTIONS = Pattern.compile(
+            "CAST\\s*\\(\\s*(MAX\\s*\\(\\s*)?range_low\\s*\\)?\\s+as\\s+(\\w+)\\s*\\).*"
+            + "FROM\\s+sys\\.federation_member_distributions\\s+WHERE\\s+federation_id\\s*=\\s*(\\d+)"
+            + "(?:\\s+and\\s+range_low\\s*<=\\s*(.+?))?(?:\\s+ORDER\\s+BY\\s+\\w+)?\\s*$", FLAGS);
+
+    private static final Pattern PARTITION_STATS = Pattern.compile(
+            "FROM\\s+sys\\.dm_db_partition_stats\\s+WHERE\\s+OBJECT_NAME\\s*\\(\\s*object_id\\s*\\)\\s*=\\s*'([^']*)'",
+            FLAGS);
+
+    private final String name;
+
+    private final EmulatedMember root;
+
+    private final Map<String, EmulatedFederation> federations = new ConcurrentHashMap<String, EmulatedFederation>();
+
+    private final AtomicInteger ids = new AtomicInteger();
+
+    private FederationEmulator(final String name) {
+        this.name = name;
+        this.root = new EmulatedMember(0, null, newDatabaseUrl("root"), null, null);
+        initDatabase(root);
+    }
+
+    /**
+     * Get the emulated database with the given name, creating it if needed.
+     *
+     * @param name database name, as found in <code>jdbc:azure-emulator:&lt;name&gt;</code> URLs.
+     * @return emulator instance.
+     */
+    public static FederationEmulator getInstance(final String name) {
+        FederationEmulator emulator = INSTANCES.get(name);
+        if (emulator == null) {
+            emulator = new FederationEmulator(name);
+            final FederationEmulator existing = INSTANCES.putIfAbsent(name, emulator);
+            if (existing != null) {
+                emulator = existing;
+            }
+        }
+        return emulator;
+    }
+
+    /**
+     * Drop the emulated database with the given name and all of its members.
+     *
+     * @param name database name.
+     */
+    public static void drop(final String name) {
+        final FederationEmulator emulator = INSTANCES.remove(name);
+        if (emulator != null) {
+            emulator.shutdown(emulator.root);
+            for (EmulatedFederation fed : emulator.federations.values()) {
+                for (EmulatedMember member : fed.getMembers()) {
+                    emulator.shutdown(member);
+                }
+            }
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public EmulatedMember getRoot() {
+        return root;
+    }
+
+    public EmulatedFederation getFederation(final String federationName) {
+        return federations.get(federationName.toUpperCase());
+    }
+
+    public Collection<EmulatedFederation> getFederations() {
+        return new ArrayList<EmulatedFederation>(federations.values());
+    }
+
+    static SQLException error(final String message, final int errorCode) {
+        return new SQLException(message, "S0001", errorCode);
+    }
+
+    private String newDatabaseUrl(final String suffix) {
+        return "jdbc:h2:mem:azure_" + name + "_" + suffix + "_" + DB_COUNTER.incrementAndGet()
+                + ";MODE=MSSQLServer;DB_CLOSE_DELAY=-1";
+    }
+
+    private void initDatabase(final EmulatedMember member) {
+        try {
+            final Connection conn = member.newConnection();
+            try {
+                execute(conn, "CREATE DOMAIN IF NOT EXISTS UNIQUEIDENTIFIER AS UUID");
+            } finally {
+                close(member, conn);
+            }
+        } catch (SQLException e) {
+            throw new IllegalStateException("Could not initialize " + member, e);
+        }
+    }
+
+    private void shutdown(final EmulatedMember member) {
+        try {
+            final Connection conn = member.newConnection();
+            try {
+                execute(conn, "SHUTDOWN");
+            } finally {
+                close(member, conn);
+            }
+        } catch (SQLException ignore) {
+            // ignore
+        }
+    }
+
+    // ---------------------------------
+    // Federation management
+    // ---------------------------------
+    /**
+     * Create a federation with a single member covering the whole range.
+     */
+    public synchronized EmulatedFederation createFederation(
+            final String federationName, final String distributionName, final RangeType type)
+            throws SQLException {
+
+        if (getFederation(federationName) != null) {
+            throw error("Federation " + federationName + " already exists", ERR_FEDERATION);
+        }
+
+        final EmulatedFederation fed =
+                new EmulatedFederation(ids.incrementAndGet(), federationName, distributionName, type);
+        final EmulatedMember member = new EmulatedMember(ids.incrementAndGet(), fed,
+                newDatabaseUrl(federationName + "_" + 0), minValue(type), null);
+        initDatabase(member);
+        fed.addMember(member);
+
+        federations.put(federationName.toUpperCase(), fed);
+        return fed;
+    }
+
+    public synchronized void dropFederation(final String federationName)
+            throws SQLException {
+
+        final EmulatedFederation fed = federations.remove(federationName.toUpperCase());
+        if (fed == null) {
+            throw error("Federation " + federationName + " does not exist", ERR_FEDERATION);
+        }
+        for (EmulatedMember member : fed.getMembers()) {
+            shutdown(member);
+        }
+    }
+
+    /**
+     * Split the member containing the given value: rows of federated tables from the given value upwards are moved to
+     * a new member; reference tables are copied.
+     *
+     * @param federationName federation name.
+     * @param literal split point, as SQL literal.
+     * @return the new member.
+     */
+    public synchronized EmulatedMember split(final String federationName, final String literal)
+            throws SQLException {
+
+        final EmulatedFederation fed = getExistingFederation(federationName);
+        final Comparable<Object> value = normalize(fed.getType(), literal);
+
+        final EmulatedMember source = fed.getMember(value);
+        if (source == null || source.getLow().compareTo(value) == 0) {
+            throw error("Invalid split point " + literal + " for federation " + federationName, ERR_FEDERATION);
+        }
+
+        final EmulatedMember target = new EmulatedMember(ids.incrementAndGet(), fed,
+                newDatabaseUrl(federationName + "_" + fed.getMembers().size()), value, source.getHigh());
+        initDatabase(target);
+
+        final Connection src = source.newConnection();
+        final Connection dst = target.newConnection();
+        try {
+            synchronized (source.getDdl()) {
+                for (String ddl : source.getDdl()) {
+                    execute(dst, ddl);
+                    target.getDdl().add(ddl);
+                }
+            }
+            target.getFederatedTables().putAll(source.getFederatedTables());
+
+            for (String table : getTables(src)) {
+                final String column = source.getFederatedTables().get(table);
+
+                copyRows(src, dst, table,
+                        column == null ? null : condition(fed.getType(), column, value, null));
+
+                if (column != null) {
+                    execute(src, "DELETE FROM " + table + " WHERE " + condition(fed.getType(), column, value, null));
+                }
+            }
+
+            source.setHigh(value);
+
+            for (Map.Entry<String, String> entry : source.getFederatedTables().entrySet()) {
+                addRangeConstraint(src, source, entry.getKey(), entry.getValue());
+                addRangeConstraint(dst, target, entry.getKey(), entry.getValue());
+            }
+        } finally {
+            close(source, src);
+            close(target, dst);
+        }
+
+        fed.addMember(target);
+        return target;
+    }
+
+    private EmulatedFederation getExistingFederation(final String federationName)
+            throws SQLException {
+
+        final EmulatedFederation fed = getFederation(federationName);
+        if (fed == null) {
+            throw error("Federation " + federationName + " does not exist", ERR_FEDERATION);
+        }
+        return fed;
+    }
+
+    /**
+     * Get the member of the given federation containing the given value.
+     */
+    public EmulatedMember getMember(final String federationName, final String literal)
+            throws SQLException {
+
+        final EmulatedFederation fed = getExistingFederation(federationName);
+        final EmulatedMember member = fed.getMember(normalize(fed.getType(), literal));
+        if (member == null) {
+            throw error("No member found for " + literal + " in federation " + federationName, ERR_FEDERATION);
+        }
+        return member;
+    }
+
+    // ---------------------------------
+    // Statements
+    // ---------------------------------
+    /**
+     * Check if the given SQL statement is handled by the emulator itself.
+     */
+    boolean isCommand(final String sql) {
+        return USE_ROOT.matcher(sql).matches()
+                || USE.matcher(sql).matches()
+                || CREATE_FEDERATION.matcher(sql).matches()
+                || SPLIT.matcher(sql).matches()
+                || DROP_FEDERATION.matcher(sql).matches()
+                || DDL.matcher(sql).matches()
+                || SYS_FEDERATIONS.matcher(sql).find()
+                || MEMBER_DISTRIBUTIONS.matcher(sql).find()
+                || PARTITION_STATS.matcher(sql).find();
+    }
+
+    /**
+     * Execute the given statement if handled by the emulator.
+     *
+     * @param conn emulated connection.
+     * @param sql SQL statement.
+     * @return a ResultSet for queries, an update count for other commands; null if the statement has to be sent to
+     * the current database.
+     */
+    Object execute(final EmulatedConnection conn, final String sql)
+            throws SQLException {
+
+        Matcher matcher = USE_ROOT.matcher(sql);
+        if (matcher.matches()) {
+            conn.switchTo(root);
+            return 0;
+        }
+
+        matcher = USE.matcher(sql);
+        if (matcher.matches()) {
+            conn.switchTo(getMember(matcher.group(1), matcher.group(3)));
+            return 0;
+        }
+
+        matcher = CREATE_FEDERATION.matcher(sql);
+        if (matcher.matches()) {
+            checkRoot(conn, sql);
+            createFederation(matcher.group(1), matcher.group(2), toRangeType(matcher.group(3)));
+            return 0;
+        }
+
+        matcher = SPLIT.matcher(sql);
+        if (matcher.matches()) {
+            checkRoot(conn, sql);
+            split(matcher.group(1), matcher.group(3));
+            return 0;
+        }
+
+        matcher = DROP_FEDERATION.matcher(sql);
+        if (matcher.matches()) {
+            checkRoot(conn, sql);
+            dropFederation(matcher.group(1));
+            return 0;
+        }
+
+        if (DDL.matcher(sql).matches()) {
+            return executeDdl(conn, sql);
+        }
+
+        matcher = SYS_FEDERATIONS.matcher(sql);
+        if (matcher.find()) {
+            return getFederationsView(matcher.group(1));
+        }
+
+        matcher = MEMBER_DISTRIBUTIONS.matcher(sql);
+        if (matcher.find()) {
+            return getMemberDistributionsView(matcher.group(1) != null, toRangeType(matcher.group(2)),
+                    Integer.parseInt(matcher.group(3)), matcher.group(4));
+        }
+
+        matcher = PARTITION_STATS.matcher(sql);
+        if (matcher.find()) {
+            return getPartitionStatsView(conn, matcher.group(1));
+        }
+
+        return null;
+    }
+
+    private void checkRoot(final EmulatedConnection conn, final String sql)
+            throws SQLException {
+
+        if (!conn.getCurrentMember().isRoot()) {
+            throw error("Statement allowed only on the federation root: " + sql, ERR_FEDERATION);
+        }
+    }
+
+    /**
+     * DDL statements executed onto a member are recorded to be replayed onto members created by splits;
+     * <code>FEDERATED ON</code> clauses turn into range check constraints.
+     */
+    private Object executeDdl(final EmulatedConnection conn, final String sql)
+            throws SQLException {
+
+        final EmulatedMember member = conn.getCurrentMember();
+        final Matcher federatedOn = FEDERATED_ON.matcher(sql);
+        final boolean federated = federatedOn.find();
+
+        if (federated && member.isRoot()) {
+            throw error("FEDERATED ON is allowed only onto federation members", ERR_FEDERATION);
+        }
+
+        final String ddl = unclustered(federated ? federatedOn.replaceFirst("") : sql);
+
+        member.beforeExecute();
+        final int count = execute(conn.getCurrentConnection(), ddl);
+
+        if (!member.isRoot()) {
+            final Matcher tableName = TABLE_NAME.matcher(ddl);
+            final String table = tableName.find() ? unquote(tableName.group(1)) : null;
+
+            if (table != null && ddl.trim().toUpperCase().startsWith("DROP")) {
+                member.getFederatedTables().remove(table);
+            }
+
+            member.getDdl().add(ddl);
+
+            if (federated && table != null) {
+                final String column = federatedOn.group(2).toUpperCase();
+                member.getFederatedTables().put(table, column);
+                addRangeConstraint(conn.getCurrentConnection(), member, table, column);
+            }
+        }
+
+        return count;
+    }
+
+    /**
+     * Rewrite statements to be sent to H2.
+     */
+    String rewrite(final String sql) {
+        return unclustered(FEDERATED_ON.matcher(sql).replaceFirst(""));
+    }
+
+    /**
+     * H2 does not know about (non)clustered constraints, mandatory onto Azure tables.
+     */
+    private static String unclustered(final String sql) {
+        return CLUSTERED.matcher(sql).replaceAll("$1");
+    }
+
+    /**
+     * Translate H2 range check violations into Azure member errors.
+     */
+    static SQLException translate(final SQLException e) {
+        for (Throwable t = e; t != null; t = t instanceof SQLException && ((SQLException) t).getNextException() != null
+                ? ((SQLException) t).getNextException() : t.getCause() == t ? null : t.getCause()) {
+
+            if (t instanceof SQLException && ((SQLException) t).getErrorCode() == 23513
+                    && String.valueOf(t.getMessage()).toUpperCase().contains(CONSTRAINT_PREFIX)) {
+
+                final SQLException res = error(
+                        "The federation key value is out of bounds for this member: " + t.getMessage(),
+                        ERR_OUT_OF_MEMBER);
+                res.initCause(e);
+                return res;
+            }
+        }
+        return e;
+    }
+
+    // ---------------------------------
+    // Catalog views
+    // ---------------------------------
+    private ResultSet getFederationsView(final String federationName) {
+        final SimpleResultSet rs = new SimpleResultSet();
+        rs.addColumn("federation_id", Types.INTEGER, 10, 0);
+        rs.addColumn("name", Types.VARCHAR, 128, 0);
+
+        final EmulatedFederation fed = getFederation(federationName);
+        if (fed != null) {
+            rs.addRow(fed.getFederationId(), fed.getName());
+        }
+        return rs;
+    }
+
+    private ResultSet getMemberDistributionsView(
+            final boolean max, final RangeType castType, final int federationId, final String upTo) {
+
+        final SimpleResultSet rs = new SimpleResultSet();
+        rs.addColumn("low", toSqlType(castType), 0, 0);
+
+        EmulatedFederation fed = null;
+        for (EmulatedFederation candidate : federations.values()) {
+            if (candidate.getFederationId() == federationId) {
+                fed = candidate;
+            }
+        }
+
+        if (fed == null) {
+            return rs;
+        }
+
+        final Comparable<Object> limit = upTo == null ? null : normalize(fed.getType(), upTo);
+
+        Comparable<Object> found = null;
+        for (EmulatedMember member : fed.getMembers()) {
+            if (limit != null && member.getLow().compareTo(limit) > 0) {
+                continue;
+            }
+            if (max) {
+                found = member.getLow();
+            } else {
+                rs.addRow(toCatalogValue(castType, member.getLow()));
+            }
+        }
+
+        if (max) {
+            rs.addRow(found == null ? null : toCatalogValue(castType, found));
+        }
+
+        return rs;
+    }
+
+    private ResultSet getPartitionStatsView(final EmulatedConnection conn, final String table)
+            throws SQLException {
+
+        final SimpleResultSet rs = new SimpleResultSet();
+        rs.addColumn("ObjectName", Types.VARCHAR, 128, 0);
+
+        if (getTables(conn.getCurrentConnection()).contains(unquote(table))) {
+            rs.addRow(table);
+        }
+        return rs;
+    }
+
+    // ---------------------------------
+    // Range values
+    // ---------------------------------
+    static RangeType toRangeType(final String type) {
+        final String value = type.trim().toLowerCase();
+        for (RangeType rangeType : RangeType.values()) {
+            if (rangeType.getValue().equals(value)) {
+                return rangeType;
+            }
+        }
+        throw new IllegalArgumentException("Unsupported federation distribution type: " + type);
+    }
+
+    @SuppressWarnings("unchecked")
+    static Comparable<Object> minValue(final RangeType type) {
+        switch (type) {
+            case BIGINT:
+                return (Comparable) Long.MIN_VALUE;
+            case INT:
+                return (Comparable) Long.valueOf(Integer.MIN_VALUE);
+            case UNIQUEIDENTIFIER:
+                return (Comparable) "00000000-0000-0000-0000-000000000000";
+            default:
+                return (Comparable) "";
+        }
+    }
+
+    /**
+     * Normalize a SQL literal of the given type: Long for numeric types, lower case strings otherwise (hex digits for
+     * varbinary values).
+     */
+    @SuppressWarnings("unchecked")
+    static Comparable<Object> normalize(final RangeType type, final String literal) {
+        String value = literal.trim();
+
+        final Matcher cast = Pattern.compile("^CAST\\s*\\((.+)\\s+AS\\s+\\w+\\s*\\)$", FLAGS).matcher(value);
+        if (cast.matches()) {
+            value = cast.group(1).trim();
+        }
+        if (value.startsWith("N'")) {
+            value = value.substring(1);
+        }
+        if (value.length() > 1 && value.startsWith("'") && value.endsWith("'")) {
+            value = value.substring(1, value.length() - 1);
+        }
+
+        switch (type) {
+            case BIGINT:
+            case INT:
+                return (Comparable) Long.valueOf(value);
+            case UNIQUEIDENTIFIER:
+                return (Comparable) value.toLowerCase();
+            default:
+                return (Comparable) (value.toLowerCase().startsWith("0x") ? value.substring(2) : value).toLowerCase();
+        }
+    }
+
+    private static Object toCatalogValue(final RangeType type, final Comparable<Object> value) {
+        switch (type) {
+            case BIGINT:
+                return value;
+            case INT:
+                return ((Number) (Object) value).intValue();
+            case UNIQUEIDENTIFIER:
+                return value.toString().toUpperCase();
+            default:
+                return HexEncoderDecoder.decode(value.toString());
+        }
+    }
+
+    private static int toSqlType(final RangeType type) {
+        switch (type) {
+            case BIGINT:
+                return Types.BIGINT;
+            case INT:
+                return Types.INTEGER;
+            case UNIQUEIDENTIFIER:
+                return Types.VARCHAR;
+            default:
+                return Types.VARBINARY;
+        }
+    }
+
+    private static String toLiteral(final RangeType type, final Comparable<Object> value) {
+        return type == RangeType.BIGINT || type == RangeType.INT ? value.toString() : "'" + value + "'";
+    }
+
+    /**
+     * SQL condition selecting values of the given column in the given range.
+     */
+    private static String condition(
+            final RangeType type, final String column, final Comparable<Object> low, final Comparable<Object> high) {
+
+        final String expr;
+        switch (type) {
+            case BIGINT:
+            case INT:
+                expr = column;
+                break;
+            case UNIQUEIDENTIFIER:
+                expr = "LOWER(CAST(" + column + " AS VARCHAR))";
+                break;
+            default:
+                expr = "LOWER(RAWTOHEX(" + column + "))";
+        }
+
+        final StringBuilder res = new StringBuilder();
+        res.append(expr).append(" >= ").append(toLiteral(type, low));
+        if (high != null) {
+            res.append(" AND ").append(expr).append(" < ").append(toLiteral(type, high));
+        }
+        return res.toString();
+    }
+
+    private void addRangeConstraint(
+            final Connection conn, final EmulatedMember member, final String table, final String column)
+            throws SQLException {
+
+        final String constraint = CONSTRAINT_PREFIX + table;
+
+        execute(conn, "ALTER TABLE " + table + " DROP CONSTRAINT IF EXISTS " + constraint);
+        execute(conn, "ALTER TABLE " + table + " ADD CONSTRAINT " + constraint + " CHECK ("
+                + condition(member.getFederation().getType(), column, member.getLow(), member.getHigh()) + ")");
+    }
+
+    // ---------------------------------
+    // JDBC helpers
+    // ---------------------------------
+    private static String unquote(final String identifier) {
+        String res = identifier.replace("[", "").replace("]", "").replace("\"", "");
+        final int dot = res.lastIndexOf('.');
+        if (dot >= 0) {
+            res = res.substring(dot + 1);
+        }
+        return res.toUpperCase();
+    }
+
+    private static int execute(final Connection conn, final String sql)
+            throws SQLException {
+
+        final Statement stmt = conn.createStatement();
+        try {
+            stmt.execute(sql);
+            return Math.max(0, stmt.getUpdateCount());
+        } finally {
+            stmt.close();
+        }
+    }
+
+    private static List<String> getTables(final Connection conn)
+            throws SQLException {
+
+        final List<String> tables = new ArrayList<String>();
+
+        final DatabaseMetaData meta = conn.getMetaData();
+        final ResultSet rs = meta.getTables(null, "PUBLIC", "%", new String[]{"TABLE"});
+        try {
+            while (rs.next()) {
+                tables.add(rs.getString("TABLE_NAME"));
+            }
+        } finally {
+            rs.close();
+        }
+
+        return tables;
+    }
+
+    private static void copyRows(final Connection src, final Connection dst, final String table, final String where)
+            throws SQLException {
+
+        final Statement select = src.createStatement();
+        try {
+            final ResultSet rs = select.executeQuery("SELECT * FROM " + table + (where == null ? "" : " WHERE " + where));
+            final ResultSetMetaData meta = rs.getMetaData();
+
+            final StringBuilder insert = new StringBuilder("INSERT INTO ").append(table).append(" VALUES (");
+            for (int i = 1; i <= meta.getColumnCount(); i++) {
+                insert.append(i > 1 ? ", ?" : "?");
+            }
+            insert.append(')');
+
+            final PreparedStatement stmt = dst.prepareStatement(insert.toString());
+            try {
+                while (rs.next()) {
+                    for (int i = 1; i <= meta.getColumnCount(); i++) {
+                        stmt.setObject(i, rs.getObject(i));
+                    }
+                    stmt.addBatch();
+                }
+                stmt.executeBatch();
+            } finally {
+                stmt.close();
+            }
+        } finally {
+            select.close();
+        }
+    }
+
+    private static void close(final EmulatedMember member, final Connection conn) {
+        try {
+            conn.close();
+        } catch (SQLException ignore) {
+            // ignore
+        } finally {
+            member.closed();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "FederationEmulator[" + name + ", federations=" + federations.values() + "]";
+    }
+}
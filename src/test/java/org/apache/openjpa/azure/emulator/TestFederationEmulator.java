@@ -0,0 +1,244 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.openjpa.azure.emulator;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.UUID;
+import junit.framework.TestCase;
+import org.apache.openjpa.azure.Federation;
+import org.apache.openjpa.azure.jdbc.conf.AzureConfiguration.RangeType;
+import org.apache.openjpa.azure.util.AzureUtils;
+import org.apache.openjpa.azure.util.MemberDistribution;
+import org.apache.openjpa.jdbc.identifier.DBIdentifier;
+import org.apache.openjpa.jdbc.schema.Table;
+
+public class TestFederationEmulator extends TestCase {
+
+    private static final String DB = "test";
+
+    private Connection conn;
+
+    @Override
+    public void setUp()
+            throws Exception {
+
+        Class.forName(EmulatorDriver.class.getName());
+        conn = DriverManager.getConnection(EmulatorDriver.URL_PREFIX + DB);
+    }
+
+    @Override
+    public void tearDown()
+            throws Exception {
+
+        conn.close();
+        FederationEmulator.drop(DB);
+    }
+
+    private static Federation newFederation(final String name, final RangeType type) {
+        final Federation fed = new Federation();
+        fed.setName(name);
+        fed.setDistributionName("range_id");
+        fed.setRangeMappingType(type);
+        return fed;
+    }
+
+    private void execute(final String sql)
+            throws SQLException {
+
+        final Statement stmt = conn.createStatement();
+        try {
+            stmt.execute(sql);
+        } finally {
+            stmt.close();
+        }
+    }
+
+    private int count(final String table)
+            throws SQLException {
+
+        final Statement stmt = conn.createStatement();
+        try {
+            final ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM " + table);
+            rs.next();
+            return rs.getInt(1);
+        } finally {
+            stmt.close();
+        }
+    }
+
+    private void createFederatedTable(final Federation fed, final Object member)
+            throws SQLException {
+
+        AzureUtils.useFederation(conn, fed, member);
+        execute("CREATE TABLE Item (id BIGINT NOT NULL, name VARCHAR(50), PRIMARY KEY (id)) "
+                + "FEDERATED ON (range_id = id)");
+        execute("CREATE TABLE Country (code VARCHAR(2) NOT NULL, PRIMARY KEY (code))");
+    }
+
+    private void insert(final long id)
+            throws SQLException {
+
+        final PreparedStatement stmt = conn.prepareStatement("INSERT INTO Item (id, name) VALUES (?, ?)");
+        try {
+            stmt.setLong(1, id);
+            stmt.setString(2, "item" + id);
+            stmt.executeUpdate();
+        } finally {
+            stmt.close();
+        }
+    }
+
+    public void testSplitAndCatalog()
+            throws SQLException {
+
+        final Federation fed = newFederation("FED_1", RangeType.BIGINT);
+
+        execute("CREATE FEDERATION FED_1 (range_id BIGINT RANGE)");
+        createFederatedTable(fed, 0L);
+        execute("INSERT INTO Country VALUES ('IT')");
+        for (long id = 0; id < 10; id++) {
+            insert(id);
+        }
+
+        AzureUtils.useFederationRoot(conn);
+        execute("ALTER FEDERATION FED_1 SPLIT AT (range_id=5)");
+
+        final MemberDistribution distribution = AzureUtils.getMemberDistribution(conn, fed);
+        assertEquals(2, distribution.size());
+        assertEquals(Long.MIN_VALUE, distribution.getValues().get(0));
+        assertEquals(5L, distribution.getValues().get(1));
+
+        assertEquals(Long.MIN_VALUE, AzureUtils.getMemberDistribution(conn, fed, 4L));
+        assertEquals(5L, AzureUtils.getMemberDistribution(conn, fed, 7L));
+
+        AzureUtils.useFederation(conn, fed, 2L);
+        assertEquals(5, count("Item"));
+        assertEquals(1, count("Country"));
+
+        AzureUtils.useFederation(conn, fed, 5L);
+        assertEquals(5, count("Item"));
+        assertEquals(1, count("Country"));
+
+        // replayed DDL
+        final Table table = new Table();
+        table.setIdentifier(DBIdentifier.newTable("Item"));
+        assertTrue(AzureUtils.tableExists(conn, table));
+    }
+
+    public void testOutOfMember()
+            throws SQLException {
+
+        final Federation fed = newFederation("FED_1", RangeType.BIGINT);
+
+        execute("CREATE FEDERATION FED_1 (range_id BIGINT RANGE)");
+        createFederatedTable(fed, 0L);
+        AzureUtils.useFederationRoot(conn);
+        execute("ALTER FEDERATION FED_1 SPLIT AT (range_id=100)");
+
+        AzureUtils.useFederation(conn, fed, 150L);
+        insert(150L);
+        try {
+            insert(50L);
+            fail();
+        } catch (SQLException e) {
+            assertEquals(FederationEmulator.ERR_OUT_OF_MEMBER, e.getErrorCode());
+        }
+    }
+
+    public void testUniqueIdentifier()
+            throws SQLException {
+
+        final Federation fed = newFederation("FED_2", RangeType.UNIQUEIDENTIFIER);
+        execute("CREATE FEDERATION FED_2 (range_id UNIQUEIDENTIFIER RANGE)");
+
+        final String split = "80000000-0000-0000-0000-000000000000";
+        execute("ALTER FEDERATION FED_2 SPLIT AT (range_id='" + split + "')");
+
+        final MemberDistribution distribution = AzureUtils.getMemberDistribution(conn, fed);
+        assertEquals(2, distribution.size());
+        assertEquals(split, distribution.getValues().get(1));
+
+        AzureUtils.useFederation(conn, fed, UUID.fromString("90000000-0000-0000-0000-000000000001"));
+        execute("CREATE TABLE Doc (id UNIQUEIDENTIFIER NOT NULL, PRIMARY KEY (id)) FEDERATED ON (range_id = id)");
+        execute("INSERT INTO Doc VALUES ('90000000-0000-0000-0000-000000000001')");
+        try {
+            execute("INSERT INTO Doc VALUES ('10000000-0000-0000-0000-000000000001')");
+            fail();
+        } catch (SQLException e) {
+            assertEquals(FederationEmulator.ERR_OUT_OF_MEMBER, e.getErrorCode());
+        }
+    }
+
+    public void testFaultInjection()
+            throws SQLException {
+
+        final Federation fed = newFederation("FED_1", RangeType.BIGINT);
+        execute("CREATE FEDERATION FED_1 (range_id BIGINT RANGE)");
+        createFederatedTable(fed, 0L);
+
+        final EmulatedMember member = FederationEmulator.getInstance(DB).getMember("FED_1", "0");
+        member.failNext(1, 40501);
+        try {
+            insert(1L);
+            fail();
+        } catch (SQLException e) {
+            assertEquals(40501, e.getErrorCode());
+        }
+        insert(1L);
+
+        member.setLatency(50);
+        final long start = System.currentTimeMillis();
+        assertEquals(1, count("Item"));
+        assertTrue(System.currentTimeMillis() - start >= 50);
+        member.setLatency(0);
+
+        member.setThrottling(1, 40197);
+        try {
+            count("Item");
+            fail();
+        } catch (SQLException e) {
+            assertEquals(40197, e.getErrorCode());
+        }
+    }
+
+    public void testConnections()
+            throws SQLException {
+
+        final FederationEmulator emulator = FederationEmulator.getInstance(DB);
+        execute("CREATE FEDERATION FED_1 (range_id BIGINT RANGE)");
+        execute("ALTER FEDERATION FED_1 SPLIT AT (range_id=10)");
+
+        final List<EmulatedMember> members = emulator.getFederation("FED_1").getMembers();
+        assertEquals(2, members.size());
+
+        final Federation fed = newFederation("FED_1", RangeType.BIGINT);
+        AzureUtils.useFederation(conn, fed, 20L);
+        assertEquals(1, members.get(1).getOpenConnections());
+
+        conn.close();
+        assertEquals(0, members.get(1).getOpenConnections());
+        assertEquals(0, emulator.getRoot().getOpenConnections());
+    }
+}
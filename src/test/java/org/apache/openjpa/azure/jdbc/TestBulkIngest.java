@@ -0,0 +1,104 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.openjpa.azure.jdbc;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import javax.persistence.EntityManager;
+import org.apache.openjpa.azure.beans.FedChild;
+import org.apache.openjpa.azure.beans.FedItem;
+import org.apache.openjpa.azure.emulator.AbstractEmulatorTestCase;
+
+public class TestBulkIngest extends AbstractEmulatorTestCase {
+
+    private static final int ROWS = 10;
+
+    @Override
+    protected Map<String, String> getProperties() {
+        final Map<String, String> props = super.getProperties();
+        props.put("openjpa.azure.BulkIngest", "true");
+        props.put("openjpa.azure.BulkIngestBatchSize", "2");
+        props.put("openjpa.azure.BulkIngestMaxInFlight", "1");
+        // have inserts ordered after foreign keys
+        props.put("openjpa.jdbc.MappingDefaults",
+                "jpa(ForeignKeyDeleteAction=restrict, JoinForeignKeyDeleteAction=restrict)");
+        return props;
+    }
+
+    private long count(final String entity) {
+        final EntityManager em = emf.createEntityManager();
+        try {
+            return ((Number) em.createQuery("SELECT COUNT(e) FROM " + entity + " e").getSingleResult()).longValue();
+        } finally {
+            em.close();
+        }
+    }
+
+    public void testBatches() {
+        final long first = getExecutions(0);
+        final long second = getExecutions(1);
+
+        final EntityManager em = emf.createEntityManager();
+        try {
+            em.getTransaction().begin();
+            for (int i = 0; i < ROWS; i++) {
+                em.persist(new FedItem(i, "first " + i));
+                em.persist(new FedItem(SPAN + i, "second " + i));
+            }
+            em.getTransaction().commit();
+        } finally {
+            em.close();
+        }
+
+        // one statement at least per batch of each member
+        assertTrue(getExecutions(0) - first >= ROWS / 2);
+        assertTrue(getExecutions(1) - second >= ROWS / 2);
+
+        assertEquals(2 * ROWS, count("FedItem"));
+    }
+
+    public void testForeignKeys()
+            throws SQLException {
+
+        // foreign keys are not part of the generated schema
+        execute(0, "ALTER TABLE FedChild ADD CONSTRAINT FK_FEDCHILD_ITEM FOREIGN KEY (ITEM_ID) REFERENCES FedItem (id)");
+
+        final EntityManager em = emf.createEntityManager();
+        try {
+            em.getTransaction().begin();
+            // children are routed, hence batched, before the items they reference
+            final List<FedItem> items = new ArrayList<FedItem>();
+            for (int i = 0; i < ROWS; i++) {
+                items.add(new FedItem(i, "item " + i));
+                em.persist(new FedChild(SPAN / 2 + i, items.get(i)));
+            }
+            for (FedItem item : items) {
+                em.persist(item);
+            }
+            em.getTransaction().commit();
+        } finally {
+            em.close();
+        }
+
+        assertEquals(ROWS, count("FedItem"));
+        assertEquals(ROWS, count("FedChild"));
+    }
+}
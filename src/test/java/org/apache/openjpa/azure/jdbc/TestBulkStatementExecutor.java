@@ -0,0 +1,228 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.openjpa.azure.jdbc;
+
+import java.sql.SQLException;
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceException;
+import org.apache.openjpa.azure.beans.FedItem;
+import org.apache.openjpa.azure.emulator.AbstractEmulatorTestCase;
+import org.apache.openjpa.azure.emulator.EmulatedMember;
+import org.apache.openjpa.slice.SlicePersistence;
+
+public class TestBulkStatementExecutor extends AbstractEmulatorTestCase {
+
+    private static final int THROTTLED = 40501;
+
+    private void persist(final FedItem item) {
+        final EntityManager em = emf.createEntityManager();
+        try {
+            em.getTransaction().begin();
+            em.persist(item);
+            em.getTransaction().commit();
+        } finally {
+            em.close();
+        }
+    }
+
+    public void testRetryOnSplitMember()
+            throws SQLException {
+
+        final long id = 2 * SPAN + 5;
+
+        // split behind the back of the persistence unit: FED_1.1 rejects ids from 2 * SPAN on
+        emulator.split(FEDERATION, String.valueOf(2 * SPAN));
+
+        final long rejecting = getExecutions(1);
+
+        final EntityManager em = emf.createEntityManager();
+        try {
+            em.getTransaction().begin();
+            final int count = em.createNativeQuery(
+                    "INSERT INTO FedItem (id, name, version) VALUES (" + id + ", 'split', 1)").executeUpdate();
+            em.getTransaction().commit();
+
+            assertEquals(1, count);
+        } finally {
+            em.close();
+        }
+
+        // the rejecting member is not involved again after refreshing
+        assertEquals(rejecting + 1, getExecutions(1));
+        assertEquals(1, getExecutions(2));
+        assertEquals(2 * SPAN, getBrokerFactory().getFederationRegistry().get().getLowerBound(FEDERATION + ".2"));
+
+        final EntityManager check = emf.createEntityManager();
+        try {
+            final FedItem item = check.find(FedItem.class, id);
+            assertNotNull(item);
+            assertEquals("split", item.getName());
+        } finally {
+            check.close();
+        }
+    }
+
+    public void testRoutingErrorWithoutNewMembers() {
+        final EntityManager em = emf.createEntityManager();
+        try {
+            em.getTransaction().begin();
+            em.persist(new FedItem(1, "one"));
+            em.getTransaction().commit();
+
+            final long rejecting = getExecutions(0);
+
+            em.getTransaction().begin();
+            try {
+                // moves the row out of the range of its member: no refresh can fix that
+                em.createQuery("UPDATE FedItem i SET i.id = i.id + " + (2 * SPAN)).executeUpdate();
+                fail("statement rejected by the first member");
+            } catch (PersistenceException e) {
+                assertEquals(rejecting + 1, getExecutions(0));
+            }
+        } finally {
+            if (em.getTransaction().isActive()) {
+                em.getTransaction().rollback();
+            }
+            em.close();
+        }
+    }
+
+    public void testWaitForAllTargets() {
+        final long latency = 500;
+
+        getMember(0).failNext(1, 8152);
+        getMember(1).setLatency(latency);
+
+        final EntityManager em = emf.createEntityManager();
+        try {
+            em.getTransaction().begin();
+
+            final long start = System.currentTimeMillis();
+            try {
+                em.createQuery("UPDATE FedItem i SET i.name = 'updated'").executeUpdate();
+                fail("injected fault expected");
+            } catch (PersistenceException e) {
+                // the error is thrown only once the slow member is done
+                assertTrue(System.currentTimeMillis() - start >= latency);
+            }
+        } finally {
+            getMember(1).setLatency(0);
+            if (em.getTransaction().isActive()) {
+                em.getTransaction().rollback();
+            }
+            em.close();
+        }
+    }
+
+    public void testRetryOnSplitOffMembersOnly()
+            throws SQLException {
+
+        final long id = SPAN / 2 + 5;
+
+        final EmulatedMember unrelatedMember = getMember(1);
+
+        // split behind the back of the persistence unit: FED_1.0 rejects ids from SPAN / 2 on
+        final EmulatedMember splitOff = emulator.split(FEDERATION, String.valueOf(SPAN / 2));
+
+        final long rejecting = getExecutions(0);
+        final long unrelated = unrelatedMember.getExecutions();
+
+        final EntityManager em = emf.createEntityManager();
+        try {
+            em.getTransaction().begin();
+            final int count = em.createNativeQuery(
+                    "INSERT INTO FedItem (id, name, version) VALUES (" + id + ", 'split', 1)").
+                    setHint(SlicePersistence.HINT_TARGET, FEDERATION + ".0").executeUpdate();
+            em.getTransaction().commit();
+
+            assertEquals(1, count);
+        } finally {
+            em.close();
+        }
+
+        // only the member split off the rejecting one is involved by the retry
+        assertEquals(rejecting + 1, getExecutions(0));
+        assertEquals(unrelated, unrelatedMember.getExecutions());
+        assertEquals(1, splitOff.getExecutions());
+
+        final EntityManager check = emf.createEntityManager();
+        try {
+            assertEquals("split", check.find(FedItem.class, id).getName());
+        } finally {
+            check.close();
+        }
+    }
+
+    public void testRetryWithinTransaction() {
+        persist(new FedItem(1, "one"));
+
+        final EntityManager em = emf.createEntityManager();
+        try {
+            em.getTransaction().begin();
+            em.persist(new FedItem(2, "two"));
+            em.flush();
+
+            // the statement is rolled back to its savepoint and executed again: earlier writes are kept
+            getMember(0).failNext(1, THROTTLED);
+            assertEquals(2, em.createQuery("UPDATE FedItem i SET i.name = 'updated' WHERE i.id < 3").executeUpdate());
+            em.getTransaction().commit();
+        } finally {
+            if (em.getTransaction().isActive()) {
+                em.getTransaction().rollback();
+            }
+            em.close();
+        }
+
+        final EntityManager check = emf.createEntityManager();
+        try {
+            assertEquals("updated", check.find(FedItem.class, 1L).getName());
+            assertEquals("updated", check.find(FedItem.class, 2L).getName());
+        } finally {
+            check.close();
+        }
+    }
+
+    public void testNoRetryWithinTransactionWithoutSavepoint() {
+        persist(new FedItem(1, "one"));
+        getBrokerFactory().getTransientFaultPolicy().setSavepoints(false);
+
+        final EntityManager em = emf.createEntityManager();
+        try {
+            em.getTransaction().begin();
+            em.persist(new FedItem(2, "two"));
+            em.flush();
+
+            final long executions = getExecutions(0);
+
+            // the transaction could have been aborted by the fault: the statement is not executed blindly again
+            getMember(0).failNext(1, THROTTLED);
+            try {
+                em.createQuery("UPDATE FedItem i SET i.name = 'updated' WHERE i.id < 3").executeUpdate();
+                fail("transient fault expected");
+            } catch (PersistenceException e) {
+                assertEquals(executions + 1, getExecutions(0));
+            }
+        } finally {
+            if (em.getTransaction().isActive()) {
+                em.getTransaction().rollback();
+            }
+            em.close();
+        }
+    }
+}
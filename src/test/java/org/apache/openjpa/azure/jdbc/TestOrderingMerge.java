@@ -0,0 +1,167 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.openjpa.azure.jdbc;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import junit.framework.TestCase;
+import org.apache.openjpa.kernel.OrderingMergedResultObjectProvider;
+import org.apache.openjpa.kernel.StoreQuery;
+import org.apache.openjpa.lib.rop.ListResultObjectProvider;
+import org.apache.openjpa.lib.rop.ResultObjectProvider;
+
+public class TestOrderingMerge extends TestCase {
+
+    /**
+     * Ascending on the first column, descending on the second one.
+     */
+    private static final boolean[] ASC = new boolean[] {true, false};
+
+    /**
+     * Executor reading ordering values from Object[] rows.
+     */
+    private static final StoreQuery.Executor EXEC = (StoreQuery.Executor) Proxy.newProxyInstance(
+            TestOrderingMerge.class.getClassLoader(), new Class<?>[] {StoreQuery.Executor.class},
+            new InvocationHandler() {
+
+                @Override
+                public Object invoke(final Object proxy, final Method method, final Object[] args) {
+                    if ("getOrderingValue".equals(method.getName())) {
+                        return ((Object[]) args[2])[(Integer) args[3]];
+                    }
+                    throw new UnsupportedOperationException(method.getName());
+                }
+            });
+
+    private static int compare(final Object x, final Object y, final boolean asc) {
+        @SuppressWarnings("unchecked")
+        final int result = x == null ? (y == null ? 0 : 1) : (y == null ? -1 : ((Comparable<Object>) x).compareTo(y));
+        return asc ? result : -result;
+    }
+
+    private static final Comparator<Object[]> ORDER = new Comparator<Object[]>() {
+
+        @Override
+        public int compare(final Object[] row1, final Object[] row2) {
+            for (int i = 0; i < ASC.length; i++) {
+                final int result = TestOrderingMerge.compare(row1[i], row2[i], ASC[i]);
+                if (result != 0) {
+                    return result;
+                }
+            }
+            return 0;
+        }
+    };
+
+    private List<List<Object[]>> partials(final int slices, final int rows, final long seed) {
+        final Random random = new Random(seed);
+        final List<List<Object[]>> partials = new ArrayList<List<Object[]>>();
+        for (int i = 0; i < slices; i++) {
+            final List<Object[]> partial = new ArrayList<Object[]>();
+            for (int j = random.nextInt(rows + 1); j > 0; j--) {
+                partial.add(new Object[] {
+                    random.nextInt(10) == 0 ? null : Long.valueOf(random.nextInt(20) - 10),
+                    random.nextInt(10) == 0 ? null : "v" + random.nextInt(5),
+                    i + ":" + j});
+            }
+            Collections.sort(partial, ORDER);
+            partials.add(partial);
+        }
+        return partials;
+    }
+
+    private static ResultObjectProvider[] rops(final List<List<Object[]>> partials) {
+        final ResultObjectProvider[] rops = new ResultObjectProvider[partials.size()];
+        for (int i = 0; i < rops.length; i++) {
+            rops[i] = new ListResultObjectProvider(partials.get(i));
+        }
+        return rops;
+    }
+
+    private static List<Object> read(final ResultObjectProvider rop)
+            throws Exception {
+        final List<Object> result = new ArrayList<Object>();
+        rop.open();
+        while (rop.next()) {
+            result.add(rop.getResultObject());
+        }
+        return result;
+    }
+
+    private void assertSameMerge(final List<List<Object[]>> partials)
+            throws Exception {
+        final StoreQuery.Executor[] execs = new StoreQuery.Executor[] {EXEC};
+
+        final List<Object> expected = read(
+                new OrderingMergedResultObjectProvider(rops(partials), ASC, execs, null, null));
+        final List<Object> actual = read(
+                new AzureOrderingMergedResultObjectProvider(rops(partials), ASC, execs, null, null));
+
+        assertEquals(expected, actual);
+    }
+
+    public void testMerge()
+            throws Exception {
+        for (int slices : new int[] {0, 1, 2, 3, 7, 50, 256}) {
+            for (long seed = 0; seed < 5; seed++) {
+                assertSameMerge(partials(slices, 20, seed));
+            }
+        }
+    }
+
+    public void testIntegralKeys()
+            throws Exception {
+        final List<Object[]> first = Arrays.asList(
+                new Object[] {Long.MIN_VALUE, "a"}, new Object[] {-1L, "a"}, new Object[] {Long.MAX_VALUE, "a"});
+        final List<Object[]> second = Arrays.asList(
+                new Object[] {Long.MIN_VALUE, "b"}, new Object[] {0L, "b"}, new Object[] {Long.MAX_VALUE, null});
+
+        final List<Object> merged = read(new AzureOrderingMergedResultObjectProvider(
+                rops(Arrays.asList(first, second)), ASC, new StoreQuery.Executor[] {EXEC, EXEC}, null, null));
+
+        assertEquals(6, merged.size());
+        assertSame(second.get(0), merged.get(0));
+        assertSame(first.get(0), merged.get(1));
+        assertSame(first.get(1), merged.get(2));
+        assertSame(second.get(1), merged.get(3));
+        // nulls come first when descending
+        assertSame(second.get(2), merged.get(4));
+        assertSame(first.get(2), merged.get(5));
+    }
+
+    public void testReset()
+            throws Exception {
+        final List<List<Object[]>> partials = partials(5, 10, 42L);
+        final ResultObjectProvider rop = new AzureOrderingMergedResultObjectProvider(
+                rops(partials), ASC, new StoreQuery.Executor[] {EXEC}, null, null);
+
+        final List<Object> first = read(rop);
+        rop.reset();
+        assertEquals(first, read(rop));
+        assertEquals(first.size(), rop.size());
+        rop.close();
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.openjpa.azure.jdbc;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceException;
+import org.apache.openjpa.azure.beans.FedItem;
+import org.apache.openjpa.azure.emulator.AbstractEmulatorTestCase;
+
+/**
+ * Partial results of queries failed onto some member are released.
+ */
+public class TestQueryFailure extends AbstractEmulatorTestCase {
+
+    private static final long LATENCY = 300;
+
+    @Override
+    public void setUp()
+            throws Exception {
+
+        super.setUp();
+
+        final EntityManager em = emf.createEntityManager();
+        try {
+            em.getTransaction().begin();
+            em.persist(new FedItem(1, "first"));
+            em.persist(new FedItem(SPAN + 1, "second"));
+            em.getTransaction().commit();
+        } finally {
+            em.close();
+        }
+    }
+
+    private void assertReleased(final String query, final boolean nativeQuery) {
+        final int open = getMember(1).getOpenConnections();
+
+        // the first member fails while the second one is still executing
+        getMember(0).failNext(1, 8152);
+        getMember(1).setLatency(LATENCY);
+
+        final EntityManager em = emf.createEntityManager();
+        try {
+            final long start = System.currentTimeMillis();
+            try {
+                if (nativeQuery) {
+                    em.createNativeQuery(query).getResultList();
+                } else {
+                    em.createQuery(query).getResultList();
+                }
+                fail("injected fault expected");
+            } catch (PersistenceException e) {
+                assertTrue(System.currentTimeMillis() - start >= LATENCY);
+            }
+
+            assertEquals(open, getMember(1).getOpenConnections());
+        } finally {
+            getMember(1).setLatency(0);
+            em.close();
+        }
+    }
+
+    public void testJPQL() {
+        assertReleased("SELECT i FROM FedItem i", false);
+    }
+
+    public void testNative() {
+        assertReleased("SELECT id, name FROM FedItem", true);
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.openjpa.azure.jdbc;
+
+import java.util.Collections;
+import junit.framework.TestCase;
+import org.apache.openjpa.azure.Federation;
+import org.apache.openjpa.azure.beans.PObject;
+
+public class TestQueryPlanCache extends TestCase {
+
+    private static final String JPQL = "javax.persistence.JPQL";
+
+    private static final String QUERY = "SELECT p FROM PObject p ORDER BY p.value";
+
+    private DistributedQueryPlan newPlan() {
+        final Federation fed = new Federation();
+        fed.setName("FED_1");
+
+        return new DistributedQueryPlan(false, Collections.singletonMap(fed, Boolean.TRUE),
+                DistributedQueryPlan.Merge.ORDERING, new boolean[] { true }, null);
+    }
+
+    public void testKey() {
+        assertEquals(new QueryPlanCache.Key(JPQL, QUERY, PObject.class, true),
+                new QueryPlanCache.Key(JPQL, QUERY, PObject.class, true));
+        assertEquals(new QueryPlanCache.Key(JPQL, QUERY, null, true).hashCode(),
+                new QueryPlanCache.Key(JPQL, QUERY, null, true).hashCode());
+
+        assertFalse(new QueryPlanCache.Key(JPQL, QUERY, PObject.class, true).equals(
+                new QueryPlanCache.Key(JPQL, QUERY, PObject.class, false)));
+        assertFalse(new QueryPlanCache.Key(JPQL, QUERY, PObject.class, true).equals(
+                new QueryPlanCache.Key("openjpa.SQL", QUERY, PObject.class, true)));
+        assertFalse(new QueryPlanCache.Key(JPQL, QUERY, PObject.class, true).equals(
+                new QueryPlanCache.Key(JPQL, QUERY, null, true)));
+    }
+
+    public void testGetPut() {
+        final QueryPlanCache cache = new QueryPlanCache(2);
+        final DistributedQueryPlan plan = newPlan();
+
+        cache.put(new QueryPlanCache.Key(JPQL, QUERY, PObject.class, true), plan);
+        assertSame(plan, cache.get(new QueryPlanCache.Key(JPQL, QUERY, PObject.class, true)));
+        assertNull(cache.get(null));
+
+        final Federation fed = new Federation();
+        fed.setName("FED_1");
+        assertTrue(plan.isLocallyReplicated(fed));
+        fed.setName("FED_2");
+        assertFalse(plan.isLocallyReplicated(fed));
+
+        cache.put(new QueryPlanCache.Key(JPQL, QUERY + " DESC", PObject.class, true), plan);
+        cache.put(new QueryPlanCache.Key(JPQL, QUERY + " ASC", PObject.class, true), plan);
+        assertEquals(2, cache.size());
+    }
+
+    public void testDisabled() {
+        assertFalse(QueryPlanCache.DISABLED.isEnabled());
+
+        QueryPlanCache.DISABLED.put(new QueryPlanCache.Key(JPQL, QUERY, PObject.class, true), newPlan());
+        assertNull(QueryPlanCache.DISABLED.get(new QueryPlanCache.Key(JPQL, QUERY, PObject.class, true)));
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.openjpa.azure.jdbc;
+
+import java.util.Arrays;
+import java.util.List;
+import junit.framework.TestCase;
+import org.apache.openjpa.azure.metrics.SliceMetrics;
+import org.apache.openjpa.azure.trace.InMemoryTracer;
+import org.apache.openjpa.azure.trace.NoopTracer;
+import org.apache.openjpa.azure.trace.Span;
+import org.apache.openjpa.azure.trace.TraceContext;
+import org.apache.openjpa.azure.trace.Tracer;
+import org.apache.openjpa.lib.rop.ListResultObjectProvider;
+import org.apache.openjpa.lib.rop.MergedResultObjectProvider;
+import org.apache.openjpa.lib.rop.ResultObjectProvider;
+
+public class TestQueryTracing extends TestCase {
+
+    private InMemoryTracer tracer;
+
+    @Override
+    public void setUp() {
+        tracer = new InMemoryTracer();
+    }
+
+    private ResultObjectProvider slice(final Span root, final String name, final List<?> rows)
+            throws Exception {
+
+        final Span span = root.child(Tracer.SLICE).tag("slice", name);
+
+        final Span execute = span.child(Tracer.EXECUTE);
+        TraceContext.set(execute);
+        try {
+            TraceContext.current().child(Tracer.CONNECT).end();
+            TraceContext.current().child(Tracer.USE_FEDERATION).end();
+
+            final ResultObjectProvider rop = new ListResultObjectProvider(rows);
+            rop.open();
+            return new OpenedResultObjectProvider(rop, new SliceMetrics(name), span);
+        } finally {
+            execute.end();
+            TraceContext.clear();
+        }
+    }
+
+    public void testSpans()
+            throws Exception {
+        final Span root = tracer.startSpan(Tracer.QUERY);
+
+        final ResultObjectProvider result = new TracedResultObjectProvider(new MergedResultObjectProvider(
+                new ResultObjectProvider[]{
+                    slice(root, "FED_1.0", Arrays.asList(1, 2)),
+                    slice(root, "FED_1.1", Arrays.asList(3))}),
+                root);
+
+        result.open();
+        int count = 0;
+        while (result.next()) {
+            count++;
+        }
+        assertEquals(3, count);
+        assertTrue(tracer.getSpans(Tracer.QUERY).isEmpty());
+
+        result.close();
+
+        final List<InMemoryTracer.RecordedSpan> roots = tracer.getSpans(Tracer.QUERY);
+        assertEquals(1, roots.size());
+
+        final List<InMemoryTracer.RecordedSpan> children = tracer.getChildren(roots.get(0));
+        assertEquals(3, children.size());
+        assertEquals(2, tracer.getSpans(Tracer.SLICE).size());
+        assertEquals(1, tracer.getSpans(Tracer.MERGE).size());
+        assertSame(roots.get(0), tracer.getSpans(Tracer.MERGE).get(0).getParent());
+
+        for (InMemoryTracer.RecordedSpan slice : tracer.getSpans(Tracer.SLICE)) {
+            assertTrue(slice.isEnded());
+
+            final List<InMemoryTracer.RecordedSpan> phases = tracer.getChildren(slice);
+            assertEquals(2, phases.size());
+            assertEquals(Tracer.EXECUTE, phases.get(0).getName());
+            assertEquals(Tracer.FETCH, phases.get(1).getName());
+            assertEquals("FED_1.0".equals(slice.getTags().get("slice")) ? 2L : 1L,
+                    phases.get(1).getTags().get("rows"));
+
+            final List<InMemoryTracer.RecordedSpan> connection = tracer.getChildren(phases.get(0));
+            assertEquals(2, connection.size());
+            assertEquals(Tracer.CONNECT, connection.get(0).getName());
+            assertEquals(Tracer.USE_FEDERATION, connection.get(1).getName());
+        }
+    }
+
+    public void testNoop() {
+        final Span span = new NoopTracer().startSpan(Tracer.QUERY);
+        assertFalse(span.isRecording());
+        assertSame(span, span.child(Tracer.SLICE).tag("slice", "FED_1.0"));
+
+        TraceContext.set(span);
+        assertSame(Span.NOOP, TraceContext.current());
+    }
+}
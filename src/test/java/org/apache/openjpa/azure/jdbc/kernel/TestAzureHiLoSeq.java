@@ -0,0 +1,108 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.openjpa.azure.jdbc.kernel;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import junit.framework.TestCase;
+import org.apache.openjpa.jdbc.kernel.JDBCStore;
+import org.apache.openjpa.jdbc.meta.ClassMapping;
+
+public class TestAzureHiLoSeq extends TestCase {
+
+    /**
+     * Hi values taken from an in-memory counter instead of the sequence table.
+     */
+    private static class CountingSeq extends AzureHiLoSeq {
+
+        private final AtomicInteger hits = new AtomicInteger();
+
+        private final long firstHi;
+
+        CountingSeq(final long firstHi) {
+            this.firstHi = firstHi;
+        }
+
+        @Override
+        protected long nextHi(final JDBCStore store, final ClassMapping mapping) {
+            return firstHi + hits.getAndIncrement();
+        }
+
+        long next()
+                throws Exception {
+            return (Long) nextInternal(null, null);
+        }
+    }
+
+    public void testBlocks()
+            throws Exception {
+        final CountingSeq seq = new CountingSeq(51);
+        seq.setBlockSize(100);
+
+        assertEquals(5100L, seq.next());
+        for (int i = 1; i < 100; i++) {
+            assertEquals(5100L + i, seq.next());
+        }
+        assertEquals(1, seq.hits.get());
+
+        assertEquals(5200L, seq.next());
+        assertEquals(2, seq.hits.get());
+    }
+
+    public void testConcurrentAllocation()
+            throws Exception {
+        final CountingSeq seq = new CountingSeq(1);
+        seq.setBlockSize(1000);
+
+        final int threads = 8;
+        final int perThread = 5000;
+        final Set<Long> values = Collections.newSetFromMap(new ConcurrentHashMap<Long, Boolean>());
+        final CountDownLatch done = new CountDownLatch(threads);
+        final AtomicInteger failures = new AtomicInteger();
+
+        for (int t = 0; t < threads; t++) {
+            new Thread(new Runnable() {
+
+                @Override
+                public void run() {
+                    try {
+                        for (int i = 0; i < perThread; i++) {
+                            if (!values.add(seq.next())) {
+                                failures.incrementAndGet();
+                            }
+                        }
+                    } catch (Exception e) {
+                        failures.incrementAndGet();
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            }).start();
+        }
+        done.await();
+
+        assertEquals(0, failures.get());
+        assertEquals(threads * perThread, values.size());
+        // one database hit per block
+        assertEquals(threads * perThread / 1000, seq.hits.get());
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.openjpa.azure.jdbc.kernel;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import junit.framework.TestCase;
+import org.apache.openjpa.azure.metrics.MetricsRegistry;
+import org.apache.openjpa.jdbc.kernel.JDBCStore;
+import org.apache.openjpa.jdbc.meta.ClassMapping;
+
+public class TestAzureRangeSeq extends TestCase {
+
+    private static final List<String> MEMBERS = Arrays.asList("FED_1.0", "FED_1.1", "FED_1.2");
+
+    /**
+     * Hi values taken from an in-memory counter instead of the sequence table.
+     */
+    private static class CountingSeq extends AzureRangeSeq {
+
+        private final AtomicInteger hits = new AtomicInteger();
+
+        @Override
+        protected long nextHi(final JDBCStore store, final ClassMapping mapping) {
+            return hits.getAndIncrement();
+        }
+    }
+
+    public void testRoundRobin() {
+        final AzureRangeSeq seq = new AzureRangeSeq();
+        assertEquals("round-robin", seq.getStrategy());
+
+        assertEquals(0, seq.choose(MEMBERS, null, null));
+        assertEquals(1, seq.choose(MEMBERS, null, null));
+        assertEquals(2, seq.choose(MEMBERS, null, null));
+        assertEquals(0, seq.choose(MEMBERS, null, null));
+
+        // hint wins, unknown slices are ignored
+        assertEquals(2, seq.choose(MEMBERS, "FED_1.2", null));
+        assertEquals(1, seq.choose(MEMBERS, new String[]{"FED_2.0", "FED_1.1"}, null));
+    }
+
+    public void testLeastLoaded() {
+        final AzureRangeSeq seq = new AzureRangeSeq();
+        seq.setStrategy("least-loaded");
+        assertEquals("least-loaded", seq.getStrategy());
+
+        final MetricsRegistry registry = new MetricsRegistry(true, false, "test", 0, null);
+        registry.getSliceMetrics("FED_1.0").begin();
+        registry.getSliceMetrics("FED_1.0").begin();
+        registry.getSliceMetrics("FED_1.2").begin();
+
+        assertEquals(1, seq.choose(MEMBERS, null, registry));
+        assertEquals(1, seq.choose(MEMBERS, null, registry));
+
+        registry.getSliceMetrics("FED_1.1").begin();
+        registry.getSliceMetrics("FED_1.1").begin();
+        assertEquals(2, seq.choose(MEMBERS, null, registry));
+    }
+
+    public void testMemberRanges()
+            throws Exception {
+        final CountingSeq seq = new CountingSeq();
+        seq.setBlockSize(10);
+
+        // first block of member [1000, 1025)
+        for (int i = 0; i < 10; i++) {
+            assertEquals(1000L + i, seq.nextInMember(null, null, "FED_1.1000", 1000, 1025));
+        }
+        // first block of member [0, 1000)
+        assertEquals(10L, seq.nextInMember(null, null, "FED_1.0", 0, 1000));
+
+        // third block of member [1000, 1025) is truncated at its upper bound
+        for (int i = 0; i < 5; i++) {
+            assertEquals(1020L + i, seq.nextInMember(null, null, "FED_1.1000", 1000, 1025));
+        }
+        assertEquals(-1L, seq.nextInMember(null, null, "FED_1.1000", 1000, 1025));
+        assertEquals(4, seq.hits.get());
+
+        // other members are not affected
+        assertEquals(11L, seq.nextInMember(null, null, "FED_1.0", 0, 1000));
+    }
+
+    public void testExhausted()
+            throws Exception {
+        final CountingSeq seq = new CountingSeq();
+        seq.setBlockSize(4);
+
+        for (int i = 0; i < 6; i++) {
+            assertEquals(100L + i, seq.nextInMember(null, null, "FED_1.100", 100, 106));
+        }
+        assertEquals(-1L, seq.nextInMember(null, null, "FED_1.100", 100, 106));
+
+        // no more hi values are wasted on an exhausted member
+        assertEquals(-1L, seq.nextInMember(null, null, "FED_1.100", 100, 106));
+        assertEquals(3, seq.hits.get());
+    }
+}
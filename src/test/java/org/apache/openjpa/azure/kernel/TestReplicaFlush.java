@@ -0,0 +1,75 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.openjpa.azure.kernel;
+
+import javax.persistence.EntityManager;
+import org.apache.openjpa.azure.beans.FedRef;
+import org.apache.openjpa.azure.emulator.AbstractEmulatorTestCase;
+import org.apache.openjpa.kernel.OpenJPAStateManager;
+
+/**
+ * Replicated instances are flushed onto every member in parallel: each member must end up with the same version,
+ * and so must the state manager once the flush is over.
+ */
+public class TestReplicaFlush extends AbstractEmulatorTestCase {
+
+    private static final long ID = 7L;
+
+    public void testVersions()
+            throws Exception {
+
+        final EntityManager em = emf.createEntityManager();
+        try {
+            em.getTransaction().begin();
+            final FedRef ref = new FedRef(ID, "created");
+            em.persist(ref);
+            em.getTransaction().commit();
+
+            assertVersions(em, ref, 1);
+
+            em.getTransaction().begin();
+            ref.setName("updated");
+            em.getTransaction().commit();
+
+            assertVersions(em, ref, 2);
+
+            for (int i = 0; i < getMembers(); i++) {
+                assertEquals("updated", query(i * SPAN, "SELECT name FROM FedRef WHERE id = " + ID));
+            }
+        } finally {
+            em.close();
+        }
+    }
+
+    private void assertVersions(final EntityManager em, final FedRef ref, final int expected)
+            throws Exception {
+
+        assertEquals(expected, ref.getVersion());
+
+        final OpenJPAStateManager sm = getBroker(em).getStateManager(ref);
+        assertTrue(sm instanceof AzureStateManager);
+        assertEquals(expected, ((Number) sm.getVersion()).intValue());
+
+        for (int i = 0; i < getMembers(); i++) {
+            final Object version = query(i * SPAN, "SELECT version FROM FedRef WHERE id = " + ID);
+            assertNotNull("member " + i, version);
+            assertEquals("member " + i, expected, ((Number) version).intValue());
+        }
+    }
+}
@@ -0,0 +1,150 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.openjpa.azure.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.concurrent.Callable;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import junit.framework.TestCase;
+import org.apache.openjpa.azure.retry.TransientFaultPolicy;
+
+public class TestSliceMetrics extends TestCase {
+
+    private static final String SLICE = "FED_1.0";
+
+    public void testHistogramPercentiles() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 10000; i++) {
+            histogram.record(i);
+        }
+
+        assertEquals(10000, histogram.getCount());
+        assertEquals(10000, histogram.getMax());
+        assertEquals(5000.5, histogram.getMean(), 0.001);
+
+        // relative error is below 1/16
+        assertEquals(5000, histogram.getValueAtPercentile(50), 5000 / 16);
+        assertEquals(9900, histogram.getValueAtPercentile(99), 9900 / 16);
+        assertEquals(10000, histogram.getValueAtPercentile(100));
+
+        final LatencyHistogram snapshot = histogram.snapshot();
+        histogram.record(1000000);
+        assertEquals(10000, snapshot.getCount());
+        assertEquals(10000, snapshot.getMax());
+    }
+
+    public void testHistogramBuckets() {
+        for (long value : new long[]{0, 1, 15, 16, 17, 31, 32, 33, 1000, 123456789L, Long.MAX_VALUE}) {
+            final int index = LatencyHistogram.indexOf(value);
+            assertTrue(LatencyHistogram.highestValueAt(index) >= value);
+            assertTrue(index == 0 || LatencyHistogram.highestValueAt(index - 1) < value);
+        }
+    }
+
+    public void testInFlightAndErrors() {
+        final SliceMetrics metrics = new SliceMetrics(SLICE);
+
+        final long first = metrics.begin();
+        final long second = metrics.begin();
+        assertEquals(2, metrics.getInFlight());
+
+        metrics.end(SliceMetrics.Operation.QUERY, first);
+        metrics.end(SliceMetrics.Operation.FLUSH, second);
+        assertEquals(0, metrics.getInFlight());
+        assertEquals(1, metrics.getLatency(SliceMetrics.Operation.QUERY).getCount());
+        assertEquals(1, metrics.getLatency(SliceMetrics.Operation.FLUSH).getCount());
+        assertEquals(0, metrics.getLatency(SliceMetrics.Operation.FIND).getCount());
+
+        metrics.error(new SQLException("busy", "S0001", 40501));
+        metrics.error(new RuntimeException(new SQLException("busy", "S0001", 40501)));
+        metrics.error(new SQLException("wrong member", "S0001", 45022));
+        assertEquals(3, metrics.getErrorCount());
+        assertEquals(Long.valueOf(2), metrics.getErrors().get(40501));
+        assertEquals(Long.valueOf(1), metrics.getErrors().get(45022));
+
+        metrics.rows(10);
+        metrics.rows(5);
+        assertEquals(15, metrics.getRows());
+    }
+
+    public void testDisabled() {
+        final MetricsRegistry registry = new MetricsRegistry(false, true, "test", 0, null);
+
+        final SliceMetrics metrics = registry.getSliceMetrics(SLICE);
+        assertFalse(metrics.isEnabled());
+
+        metrics.end(SliceMetrics.Operation.QUERY, metrics.begin());
+        metrics.rows(10);
+        assertEquals(0, metrics.getLatency(SliceMetrics.Operation.QUERY).getCount());
+        assertEquals(0, metrics.getRows());
+        assertTrue(registry.getSliceMetrics().isEmpty());
+    }
+
+    public void testRetriesCounted()
+            throws Exception {
+        final MetricsRegistry registry = new MetricsRegistry(true, false, "test", 0, null);
+
+        final TransientFaultPolicy policy =
+                new TransientFaultPolicy(new HashSet<Integer>(Arrays.asList(40501)), 3, 0, 0, 0, 0);
+        policy.setMetricsRegistry(registry);
+
+        final int[] calls = new int[1];
+        policy.execute(SLICE, new Callable<Object>() {
+
+            @Override
+            public Object call()
+                    throws Exception {
+                if (calls[0]++ < 2) {
+                    throw new SQLException("busy", "S0001", 40501);
+                }
+                return null;
+            }
+        });
+
+        final SliceMetrics metrics = registry.getSliceMetrics(SLICE);
+        assertEquals(2, metrics.getRetries());
+        assertEquals(Long.valueOf(2), metrics.getErrors().get(40501));
+    }
+
+    public void testJMX()
+            throws Exception {
+        final MetricsRegistry registry = new MetricsRegistry(true, true, "test", 0, null);
+
+        final SliceMetrics metrics = registry.getSliceMetrics(SLICE);
+        metrics.end(SliceMetrics.Operation.CONNECT, metrics.begin());
+        metrics.rows(3);
+
+        final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        final ObjectName name = registry.getObjectName(SLICE);
+        try {
+            assertTrue(server.isRegistered(name));
+            assertEquals(SLICE, server.getAttribute(name, "SliceName"));
+            assertEquals(3L, server.getAttribute(name, "Rows"));
+            assertEquals(1L, server.getAttribute(name, "ConnectCount"));
+            assertEquals(0L, server.getAttribute(name, "QueryP99"));
+        } finally {
+            registry.stop();
+        }
+        assertFalse(server.isRegistered(name));
+    }
+}
@@ -0,0 +1,171 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.openjpa.azure.retry;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.Driver;
+import java.sql.DriverPropertyInfo;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.Statement;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+/**
+ * JDBC driver stand-in failing the next connections / statement executions with the given SQL error code.
+ */
+public class FaultInjectingDriver implements Driver {
+
+    public static final String URL_PREFIX = "jdbc:faulty:";
+
+    private final AtomicInteger faults = new AtomicInteger();
+
+    private final AtomicInteger attempts = new AtomicInteger();
+
+    private volatile int errorCode;
+
+    private volatile boolean statementsOnly;
+
+    /**
+     * Fail the next <code>count</code> connections or statement executions.
+     *
+     * @param count number of faults to be injected.
+     * @param errorCode SQL error code.
+     */
+    public void failNext(final int count, final int errorCode) {
+        this.errorCode = errorCode;
+        this.statementsOnly = false;
+        faults.set(count);
+    }
+
+    /**
+     * Fail the next <code>count</code> statement executions, while connections succeed.
+     *
+     * @param count number of faults to be injected.
+     * @param errorCode SQL error code.
+     */
+    public void failNextStatements(final int count, final int errorCode) {
+        failNext(count, errorCode);
+        this.statementsOnly = true;
+    }
+
+    /**
+     * Number of connections and statement executions attempted so far.
+     */
+    public int getAttempts() {
+        return attempts.get();
+    }
+
+    private void maybeFail(final boolean statement)
+            throws SQLException {
+
+        attempts.incrementAndGet();
+        if ((statement || !statementsOnly) && faults.getAndDecrement() > 0) {
+            throw new SQLException("Injected fault " + errorCode, "S0001", errorCode);
+        }
+    }
+
+    @Override
+    public Connection connect(final String url, final Properties info)
+            throws SQLException {
+
+        if (!acceptsURL(url)) {
+            return null;
+        }
+
+        maybeFail(false);
+
+        return (Connection) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{Connection.class},
+                new InvocationHandler() {
+
+                    @Override
+                    public Object invoke(final Object proxy, final Method method, final Object[] args)
+                            throws Throwable {
+
+                        if ("createStatement".equals(method.getName())) {
+                            return newStatement();
+                        }
+                        return defaultValue(method.getReturnType());
+                    }
+                });
+    }
+
+    private Statement newStatement() {
+        return (Statement) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{Statement.class},
+                new InvocationHandler() {
+
+                    @Override
+                    public Object invoke(final Object proxy, final Method method, final Object[] args)
+                            throws Throwable {
+
+                        if (method.getName().startsWith("execute")) {
+                            maybeFail(true);
+                        }
+                        return defaultValue(method.getReturnType());
+                    }
+                });
+    }
+
+    private static Object defaultValue(final Class<?> type) {
+        if (type == boolean.class) {
+            return Boolean.FALSE;
+        }
+        if (type == int.class) {
+            return 0;
+        }
+        if (type == long.class) {
+            return 0L;
+        }
+        return null;
+    }
+
+    @Override
+    public boolean acceptsURL(final String url) {
+        return url != null && url.startsWith(URL_PREFIX);
+    }
+
+    @Override
+    public DriverPropertyInfo[] getPropertyInfo(final String url, final Properties info) {
+        return new DriverPropertyInfo[0];
+    }
+
+    @Override
+    public int getMajorVersion() {
+        return 1;
+    }
+
+    @Override
+    public int getMinorVersion() {
+        return 0;
+    }
+
+    @Override
+    public boolean jdbcCompliant() {
+        return false;
+    }
+
+    public Logger getParentLogger()
+            throws SQLFeatureNotSupportedException {
+        throw new SQLFeatureNotSupportedException();
+    }
+}
@@ -0,0 +1,206 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.openjpa.azure.retry;
+
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Map;
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceException;
+import org.apache.openjpa.azure.beans.FedItem;
+import org.apache.openjpa.azure.emulator.AbstractEmulatorTestCase;
+import org.apache.openjpa.azure.metrics.SliceMetrics;
+import org.apache.openjpa.slice.SlicePersistence;
+
+/**
+ * Circuit breakers of slices serving queries through connections opened on demand: connecting is just a step of each
+ * query, only query outcomes move the circuit.
+ */
+public class TestCircuitBreaker extends AbstractEmulatorTestCase {
+
+    private static final int THROTTLED = 40501;
+
+    private static final int DUPLICATE = 2627;
+
+    private static final long TIMEOUT = 200L;
+
+    private static final String SLICE = FEDERATION + ".0";
+
+    @Override
+    protected Map<String, String> getProperties() {
+        final Map<String, String> props = super.getProperties();
+        props.put("openjpa.azure.TransientRetries", "0");
+        props.put("openjpa.azure.CircuitBreakerThreshold", "2");
+        props.put("openjpa.azure.CircuitBreakerTimeout", String.valueOf(TIMEOUT));
+        return props;
+    }
+
+    @Override
+    public void setUp()
+            throws Exception {
+        super.setUp();
+
+        final EntityManager em = emf.createEntityManager();
+        try {
+            em.getTransaction().begin();
+            em.persist(new FedItem(1L, "item"));
+            em.getTransaction().commit();
+        } finally {
+            em.close();
+        }
+    }
+
+    private CircuitBreaker.State getState() {
+        return getBrokerFactory().getTransientFaultPolicy().getCircuitBreaker(SLICE).getState();
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<FedItem> select() {
+        final EntityManager em = emf.createEntityManager();
+        try {
+            return em.createQuery("SELECT e FROM FedItem e").
+                    setHint(SlicePersistence.HINT_TARGET, SLICE).getResultList();
+        } finally {
+            em.close();
+        }
+    }
+
+    private void selectFailing() {
+        try {
+            select();
+            fail("query failure expected");
+        } catch (PersistenceException e) {
+            // expected
+        }
+    }
+
+    public void testThrottledQueriesOpenCircuit()
+            throws Exception {
+
+        getMember(0).failNext(2, THROTTLED);
+        selectFailing();
+        assertEquals(CircuitBreaker.State.CLOSED, getState());
+        selectFailing();
+        assertEquals(CircuitBreaker.State.OPEN, getState());
+
+        // failed fast
+        final long executions = getExecutions(0);
+        selectFailing();
+        assertEquals(executions, getExecutions(0));
+
+        // the probe connects, then its statement is throttled: open again
+        Thread.sleep(TIMEOUT + 50);
+        getMember(0).failNext(1, THROTTLED);
+        selectFailing();
+        assertEquals(CircuitBreaker.State.OPEN, getState());
+
+        Thread.sleep(TIMEOUT + 50);
+        assertEquals(1, select().size());
+        assertEquals(CircuitBreaker.State.CLOSED, getState());
+    }
+
+    private void persist(final long id) {
+        final EntityManager em = emf.createEntityManager();
+        try {
+            em.getTransaction().begin();
+            em.persist(new FedItem(id, "item " + id));
+            em.getTransaction().commit();
+        } finally {
+            if (em.getTransaction().isActive()) {
+                em.getTransaction().rollback();
+            }
+            em.close();
+        }
+    }
+
+    public void testFailedFlushReleasesProbe()
+            throws Exception {
+
+        getMember(0).failNext(2, THROTTLED);
+        selectFailing();
+        selectFailing();
+        assertEquals(CircuitBreaker.State.OPEN, getState());
+
+        Thread.sleep(TIMEOUT + 50);
+
+        // the probing flush is rejected for non-transient reasons
+        try {
+            persist(1L);
+            fail("duplicate key expected");
+        } catch (PersistenceException e) {
+            // expected
+        }
+        assertEquals(CircuitBreaker.State.HALF_OPEN, getState());
+
+        // other threads can probe
+        final boolean[] allowed = new boolean[1];
+        final Thread other = new Thread(new Runnable() {
+
+            @Override
+            public void run() {
+                final CircuitBreaker breaker = getBrokerFactory().getTransientFaultPolicy().getCircuitBreaker(SLICE);
+                allowed[0] = breaker.allowRequest();
+                breaker.release();
+            }
+        });
+        other.start();
+        other.join();
+        assertTrue(allowed[0]);
+
+        persist(2L);
+        assertEquals(CircuitBreaker.State.CLOSED, getState());
+    }
+
+    public void testReroutedFlushProbesTarget()
+            throws Exception {
+
+        // the new member is not known yet: its rows are sent to the member being split
+        emulator.split(FEDERATION, String.valueOf(2 * SPAN));
+
+        final TransientFaultPolicy policy = getBrokerFactory().getTransientFaultPolicy();
+        final String target = FEDERATION + ".2";
+        for (int i = 0; i < 2; i++) {
+            policy.record(target, new SQLException("busy", "S0001", THROTTLED));
+        }
+        assertEquals(CircuitBreaker.State.OPEN, policy.getCircuitBreaker(target).getState());
+
+        Thread.sleep(TIMEOUT + 50);
+
+        // rejected by the member being split, then flushed again onto the new member as its probe
+        persist(2 * SPAN + 1);
+        assertTrue(getExecutions(2) > 0);
+        assertEquals(CircuitBreaker.State.CLOSED, policy.getCircuitBreaker(target).getState());
+        assertEquals(1, getBrokerFactory().getMetricsRegistry().getSliceMetrics(target).
+                getLatency(SliceMetrics.Operation.FLUSH).getCount());
+    }
+
+    public void testNonTransientErrorsAreNeutral() {
+        getMember(0).failNext(1, THROTTLED);
+        selectFailing();
+
+        getMember(0).failNext(1, DUPLICATE);
+        selectFailing();
+        assertEquals(CircuitBreaker.State.CLOSED, getState());
+
+        // consecutive transient failures are still counted
+        getMember(0).failNext(1, THROTTLED);
+        selectFailing();
+        assertEquals(CircuitBreaker.State.OPEN, getState());
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.openjpa.azure.retry;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceException;
+import org.apache.openjpa.azure.beans.FedItem;
+import org.apache.openjpa.azure.emulator.AbstractEmulatorTestCase;
+
+public class TestFlushRetry extends AbstractEmulatorTestCase {
+
+    private static final int THROTTLED = 40501;
+
+    private void persist(final FedItem item) {
+        final EntityManager em = emf.createEntityManager();
+        try {
+            em.getTransaction().begin();
+            em.persist(item);
+            em.getTransaction().commit();
+        } finally {
+            if (em.getTransaction().isActive()) {
+                em.getTransaction().rollback();
+            }
+            em.close();
+        }
+    }
+
+    private void assertNames(final String... names) {
+        final EntityManager em = emf.createEntityManager();
+        try {
+            assertNull(em.find(FedItem.class, 1L));
+            assertEquals(names[0], em.find(FedItem.class, 2L).getName());
+            assertEquals(names[1], em.find(FedItem.class, SPAN + 1).getName());
+        } finally {
+            em.close();
+        }
+    }
+
+    public void testRetryFirstFault() {
+        final TransientFaultPolicy policy = getBrokerFactory().getTransientFaultPolicy();
+
+        // every flush goes under a savepoint by default: even the first fault is retried
+        assertTrue(policy.isSavepointNeeded(FEDERATION + ".0"));
+        assertTrue(policy.isSavepointNeeded(FEDERATION + ".1"));
+
+        getMember(0).failNext(1, THROTTLED);
+        persist(new FedItem(2, "first"));
+
+        getMember(1).failNext(1, THROTTLED);
+        persist(new FedItem(SPAN + 1, "second"));
+
+        assertNames("first", "second");
+    }
+
+    public void testRetryAfterFirstFault() {
+        final TransientFaultPolicy policy = getBrokerFactory().getTransientFaultPolicy();
+        policy.setSavepoints(false);
+        assertFalse(policy.isSavepointNeeded(FEDERATION + ".0"));
+
+        // no savepoint onto a slice never faulted: the first fault is surfaced
+        getMember(0).failNext(1, THROTTLED);
+        try {
+            persist(new FedItem(1, "first"));
+            fail("transient fault expected");
+        } catch (PersistenceException e) {
+            assertTrue(policy.isSavepointNeeded(FEDERATION + ".0"));
+        }
+
+        // the faulted slice flushes under a savepoint from now on
+        getMember(0).failNext(1, THROTTLED);
+        persist(new FedItem(2, "second"));
+
+        // other slices still go without
+        assertFalse(policy.isSavepointNeeded(FEDERATION + ".1"));
+        persist(new FedItem(SPAN + 1, "third"));
+
+        assertNames("second", "third");
+    }
+}
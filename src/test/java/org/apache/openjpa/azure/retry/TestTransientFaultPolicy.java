@@ -0,0 +1,317 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.openjpa.azure.retry;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import junit.framework.TestCase;
+
+public class TestTransientFaultPolicy extends TestCase {
+
+    private static final String SLICE = "FED_1.0";
+
+    private FaultInjectingDriver driver;
+
+    private Callable<Object> statement;
+
+    @Override
+    public void setUp() {
+        driver = new FaultInjectingDriver();
+
+        statement = new Callable<Object>() {
+
+            @Override
+            public Object call()
+                    throws Exception {
+                final Connection conn = driver.connect(FaultInjectingDriver.URL_PREFIX + "test", new Properties());
+                return conn.createStatement().executeUpdate("INSERT INTO T VALUES (1)");
+            }
+        };
+    }
+
+    private TransientFaultPolicy newPolicy(final int retries, final int threshold, final long timeout) {
+        return new TransientFaultPolicy(new HashSet<Integer>(Arrays.asList(40501, 40197, 49918)),
+                retries, 1, 4, threshold, timeout);
+    }
+
+    public void testRetryTransient()
+            throws Exception {
+        final TransientFaultPolicy policy = newPolicy(3, 0, 0);
+
+        driver.failNext(2, 40501);
+        policy.execute(SLICE, statement);
+
+        // two failed connections, then connection and statement
+        assertEquals(4, driver.getAttempts());
+    }
+
+    public void testNonTransientNotRetried() {
+        final TransientFaultPolicy policy = newPolicy(3, 0, 0);
+
+        driver.failNext(1, 2627);
+        try {
+            policy.execute(SLICE, statement);
+            fail();
+        } catch (Exception e) {
+            assertEquals(2627, ((SQLException) e).getErrorCode());
+        }
+        assertEquals(1, driver.getAttempts());
+    }
+
+    public void testNotRetriable() {
+        final TransientFaultPolicy policy = newPolicy(3, 0, 0);
+
+        driver.failNext(1, 40501);
+        try {
+            policy.execute(SLICE, statement, false);
+            fail();
+        } catch (Exception e) {
+            assertEquals(40501, ((SQLException) e).getErrorCode());
+        }
+        assertEquals(1, driver.getAttempts());
+    }
+
+    public void testRetriesExhausted() {
+        final TransientFaultPolicy policy = newPolicy(2, 0, 0);
+
+        driver.failNext(10, 49918);
+        try {
+            policy.execute(SLICE, statement);
+            fail();
+        } catch (Exception e) {
+            assertTrue(policy.isTransient(e));
+        }
+        assertEquals(3, driver.getAttempts());
+    }
+
+    public void testBackoff() {
+        final TransientFaultPolicy policy =
+                new TransientFaultPolicy(new HashSet<Integer>(), 10, 100, 1000, 0, 0);
+
+        for (int attempt = 0; attempt < 40; attempt++) {
+            final long delay = policy.getBackoff(attempt);
+            assertTrue(delay >= 0);
+            assertTrue(delay <= Math.min(1000, attempt >= 30 ? 1000 : 100L << attempt));
+        }
+    }
+
+    public void testCircuitBreakerOpens()
+            throws Exception {
+        final TransientFaultPolicy policy = newPolicy(0, 2, 60000);
+
+        driver.failNext(2, 40197);
+        for (int i = 0; i < 2; i++) {
+            try {
+                policy.execute(SLICE, statement);
+                fail();
+            } catch (SQLException e) {
+                assertEquals(40197, e.getErrorCode());
+            }
+        }
+
+        assertEquals(CircuitBreaker.State.OPEN, policy.getCircuitBreaker(SLICE).getState());
+
+        try {
+            policy.execute(SLICE, statement);
+            fail();
+        } catch (CircuitOpenException e) {
+            assertEquals(SLICE, e.getSliceName());
+        }
+        // failed fast
+        assertEquals(2, driver.getAttempts());
+
+        // other slices are not affected
+        policy.execute("FED_1.1", statement);
+    }
+
+    public void testCircuitBreakerRecovers()
+            throws Exception {
+        final TransientFaultPolicy policy = newPolicy(0, 1, 50);
+
+        driver.failNext(1, 40501);
+        try {
+            policy.execute(SLICE, statement);
+            fail();
+        } catch (SQLException e) {
+            assertEquals(CircuitBreaker.State.OPEN, policy.getCircuitBreaker(SLICE).getState());
+        }
+
+        Thread.sleep(80);
+
+        // probe succeeds and closes the circuit
+        policy.execute(SLICE, statement);
+        assertEquals(CircuitBreaker.State.CLOSED, policy.getCircuitBreaker(SLICE).getState());
+    }
+
+    public void testHalfOpenSingleProbe()
+            throws Exception {
+        final CircuitBreaker breaker = new CircuitBreaker(SLICE, 1, 0);
+        breaker.onFailure();
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+
+        assertTrue(breaker.allowRequest());
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+
+        final boolean[] allowed = new boolean[1];
+        final Thread other = new Thread(new Runnable() {
+
+            @Override
+            public void run() {
+                allowed[0] = breaker.allowRequest();
+            }
+        });
+        other.start();
+        other.join();
+        assertFalse(allowed[0]);
+
+        // probe fails: open again
+        breaker.onFailure();
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+    }
+
+    /**
+     * As connections opened on demand by the slice store manager: connecting is a step of the statement request.
+     */
+    private Callable<Object> newStatement(final TransientFaultPolicy policy) {
+        return new Callable<Object>() {
+
+            @Override
+            public Object call()
+                    throws Exception {
+                final Connection conn = policy.executeStep(SLICE, new Callable<Connection>() {
+
+                    @Override
+                    public Connection call()
+                            throws Exception {
+                        return driver.connect(FaultInjectingDriver.URL_PREFIX + "test", new Properties());
+                    }
+                });
+                return conn.createStatement().executeUpdate("INSERT INTO T VALUES (1)");
+            }
+        };
+    }
+
+    public void testConnectDoesNotCloseCircuit()
+            throws Exception {
+        final TransientFaultPolicy policy = newPolicy(0, 2, 50);
+        final Callable<Object> request = newStatement(policy);
+
+        driver.failNextStatements(3, 40501);
+        for (int i = 0; i < 2; i++) {
+            try {
+                policy.execute(SLICE, request);
+                fail();
+            } catch (SQLException e) {
+                assertEquals(40501, e.getErrorCode());
+            }
+        }
+        assertEquals(CircuitBreaker.State.OPEN, policy.getCircuitBreaker(SLICE).getState());
+
+        Thread.sleep(80);
+
+        // the probe connects, then its statement fails
+        try {
+            policy.execute(SLICE, request);
+            fail();
+        } catch (SQLException e) {
+            assertEquals(CircuitBreaker.State.OPEN, policy.getCircuitBreaker(SLICE).getState());
+        }
+
+        Thread.sleep(80);
+
+        policy.execute(SLICE, request);
+        assertEquals(CircuitBreaker.State.CLOSED, policy.getCircuitBreaker(SLICE).getState());
+    }
+
+    public void testConnectFailuresCountedOnce()
+            throws Exception {
+        final TransientFaultPolicy policy = newPolicy(0, 2, 60000);
+
+        driver.failNext(1, 40501);
+        try {
+            policy.execute(SLICE, newStatement(policy));
+            fail();
+        } catch (SQLException e) {
+            assertEquals(CircuitBreaker.State.CLOSED, policy.getCircuitBreaker(SLICE).getState());
+        }
+    }
+
+    public void testStandaloneConnectReleasesProbe()
+            throws Exception {
+        final TransientFaultPolicy policy = newPolicy(0, 1, 0);
+        policy.record(SLICE, new SQLException("busy", "S0001", 40501));
+        assertEquals(CircuitBreaker.State.OPEN, policy.getCircuitBreaker(SLICE).getState());
+
+        policy.executeStep(SLICE, statement);
+        // not closed by connecting, but open to the next probe
+        assertEquals(CircuitBreaker.State.HALF_OPEN, policy.getCircuitBreaker(SLICE).getState());
+
+        final boolean[] allowed = new boolean[1];
+        final Thread other = new Thread(new Runnable() {
+
+            @Override
+            public void run() {
+                allowed[0] = policy.getCircuitBreaker(SLICE).allowRequest();
+            }
+        });
+        other.start();
+        other.join();
+        assertTrue(allowed[0]);
+    }
+
+    public void testNonTransientNeutral() {
+        final TransientFaultPolicy policy = newPolicy(0, 2, 60000);
+
+        policy.record(SLICE, new SQLException("busy", "S0001", 40501));
+        policy.record(SLICE, new SQLException("duplicate", "23000", 2627));
+        assertEquals(CircuitBreaker.State.CLOSED, policy.getCircuitBreaker(SLICE).getState());
+
+        policy.record(SLICE, new SQLException("busy", "S0001", 40501));
+        assertEquals(CircuitBreaker.State.OPEN, policy.getCircuitBreaker(SLICE).getState());
+    }
+
+    public void testSavepointsOnFaultedSlices()
+            throws Exception {
+        final TransientFaultPolicy policy = newPolicy(3, 0, 60000);
+        assertFalse(policy.isSavepointNeeded(SLICE));
+
+        // non transient errors do not make flushes retriable
+        policy.record(SLICE, new SQLException("duplicate", "23000", 2627));
+        assertFalse(policy.isSavepointNeeded(SLICE));
+
+        policy.record(SLICE, new SQLException("busy", "S0001", 40501));
+        assertTrue(policy.isSavepointNeeded(SLICE));
+        assertFalse(policy.isSavepointNeeded("FED_1.1"));
+
+        policy.faulted("FED_1.1");
+        assertTrue(policy.isSavepointNeeded("FED_1.1"));
+
+        // faults older than the circuit breaker timeout are forgotten
+        final TransientFaultPolicy expiring = newPolicy(3, 0, 0);
+        expiring.faulted(SLICE);
+        assertFalse(expiring.isSavepointNeeded(SLICE));
+
+        expiring.setSavepoints(true);
+        assertTrue(expiring.isSavepointNeeded(SLICE));
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.openjpa.azure.routing;
+
+import java.sql.ResultSet;
+import java.util.BitSet;
+import junit.framework.TestCase;
+import org.apache.openjpa.azure.kernel.AzureFetchConfiguration;
+import org.apache.openjpa.slice.SlicePersistence;
+
+public class TestRoutingContext extends TestCase {
+
+    public void testContext() {
+        final BitSet slices = new BitSet();
+        slices.set(1);
+        slices.set(3);
+
+        final String[] hint = new String[] {"FED_1.1", "FED_1.3"};
+        final RoutingContext routing = new RoutingContext(slices, 4, 2L, RoutingContext.Reason.HINT, hint);
+
+        // not affected by later changes
+        slices.set(0);
+        routing.getSlices().set(2);
+
+        assertEquals(2, routing.cardinality());
+        assertFalse(routing.get(0));
+        assertTrue(routing.get(1));
+        assertEquals(3, routing.nextSlice(2));
+        assertEquals(-1, routing.nextSlice(4));
+        assertFalse(routing.isAll());
+
+        assertTrue(routing.isCurrent(hint, 4, 2L));
+        assertFalse(routing.isCurrent(new String[] {"FED_1.1", "FED_1.3"}, 4, 2L));
+        assertFalse(routing.isCurrent(hint, 5, 2L));
+        assertFalse(routing.isCurrent(hint, 4, 3L));
+
+        final BitSet all = new BitSet();
+        all.set(0, 4);
+        assertTrue(new RoutingContext(all, 4, 2L, RoutingContext.Reason.ALL, null).isAll());
+    }
+
+    public void testFetchConfiguration() {
+        final AzureFetchConfiguration fetch = new AzureFetchConfiguration();
+        fetch.setResultSetType(ResultSet.TYPE_FORWARD_ONLY);
+        fetch.setFetchDirection(ResultSet.FETCH_FORWARD);
+        assertEquals(RoutingContext.Reason.ALL, fetch.getTargetReason());
+
+        fetch.setTargets(new String[] {"FED_1.0"});
+        assertEquals(RoutingContext.Reason.POLICY, fetch.getTargetReason());
+
+        final Object hint = fetch.getHint(SlicePersistence.HINT_TARGET);
+        final RoutingContext routing = new RoutingContext(new BitSet(), 1, 0L, RoutingContext.Reason.POLICY, hint);
+        fetch.setRoutingContext(routing);
+
+        // other hints keep the context
+        fetch.setHint("openjpa.hint.OptimizeResultCount", 10);
+        assertSame(routing, fetch.getRoutingContext());
+        assertEquals(RoutingContext.Reason.POLICY, fetch.getTargetReason());
+
+        // clones keep the context
+        final AzureFetchConfiguration clone = (AzureFetchConfiguration) fetch.clone();
+        assertSame(routing, clone.getRoutingContext());
+        assertEquals(RoutingContext.Reason.POLICY, clone.getTargetReason());
+
+        // explicit targets drop it
+        fetch.setHint(SlicePersistence.HINT_TARGET, "FED_1.1");
+        assertNull(fetch.getRoutingContext());
+        assertEquals(RoutingContext.Reason.HINT, fetch.getTargetReason());
+        assertSame(routing, clone.getRoutingContext());
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.openjpa.azure.routing;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import org.apache.openjpa.azure.emulator.AbstractEmulatorTestCase;
+import org.apache.openjpa.azure.emulator.FederationEmulator;
+
+public class TestRoutingRefresher extends AbstractEmulatorTestCase {
+
+    private static int countRefresherThreads() {
+        int count = 0;
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            if (thread.isAlive() && "openjpa-azure-routing-refresher".equals(thread.getName())) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    public void testRefreshOnError()
+            throws Exception {
+
+        final RoutingRefresher refresher = getBrokerFactory().getRoutingRefresher();
+        final FederationRegistry registry = refresher.getFederationRegistry();
+        final long version = registry.get().getVersion();
+
+        emulator.split(FEDERATION, String.valueOf(2 * SPAN));
+
+        assertFalse(refresher.refreshOnError(new SQLException("other", "S0001", 1205)));
+
+        // a burst of routing errors from several threads
+        final SQLException error = new SQLException("out of member", "S0001", FederationEmulator.ERR_OUT_OF_MEMBER);
+        final List<Thread> threads = new ArrayList<Thread>();
+        for (int i = 0; i < 8; i++) {
+            threads.add(new Thread() {
+
+                @Override
+                public void run() {
+                    for (int j = 0; j < 50; j++) {
+                        assertTrue(refresher.refreshOnError(error));
+                    }
+                }
+            });
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        // all refreshes run on the single refresher thread
+        assertTrue(countRefresherThreads() <= 1);
+
+        // slices of new members are added right after the routing table is updated
+        for (int i = 0; i < 100 && getBrokerFactory().getConfiguration().getSlice(FEDERATION + ".2") == null; i++) {
+            Thread.sleep(50);
+        }
+        assertEquals(version + 1, registry.get().getVersion());
+        assertEquals(2 * SPAN, registry.get().getLowerBound(FEDERATION + ".2"));
+        assertNotNull(getBrokerFactory().getConfiguration().getSlice(FEDERATION + ".2"));
+
+        // nothing changed since
+        assertEquals(version + 1, refresher.refresh().getVersion());
+    }
+}
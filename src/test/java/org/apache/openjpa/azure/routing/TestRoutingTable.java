@@ -0,0 +1,117 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.openjpa.azure.routing;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import junit.framework.TestCase;
+import org.apache.openjpa.azure.Federation;
+import org.apache.openjpa.azure.util.AzureUtils;
+
+public class TestRoutingTable extends TestCase {
+
+    private Federation fed1;
+
+    private Federation fed4;
+
+    private RoutingTable routing;
+
+    @Override
+    public void setUp() {
+        fed1 = new Federation();
+        fed1.setName("FED_1");
+
+        fed4 = new Federation();
+        fed4.setName("FED_4");
+
+        final Map<Federation, List<Object>> distributions = new HashMap<Federation, List<Object>>();
+        distributions.put(fed1, Arrays.<Object>asList(0L, 5L));
+        distributions.put(fed4, Arrays.<Object>asList(new byte[]{0}));
+
+        final Map<String, Federation> slices = new HashMap<String, Federation>();
+        slices.put("ROOT", null);
+        slices.put("FED_1.0", fed1);
+        slices.put("FED_1.1", fed1);
+        slices.put("FED_4", fed4);
+
+        routing = RoutingTable.newInstance(distributions, slices);
+    }
+
+    public void testInit() {
+        assertTrue(routing.isInitialized());
+        assertFalse(RoutingTable.EMPTY.isInitialized());
+
+        assertEquals(0L, routing.getLowerBound("FED_1.0"));
+        assertEquals(5L, routing.getLowerBound("FED_1.1"));
+        assertNull(routing.getLowerBound("ROOT"));
+
+        assertTrue(routing.isMultiMember(fed1));
+        assertFalse(routing.isMultiMember(fed4));
+    }
+
+    public void testSplit() {
+        final RoutingTable split = routing.withMembers(fed1, Arrays.<Object>asList(0L, 5L, 10L));
+
+        assertEquals(routing.getVersion() + 1, split.getVersion());
+
+        // existing slices keep their own member
+        assertEquals(0L, split.getLowerBound("FED_1.0"));
+        assertEquals(5L, split.getLowerBound("FED_1.1"));
+        assertEquals(10L, split.getLowerBound("FED_1.2"));
+        assertEquals("FED_1.2", split.getSliceName(fed1, 10L));
+
+        // old snapshot is untouched
+        assertNull(routing.getLowerBound("FED_1.2"));
+        assertEquals(2, routing.getMembers(fed1).size());
+    }
+
+    public void testMiddleSplit() {
+        // split the first member: the new member gets the next slice index, although its bound is in the middle
+        final RoutingTable split = routing.withMembers(fed1, Arrays.<Object>asList(0L, 3L, 5L));
+        assertEquals(3L, split.getLowerBound("FED_1.2"));
+
+        final List<String> slices = Arrays.asList("ROOT", "FED_1.0", "FED_1.1", "FED_1.2");
+        assertEquals(Arrays.asList("FED_1.0"), AzureUtils.getTargetSlice(split, slices, fed1, 1L));
+        assertEquals(Arrays.asList("FED_1.2"), AzureUtils.getTargetSlice(split, slices, fed1, 3L));
+        assertEquals(Arrays.asList("FED_1.2"), AzureUtils.getTargetSlice(split, slices, fed1, 4L));
+        assertEquals(Arrays.asList("FED_1.1"), AzureUtils.getTargetSlice(split, slices, fed1, 12L));
+
+        // order of slice names does not matter
+        final List<String> reversed = Arrays.asList("FED_1.2", "FED_1.1", "FED_1.0", "ROOT");
+        assertEquals(Arrays.asList("FED_1.1"), AzureUtils.getTargetSlice(split, reversed, fed1, 12L));
+        assertEquals(Arrays.asList("FED_1.0"), AzureUtils.getTargetSlice(split, reversed, fed1, 2L));
+
+        // all members without id
+        assertEquals(3, AzureUtils.getTargetSlice(split, slices, fed1, null).size());
+    }
+
+    public void testUnchanged() {
+        assertSame(routing, routing.withMembers(fed4, Arrays.<Object>asList(new byte[]{0})));
+    }
+
+    public void testSplitSingleMember() {
+        final RoutingTable split = routing.withMembers(fed4, Arrays.<Object>asList(new byte[]{0}, new byte[]{8}));
+
+        assertNotNull(split.getLowerBound("FED_4"));
+        assertNotNull(split.getLowerBound("FED_4.1"));
+        assertTrue(split.isMultiMember(fed4));
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.openjpa.azure.routing;
+
+import java.util.Arrays;
+import junit.framework.TestCase;
+import org.apache.openjpa.azure.Federation;
+
+public class TestSliceLocationCache extends TestCase {
+
+    private Federation fed1;
+
+    private FederationRegistry registry;
+
+    private SliceLocationCache cache;
+
+    @Override
+    public void setUp() {
+        fed1 = new Federation();
+        fed1.setName("FED_1");
+
+        registry = new FederationRegistry();
+        registry.update(fed1, Arrays.<Object>asList(0L, 5L));
+
+        cache = new SliceLocationCache(registry, 2);
+    }
+
+    public void testGetPut() {
+        cache.put(1L, "FED_1.0", cache.getVersion());
+        cache.put(7L, "FED_1.1", cache.getVersion());
+
+        assertEquals("FED_1.0", cache.get(1L));
+        assertEquals("FED_1.1", cache.get(7L));
+        assertNull(cache.get(3L));
+        assertNull(cache.get(null));
+
+        cache.remove(1L);
+        assertNull(cache.get(1L));
+    }
+
+    public void testRoutingChange() {
+        final long version = cache.getVersion();
+        cache.put(7L, "FED_1.1", version);
+
+        // split at 10
+        registry.update(fed1, Arrays.<Object>asList(0L, 5L, 10L));
+        assertNull(cache.get(7L));
+        assertEquals(0, cache.size());
+
+        // computed with the former snapshot
+        cache.put(12L, "FED_1.1", version);
+        assertNull(cache.get(12L));
+
+        cache.put(12L, "FED_1.2", cache.getVersion());
+        assertEquals("FED_1.2", cache.get(12L));
+    }
+
+    public void testSize() {
+        for (long id = 0; id < 10; id++) {
+            cache.put(id, "FED_1.0", cache.getVersion());
+        }
+        assertEquals(2, cache.size());
+
+        assertFalse(SliceLocationCache.DISABLED.isEnabled());
+        SliceLocationCache.DISABLED.put(1L, "FED_1.0", 0);
+        assertNull(SliceLocationCache.DISABLED.get(1L));
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.openjpa.azure.trace;
+
+import java.util.Arrays;
+import java.util.List;
+import junit.framework.TestCase;
+
+public class TestQueryTrace extends TestCase {
+
+    public void testDisabled() {
+        final QueryTrace trace = QueryTrace.DISABLED;
+
+        assertFalse(trace.sample());
+        trace.record(QueryTrace.Kind.QUERY, "FED_1.0", "SELECT 1", null);
+        assertTrue(trace.getEvents().isEmpty());
+        assertEquals("", trace.dump());
+    }
+
+    public void testRingBuffer() {
+        // rounded up to 4
+        final QueryTrace trace = new QueryTrace(true, 1, 3, null);
+
+        for (int i = 0; i < 10; i++) {
+            assertTrue(trace.sample());
+            trace.record(QueryTrace.Kind.QUERY, "FED_1." + i, "SELECT " + i, null);
+        }
+
+        final List<QueryTrace.Event> events = trace.getEvents();
+        assertEquals(4, events.size());
+        assertEquals("SELECT 6", events.get(0).getSubject());
+        assertEquals("SELECT 9", events.get(3).getSubject());
+        assertEquals(10, trace.getRecorded());
+
+        trace.clear();
+        assertTrue(trace.getEvents().isEmpty());
+    }
+
+    public void testSampling() {
+        final QueryTrace trace = new QueryTrace(true, 4, 16, null);
+
+        int sampled = 0;
+        for (int i = 0; i < 100; i++) {
+            if (trace.sample()) {
+                sampled++;
+            }
+        }
+        assertEquals(25, sampled);
+    }
+
+    public void testLazyFormatting() {
+        final QueryTrace trace = new QueryTrace(true, 1, 16, null);
+
+        final int[] formatted = new int[1];
+        final Object subject = new Object() {
+
+            @Override
+            public String toString() {
+                formatted[0]++;
+                return "42";
+            }
+        };
+
+        trace.record(QueryTrace.Kind.FIND_TARGETS, null, subject, Arrays.asList("FED_1.0", "FED_1.1"));
+        assertEquals(0, formatted[0]);
+
+        final String dump = trace.dump();
+        assertEquals(1, formatted[0]);
+        assertTrue(dump, dump.contains("FIND_TARGETS 42 -> [FED_1.0, FED_1.1]"));
+    }
+}
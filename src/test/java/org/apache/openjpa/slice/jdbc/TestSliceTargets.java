@@ -0,0 +1,142 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.openjpa.slice.jdbc;
+
+import java.util.List;
+import javax.persistence.EntityManager;
+import javax.persistence.Query;
+import org.apache.openjpa.azure.beans.FedItem;
+import org.apache.openjpa.azure.emulator.AbstractEmulatorTestCase;
+import org.apache.openjpa.slice.SlicePersistence;
+
+/**
+ * Target hints and slice ordinals are resolved against the slices known by the store, including the ones added once
+ * a member is split.
+ */
+public class TestSliceTargets extends AbstractEmulatorTestCase {
+
+    private void persist(final long... ids) {
+        final EntityManager em = emf.createEntityManager();
+        try {
+            em.getTransaction().begin();
+            for (long id : ids) {
+                em.persist(new FedItem(id, "item " + id));
+            }
+            em.getTransaction().commit();
+        } finally {
+            em.close();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<FedItem> select(final Object target) {
+        final EntityManager em = emf.createEntityManager();
+        try {
+            final Query query = em.createQuery("SELECT e FROM FedItem e ORDER BY e.id");
+            if (target != null) {
+                query.setHint(SlicePersistence.HINT_TARGET, target);
+            }
+            return query.getResultList();
+        } finally {
+            em.close();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<Object> selectIds(final Object target) {
+        final EntityManager em = emf.createEntityManager();
+        try {
+            return em.createNativeQuery("SELECT id FROM FedItem").
+                    setHint(SlicePersistence.HINT_TARGET, target).getResultList();
+        } finally {
+            em.close();
+        }
+    }
+
+    public void testHintTargets() {
+        persist(1L, SPAN + 1);
+
+        long first = getExecutions(0);
+        long second = getExecutions(1);
+
+        List<FedItem> items = select(FEDERATION + ".1");
+        assertEquals(1, items.size());
+        assertEquals(SPAN + 1, items.get(0).getId().longValue());
+        // the other member is not even queried
+        assertEquals(first, getExecutions(0));
+        assertEquals(second + 1, getExecutions(1));
+
+        // same query string, hence same executor: the previous hint must not stick
+        items = select(new String[] {FEDERATION + ".0", FEDERATION + ".1"});
+        assertEquals(2, items.size());
+        assertEquals(first + 1, getExecutions(0));
+        assertEquals(second + 2, getExecutions(1));
+
+        // no hint: the query target policy picks the federation members
+        items = select(null);
+        assertEquals(2, items.size());
+
+        // native queries as well
+        first = getExecutions(0);
+        second = getExecutions(1);
+
+        List<Object> ids = selectIds(FEDERATION + ".1");
+        assertEquals(1, ids.size());
+        assertEquals(SPAN + 1, ((Number) ids.get(0)).longValue());
+        assertEquals(first, getExecutions(0));
+        assertEquals(second + 1, getExecutions(1));
+
+        ids = selectIds(FEDERATION + ".0");
+        assertEquals(1, ids.size());
+        assertEquals(1L, ((Number) ids.get(0)).longValue());
+        assertEquals(first + 1, getExecutions(0));
+        assertEquals(second + 1, getExecutions(1));
+    }
+
+    public void testOrdinalsOfAddedSlices()
+            throws Exception {
+
+        emulator.split(FEDERATION, String.valueOf(2 * SPAN));
+        getBrokerFactory().getRoutingRefresher().refresh();
+        assertNotNull(getBrokerFactory().getConfiguration().getSlice(FEDERATION + ".2"));
+
+        persist(1L, 2 * SPAN + 1);
+
+        final EntityManager em = emf.createEntityManager();
+        try {
+            final DistributedJDBCStoreManager store = getStore(em);
+            final List<String> names = store.getConfiguration().getActiveSliceNames();
+            for (int i = 0; i < names.size(); i++) {
+                assertEquals(i, store.getSliceOrdinal(names.get(i)));
+            }
+            assertTrue(store.getSliceOrdinal(FEDERATION + ".2") > 0);
+            assertEquals(-1, store.getSliceOrdinal("NONE"));
+
+            final FedItem item = em.find(FedItem.class, 2 * SPAN + 1);
+            assertNotNull(item);
+            assertEquals(FEDERATION + ".2", SlicePersistence.getSlice(item));
+        } finally {
+            em.close();
+        }
+
+        final List<FedItem> items = select(FEDERATION + ".2");
+        assertEquals(1, items.size());
+        assertEquals(2 * SPAN + 1, items.get(0).getId().longValue());
+    }
+}
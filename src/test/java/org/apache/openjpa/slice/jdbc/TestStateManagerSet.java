@@ -0,0 +1,112 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.openjpa.slice.jdbc;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import junit.framework.TestCase;
+import org.apache.openjpa.kernel.OpenJPAStateManager;
+
+public class TestStateManagerSet extends TestCase {
+
+    private static final int SIZE = 100000;
+
+    /**
+     * StateManager stub, optionally equal to any other: membership has to be checked by identity.
+     */
+    private static OpenJPAStateManager newStateManager(final boolean equalToAny) {
+        return (OpenJPAStateManager) Proxy.newProxyInstance(
+                TestStateManagerSet.class.getClassLoader(), new Class<?>[] {OpenJPAStateManager.class},
+                new InvocationHandler() {
+
+                    @Override
+                    public Object invoke(final Object proxy, final Method method, final Object[] args) {
+                        if ("equals".equals(method.getName())) {
+                            return equalToAny || proxy == args[0];
+                        }
+                        if ("hashCode".equals(method.getName())) {
+                            return System.identityHashCode(proxy);
+                        }
+                        throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+    }
+
+    public void testAdd() {
+        final DistributedJDBCStoreManager.StateManagerSet set = new DistributedJDBCStoreManager.StateManagerSet(null);
+        final OpenJPAStateManager replicated = newStateManager(false);
+        final OpenJPAStateManager distributed = newStateManager(false);
+        set.add(replicated, true);
+        set.add(distributed, false);
+
+        assertEquals(2, set.size());
+        assertSame(replicated, set.get(0));
+        assertSame(distributed, set.get(1));
+        assertTrue(set.containsReplicated());
+        assertEquals(1, set.getReplicated().size());
+        assertSame(replicated, set.getReplicated().get(0));
+    }
+
+    public void testGetReplicated() {
+        final DistributedJDBCStoreManager.StateManagerSet first = new DistributedJDBCStoreManager.StateManagerSet(null);
+        final DistributedJDBCStoreManager.StateManagerSet second = new DistributedJDBCStoreManager.StateManagerSet(null);
+        final OpenJPAStateManager replicated = newStateManager(false);
+        final OpenJPAStateManager distributed = newStateManager(false);
+        first.add(replicated, true);
+        second.add(replicated, true);
+        second.add(distributed, false);
+
+        final Set<OpenJPAStateManager> result =
+                DistributedJDBCStoreManager.getReplicated(Arrays.asList(first, second));
+        assertEquals(1, result.size());
+        assertTrue(result.contains(replicated));
+        assertFalse(result.contains(distributed));
+        // membership is checked by identity
+        assertFalse(result.contains(newStateManager(true)));
+    }
+
+    public void testLargeSets() {
+        final List<OpenJPAStateManager> sms = new ArrayList<OpenJPAStateManager>(SIZE);
+        final List<DistributedJDBCStoreManager.StateManagerSet> sets =
+                new ArrayList<DistributedJDBCStoreManager.StateManagerSet>();
+        for (int i = 0; i < 4; i++) {
+            sets.add(new DistributedJDBCStoreManager.StateManagerSet(null));
+        }
+        for (int i = 0; i < SIZE; i++) {
+            final OpenJPAStateManager sm = newStateManager(false);
+            sms.add(sm);
+            for (DistributedJDBCStoreManager.StateManagerSet set : sets) {
+                set.add(sm, true);
+            }
+        }
+
+        // as when rolling back versions of a whole flush: a list scan per lookup would take minutes
+        final long start = System.currentTimeMillis();
+        final Set<OpenJPAStateManager> replicated = DistributedJDBCStoreManager.getReplicated(sets);
+        for (OpenJPAStateManager sm : sms) {
+            assertTrue(replicated.contains(sm));
+        }
+        assertTrue(System.currentTimeMillis() - start < 5000L);
+    }
+}
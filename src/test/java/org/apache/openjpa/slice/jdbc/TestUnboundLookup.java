@@ -0,0 +1,161 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.openjpa.slice.jdbc;
+
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.List;
+import org.apache.openjpa.azure.beans.FedItem;
+import org.apache.openjpa.azure.emulator.AbstractEmulatorTestCase;
+import org.apache.openjpa.persistence.OpenJPAEntityManager;
+import org.apache.openjpa.persistence.OpenJPAPersistence;
+import org.apache.openjpa.slice.SlicePersistence;
+
+/**
+ * Instances of a table not ranged on its id are looked up onto every member: finds probe members concurrently, while
+ * bulk loads probe each member once for all the instances.
+ */
+public class TestUnboundLookup extends AbstractEmulatorTestCase {
+
+    private static final int ROWS = 5;
+
+    private static final long LATENCY = 300L;
+
+    @Override
+    protected String[] getFederatedTables() {
+        return new String[] {"FedChild"};
+    }
+
+    @Override
+    protected String[] getReplicatedTables() {
+        // listed without range mapping: found on every member, but not replicated by the persistence unit
+        return new String[] {"FedRef", "FedItem"};
+    }
+
+    private void insert(final int member, final long id)
+            throws SQLException {
+
+        execute(member * SPAN, "INSERT INTO FedItem (id, name, version) VALUES (" + id + ", 'item " + id + "', 1)");
+    }
+
+    private FedItem find(final long id) {
+        final OpenJPAEntityManager em = OpenJPAPersistence.cast(emf.createEntityManager());
+        try {
+            return em.find(FedItem.class, id);
+        } finally {
+            em.close();
+        }
+    }
+
+    private List<?> findAll(final Object... ids) {
+        final OpenJPAEntityManager em = OpenJPAPersistence.cast(emf.createEntityManager());
+        try {
+            return Arrays.asList(em.findAll(FedItem.class, ids));
+        } finally {
+            em.close();
+        }
+    }
+
+    public void testLoadAllHits()
+            throws SQLException {
+
+        final Object[] ids = new Object[2 * ROWS];
+        for (int i = 0; i < ROWS; i++) {
+            insert(0, i);
+            insert(1, ROWS + i);
+            ids[i] = Long.valueOf(i);
+            ids[ROWS + i] = Long.valueOf(ROWS + i);
+        }
+
+        final long first = getExecutions(0);
+        final long second = getExecutions(1);
+
+        final List<?> items = findAll(ids);
+        assertEquals(ids.length, items.size());
+        for (int i = 0; i < ids.length; i++) {
+            assertNotNull(items.get(i));
+            assertEquals("item " + i, ((FedItem) items.get(i)).getName());
+        }
+
+        // one existence probe and one batched select per member, not one probe per instance
+        assertEquals(2, getExecutions(0) - first);
+        assertEquals(2, getExecutions(1) - second);
+    }
+
+    public void testLoadAllMisses()
+            throws SQLException {
+
+        insert(0, 1L);
+        insert(1, 2L);
+
+        final long first = getExecutions(0);
+        final long second = getExecutions(1);
+
+        final List<?> items = findAll(1L, 2L, 3L, 4L);
+        assertEquals("item 1", ((FedItem) items.get(0)).getName());
+        assertEquals("item 2", ((FedItem) items.get(1)).getName());
+        assertNull(items.get(2));
+        assertNull(items.get(3));
+
+        // misses are not probed again one by one
+        assertEquals(2, getExecutions(0) - first);
+        assertEquals(2, getExecutions(1) - second);
+    }
+
+    public void testFind()
+            throws SQLException {
+
+        insert(0, 1L);
+        insert(1, 2L);
+
+        assertEquals("item 1", find(1L).getName());
+        assertEquals("item 2", find(2L).getName());
+        assertNull(find(3L));
+    }
+
+    public void testFindWithOutstandingProbe()
+            throws SQLException {
+
+        insert(0, 1L);
+
+        // misses probe every member
+        assertNull(find(2L));
+
+        final int open = getMember(1).getOpenConnections();
+        final long executions = getExecutions(1);
+        getMember(1).setLatency(LATENCY);
+        final OpenJPAEntityManager em = OpenJPAPersistence.cast(emf.createEntityManager());
+        try {
+            final long start = System.currentTimeMillis();
+            final FedItem item = em.find(FedItem.class, 1L);
+            assertNotNull(item);
+            assertEquals("item 1", item.getName());
+            assertEquals(FEDERATION + ".0", SlicePersistence.getSlice(item));
+
+            // the first member wins: the probe onto the slower one is skipped if not yet started, awaited otherwise
+            if (getExecutions(1) > executions) {
+                assertTrue(System.currentTimeMillis() - start >= LATENCY);
+            }
+            assertEquals(open, getMember(1).getOpenConnections());
+        } finally {
+            getMember(1).setLatency(0);
+            em.close();
+        }
+    }
+}